@@ -0,0 +1,65 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link HeightQuadtree}'s minimum / maximum heights.
+ */
+public class HeightQuadtreeTest extends TestCase {
+	
+	/**
+	 * Tests the levels and the heights of a tree with smaller border cells.
+	 */
+	public void testHeights() {
+		float[][] heightMap = new float[10][8];
+		for (int i = 0; i < heightMap.length; i++) {
+			for (int j = 0; j < heightMap[0].length; j++) {
+				heightMap[i][j] = i + 2 * j;
+			}
+		}
+		HeightQuadtree tree = new HeightQuadtree(heightMap, 0, 0);
+		
+		// 9 x 7 quads: 5 x 4 leaves, then 3 x 2, 2 x 1 and the root
+		assertEquals(4, tree.getLevels());
+		assertEquals(5, tree.getCellsX(0));
+		assertEquals(4, tree.getCellsY(0));
+		assertEquals(1, tree.getCellsX(3));
+		assertEquals(1, tree.getCellsY(3));
+		
+		// the leaves share their border points
+		assertEquals(2f + 4f, tree.getMinHeight(0, 1, 1), 0f);
+		assertEquals(4f + 8f, tree.getMaxHeight(0, 1, 1), 0f);
+		assertEquals(8f + 12f, tree.getMinHeight(0, 4, 3), 0f);
+		assertEquals(9f + 14f, tree.getMaxHeight(0, 4, 3), 0f);
+		
+		assertEquals(0f, tree.getMinHeight(3, 0, 0), 0f);
+		assertEquals(9f + 14f, tree.getMaxHeight(3, 0, 0), 0f);
+	}
+	
+	/**
+	 * Tests the cells' bounds and the height lookups of a tree with an origin.
+	 */
+	public void testBounds() {
+		float[][] heightMap = new float[9][9];
+		heightMap[3][5] = 20f;
+		HeightQuadtree tree = new HeightQuadtree(heightMap, 8, 16);
+		
+		float[] bounds = new float[6];
+		tree.getCellBounds(0, 1, 2, bounds);
+		assertEquals(10 * Terrain.UNIT_SCALE, bounds[0], 0f);
+		assertEquals(20 * Terrain.UNIT_SCALE, bounds[1], 0f);
+		assertEquals(0f, bounds[2], 0f);
+		assertEquals(12 * Terrain.UNIT_SCALE, bounds[3], 0f);
+		assertEquals(22 * Terrain.UNIT_SCALE, bounds[4], 0f);
+		assertEquals(20f, bounds[5], 0f);
+		
+		tree.getCellBounds(tree.getLevels() - 1, 0, 0, bounds);
+		assertEquals(16 * Terrain.UNIT_SCALE, bounds[3], 0f);
+		assertEquals(24 * Terrain.UNIT_SCALE, bounds[4], 0f);
+		
+		assertEquals(20f, tree.getMaxHeightAt(11.5f * Terrain.UNIT_SCALE, 21f * Terrain.UNIT_SCALE), 0f);
+		assertEquals(0f, tree.getMaxHeightAt(15f * Terrain.UNIT_SCALE, 17f * Terrain.UNIT_SCALE), 0f);
+		assertEquals(Float.NEGATIVE_INFINITY, tree.getMaxHeightAt(0, 0), 0f);
+	}
+	
+}
@@ -0,0 +1,144 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit test for the {@link StreamedTerrain}'s page generation and streaming.
+ */
+public class StreamedTerrainTest extends TestCase {
+	
+	/**
+	 * The number of points on each side of a page.
+	 */
+	protected static final int SIZE = StreamedTerrain.PAGE_SIZE + 1;
+	
+	/**
+	 * The world size of a page.
+	 */
+	protected static final float PAGE_WORLD_SIZE = StreamedTerrain.PAGE_SIZE * Terrain.UNIT_SCALE;
+	
+	/**
+	 * The tested terrain.
+	 */
+	protected StreamedTerrain terrain;
+	
+	
+	@Override
+	protected void setUp() throws Exception {
+		terrain = new StreamedTerrain(25f, 1234L);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		terrain.release();
+	}
+	
+	/**
+	 * Tests that a page only depends on the seed and its coordinates.
+	 */
+	public void testDeterministic() {
+		TerrainPage page1 = terrain.generatePage(3, -2);
+		TerrainPage page2 = new StreamedTerrain(25f, 1234L).generatePage(3, -2);
+		TerrainPage page3 = new StreamedTerrain(25f, 4321L).generatePage(3, -2);
+		
+		assertTrue(Arrays.deepEquals(page1.getHeightMap(), page2.getHeightMap()));
+		assertTrue(Arrays.deepEquals(page1.getTypeMap(), page2.getTypeMap()));
+		assertFalse(Arrays.deepEquals(page1.getHeightMap(), page3.getHeightMap()));
+		
+		for (float[] row: page1.getHeightMap()) {
+			for (float h: row) {
+				assertTrue(h >= 0 && h <= 25f);
+			}
+		}
+	}
+	
+	/**
+	 * Tests that the points shared by neighboring pages are identical (including their normals and
+	 * blend weights).
+	 */
+	public void testSeams() {
+		TerrainPage page = terrain.generatePage(-1, -1);
+		TerrainPage right = terrain.generatePage(0, -1);
+		TerrainPage top = terrain.generatePage(-1, 0);
+		
+		for (int k = 0; k < SIZE; k++) {
+			assertEquals(page.getHeightMap()[SIZE - 1][k], right.getHeightMap()[0][k], 0f);
+			assertEquals(page.getHeightMap()[k][SIZE - 1], top.getHeightMap()[k][0], 0f);
+			
+			for (int c = 0; c < 3; c++) {
+				assertEquals(page.getNormals().get(((SIZE - 1) * SIZE + k) * 3 + c),
+						right.getNormals().get(k * 3 + c), 0f);
+			}
+			for (int t = 0; t < TerrainMesh.WEIGHT_COUNT; t++) {
+				assertEquals(page.getWeights().get(((SIZE - 1) * SIZE + k) * TerrainMesh.WEIGHT_COUNT + t),
+						right.getWeights().get(k * TerrainMesh.WEIGHT_COUNT + t), 0f);
+				assertEquals(page.getWeights().get((k * SIZE + SIZE - 1) * TerrainMesh.WEIGHT_COUNT + t),
+						top.getWeights().get(k * SIZE * TerrainMesh.WEIGHT_COUNT + t), 0f);
+			}
+		}
+	}
+	
+	/**
+	 * Tests that the height queries return the same values, whether the pages are loaded or not
+	 * (and that they stay within the terrain's maximum height).
+	 */
+	public void testHeightAt() throws InterruptedException {
+		float[][] points = { { 5f, 7f }, { -33f, 12.5f }, { 151f, -3f }, { -0.5f, -0.5f } };
+		float[] heights = new float[points.length];
+		for (int k = 0; k < points.length; k++) {
+			heights[k] = terrain.getHeightAt(points[k][0], points[k][1]);
+			assertTrue(heights[k] >= 0 && heights[k] <= terrain.getMaxHeight());
+		}
+		
+		waitForPages(0, 0);
+		for (int k = 0; k < points.length; k++) {
+			assertTrue(terrain.isLoaded(points[k][0], points[k][1]));
+			assertEquals(heights[k], terrain.getHeightAt(points[k][0], points[k][1]), 0f);
+		}
+	}
+	
+	/**
+	 * Tests that the pages ahead of the player are loaded and that the far pages are evicted
+	 * when the memory limit is exceeded.
+	 */
+	public void testStreaming() throws InterruptedException {
+		int radius = StreamedTerrain.LOAD_RADIUS;
+		
+		// the pages ahead are loaded farther than the ones behind
+		waitForPages(0, 0);
+		assertTrue(terrain.isLoaded((StreamedTerrain.LOOKAHEAD_PAGES + radius + 0.5f) * PAGE_WORLD_SIZE, 0));
+		assertFalse(terrain.isLoaded(-(radius + 0.5f) * PAGE_WORLD_SIZE, 0));
+		
+		// only keep (about) the needed pages
+		long pageSize = terrain.generatePage(0, 0).getMemorySize();
+		terrain.setMemoryLimit(pageSize * 10);
+		
+		float farX = 20 * PAGE_WORLD_SIZE;
+		waitForPages(farX, 0);
+		assertTrue(terrain.isLoaded(farX, 0));
+		assertFalse(terrain.isLoaded(0, 0));
+		
+		// the memory is only exceeded by the needed pages
+		assertTrue(terrain.getMemorySize() <= pageSize * 2 * (2 * radius + 1) * (2 * radius + 1));
+	}
+	
+	/**
+	 * Updates the terrain (with the player flying on the X axis) until all needed pages are
+	 * loaded.
+	 * 
+	 * @param x The player's X coordinate.
+	 * @param y The player's Y coordinate.
+	 */
+	protected void waitForPages(float x, float y) throws InterruptedException {
+		for (int k = 0; k < 500; k++) {
+			terrain.update(x, y, 1, 0);
+			if (terrain.pendingPages.isEmpty() && terrain.completedPages.isEmpty() && !terrain.requestsLeft)
+				return;
+			Thread.sleep(10);
+		}
+		fail("The pages were not generated in time!");
+	}
+	
+}
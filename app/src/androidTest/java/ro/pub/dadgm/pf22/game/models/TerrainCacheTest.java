@@ -0,0 +1,169 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Unit test for the {@link TerrainCache}.
+ */
+public class TerrainCacheTest extends TestCase {
+	
+	/**
+	 * The temporary cache directory.
+	 */
+	protected File directory;
+	
+	/**
+	 * The tested cache.
+	 */
+	protected TerrainCache cache;
+	
+	
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("terrains", "");
+		assertTrue(directory.delete());
+		cache = new TerrainCache(directory);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file: files) {
+				assertTrue(file.delete());
+			}
+		}
+		assertTrue(!directory.exists() || directory.delete());
+	}
+	
+	/**
+	 * Tests that a cached terrain is loaded identically to the generated one.
+	 */
+	public void testRoundTrip() {
+		cache.setQuantizeThreshold(Integer.MAX_VALUE);
+		Terrain terrain = new Terrain(40, 30, 25f, 1234L);
+		
+		assertNull(cache.load(40, 30, 25f, 1234L));
+		assertTrue(cache.save(terrain, 25f));
+		
+		Terrain loaded = cache.load(40, 30, 25f, 1234L);
+		assertNotNull(loaded);
+		assertEquals(terrain.getSeed(), loaded.getSeed());
+		assertTrue(Arrays.equals(terrain.getMatrixDimensions(), loaded.getMatrixDimensions()));
+		assertTrue(Arrays.deepEquals(terrain.getHeightMap(), loaded.getHeightMap()));
+		assertTrue(Arrays.deepEquals(terrain.getTypeMap(), loaded.getTypeMap()));
+		assertTrue(Arrays.equals(terrain.getTypeCount(), loaded.getTypeCount()));
+		assertEquals(terrain.getMaxHeight(), loaded.getMaxHeight(), 0f);
+		
+		assertMeshEquals(terrain.getMesh(), loaded.getMesh());
+	}
+	
+	/**
+	 * Tests the 16-bit quantization of the heights.
+	 */
+	public void testQuantized() {
+		cache.setQuantizeThreshold(0);
+		Terrain terrain = new Terrain(40, 30, 25f, 99L);
+		assertTrue(cache.save(terrain, 25f));
+		
+		File file = cache.getFile(99L, 40, 30);
+		cache.setQuantizeThreshold(Integer.MAX_VALUE);
+		Terrain unquantized = new Terrain(40, 30, 25f, 98L);
+		assertTrue(cache.save(unquantized, 25f));
+		assertTrue(file.length() < cache.getFile(98L, 40, 30).length());
+		
+		Terrain loaded = cache.load(40, 30, 25f, 99L);
+		assertNotNull(loaded);
+		
+		// the error is at most half of a quantization step
+		float[][] expected = terrain.getHeightMap();
+		float[][] actual = loaded.getHeightMap();
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+		for (float[] row: expected) {
+			for (float h: row) {
+				min = Math.min(min, h);
+				max = Math.max(max, h);
+			}
+		}
+		float tolerance = (max - min) / 0xFFFF;
+		for (int i = 0; i < expected.length; i++) {
+			for (int j = 0; j < expected[i].length; j++) {
+				assertEquals(expected[i][j], actual[i][j], tolerance);
+			}
+		}
+		assertTrue(Arrays.deepEquals(terrain.getTypeMap(), loaded.getTypeMap()));
+		assertMeshEquals(terrain.getMesh(), loaded.getMesh());
+	}
+	
+	/**
+	 * Tests that the files that don't match the requested terrain are not used.
+	 */
+	public void testMismatch() throws IOException {
+		Terrain terrain = new Terrain(20, 20, 25f, 5L);
+		assertTrue(cache.save(terrain, 25f));
+		
+		// different generation parameters
+		assertNull(cache.load(20, 20, 30f, 5L));
+		
+		// a different version (the stale file is discarded)
+		assertTrue(cache.save(terrain, 25f));
+		File file = cache.getFile(5L, 20, 20);
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.seek(4);
+			out.writeInt(-1);
+		} finally {
+			out.close();
+		}
+		assertNull(cache.load(20, 20, 25f, 5L));
+		assertFalse(file.exists());
+		
+		// a truncated file
+		assertTrue(cache.save(terrain, 25f));
+		out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(file.length() - 2);
+		} finally {
+			out.close();
+		}
+		assertNull(cache.load(20, 20, 25f, 5L));
+	}
+	
+	/**
+	 * Tests that only the most recently used files are kept.
+	 */
+	public void testPrune() {
+		cache.setMaxFiles(2);
+		long now = System.currentTimeMillis();
+		
+		assertTrue(cache.save(new Terrain(20, 20, 25f, 1L), 25f));
+		assertTrue(cache.getFile(1L, 20, 20).setLastModified(now - 20000));
+		assertTrue(cache.save(new Terrain(20, 20, 25f, 2L), 25f));
+		assertTrue(cache.getFile(2L, 20, 20).setLastModified(now - 10000));
+		
+		// loading the first terrain makes it the most recently used one
+		assertNotNull(cache.load(20, 20, 25f, 1L));
+		assertTrue(cache.save(new Terrain(20, 20, 25f, 3L), 25f));
+		
+		assertTrue(cache.getFile(1L, 20, 20).exists());
+		assertFalse(cache.getFile(2L, 20, 20).exists());
+		assertTrue(cache.getFile(3L, 20, 20).exists());
+	}
+	
+	/**
+	 * Checks that two terrain meshes are equal.
+	 * 
+	 * @param expected The expected mesh.
+	 * @param actual The actual mesh.
+	 */
+	protected static void assertMeshEquals(TerrainMesh expected, TerrainMesh actual) {
+		assertEquals(expected.getNormals().duplicate(), actual.getNormals().duplicate());
+		assertEquals(expected.getWeights().duplicate(), actual.getWeights().duplicate());
+	}
+	
+}
@@ -0,0 +1,82 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link TerrainLightmap}'s baking.
+ */
+public class TerrainLightmapTest extends TestCase {
+	
+	/**
+	 * The tested terrain's size (in points).
+	 */
+	protected static final int SIZE = 33;
+	
+	
+	/**
+	 * Tests the lighting of a flat terrain (not occluded, lit from above).
+	 */
+	public void testFlat() {
+		Terrain terrain = createTerrain(new float[SIZE][SIZE]);
+		float center = (SIZE / 2) * Terrain.UNIT_SCALE;
+		TerrainLightmap lightmap = TerrainLightmap.bake(terrain, new float[] { center, center, 100f });
+		
+		assertEquals(SIZE, lightmap.getWidth());
+		assertEquals(SIZE, lightmap.getLength());
+		assertEquals(SIZE * SIZE, lightmap.getTexels().capacity());
+		
+		float precision = TerrainLightmap.LIGHT_RANGE / 255;
+		assertEquals(1f, TerrainLightmap.computeOcclusion(terrain.getHeightMap(), 5, 7), 0f);
+		assertEquals(TerrainLightmap.AMBIENT + TerrainLightmap.DIFFUSE,
+				lightmap.getLight(SIZE / 2, SIZE / 2), precision);
+		
+		// the points farther from the light are darker
+		assertTrue(lightmap.getLight(0, 0) < lightmap.getLight(SIZE / 4, SIZE / 4));
+	}
+	
+	/**
+	 * Tests that the bottom of a pit is occluded (and that its walls occlude it the same way
+	 * from all directions).
+	 */
+	public void testOcclusion() {
+		float[][] heightMap = new float[SIZE][SIZE];
+		int c = SIZE / 2;
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				if (Math.max(Math.abs(i - c), Math.abs(j - c)) > 2)
+					heightMap[i][j] = 100f;
+			}
+		}
+		
+		float bottom = TerrainLightmap.computeOcclusion(heightMap, c, c);
+		assertTrue(bottom < 0.25f);
+		assertEquals(TerrainLightmap.computeOcclusion(heightMap, c + 1, c),
+				TerrainLightmap.computeOcclusion(heightMap, c - 1, c), 0.0001f);
+		
+		// the top of the walls is not occluded
+		assertEquals(1f, TerrainLightmap.computeOcclusion(heightMap, c + 3, c), 0f);
+	}
+	
+	/**
+	 * Tests that the parallel baking always produces the same lightmap.
+	 */
+	public void testDeterministic() {
+		Terrain terrain = new Terrain(64, 48, 25f, 42L);
+		float[] light = { 100f, 80f, 50f };
+		
+		assertEquals(TerrainLightmap.bake(terrain, light).getTexels(),
+				TerrainLightmap.bake(terrain, light).getTexels());
+	}
+	
+	/**
+	 * Creates a terrain with the specified height map (and a single type).
+	 * 
+	 * @param heightMap The height map.
+	 * @return The terrain object.
+	 */
+	protected static Terrain createTerrain(float[][] heightMap) {
+		return new Terrain(0, heightMap, new byte[heightMap.length][heightMap[0].length],
+				new int[Terrain.TERRAIN_TYPES.length], 10f, null);
+	}
+	
+}
@@ -0,0 +1,91 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import junit.framework.TestCase;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Unit test for the {@link TerrainMesh} builder.
+ */
+public class TerrainMeshTest extends TestCase {
+	
+	/**
+	 * Tests the normals of a plane (tilted on X, so all normals are the same).
+	 */
+	public void testPlane() {
+		int wx = 37, wy = 21;
+		float slope = 0.25f;
+		float[][] heightMap = new float[wx][wy];
+		for (int i = 0; i < wx; i++) {
+			for (int j = 0; j < wy; j++) {
+				heightMap[i][j] = i * Terrain.UNIT_SCALE * slope;
+			}
+		}
+		
+		Terrain terrain = new Terrain(0, heightMap, new byte[wx][wy], 
+				new int[Terrain.TERRAIN_TYPES.length], wx * Terrain.UNIT_SCALE * slope, null);
+		FloatBuffer normals = TerrainMesh.build(terrain).getNormals();
+		assertEquals(wx * wy * 3, normals.capacity());
+		
+		float length = (float)Math.sqrt(slope * slope + 1);
+		for (int v = 0; v < wx * wy; v++) {
+			assertEquals(-slope / length, normals.get(3 * v), 0.0001f);
+			assertEquals(0, normals.get(3 * v + 1), 0.0001f);
+			assertEquals(1 / length, normals.get(3 * v + 2), 0.0001f);
+		}
+	}
+	
+	/**
+	 * Tests that the parallel build always produces the same normals.
+	 */
+	public void testDeterministic() {
+		Terrain terrain = new Terrain(64, 48, 25f, 42L);
+		FloatBuffer normals1 = TerrainMesh.build(terrain).getNormals();
+		FloatBuffer normals2 = TerrainMesh.build(terrain).getNormals();
+		
+		assertEquals(normals1, normals2);
+	}
+	
+	/**
+	 * Tests the blend weights: they sum to 1, a vertex inside a region of a single type only has 
+	 * that type and the border vertices blend both types.
+	 */
+	public void testWeights() {
+		int wx = 12, wy = 7, n = TerrainMesh.WEIGHT_COUNT;
+		byte[][] typeMap = new byte[wx][wy];
+		for (int i = 0; i < wx; i++) {
+			for (int j = 0; j < wy; j++) {
+				typeMap[i][j] = (byte)(i < wx / 2 ? 0 : 1);
+			}
+		}
+		
+		Terrain terrain = new Terrain(0, new float[wx][wy], typeMap, 
+				new int[Terrain.TERRAIN_TYPES.length], 1f, null);
+		FloatBuffer weights = TerrainMesh.build(terrain).getWeights();
+		assertEquals(wx * wy * n, weights.capacity());
+		
+		for (int v = 0; v < wx * wy; v++) {
+			float sum = 0;
+			for (int t = 0; t < n; t++) {
+				assertTrue(weights.get(v * n + t) >= 0);
+				sum += weights.get(v * n + t);
+			}
+			assertEquals(1f, sum, 0.0001f);
+		}
+		
+		// inside the regions (including the map's borders)
+		for (int j = 0; j < wy; j++) {
+			assertEquals(1f, weights.get(j * n), 0f);
+			assertEquals(1f, weights.get(((wx - 1) * wy + j) * n + 1), 0f);
+			assertEquals(0f, weights.get(((wx - 1) * wy + j) * n + 2), 0f);
+		}
+		
+		// on both sides of the border
+		int left = ((wx / 2 - 1) * wy + 3) * n, right = ((wx / 2) * wy + 3) * n;
+		assertEquals(0.75f, weights.get(left), 0.0001f);
+		assertEquals(0.25f, weights.get(left + 1), 0.0001f);
+		assertEquals(0.25f, weights.get(right), 0.0001f);
+		assertEquals(0.75f, weights.get(right + 1), 0.0001f);
+	}
+	
+}
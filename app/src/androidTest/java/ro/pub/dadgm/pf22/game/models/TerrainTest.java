@@ -0,0 +1,68 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Unit test for the {@link Terrain} generation.
+ */
+public class TerrainTest extends TestCase {
+	
+	/**
+	 * Tests that the same seed always generates the same terrain.
+	 */
+	public void testDeterministic() {
+		Terrain terrain1 = new Terrain(50, 40, 25f, 1234L);
+		Terrain terrain2 = new Terrain(50, 40, 25f, 1234L);
+		
+		assertTrue(Arrays.deepEquals(terrain1.getHeightMap(), terrain2.getHeightMap()));
+		assertTrue(Arrays.deepEquals(terrain1.getTypeMap(), terrain2.getTypeMap()));
+		assertTrue(Arrays.equals(terrain1.getTypeCount(), terrain2.getTypeCount()));
+		assertEquals(terrain1.getMaxHeight(), terrain2.getMaxHeight(), 0f);
+	}
+	
+	/**
+	 * Tests that different seeds generate different terrains.
+	 */
+	public void testDifferentSeeds() {
+		Terrain terrain1 = new Terrain(50, 50, 25f, 1L);
+		Terrain terrain2 = new Terrain(50, 50, 25f, 2L);
+		
+		assertFalse(Arrays.deepEquals(terrain1.getHeightMap(), terrain2.getHeightMap()));
+	}
+	
+	/**
+	 * Tests that all the points have a terrain type and that the types are counted correctly.
+	 */
+	public void testTypeMap() {
+		Terrain terrain = new Terrain(64, 48, 25f, 42L);
+		
+		int[] counts = new int[Terrain.TERRAIN_TYPES.length];
+		for (byte[] row: terrain.getTypeMap()) {
+			for (byte t: row) {
+				assertTrue(t >= 0 && t < Terrain.TERRAIN_TYPES.length);
+				counts[t]++;
+			}
+		}
+		
+		assertTrue(Arrays.equals(counts, terrain.getTypeCount()));
+	}
+	
+	/**
+	 * Tests that the generated heights are within the reported maximum.
+	 */
+	public void testMaxHeight() {
+		Terrain terrain = new Terrain(50, 50, 25f, 7L);
+		
+		float max = 0;
+		for (float[] row: terrain.getHeightMap()) {
+			for (float h: row) {
+				max = Math.max(max, h);
+			}
+		}
+		
+		assertEquals(max, terrain.getMaxHeight(), 0f);
+	}
+	
+}
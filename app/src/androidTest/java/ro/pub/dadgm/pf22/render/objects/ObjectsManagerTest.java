@@ -211,4 +211,62 @@ public class ObjectsManagerTest extends TestCase {
 		}
 	}
 	
+	/**
+	 * Tests the handle based access and the indexed iteration.
+	 */
+	public void testHandles() {
+		ObjectsManager<MockObject3D> col1 = new ObjectsManager<>();
+		
+		// enough objects to grow the internal arrays
+		MockObject3D objs[] = new MockObject3D[100];
+		int handles[] = new int[objs.length];
+		for (int i = 0; i < objs.length; i++) {
+			objs[i] = new MockObject3D(i, (i % 2 == 0 ? "even" : null), i % 5);
+			handles[i] = col1.addObject(objs[i]);
+		}
+		assertEquals(objs.length, col1.size());
+		assertEquals(handles[7], col1.addObject(objs[7]));
+		assertEquals(objs.length, col1.size());
+		
+		for (int i = 0; i < objs.length; i++) {
+			assertSame(objs[i], col1.getByHandle(handles[i]));
+			assertEquals(handles[i], col1.findHandle(objs[i]));
+		}
+		
+		// remove every third object (the others keep their handles)
+		for (int i = 0; i < objs.length; i += 3) {
+			assertTrue(col1.removeHandle(handles[i]));
+			assertFalse(col1.removeHandle(handles[i]));
+			assertEquals(ObjectsManager.NO_HANDLE, col1.findHandle(objs[i]));
+		}
+		assertEquals(objs.length - 34, col1.size());
+		for (int i = 1; i < objs.length; i++) {
+			if (i % 3 != 0)
+				assertSame(objs[i], col1.getByHandle(handles[i]));
+		}
+		
+		// the indexed access is sorted by priority
+		Set<Integer> validIds = new HashSet<>();
+		for (int i = 0; i < objs.length; i++) {
+			if (i % 3 != 0)
+				validIds.add(i);
+		}
+		for (int i = 0; i < col1.size(); i++) {
+			MockObject3D obj = col1.get(i);
+			assertTrue(validIds.remove(obj.getId()));
+			if (i > 0)
+				assertTrue(col1.get(i - 1).getPriority() <= obj.getPriority());
+		}
+		assertTrue(validIds.isEmpty());
+		
+		// the tags' collections follow the changes
+		Collection<MockObject3D> even = col1.getObjectsByTag("even");
+		assertEquals(33, even.size());
+		for (MockObject3D obj: even) {
+			assertEquals(0, obj.getId() % 2);
+			assertTrue(obj.getId() % 3 != 0);
+		}
+		assertNull(col1.getObjectsByTag("odd"));
+	}
+	
 }
@@ -0,0 +1,118 @@
+package ro.pub.dadgm.pf22.render.objects.game;
+
+import junit.framework.TestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Unit test for the {@link TerrainChunk}'s triangulation.
+ */
+public class TerrainChunkTest extends TestCase {
+	
+	/**
+	 * The tested terrain's size (in points).
+	 */
+	protected static final int SIZE = 2 * 16 + 1;
+	
+	/**
+	 * The terrain's height map.
+	 */
+	protected float[][] heightMap;
+	
+	
+	@Override
+	protected void setUp() throws Exception {
+		heightMap = new float[SIZE][SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				heightMap[i][j] = (i * 7 + j * 3) % 5;
+			}
+		}
+	}
+	
+	/**
+	 * Tests that the triangles cover the whole chunk (without overlapping), for all levels and
+	 * neighbor levels.
+	 */
+	public void testCoverage() {
+		TerrainChunk chunk = new TerrainChunk(heightMap, 0, 0, 16, 13);
+		
+		for (int level = 0; level <= 4; level++) {
+			for (int edgeLevel = 0; edgeLevel <= 4; edgeLevel++) {
+				int[] edgeLevels = { edgeLevel, level, 4 - edgeLevel, edgeLevel };
+				short[] indices = chunk.buildIndices(level, edgeLevels);
+				assertEquals(0, indices.length % 3);
+				
+				// all triangles have the same winding, so their (signed) areas sum to the chunk's
+				float area = 0;
+				for (int k = 0; k < indices.length; k += 3) {
+					float triangleArea = getArea(chunk, indices[k], indices[k + 1], indices[k + 2]);
+					assertTrue(triangleArea > 0);
+					area += triangleArea;
+				}
+				assertEquals(16 * 13, area, 0.001f);
+			}
+		}
+	}
+	
+	/**
+	 * Tests that the shared edge of two chunks with different levels is identical.
+	 */
+	public void testSeams() {
+		TerrainChunk left = new TerrainChunk(heightMap, 0, 0, 16, 16);
+		TerrainChunk right = new TerrainChunk(heightMap, 16, 0, 16, 16);
+		
+		for (int leftLevel = 0; leftLevel <= 4; leftLevel++) {
+			for (int rightLevel = 0; rightLevel <= 4; rightLevel++) {
+				short[] leftIndices = left.buildIndices(leftLevel,
+						new int[] { leftLevel, rightLevel, leftLevel, leftLevel });
+				short[] rightIndices = right.buildIndices(rightLevel,
+						new int[] { leftLevel, rightLevel, rightLevel, rightLevel });
+				
+				// the shared edge is the left chunk's right edge (local X = 16) and the right
+				// chunk's left edge (local X = 0)
+				assertEquals(getEdgeSegments(leftIndices, 16), getEdgeSegments(rightIndices, 0));
+			}
+		}
+	}
+	
+	/**
+	 * Computes the signed area of a triangle (projected on the XY plane).
+	 * 
+	 * @param chunk The chunk.
+	 * @param v1 The first vertex.
+	 * @param v2 The second vertex.
+	 * @param v3 The third vertex.
+	 * @return The triangle's area.
+	 */
+	protected static float getArea(TerrainChunk chunk, int v1, int v2, int v3) {
+		int stride = chunk.getVertexIndex(1, 0);
+		int x1 = v1 / stride, y1 = v1 % stride;
+		int x2 = v2 / stride, y2 = v2 % stride;
+		int x3 = v3 / stride, y3 = v3 % stride;
+		return ((x2 - x1) * (y3 - y1) - (x3 - x1) * (y2 - y1)) / 2f;
+	}
+	
+	/**
+	 * Returns the triangle edges that lie on a chunk's vertical edge.
+	 * 
+	 * @param indices The triangles.
+	 * @param x The local X coordinate of the edge.
+	 * @return The set of segments, as "y1-y2" strings (y1 &lt; y2).
+	 */
+	protected static Set<String> getEdgeSegments(short[] indices, int x) {
+		Set<String> segments = new HashSet<>();
+		int stride = 16 + 1;
+		for (int k = 0; k < indices.length; k += 3) {
+			for (int e = 0; e < 3; e++) {
+				int a = indices[k + e], b = indices[k + (e + 1) % 3];
+				if (a / stride == x && b / stride == x) {
+					segments.add(Math.min(a, b) % stride + "-" + Math.max(a, b) % stride);
+				}
+			}
+		}
+		return segments;
+	}
+	
+}
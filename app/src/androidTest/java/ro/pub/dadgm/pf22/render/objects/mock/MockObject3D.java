@@ -74,6 +74,11 @@ public class MockObject3D implements Object3D {
 		return priority;
 	}
 	
+	@Override
+	public boolean computeBounds(float[] bounds) {
+		return false;
+	}
+	
 	@Override
 	public void destroy() {
 		// do nothing
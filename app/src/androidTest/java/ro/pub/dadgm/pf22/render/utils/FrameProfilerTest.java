@@ -0,0 +1,153 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link FrameProfiler}'s stats, recording frames on a simulated clock.
+ */
+public class FrameProfilerTest extends TestCase {
+	
+	/**
+	 * A profiler whose clock is advanced by the test.
+	 */
+	protected static class MockProfiler extends FrameProfiler {
+		
+		/**
+		 * The current time (nanoseconds).
+		 */
+		protected long time = 1000000;
+		
+		
+		@Override
+		protected long getTime() {
+			return time;
+		}
+		
+		/**
+		 * Advances the clock.
+		 * 
+		 * @param millis The elapsed time (milliseconds).
+		 */
+		protected void advance(float millis) {
+			time += (long)(millis * 1000000);
+		}
+		
+		/**
+		 * Records a frame.
+		 * 
+		 * @param swap The time spent before the frame (milliseconds).
+		 * @param camera The time spent updating the camera.
+		 * @param scene The time spent drawing the scene.
+		 * @param hud The time spent drawing the HUD.
+		 */
+		protected void recordFrame(float swap, float camera, float scene, float hud) {
+			advance(swap);
+			beginFrame();
+			advance(camera);
+			mark(PHASE_CAMERA);
+			advance(scene);
+			mark(PHASE_SCENE);
+			countDraw(100);
+			countDraw(20);
+			advance(hud);
+			mark(PHASE_HUD);
+			endFrame();
+		}
+		
+	}
+	
+	/**
+	 * The tolerance of the compared times (milliseconds).
+	 */
+	protected static final float EPSILON = 0.01f;
+	
+	
+	/**
+	 * The phases of steady frames are reported as recorded (the first frame is skipped).
+	 */
+	public void testSteadyFrames() {
+		MockProfiler profiler = new MockProfiler();
+		for (int i = 0; i < 10; i++) {
+			profiler.recordFrame(10, 1, 4, 2);
+		}
+		profiler.computeStats();
+		
+		assertEquals(9, profiler.getFrameCount());
+		assertEquals(10, profiler.getPercentile(FrameProfiler.PHASE_SWAP, FrameProfiler.P50), EPSILON);
+		assertEquals(0, profiler.getPercentile(FrameProfiler.PHASE_BUILD, FrameProfiler.P99), EPSILON);
+		assertEquals(1, profiler.getPercentile(FrameProfiler.PHASE_CAMERA, FrameProfiler.P99), EPSILON);
+		assertEquals(4, profiler.getPercentile(FrameProfiler.PHASE_SCENE, FrameProfiler.P95), EPSILON);
+		assertEquals(7, profiler.getPercentile(FrameProfiler.SERIES_WORK, FrameProfiler.P50), EPSILON);
+		assertEquals(17, profiler.getPercentile(FrameProfiler.SERIES_INTERVAL, FrameProfiler.P50), EPSILON);
+		assertEquals(0, profiler.getJankCount());
+		assertEquals(2, profiler.getDrawCalls());
+		assertEquals(120, profiler.getTriangles());
+	}
+	
+	/**
+	 * The slow frames raise the high percentiles (not the median) and are counted as jank.
+	 */
+	public void testJank() {
+		MockProfiler profiler = new MockProfiler();
+		for (int i = 0; i < FrameProfiler.CAPACITY * 2; i++) {
+			if (i % 20 == 0) {
+				profiler.recordFrame(10, 1, 30, 2);
+			} else {
+				profiler.recordFrame(10, 1, 4, 2);
+			}
+		}
+		profiler.computeStats();
+		
+		assertEquals(FrameProfiler.CAPACITY, profiler.getFrameCount());
+		assertEquals(4, profiler.getPercentile(FrameProfiler.PHASE_SCENE, FrameProfiler.P50), EPSILON);
+		assertEquals(30, profiler.getPercentile(FrameProfiler.PHASE_SCENE, FrameProfiler.P99), EPSILON);
+		// (the frames following the slow ones have a long interval)
+		int slowFrames = 0;
+		for (int i = FrameProfiler.CAPACITY; i < FrameProfiler.CAPACITY * 2; i++) {
+			if ((i - 1) % 20 == 0)
+				slowFrames++;
+		}
+		assertEquals(slowFrames, profiler.getJankCount());
+	}
+	
+	/**
+	 * A reset forgets the frames and doesn't count the pause as an interval.
+	 */
+	public void testReset() {
+		MockProfiler profiler = new MockProfiler();
+		for (int i = 0; i < 10; i++) {
+			profiler.recordFrame(10, 1, 4, 2);
+		}
+		profiler.reset();
+		profiler.recordFrame(1000, 1, 4, 2);
+		profiler.computeStats();
+		assertEquals(0, profiler.getFrameCount());
+		
+		for (int i = 0; i < 10; i++) {
+			profiler.recordFrame(10, 1, 4, 2);
+		}
+		profiler.computeStats();
+		assertEquals(10, profiler.getFrameCount());
+		assertEquals(17, profiler.getPercentile(FrameProfiler.SERIES_INTERVAL, FrameProfiler.P99), EPSILON);
+		assertEquals(0, profiler.getJankCount());
+	}
+	
+	/**
+	 * The stats computed while a frame is being recorded skip that frame.
+	 */
+	public void testPartialFrame() {
+		MockProfiler profiler = new MockProfiler();
+		for (int i = 0; i < FrameProfiler.CAPACITY + 5; i++) {
+			profiler.recordFrame(10, 1, 4, 2);
+		}
+		profiler.advance(10);
+		profiler.beginFrame();
+		profiler.advance(50);
+		profiler.mark(FrameProfiler.PHASE_CAMERA);
+		profiler.computeStats();
+		
+		assertEquals(1, profiler.getPercentile(FrameProfiler.PHASE_CAMERA, FrameProfiler.P99), EPSILON);
+		assertEquals(2, profiler.getDrawCalls());
+	}
+	
+}
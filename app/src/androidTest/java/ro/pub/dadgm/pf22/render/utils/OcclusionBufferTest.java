@@ -0,0 +1,99 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+import ro.pub.dadgm.pf22.game.models.HeightQuadtree;
+
+/**
+ * Unit test for the {@link OcclusionBuffer}'s terrain culling.
+ */
+public class OcclusionBufferTest extends TestCase {
+	
+	/**
+	 * The tested terrain's size (in points).
+	 */
+	protected static final int SIZE = 40;
+	
+	/**
+	 * The ridge's height.
+	 */
+	protected static final float RIDGE_HEIGHT = 50f;
+	
+	
+	/**
+	 * Tests the culling of the objects behind, in front of and above a ridge.
+	 */
+	public void testRidge() {
+		OcclusionBuffer buffer = createBuffer(new float[] { 5f, 200f, 20f });
+		assertTrue(buffer.isEnabled());
+		assertTrue(buffer.getOccluderCount() > 0);
+		
+		// behind the ridge (on the ground and just below its top)
+		assertTrue(buffer.isOccluded(new float[] { 250f, 195f, 0f, 260f, 205f, 10f }));
+		assertTrue(buffer.isOccluded(new float[] { 250f, 195f, 30f, 260f, 205f, 40f }));
+		
+		// in front of the ridge, above it and beside the camera's view
+		assertFalse(buffer.isOccluded(new float[] { 40f, 195f, 0f, 50f, 205f, 10f }));
+		assertFalse(buffer.isOccluded(new float[] { 250f, 195f, 300f, 260f, 205f, 310f }));
+		assertFalse(buffer.isVisible(new float[] { -50f, 195f, 0f, -40f, 205f, 10f }));
+		assertTrue(buffer.isVisible(new float[] { 40f, 195f, 0f, 50f, 205f, 10f }));
+	}
+	
+	/**
+	 * Tests that the culling is disabled when the camera is below the terrain's surface.
+	 */
+	public void testBelowSurface() {
+		OcclusionBuffer buffer = createBuffer(new float[] { 120f, 200f, 10f });
+		assertFalse(buffer.isEnabled());
+		assertFalse(buffer.isOccluded(new float[] { 250f, 195f, 0f, 260f, 205f, 10f }));
+	}
+	
+	/**
+	 * Creates an occlusion buffer with a ridge (on X, between the points 8 and 16) rasterized
+	 * into it, seen by a camera that looks along the X axis.
+	 * 
+	 * @param cameraPosition The camera's position.
+	 * @return The occlusion buffer.
+	 */
+	protected static OcclusionBuffer createBuffer(float[] cameraPosition) {
+		float[][] heightMap = new float[SIZE][SIZE];
+		for (int i = 8; i <= 16; i++) {
+			for (int j = 0; j < SIZE; j++) {
+				heightMap[i][j] = RIDGE_HEIGHT;
+			}
+		}
+		
+		OcclusionBuffer buffer = new OcclusionBuffer();
+		buffer.begin(createViewProjection(cameraPosition), cameraPosition);
+		buffer.addOccluders(new HeightQuadtree(heightMap, 0, 0));
+		return buffer;
+	}
+	
+	/**
+	 * Builds the view-projection matrix of a camera that looks along the X axis (with Z up),
+	 * with a 90 degrees vertical field of view and a 2:1 aspect ratio.
+	 * 
+	 * @param eye The camera's position.
+	 * @return The (column-major) matrix.
+	 */
+	protected static float[] createViewProjection(float[] eye) {
+		float aspect = 2f, near = 0.1f, far = 1000f;
+		float a = (far + near) / (near - far), b = 2 * far * near / (near - far);
+		
+		float[] m = new float[16];
+		// clip X = -(y - eye y) / aspect
+		m[4] = -1 / aspect;
+		m[12] = eye[1] / aspect;
+		// clip Y = z - eye z
+		m[9] = 1;
+		m[13] = -eye[2];
+		// clip Z = -a * (x - eye x) + b
+		m[2] = -a;
+		m[14] = a * eye[0] + b;
+		// clip W = x - eye x
+		m[3] = 1;
+		m[15] = -eye[0];
+		return m;
+	}
+	
+}
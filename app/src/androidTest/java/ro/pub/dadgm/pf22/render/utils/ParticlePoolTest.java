@@ -0,0 +1,79 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link ParticlePool}'s simulation.
+ */
+public class ParticlePoolTest extends TestCase {
+	
+	/**
+	 * Tests that the pool drops the particles emitted over its capacity.
+	 */
+	public void testCapacity() {
+		ParticlePool pool = new ParticlePool(4);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(pool.emit(i, 0, 0, 0, 0, 0, 1, 1));
+		}
+		assertFalse(pool.emit(4, 0, 0, 0, 0, 0, 1, 1));
+		assertEquals(4, pool.getCount());
+		
+		pool.clear();
+		assertEquals(0, pool.getCount());
+		assertTrue(pool.emit(0, 0, 0, 0, 0, 0, 1, 1));
+	}
+	
+	/**
+	 * Tests the particles' motion and the removal of the dead ones (the live ones stay packed).
+	 */
+	public void testUpdate() {
+		ParticlePool pool = new ParticlePool(8);
+		pool.setAcceleration(0, 0, -1);
+		pool.emit(0, 0, 0, 1, 0, 0, 0.5f, 1);
+		pool.emit(10, 0, 0, 0, 2, 0, 2, 1);
+		pool.emit(20, 0, 0, 0, 0, 0, 0.5f, 1);
+		pool.emit(30, 0, 0, 0, 0, 0, 2, 1);
+		
+		pool.update(0.25f);
+		assertEquals(4, pool.getCount());
+		float[] vertices = new float[8 * ParticlePool.VERTEX_SIZE];
+		pool.fillVertices(vertices);
+		assertEquals(0.25f, vertices[0], 1e-6f);
+		assertEquals(-0.0625f, vertices[2], 1e-6f);
+		assertEquals(0.5f, vertices[ParticlePool.VERTEX_SIZE + 1], 1e-6f);
+		
+		// the short lived particles die, replaced by the last ones
+		pool.update(0.5f);
+		assertEquals(2, pool.getCount());
+		assertEquals(2, pool.fillVertices(vertices));
+		float first = vertices[0], second = vertices[ParticlePool.VERTEX_SIZE];
+		assertEquals(40f, first + second, 1e-6f);
+		assertEquals(30f, Math.max(first, second), 1e-6f);
+		
+		pool.update(2);
+		assertEquals(0, pool.getCount());
+	}
+	
+	/**
+	 * Tests the size and color interpolation.
+	 */
+	public void testVertices() {
+		ParticlePool pool = new ParticlePool(1);
+		pool.setGrowth(2);
+		pool.setColors(new float[] { 1, 1, 0, 0 }, new float[] { 0, 0, 0, 1 });
+		pool.emit(1, 2, 3, 0, 0, 0, 1, 0.5f);
+		pool.update(0.5f);
+		
+		float[] vertices = new float[ParticlePool.VERTEX_SIZE];
+		assertEquals(1, pool.fillVertices(vertices));
+		assertEquals(1f, vertices[0], 1e-6f);
+		assertEquals(2f, vertices[1], 1e-6f);
+		assertEquals(3f, vertices[2], 1e-6f);
+		assertEquals(1f, vertices[3], 1e-6f);
+		assertEquals(0.5f, vertices[4], 1e-6f);
+		assertEquals(0.5f, vertices[5], 1e-6f);
+		assertEquals(0f, vertices[6], 1e-6f);
+		assertEquals(0.5f, vertices[7], 1e-6f);
+	}
+	
+}
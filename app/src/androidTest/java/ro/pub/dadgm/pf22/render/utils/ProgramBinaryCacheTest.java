@@ -0,0 +1,148 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Unit test for the {@link ProgramBinaryCache}'s keys and storage.
+ */
+public class ProgramBinaryCacheTest extends TestCase {
+	
+	/**
+	 * The temporary cache directory.
+	 */
+	protected File directory;
+	
+	
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("shaders", "");
+		assertTrue(directory.delete());
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file: files) {
+				assertTrue(file.delete());
+			}
+		}
+		assertTrue(!directory.exists() || directory.delete());
+	}
+	
+	/**
+	 * Tests that the keys identify the sources, the attributes and the driver.
+	 */
+	public void testKeys() {
+		ProgramBinaryCache cache = new ProgramBinaryCache(directory, "vendor|renderer|1.0");
+		String key = cache.computeKey("vertex", "fragment", null);
+		
+		assertEquals(40, key.length());
+		assertEquals(key, cache.computeKey("vertex", "fragment", null));
+		assertEquals(key, new ProgramBinaryCache(directory, "vendor|renderer|1.0").computeKey("vertex", "fragment", null));
+		
+		assertFalse(key.equals(cache.computeKey("vertex", "fragment2", null)));
+		assertFalse(key.equals(cache.computeKey("vertexfragment", "", null)));
+		assertFalse(key.equals(cache.computeKey("vertex", "fragment", new String[] { "a_position" })));
+		assertFalse(key.equals(new ProgramBinaryCache(directory, "vendor|renderer|1.1").computeKey("vertex", "fragment", null)));
+	}
+	
+	/**
+	 * Tests storing and loading a binary.
+	 */
+	public void testStoreLoad() {
+		ProgramBinaryCache cache = new ProgramBinaryCache(directory, "driver");
+		String key = cache.computeKey("vertex", "fragment", null);
+		assertNull(cache.load(key));
+		
+		byte[] binary = new byte[1000];
+		for (int i = 0; i < binary.length; i++) {
+			binary[i] = (byte)(i * 7);
+		}
+		ByteBuffer data = ByteBuffer.wrap(binary);
+		assertTrue(cache.store(key, 0x1234, data));
+		assertEquals(0, data.position());
+		
+		ProgramBinaryCache.ProgramBinary loaded = cache.load(key);
+		assertNotNull(loaded);
+		assertEquals(0x1234, loaded.getFormat());
+		assertEquals(data, loaded.getData());
+		assertTrue(loaded.getData().isDirect());
+		
+		cache.clear();
+		assertNull(cache.load(key));
+	}
+	
+	/**
+	 * Tests that the invalid files are discarded.
+	 * 
+	 * @throws IOException If the test file could not be written.
+	 */
+	public void testInvalid() throws IOException {
+		ProgramBinaryCache cache = new ProgramBinaryCache(directory, "driver");
+		String key = cache.computeKey("vertex", "fragment", null);
+		assertTrue(cache.store(key, 1, ByteBuffer.wrap(new byte[100])));
+		
+		// truncate the file
+		File file = cache.getFile(key);
+		FileOutputStream out = new FileOutputStream(file, true);
+		try {
+			out.getChannel().truncate(50);
+		} finally {
+			out.close();
+		}
+		
+		assertNull(cache.load(key));
+		assertFalse(file.exists());
+	}
+	
+	/**
+	 * Tests that the binaries of another driver are deleted.
+	 */
+	public void testDriverChange() {
+		ProgramBinaryCache cache = new ProgramBinaryCache(directory, "driver");
+		cache.checkDriver();
+		String key = cache.computeKey("vertex", "fragment", null);
+		assertTrue(cache.store(key, 1, ByteBuffer.wrap(new byte[100])));
+		
+		// the same driver keeps its binaries
+		new ProgramBinaryCache(directory, "driver").checkDriver();
+		assertTrue(cache.getFile(key).exists());
+		
+		new ProgramBinaryCache(directory, "driver2").checkDriver();
+		assertFalse(cache.getFile(key).exists());
+		assertTrue(new File(directory, ProgramBinaryCache.DRIVER_FILE).exists());
+	}
+	
+	/**
+	 * Tests that only the most recently used binaries are kept.
+	 */
+	public void testPrune() {
+		ProgramBinaryCache cache = new ProgramBinaryCache(directory, "driver");
+		cache.setMaxFiles(2);
+		long now = System.currentTimeMillis();
+		
+		String[] keys = new String[3];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = cache.computeKey("vertex" + i, "fragment", null);
+		}
+		assertTrue(cache.store(keys[0], 1, ByteBuffer.wrap(new byte[100])));
+		assertTrue(cache.getFile(keys[0]).setLastModified(now - 20000));
+		assertTrue(cache.store(keys[1], 1, ByteBuffer.wrap(new byte[100])));
+		assertTrue(cache.getFile(keys[1]).setLastModified(now - 10000));
+		
+		// loading the first binary makes it the most recently used one
+		assertNotNull(cache.load(keys[0]));
+		assertTrue(cache.store(keys[2], 1, ByteBuffer.wrap(new byte[100])));
+		
+		assertTrue(cache.getFile(keys[0]).exists());
+		assertFalse(cache.getFile(keys[1]).exists());
+		assertTrue(cache.getFile(keys[2]).exists());
+	}
+	
+}
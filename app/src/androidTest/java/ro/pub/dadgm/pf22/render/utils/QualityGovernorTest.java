@@ -0,0 +1,289 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for the {@link QualityGovernor}'s decisions, replaying frame time traces.
+ * 
+ * <p>A trace is a list of segments: { frame interval, drawing time, tick time, frames count } (the
+ * times in milliseconds). The recorded trace (see {@link #RECORDED_TRACE}) has a line per frame,
+ * with the same times.</p>
+ */
+public class QualityGovernorTest extends TestCase {
+	
+	/**
+	 * A knob that records its level.
+	 */
+	protected static class MockKnob implements QualityGovernor.Knob {
+		
+		/**
+		 * The number of levels.
+		 */
+		protected final int levels;
+		
+		/**
+		 * The last applied level.
+		 */
+		protected int level = 0;
+		
+		/**
+		 * The number of times a level was applied.
+		 */
+		protected int changes = 0;
+		
+		
+		/**
+		 * Creates the knob.
+		 * 
+		 * @param levels The number of levels.
+		 */
+		protected MockKnob(int levels) {
+			this.levels = levels;
+		}
+		
+		@Override
+		public int getLevels() {
+			return levels;
+		}
+		
+		@Override
+		public void setLevel(int level) {
+			this.level = level;
+			changes++;
+		}
+		
+	}
+	
+	/**
+	 * A smooth 60 FPS trace, with plenty of headroom.
+	 */
+	protected static final float[][] IDLE = { { 16.7f, 5, 5, QualityGovernor.WINDOW } };
+	
+	/**
+	 * A 30 FPS trace (the frames miss their budget).
+	 */
+	protected static final float[][] OVERLOADED = { { 33.3f, 30, 5, QualityGovernor.WINDOW } };
+	
+	/**
+	 * A 60 FPS trace, without enough headroom for an upgrade.
+	 */
+	protected static final float[][] BUSY = { { 16.7f, 14, 5, QualityGovernor.WINDOW } };
+	
+	/**
+	 * The resource of the trace recorded on a paced render loop, whose drawing time depended on
+	 * the level of a two-level knob driven by a governor (see the file's header).
+	 */
+	protected static final String RECORDED_TRACE = "quality_trace.csv";
+	
+	
+	/**
+	 * Tests that the knobs are turned down in their registration order, until the lowest levels.
+	 */
+	public void testDegrade() {
+		QualityGovernor governor = new QualityGovernor(60, 25);
+		MockKnob first = new MockKnob(3), second = new MockKnob(2);
+		governor.addKnob(first);
+		governor.addKnob(second);
+		
+		replay(governor, OVERLOADED);
+		assertEquals(1, first.level);
+		assertEquals(0, second.level);
+		
+		replay(governor, OVERLOADED);
+		replay(governor, OVERLOADED);
+		assertEquals(2, first.level);
+		assertEquals(1, second.level);
+		
+		// nothing left to turn down
+		replay(governor, OVERLOADED);
+		assertEquals(3, first.changes + second.changes);
+		assertEquals(2, governor.getLevel(0));
+		assertEquals(1, governor.getLevel(1));
+	}
+	
+	/**
+	 * Tests that the occasional spikes (and an unfinished window) don't change the quality.
+	 */
+	public void testSpikes() {
+		QualityGovernor governor = new QualityGovernor(60, 25);
+		MockKnob knob = new MockKnob(3);
+		governor.addKnob(knob);
+		
+		float[][] spiky = new float[20][];
+		for (int i = 0; i < spiky.length; i += 2) {
+			spiky[i] = new float[] { 16.7f, 14, 5, 8 };
+			spiky[i + 1] = new float[] { 120, 110, 40, 1 };
+		}
+		replay(governor, spiky);
+		replay(governor, new float[][] { { 50, 45, 5, QualityGovernor.WINDOW - 1 } });
+		assertEquals(0, knob.changes);
+	}
+	
+	/**
+	 * Tests that the last lowered knob is turned back up after enough windows with headroom (and
+	 * not while the frames are just within their budget).
+	 */
+	public void testUpgrade() {
+		QualityGovernor governor = new QualityGovernor(60, 25);
+		MockKnob first = new MockKnob(2), second = new MockKnob(2);
+		governor.addKnob(first);
+		governor.addKnob(second);
+		
+		replay(governor, OVERLOADED);
+		replay(governor, OVERLOADED);
+		assertEquals(1, first.level);
+		assertEquals(1, second.level);
+		
+		for (int i = 0; i < 10; i++) {
+			replay(governor, BUSY);
+		}
+		assertEquals(1, second.level);
+		
+		for (int i = 0; i < QualityGovernor.UPGRADE_WINDOWS - 1; i++) {
+			replay(governor, IDLE);
+		}
+		assertEquals(1, second.level);
+		replay(governor, IDLE);
+		assertEquals(0, second.level);
+		assertEquals(1, first.level);
+		
+		for (int i = 0; i < QualityGovernor.UPGRADE_WINDOWS; i++) {
+			replay(governor, IDLE);
+		}
+		assertEquals(0, first.level);
+	}
+	
+	/**
+	 * Tests that an upgrade that doesn't hold delays the next one (so the quality settles).
+	 */
+	public void testBackoff() {
+		QualityGovernor governor = new QualityGovernor(60, 25);
+		MockKnob knob = new MockKnob(2);
+		governor.addKnob(knob);
+		
+		// a GPU bound device: idle CPU, but the better quality misses the budget
+		for (int cycle = 0; cycle < 3; cycle++) {
+			replay(governor, OVERLOADED);
+			assertEquals(1, knob.level);
+			int windows = 0;
+			while (knob.level == 1) {
+				replay(governor, IDLE);
+				windows++;
+			}
+			assertEquals(QualityGovernor.UPGRADE_WINDOWS << cycle, windows);
+		}
+		assertEquals(QualityGovernor.UPGRADE_WINDOWS * 4, governor.getUpgradeWindows());
+	}
+	
+	/**
+	 * Tests that the slow simulation ticks also lower the quality.
+	 */
+	public void testTicks() {
+		QualityGovernor governor = new QualityGovernor(60, 25);
+		MockKnob knob = new MockKnob(2);
+		governor.addKnob(knob);
+		
+		replay(governor, new float[][] { { 16.7f, 5, 40, QualityGovernor.WINDOW } });
+		assertEquals(1, knob.level);
+		
+		// the levels are applied again on demand
+		governor.applyLevels();
+		assertEquals(2, knob.changes);
+		assertEquals(1, knob.level);
+	}
+	
+	
+	/**
+	 * Tests the decisions on the recorded trace: the jitter and the stalls don't change the
+	 * quality, each upgrade (which didn't hold) is undone after a window and the next one waits
+	 * twice as long.
+	 */
+	public void testRecordedTrace() throws IOException {
+		float[][] trace = loadTrace(RECORDED_TRACE);
+		QualityGovernor governor = new QualityGovernor(60, 25);
+		MockKnob knob = new MockKnob(2);
+		governor.addKnob(knob);
+		
+		// the trace does have jitter and stalls
+		int stalls = 0;
+		for (float[] frame: trace) {
+			if (frame[0] > 2 * governor.getFrameBudget())
+				stalls++;
+		}
+		assertTrue(stalls > 0);
+		
+		// the frames at which the knob changed
+		List<Integer> changes = new ArrayList<>();
+		int level = knob.level;
+		for (int i = 0; i < trace.length; i++) {
+			governor.recordFrame(trace[i][0], trace[i][1], trace[i][2]);
+			if (knob.level != level) {
+				changes.add(i + 1);
+				level = knob.level;
+			}
+		}
+		
+		int window = QualityGovernor.WINDOW, frame = window;
+		assertEquals(7, changes.size());
+		assertEquals(frame, (int)changes.get(0));
+		for (int k = 0; k < 3; k++) {
+			frame += (QualityGovernor.UPGRADE_WINDOWS << k) * window;
+			assertEquals(frame, (int)changes.get(1 + 2 * k));
+			frame += window;
+			assertEquals(frame, (int)changes.get(2 + 2 * k));
+		}
+		assertEquals(1, knob.level);
+		assertEquals(QualityGovernor.UPGRADE_WINDOWS << 3, governor.getUpgradeWindows());
+	}
+	
+	
+	/**
+	 * Loads a recorded trace (a frame per line, the lines starting with '#' are comments).
+	 * 
+	 * @param name The trace's resource name.
+	 * @return The frames' times: { frame interval, drawing time, tick time }.
+	 */
+	protected float[][] loadTrace(String name) throws IOException {
+		InputStream input = getClass().getResourceAsStream(name);
+		assertNotNull(input);
+		
+		List<float[]> frames = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				String[] values = line.split(",");
+				frames.add(new float[] { Float.parseFloat(values[0]), Float.parseFloat(values[1]),
+						Float.parseFloat(values[2]) });
+			}
+			
+		} finally {
+			reader.close();
+		}
+		return frames.toArray(new float[frames.size()][]);
+	}
+	
+	/**
+	 * Replays a frame times trace.
+	 * 
+	 * @param governor The governor to feed.
+	 * @param trace The trace's segments.
+	 */
+	protected static void replay(QualityGovernor governor, float[][] trace) {
+		for (float[] segment: trace) {
+			for (int i = 0; i < (int)segment[3]; i++) {
+				governor.recordFrame(segment[0], segment[1], segment[2]);
+			}
+		}
+	}
+	
+}
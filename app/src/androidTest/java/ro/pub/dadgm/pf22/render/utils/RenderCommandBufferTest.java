@@ -0,0 +1,85 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ro.pub.dadgm.pf22.render.objects.mock.MockObject3D;
+
+/**
+ * Unit test for the {@link RenderCommandBuffer}'s command ordering.
+ */
+public class RenderCommandBufferTest extends TestCase {
+	
+	/**
+	 * Tests that the commands are executed sorted by priority, material and mesh (and stable
+	 * otherwise).
+	 */
+	public void testExecutionOrder() {
+		final List<Integer> executed = new ArrayList<>();
+		RenderCommandBuffer.Renderer renderer = new RenderCommandBuffer.Renderer() {
+			@Override
+			public void executeCommand(RenderCommandBuffer buffer, int command) {
+				executed.add(command);
+			}
+		};
+		
+		RenderCommandBuffer buffer = new RenderCommandBuffer();
+		// more commands than initially allocated
+		for (int i = 0; i < 100; i++) {
+			buffer.addCommand(renderer, 0, 1, 0);
+		}
+		int highMeshCommand = buffer.addCommand(renderer, 0, 0, 7);
+		int lowMeshCommand = buffer.addCommand(renderer, 0, 0, 3);
+		int lastCommand = buffer.addCommand(renderer, 2, 0, 0);
+		int firstCommand = buffer.addCommand(renderer, -1, 5, 5);
+		assertEquals(104, buffer.getCount());
+		
+		buffer.sort();
+		buffer.execute();
+		
+		assertEquals(104, executed.size());
+		assertEquals(firstCommand, (int)executed.get(0));
+		assertEquals(lowMeshCommand, (int)executed.get(1));
+		assertEquals(highMeshCommand, (int)executed.get(2));
+		for (int i = 0; i < 100; i++) {
+			assertEquals(i, (int)executed.get(i + 3));
+		}
+		assertEquals(lastCommand, (int)executed.get(103));
+		assertEquals(5, buffer.getMaterial(firstCommand));
+		
+		buffer.clear();
+		assertEquals(0, buffer.getCount());
+	}
+	
+	/**
+	 * Tests the objects drawn as a whole (ordered by priority, with the other commands).
+	 */
+	public void testObjects() {
+		final List<Integer> executed = new ArrayList<>();
+		RenderCommandBuffer.Renderer renderer = new RenderCommandBuffer.Renderer() {
+			@Override
+			public void executeCommand(RenderCommandBuffer buffer, int command) {
+				executed.add(-1);
+			}
+		};
+		MockObject3D terrain = new MockObject3D(0, "terrain", -1) {
+			@Override
+			public void draw() {
+				executed.add(getId());
+			}
+		};
+		
+		RenderCommandBuffer buffer = new RenderCommandBuffer();
+		buffer.addCommand(renderer, 0, 0, 0);
+		buffer.addObject(terrain);
+		buffer.sort();
+		buffer.execute();
+		
+		assertEquals(2, executed.size());
+		assertEquals(0, (int)executed.get(0));
+		assertEquals(-1, (int)executed.get(1));
+	}
+	
+}
@@ -0,0 +1,65 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link RetainedDataCache}'s accounting and eviction.
+ */
+public class RetainedDataCacheTest extends TestCase {
+	
+	/**
+	 * Tests retaining, replacing and dropping the entries.
+	 */
+	public void testPutRemove() {
+		RetainedDataCache cache = new RetainedDataCache(1000);
+		Object a = new Object(), b = new Object();
+		
+		assertTrue(cache.put("a", a, 100));
+		assertTrue(cache.put("b", b, 200));
+		assertSame(a, cache.get("a"));
+		assertNull(cache.get("c"));
+		assertEquals(300, cache.getMemoryUsage());
+		
+		// replacing an entry accounts only the new one
+		assertTrue(cache.put("a", b, 50));
+		assertSame(b, cache.get("a"));
+		assertEquals(250, cache.getMemoryUsage());
+		
+		assertSame(b, cache.remove("b"));
+		assertNull(cache.remove("b"));
+		assertFalse(cache.contains("b"));
+		assertEquals(50, cache.getMemoryUsage());
+		assertEquals(1, cache.getSize());
+		
+		cache.clear();
+		assertEquals(0, cache.getMemoryUsage());
+		assertNull(cache.get("a"));
+	}
+	
+	/**
+	 * Tests that the least recently used entries are dropped to fit the budget.
+	 */
+	public void testEviction() {
+		RetainedDataCache cache = new RetainedDataCache(1000);
+		cache.put("a", "a", 400);
+		cache.put("b", "b", 400);
+		
+		// "a" becomes the most recently used
+		assertNotNull(cache.get("a"));
+		cache.put("c", "c", 400);
+		assertTrue(cache.contains("a"));
+		assertFalse(cache.contains("b"));
+		assertTrue(cache.contains("c"));
+		assertEquals(800, cache.getMemoryUsage());
+		
+		// larger than the whole budget
+		assertFalse(cache.put("d", "d", 1001));
+		assertFalse(cache.contains("d"));
+		assertEquals(800, cache.getMemoryUsage());
+		
+		cache.setMemoryBudget(500);
+		assertEquals(1, cache.getSize());
+		assertTrue(cache.contains("c"));
+	}
+	
+}
@@ -0,0 +1,42 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link TextMesh}'s change tracking.
+ */
+public class TextMeshTest extends TestCase {
+	
+	/**
+	 * Tests that the geometry is only invalidated by actual text changes.
+	 */
+	public void testSetText() {
+		TextMesh mesh = new TextMesh("Score: 0");
+		assertTrue(mesh.needsUpdate(null, 0, DrawText.FontAlign.ALIGN_LEFT));
+		
+		mesh.update(null, 0, DrawText.FontAlign.ALIGN_LEFT, new float[0], 0);
+		assertFalse(mesh.needsUpdate(null, 0, DrawText.FontAlign.ALIGN_LEFT));
+		
+		// the same text, from another buffer
+		StringBuilder buffer = new StringBuilder("Score: ");
+		buffer.append(0);
+		assertFalse(mesh.setText(buffer));
+		assertFalse(mesh.needsUpdate(null, 0, DrawText.FontAlign.ALIGN_LEFT));
+		
+		// the text is copied, so the buffer can be reused
+		buffer.setLength(0);
+		buffer.append("Score: ").append(10);
+		assertTrue(mesh.setText(buffer));
+		buffer.setLength(0);
+		assertEquals("Score: 10", mesh.getText().toString());
+		assertTrue(mesh.needsUpdate(null, 0, DrawText.FontAlign.ALIGN_LEFT));
+		
+		// a style change also invalidates the geometry
+		mesh.update(null, 0, DrawText.FontAlign.ALIGN_LEFT, new float[0], 0);
+		assertTrue(mesh.needsUpdate(null, 0, DrawText.FontAlign.ALIGN_CENTER));
+		
+		assertTrue(mesh.setText(null));
+		assertEquals(0, mesh.getText().length());
+	}
+	
+}
@@ -0,0 +1,134 @@
+package ro.pub.dadgm.pf22.utils.metrics;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the {@link Metrics} registry, its counters and histograms.
+ */
+public class MetricsTest extends TestCase {
+	
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		Metrics.setEnabled(true);
+	}
+	
+	@Override
+	protected void tearDown() throws Exception {
+		Metrics.setEnabled(false);
+		super.tearDown();
+	}
+	
+	/**
+	 * The increments done concurrently by several threads are all counted.
+	 */
+	public void testConcurrentCounter() throws InterruptedException {
+		final Counter counter = Metrics.counter("test.concurrent");
+		final int threads = 4, increments = 100000;
+		
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			workers[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < increments; i++) {
+						counter.increment();
+					}
+				}
+			};
+			workers[t].start();
+		}
+		for (Thread worker: workers) {
+			worker.join();
+		}
+		
+		assertEquals(threads * increments, counter.get());
+		counter.reset();
+		assertEquals(0, counter.get());
+	}
+	
+	/**
+	 * Nothing is recorded while the metrics are disabled.
+	 */
+	public void testDisabled() {
+		Counter counter = Metrics.counter("test.disabled_counter");
+		Histogram histogram = Metrics.histogram("test.disabled_histogram", "us");
+		
+		Metrics.setEnabled(false);
+		counter.add(5);
+		histogram.record(5);
+		assertEquals(0, counter.get());
+		assertEquals(0, histogram.getCount());
+		
+		Metrics.setEnabled(true);
+		counter.add(5);
+		histogram.record(5);
+		assertEquals(5, counter.get());
+		assertEquals(1, histogram.getCount());
+	}
+	
+	/**
+	 * Each value falls into the bucket covering it and the buckets are at most 1 / SUB_BUCKETS of
+	 * their values wide.
+	 */
+	public void testBuckets() {
+		long[] values = { 0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456789L, Long.MAX_VALUE };
+		for (long value: values) {
+			int bucket = Histogram.getBucket(value);
+			assertTrue(bucket >= 0 && bucket < Histogram.BUCKET_COUNT);
+			assertTrue(Histogram.getBucketStart(bucket) <= value);
+			assertTrue(Histogram.getBucketEnd(bucket) >= value);
+			
+			long width = Histogram.getBucketEnd(bucket) - Histogram.getBucketStart(bucket) + 1;
+			assertTrue(width <= Math.max(1, Histogram.getBucketStart(bucket) / Histogram.SUB_BUCKETS));
+		}
+		
+		// the buckets are contiguous
+		for (int i = 1; i < Histogram.BUCKET_COUNT; i++) {
+			assertEquals(Histogram.getBucketEnd(i - 1) + 1, Histogram.getBucketStart(i));
+		}
+	}
+	
+	/**
+	 * The percentiles are estimated within the buckets' precision.
+	 */
+	public void testPercentiles() {
+		Histogram histogram = Metrics.histogram("test.percentiles", "us");
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		
+		long p50 = histogram.getPercentile(0.5), p99 = histogram.getPercentile(0.99);
+		assertTrue(p50 >= 500 && p50 <= 500 * (1 + 1.0 / Histogram.SUB_BUCKETS));
+		assertTrue(p99 >= 990 && p99 <= 1000);
+		assertEquals(1, histogram.getPercentile(0));
+	}
+	
+	/**
+	 * The snapshot has a line for each metric (sorted by name) and the names keep their type.
+	 */
+	public void testSnapshot() {
+		Metrics.counter("test.snapshot_b").add(42);
+		Metrics.histogram("test.snapshot_a", "ms").record(7);
+		
+		String snapshot = Metrics.snapshot();
+		int a = snapshot.indexOf("test.snapshot_a: count 1, mean 7, p50 7, p95 7, p99 7, max 7 ms\n");
+		int b = snapshot.indexOf("test.snapshot_b: 42\n");
+		assertTrue(a >= 0);
+		assertTrue(b > a);
+		
+		assertSame(Metrics.counter("test.snapshot_b"), Metrics.counter("test.snapshot_b"));
+		try {
+			Metrics.histogram("test.snapshot_b", "");
+			fail("The counter was returned as a histogram!");
+			
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+}
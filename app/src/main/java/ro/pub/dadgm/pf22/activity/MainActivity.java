@@ -1,6 +1,8 @@
 package ro.pub.dadgm.pf22.activity;
 
 import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
@@ -14,6 +16,8 @@ import android.view.MenuItem;
 import android.view.Window;
 import android.view.WindowManager;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -24,9 +28,23 @@ import ro.pub.dadgm.pf22.activity.controllers.GameSceneController;
 import ro.pub.dadgm.pf22.activity.controllers.MainMenuController;
 import ro.pub.dadgm.pf22.game.Game;
 import ro.pub.dadgm.pf22.render.SurfaceView;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
+import ro.pub.dadgm.pf22.render.utils.TextureLoader;
+import ro.pub.dadgm.pf22.utils.metrics.Metrics;
 
 public class MainActivity extends Activity {
 	
+	/**
+	 * Whether the simulation's metrics are recorded (and exported each time the activity is 
+	 * paused).
+	 */
+	private static final boolean COLLECT_METRICS = false;
+	
+	/**
+	 * The file (inside the app's cache) the metrics are exported to.
+	 */
+	private static final String METRICS_FILE = "metrics.txt";
+	
 	/**
 	 * Stores the controllers associates to the different game scenes / views.
 	 */
@@ -71,6 +89,7 @@ public class MainActivity extends Activity {
 		super.onCreate(savedInstanceState);
 		
 		appContext = getApplicationContext();
+		Metrics.setEnabled(COLLECT_METRICS);
 		
 		Log.d(MainActivity.class.getSimpleName(), "Initializing activity...");
 		
@@ -100,6 +119,19 @@ public class MainActivity extends Activity {
 		surfaceView = new SurfaceView(this, null);
 		setContentView(surfaceView);
 		
+		// use a quarter of the app's memory class as texture budget and an eighth for the retained 
+		// render data (the decoded bitmaps live on the Java heap on the older devices)
+		ActivityManager activityManager = (ActivityManager) getSystemService(Context.ACTIVITY_SERVICE);
+		long memoryClass = activityManager.getMemoryClass() * 1024L * 1024L;
+		final long textureBudget = memoryClass / 4;
+		RetainedDataCache.getInstance().setMemoryBudget(memoryClass / 8);
+		surfaceView.queueEvent(new Runnable() {
+			@Override
+			public void run() {
+				TextureLoader.setMemoryBudget(textureBudget);
+			}
+		});
+		
 		// activate the game
 		switch (game.getStatus()) {
 			case STOPPED: // show the main menu
@@ -127,6 +159,16 @@ public class MainActivity extends Activity {
 		
 		Log.d(MainActivity.class.getSimpleName(), "Activity paused.");
 		surfaceView.onPause();
+		
+		if (Metrics.isEnabled()) {
+			Metrics.log();
+			try {
+				Metrics.writeTo(new File(getCacheDir(), METRICS_FILE));
+				
+			} catch (IOException e) {
+				Log.w(MainActivity.class.getSimpleName(), "Unable to export the metrics!", e);
+			}
+		}
 	}
 	
 	@Override
@@ -149,6 +191,29 @@ public class MainActivity extends Activity {
 		surfaceView.onResume();
 	}
 	
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && surfaceView != null) {
+			// drop the cached textures that are not in use
+			Log.d(MainActivity.class.getSimpleName(), "Trimming texture memory (level " + level + ").");
+			surfaceView.queueEvent(new Runnable() {
+				@Override
+				public void run() {
+					TextureLoader.trimMemory();
+				}
+			});
+		}
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || 
+				level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+			// the process is likely to be killed (or the system is about to kill the background 
+			// ones), don't hold the data for a fast resume anymore
+			Log.d(MainActivity.class.getSimpleName(), "Dropping the retained render data.");
+			RetainedDataCache.getInstance().clear();
+		}
+	}
+	
 	@Override
 	public boolean onCreateOptionsMenu(Menu menu) {
 		// Inflate the menu; this adds items to the action bar if it is present.
@@ -68,6 +68,13 @@ public class MainMenuController implements Controller {
 			}
 		});
 		
+		actions.put("toggle_mode", new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				game.setEndless(!game.getEndless());
+			}
+		});
+		
 		actions.put("toggle_sound", new View.OnClickListener() {
 			@Override
 			public void onClick(View v) {
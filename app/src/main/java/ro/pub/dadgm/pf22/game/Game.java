@@ -1,9 +1,15 @@
 package ro.pub.dadgm.pf22.game;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import ro.pub.dadgm.pf22.activity.MainActivity;
 import ro.pub.dadgm.pf22.game.models.*;
@@ -12,6 +18,8 @@ import ro.pub.dadgm.pf22.physics.MobileObject;
 import ro.pub.dadgm.pf22.physics.PhysicsSimulationListener;
 import ro.pub.dadgm.pf22.physics.PhysicsThread;
 import ro.pub.dadgm.pf22.utils.Vector3D;
+import ro.pub.dadgm.pf22.utils.metrics.Counter;
+import ro.pub.dadgm.pf22.utils.metrics.Metrics;
 
 /**
  * Manages the game and enforces its rules.
@@ -38,7 +46,7 @@ public class Game implements Serializable {
 		MEDIUM,
 		HARD
 	}
-
+	
 	/**
 	 * The number of planer per difficulty level.
 	 */
@@ -46,6 +54,31 @@ public class Game implements Serializable {
 			NUM_PLANES_MEDIUM = 5,
 			NUM_PLANES_HARD = 15;
 	
+	/**
+	 * The directory (inside the app's cache) where the generated terrains are stored.
+	 */
+	public static final String TERRAIN_CACHE_DIR = "terrains";
+	
+	/**
+	 * The preferences key of the persisted world seed.
+	 */
+	protected static final String PREF_WORLD_SEED = "worldSeed";
+	
+	/**
+	 * The number of tasks posted to the UI thread.
+	 */
+	protected static final Counter UI_TASKS = Metrics.counter("game.ui_tasks");
+	
+	/**
+	 * The number of projectiles fired.
+	 */
+	protected static final Counter PROJECTILES_FIRED = Metrics.counter("game.projectiles_fired");
+	
+	/**
+	 * The number of planes destroyed.
+	 */
+	protected static final Counter PLANES_DESTROYED = Metrics.counter("game.planes_destroyed");
+		
 	/**
 	 * Whether the game is running or has been stopped / paused.
 	 */
@@ -61,6 +94,17 @@ public class Game implements Serializable {
 	 */
 	protected Difficulty difficulty;
 	
+	/**
+	 * Whether the next generated world is endless (see {@link StreamedTerrain}).
+	 */
+	protected boolean endless;
+	
+	/**
+	 * The seed of the next generated world (the persisted one is used if null, see
+	 * {@link #chooseWorldSeed}).
+	 */
+	protected Long worldSeed = null;
+	
 	/**
 	 * Sound status (on / off).
 	 */
@@ -86,6 +130,11 @@ public class Game implements Serializable {
 	 */
 	protected transient SmoothControlThread smoothControl;
 	
+	/**
+	 * The game's event listeners (lazily created, the game may have been deserialized).
+	 */
+	protected transient List<GameEventListener> eventListeners;
+	
 	
 	/**
 	 * Game constructor.
@@ -143,9 +192,13 @@ public class Game implements Serializable {
 		}
 		
 		// initialize the game world
-		world = new World();
+		long seed = (worldSeed != null ? worldSeed : chooseWorldSeed());
+		TerrainCache terrainCache = null;
+		if (activity != null)
+			terrainCache = new TerrainCache(new File(activity.getCacheDir(), TERRAIN_CACHE_DIR));
+		world = new World(seed, terrainCache, endless);
 		
-		Terrain terrain = world.getTerrain();
+		HeightField terrain = world.getTerrain();
 		
 		// set player's initial position to a random point
 		PrimaryPlane player = world.getPlayer();
@@ -155,6 +208,12 @@ public class Game implements Serializable {
 				/*(float) Math.random() * (World.WORLD_MAX_HEIGHT/3 - terrain.getMaxHeight()) + 
 						terrain.getMaxHeight()*/ terrain.getMaxHeight() + 2f );
 		
+		// start streaming the terrain around the player
+		if (world.isEndless()) {
+			float[] position = player.getPosition().toArray();
+			((StreamedTerrain)terrain).update(position[0], position[1], 0, 0);
+		}
+		
 		// generate the enemy planes
 		int numEnemyPlanes = NUM_PLANES_EASY;
 		switch (difficulty) {
@@ -217,6 +276,26 @@ public class Game implements Serializable {
 		// TODO: initialize the AI module
 	}
 	
+	/**
+	 * Returns the seed of the world to generate when none was set.
+	 * 
+	 * <p>A random seed is chosen once and persisted in the activity's preferences, so that the 
+	 * following games (even after the app is restarted) use the same terrain and load it from the 
+	 * terrain cache, instead of generating and storing a new one each time.</p>
+	 * 
+	 * @return The world seed.
+	 */
+	protected long chooseWorldSeed() {
+		if (activity == null)
+			return new Random().nextLong();
+		
+		SharedPreferences preferences = activity.getPreferences(Context.MODE_PRIVATE);
+		if (!preferences.contains(PREF_WORLD_SEED)) {
+			preferences.edit().putLong(PREF_WORLD_SEED, new Random().nextLong()).apply();
+		}
+		return preferences.getLong(PREF_WORLD_SEED, 0);
+	}
+	
 	/**
 	 * Stops the game, deallocating all the resources used (the simulation Threads, for example). 
 	 */
@@ -238,6 +317,8 @@ public class Game implements Serializable {
 		
 		physicsThread = null;
 		smoothControl = null;
+		if (world.isEndless())
+			((StreamedTerrain)world.getTerrain()).release();
 		world = null;
 		
 		status = GameStatus.STOPPED;
@@ -262,9 +343,31 @@ public class Game implements Serializable {
 	 * @param task The task to run.
 	 */
 	public void runHandler(Runnable task) {
+		UI_TASKS.increment();
 		activity.runOnUiThread(task);
 	}
 	
+	/**
+	 * Adds a game event listener.
+	 * 
+	 * @param listener The listener object.
+	 */
+	public synchronized void addEventListener(GameEventListener listener) {
+		if (eventListeners == null)
+			eventListeners = new CopyOnWriteArrayList<>();
+		eventListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a game event listener.
+	 * 
+	 * @param listener The listener object.
+	 */
+	public synchronized void removeEventListener(GameEventListener listener) {
+		if (eventListeners != null)
+			eventListeners.remove(listener);
+	}
+	
 	
 	// getters / setters
 	
@@ -325,6 +428,51 @@ public class Game implements Serializable {
 		this.difficulty = difficulty;
 	}
 	
+	/**
+	 * Returns whether the game's world is endless.
+	 * 
+	 * @return True for the endless mode.
+	 */
+	public boolean getEndless() {
+		return endless;
+	}
+	
+	/**
+	 * Changes the game's mode (fixed or endless world).
+	 * 
+	 * @param endless Whether the next game's world is endless.
+	 */
+	public void setEndless(boolean endless) {
+		if (status != GameStatus.STOPPED)
+			return;
+		
+		this.endless = endless;
+	}
+	
+	/**
+	 * Returns the seed set for the world generation.
+	 * 
+	 * @return The world seed, null if the persisted one is used.
+	 */
+	@SuppressWarnings("unused")
+	public Long getWorldSeed() {
+		return worldSeed;
+	}
+	
+	/**
+	 * Sets the seed used to generate the next game's world (the same seed always produces the
+	 * same terrain).
+	 * 
+	 * @param worldSeed The world seed, null to use the persisted one.
+	 */
+	@SuppressWarnings("unused")
+	public void setWorldSeed(Long worldSeed) {
+		if (status != GameStatus.STOPPED)
+			return;
+		
+		this.worldSeed = worldSeed;
+	}
+	
 	/**
 	 * Returns the reference to the current game's World.
 	 * 
@@ -336,9 +484,19 @@ public class Game implements Serializable {
 		return world;
 	}
 	
+	/**
+	 * Returns the duration of the last physics simulation step.
+	 * 
+	 * @return The step's duration, in milliseconds (0 if the game isn't running).
+	 */
+	public float getPhysicsStepTime() {
+		PhysicsThread thread = physicsThread;
+		return (thread != null && status == GameStatus.RUNNING ? thread.getStepTime() : 0);
+	}
+	
 	/**
 	 * Queues the specified plane control command.
-	 *
+	 * 
 	 * @param plane The target plane.
 	 * @param parameters The control parameters.
 	 */
@@ -372,6 +530,7 @@ public class Game implements Serializable {
 		projectile.setOrientation(plane.getYaw(), plane.getPitch());
 		
 		world.addProjectile(projectile);
+		PROJECTILES_FIRED.increment();
 	}
 	
 	/**
@@ -382,6 +541,14 @@ public class Game implements Serializable {
 	protected void destroyObject(Plane plane) {
 		if (world == null) return;
 		
+		PLANES_DESTROYED.increment();
+		
+		if (eventListeners != null) {
+			for (GameEventListener listener: eventListeners) {
+				listener.onPlaneDestroyed(plane);
+			}
+		}
+		
 		if (plane == world.getPlayer()) {
 			// if the plane is the current player, the game is over
 			stop();
@@ -389,7 +556,6 @@ public class Game implements Serializable {
 		} else if (plane instanceof EnemyPlane) {
 			world.removePlane((EnemyPlane)plane);
 		}
-		// some explosion animations, maybe?
 	}
 	
 	/**
@@ -402,7 +568,7 @@ public class Game implements Serializable {
 		
 		world.removeProjectile(projectile);
 	}
-
+	
 	/**
 	 * Processes (most likely, deletes) the specified object after a collision collided.
 	 * 
@@ -413,6 +579,11 @@ public class Game implements Serializable {
 			destroyObject((Plane)obj);
 			
 		} else if (obj instanceof Projectile) {
+			if (world != null && eventListeners != null) {
+				for (GameEventListener listener: eventListeners) {
+					listener.onProjectileHit((Projectile)obj);
+				}
+			}
 			destroyObject((Projectile)obj);
 			
 		} /* else if (obj instanceof Terrain) {
@@ -432,13 +603,28 @@ public class Game implements Serializable {
 			runHandler(new Runnable() {
 				@Override
 				public void run() {
+					if (world == null) return;
+					
 					// check object's bounds
 					float[] position = object.getPosition().toArray();
 					float[] dimensions = world.getTerrain().getDimensions();
 					
-					// clamp the position
-					if (position[0] < 0 || position[1] < 0 ||
-							position[0] >= dimensions[0] || position[1] >= dimensions[1]) {
+					if (world.isEndless()) {
+						StreamedTerrain terrain = (StreamedTerrain)world.getTerrain();
+						if (object == world.getPlayer()) {
+							// stream the terrain around the player
+							float[] velocity = object.getVelocity().toArray();
+							terrain.update(position[0], position[1], velocity[0], velocity[1]);
+							
+						} else if (object instanceof Projectile && !terrain.isLoaded(position[0], position[1])) {
+							// too far from the player, destroy it
+							destroyObject((Projectile)object);
+						}
+					}
+					
+					// clamp the position (an endless world has no horizontal bounds)
+					if (!world.isEndless() && (position[0] < 0 || position[1] < 0 ||
+							position[0] >= dimensions[0] || position[1] >= dimensions[1])) {
 						if (object instanceof Plane) {
 							Plane planeObject = (Plane)object;
 							
@@ -0,0 +1,27 @@
+package ro.pub.dadgm.pf22.game;
+
+import ro.pub.dadgm.pf22.game.models.Plane;
+import ro.pub.dadgm.pf22.game.models.Projectile;
+
+/**
+ * Lets an object know about the game's events (e.g. to animate them).
+ * 
+ * <p>Note: these methods are executed on the Activity's UI thread!</p>
+ */
+public interface GameEventListener {
+	
+	/**
+	 * Fired when a plane was destroyed (the player's included).
+	 * 
+	 * @param plane The destroyed plane.
+	 */
+	public void onPlaneDestroyed(Plane plane);
+	
+	/**
+	 * Fired when a projectile hit an object (just before being removed).
+	 * 
+	 * @param projectile The projectile.
+	 */
+	public void onProjectileHit(Projectile projectile);
+	
+}
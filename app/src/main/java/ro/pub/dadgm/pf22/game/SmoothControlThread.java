@@ -6,6 +6,9 @@ import java.util.List;
 import java.util.Map;
 
 import ro.pub.dadgm.pf22.game.models.Plane;
+import ro.pub.dadgm.pf22.utils.metrics.Counter;
+import ro.pub.dadgm.pf22.utils.metrics.Histogram;
+import ro.pub.dadgm.pf22.utils.metrics.Metrics;
 
 /**
  * Implements smooth control animator for the planes.
@@ -49,6 +52,21 @@ public class SmoothControlThread extends Thread {
 	public final static float PLANE_PITCH_DELTA = 1.0f; // delta per step
 	public final static float PLANE_YAW_DELTA = 2.0f; // delta per step
 	
+	/**
+	 * The number of queued control commands.
+	 */
+	protected static final Counter COMMANDS_QUEUED = Metrics.counter("control.commands_queued");
+	
+	/**
+	 * The number of control commands fully executed.
+	 */
+	protected static final Counter COMMANDS_DONE = Metrics.counter("control.commands_done");
+	
+	/**
+	 * The number of commands animated on each step.
+	 */
+	protected static final Histogram ACTIVE_COMMANDS = Metrics.histogram("control.active_commands", "");
+	
 	
 	/**
 	 * Stores whether the animation thread is paused.
@@ -91,6 +109,7 @@ public class SmoothControlThread extends Thread {
 			// replace all existing parameters for the current plane 
 			planeCommands.put(plane, parameters);
 		}
+		COMMANDS_QUEUED.increment();
 	}
 	
 	/**
@@ -122,6 +141,7 @@ public class SmoothControlThread extends Thread {
 			
 			// make the steps
 			synchronized (planeCommands) {
+				ACTIVE_COMMANDS.record(planeCommands.size());
 				List<Plane> cleanUpItems = new ArrayList<>(); 
 				for (Map.Entry<Plane, PlaneControlParameters> entry: planeCommands.entrySet()) {
 					Plane plane = entry.getKey();
@@ -153,6 +173,7 @@ public class SmoothControlThread extends Thread {
 				
 				for (Plane plane: cleanUpItems)
 					planeCommands.remove(plane);
+				COMMANDS_DONE.add(cleanUpItems.size());
 			}
 			
 			// wait and repeat
@@ -0,0 +1,38 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import ro.pub.dadgm.pf22.physics.CollisionObject;
+
+/**
+ * The height queries shared by all kinds of terrain models (the game's logic and the collision
+ * checks only need these).
+ * 
+ * <p>A {@link Terrain} has a fixed size and keeps its whole height map, while a
+ * {@link StreamedTerrain} is unbounded and only keeps the pages around the player: the code that
+ * needs the terrain's data (e.g. to draw it) must use the concrete class.</p>
+ */
+public interface HeightField extends CollisionObject {
+	
+	/**
+	 * Returns the terrain's real (scaled) dimensions.
+	 * 
+	 * @return The dimensions as a 2-element array (width, length), infinite if unbounded.
+	 */
+	public float[] getDimensions();
+	
+	/**
+	 * Returns the guaranteed maximum height of a point on the terrain.
+	 * 
+	 * @return The maximum height of a generated point.
+	 */
+	public float getMaxHeight();
+	
+	/**
+	 * Returns the specified point's height.
+	 * 
+	 * @param x The X coordinate of the point (world units / scaled).
+	 * @param y The Y coordinate of the point (world units / scaled).
+	 * @return The terrain's height at the specified point.
+	 */
+	public float getHeightAt(float x, float y);
+	
+}
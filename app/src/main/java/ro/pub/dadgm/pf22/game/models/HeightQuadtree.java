@@ -0,0 +1,199 @@
+package ro.pub.dadgm.pf22.game.models;
+
+/**
+ * A quadtree that stores the minimum / maximum heights of a height map's regions.
+ * 
+ * <p>The tree is stored as a pyramid of levels: level 0 splits the height map into cells of
+ * {@link #LEAF_SIZE} x {@link #LEAF_SIZE} quads and each cell of level <code>L + 1</code> covers
+ * (up to) 4 cells of level <code>L</code>. The last level has a single cell (the whole map). The
+ * cells on the map's far borders can be smaller.</p>
+ * 
+ * <p>The maximum heights bound the terrain from above (e.g. for visibility tests), while the
+ * minimum heights bound the solid ground below the surface (e.g. for occlusion).</p>
+ * 
+ * <p>The tree is immutable once built, so it can be read from any thread.</p>
+ */
+public class HeightQuadtree {
+	
+	/**
+	 * The size of a leaf cell (in quads).
+	 */
+	public static final int LEAF_SIZE = 2;
+	
+	/**
+	 * The terrain coordinates (in points) of the height map's first point.
+	 */
+	protected final int originX, originY;
+	
+	/**
+	 * The size of the covered area (in quads).
+	 */
+	protected final int quadsX, quadsY;
+	
+	/**
+	 * The minimum height of each cell, indexed by level, then X and Y.
+	 */
+	protected final float[][][] minHeights;
+	
+	/**
+	 * The maximum height of each cell, indexed by level, then X and Y.
+	 */
+	protected final float[][][] maxHeights;
+	
+	
+	/**
+	 * Builds the quadtree of a height map.
+	 * 
+	 * @param heightMap The height map (at least 2 x 2 points).
+	 * @param originX The terrain X coordinate of the height map's first point.
+	 * @param originY The terrain Y coordinate of the height map's first point.
+	 */
+	public HeightQuadtree(float[][] heightMap, int originX, int originY) {
+		this.originX = originX;
+		this.originY = originY;
+		this.quadsX = heightMap.length - 1;
+		this.quadsY = heightMap[0].length - 1;
+		
+		// count the levels
+		int levels = 1;
+		for (int size = LEAF_SIZE; size < quadsX || size < quadsY; size *= 2) {
+			levels++;
+		}
+		minHeights = new float[levels][][];
+		maxHeights = new float[levels][][];
+		
+		// the leaves
+		int cellsX = (quadsX + LEAF_SIZE - 1) / LEAF_SIZE, cellsY = (quadsY + LEAF_SIZE - 1) / LEAF_SIZE;
+		minHeights[0] = new float[cellsX][cellsY];
+		maxHeights[0] = new float[cellsX][cellsY];
+		for (int cx = 0; cx < cellsX; cx++) {
+			for (int cy = 0; cy < cellsY; cy++) {
+				float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+				for (int i = cx * LEAF_SIZE; i <= Math.min((cx + 1) * LEAF_SIZE, quadsX); i++) {
+					for (int j = cy * LEAF_SIZE; j <= Math.min((cy + 1) * LEAF_SIZE, quadsY); j++) {
+						min = Math.min(min, heightMap[i][j]);
+						max = Math.max(max, heightMap[i][j]);
+					}
+				}
+				minHeights[0][cx][cy] = min;
+				maxHeights[0][cx][cy] = max;
+			}
+		}
+		
+		// the upper levels
+		for (int level = 1; level < levels; level++) {
+			float[][] childMin = minHeights[level - 1], childMax = maxHeights[level - 1];
+			int childX = childMin.length, childY = childMin[0].length;
+			cellsX = (childX + 1) / 2;
+			cellsY = (childY + 1) / 2;
+			
+			minHeights[level] = new float[cellsX][cellsY];
+			maxHeights[level] = new float[cellsX][cellsY];
+			for (int cx = 0; cx < cellsX; cx++) {
+				for (int cy = 0; cy < cellsY; cy++) {
+					float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+					for (int i = 2 * cx; i < Math.min(2 * cx + 2, childX); i++) {
+						for (int j = 2 * cy; j < Math.min(2 * cy + 2, childY); j++) {
+							min = Math.min(min, childMin[i][j]);
+							max = Math.max(max, childMax[i][j]);
+						}
+					}
+					minHeights[level][cx][cy] = min;
+					maxHeights[level][cx][cy] = max;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes the bounding box of a cell.
+	 * 
+	 * @param level The cell's level.
+	 * @param cx The cell's X index.
+	 * @param cy The cell's Y index.
+	 * @param bounds Output: the bounds (minX, minY, minZ, maxX, maxY, maxZ), in world units.
+	 */
+	public void getCellBounds(int level, int cx, int cy, float[] bounds) {
+		int size = LEAF_SIZE << level;
+		bounds[0] = (originX + cx * size) * Terrain.UNIT_SCALE;
+		bounds[1] = (originY + cy * size) * Terrain.UNIT_SCALE;
+		bounds[2] = minHeights[level][cx][cy];
+		bounds[3] = (originX + Math.min((cx + 1) * size, quadsX)) * Terrain.UNIT_SCALE;
+		bounds[4] = (originY + Math.min((cy + 1) * size, quadsY)) * Terrain.UNIT_SCALE;
+		bounds[5] = maxHeights[level][cx][cy];
+	}
+	
+	/**
+	 * Returns the maximum height of the leaf cell that contains a point.
+	 * 
+	 * @param x The point's X coordinate (in world units).
+	 * @param y The point's Y coordinate (in world units).
+	 * @return The maximum height, or negative infinity if the point is outside the tree.
+	 */
+	public float getMaxHeightAt(float x, float y) {
+		float i = x / Terrain.UNIT_SCALE - originX, j = y / Terrain.UNIT_SCALE - originY;
+		if (i < 0 || j < 0 || i > quadsX || j > quadsY)
+			return Float.NEGATIVE_INFINITY;
+		
+		int cx = Math.min((int)i / LEAF_SIZE, maxHeights[0].length - 1);
+		int cy = Math.min((int)j / LEAF_SIZE, maxHeights[0][0].length - 1);
+		return maxHeights[0][cx][cy];
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the number of levels (the root is on the last one).
+	 * 
+	 * @return The level count.
+	 */
+	public int getLevels() {
+		return minHeights.length;
+	}
+	
+	/**
+	 * Returns the number of cells on the X axis of a level.
+	 * 
+	 * @param level The level.
+	 * @return The cell count.
+	 */
+	public int getCellsX(int level) {
+		return minHeights[level].length;
+	}
+	
+	/**
+	 * Returns the number of cells on the Y axis of a level.
+	 * 
+	 * @param level The level.
+	 * @return The cell count.
+	 */
+	public int getCellsY(int level) {
+		return minHeights[level][0].length;
+	}
+	
+	/**
+	 * Returns the minimum height of a cell.
+	 * 
+	 * @param level The cell's level.
+	 * @param cx The cell's X index.
+	 * @param cy The cell's Y index.
+	 * @return The minimum height.
+	 */
+	public float getMinHeight(int level, int cx, int cy) {
+		return minHeights[level][cx][cy];
+	}
+	
+	/**
+	 * Returns the maximum height of a cell.
+	 * 
+	 * @param level The cell's level.
+	 * @param cx The cell's X index.
+	 * @param cy The cell's Y index.
+	 * @return The maximum height.
+	 */
+	public float getMaxHeight(int level, int cx, int cy) {
+		return maxHeights[level][cx][cy];
+	}
+	
+}
@@ -234,7 +234,7 @@ public class Plane extends BaseMobileModel {
 			Plane planeObj = (Plane)obj;
 			return this.getBoundingBox().intersects(planeObj.getBoundingBox());
 			
-		} else if (obj instanceof Terrain) {
+		} else if (obj instanceof HeightField) {
 			// Terrain already has this implemented
 			return obj.collidesWith(this);
 			
@@ -0,0 +1,708 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ro.pub.dadgm.pf22.physics.CollisionObject;
+import ro.pub.dadgm.pf22.render.utils.BufferUtils;
+import ro.pub.dadgm.pf22.utils.SplitMixRandom;
+
+/**
+ * A terrain of unlimited size, generated in pages around the player (used by the endless mode).
+ * 
+ * <p>Each {@link TerrainPage} is generated deterministically from the terrain's seed and the
+ * page's coordinates: the heights are sums of value noise octaves, whose lattice values are
+ * hashes of (seed, x, y). So the points shared by neighboring pages are identical, no matter in
+ * which order (or how many times) the pages are generated.</p>
+ * 
+ * <p>The pages are generated on a background thread, around the player and ahead of its heading
+ * (see {@link #update}). The generated pages are stored in a fixed grid of slots (indexed by
+ * their coordinates, modulo the grid's size) that is only written by the thread calling
+ * {@link #update}, so the height queries used by the collision checks never lock: they read the
+ * page from its slot or, if it is not loaded, compute the point directly. When the loaded pages
+ * exceed the memory limit, the least recently used ones (that are not needed around the player)
+ * are evicted.</p>
+ * 
+ * <p>The terrain has no height map of its own (so it is not a {@link Terrain}): its data is only
+ * available through the loaded pages (see {@link #getPage}).</p>
+ */
+public class StreamedTerrain extends BaseModel implements HeightField {
+	
+	/**
+	 * The size of a page (in quads).
+	 * 
+	 * <p>Must be a power of 2 (a page is rendered as a single terrain chunk).</p>
+	 */
+	public static final int PAGE_SIZE = 16;
+	
+	/**
+	 * The radius (in pages) of the area that is kept loaded around the player.
+	 */
+	public static final int LOAD_RADIUS = 4;
+	
+	/**
+	 * How far ahead of the player's heading (in pages) the terrain is loaded in advance.
+	 */
+	public static final int LOOKAHEAD_PAGES = 3;
+	
+	/**
+	 * The maximum number of pages that are queued for generation at once.
+	 * 
+	 * <p>Keeps the queue short, so the requests follow the player's heading closely.</p>
+	 */
+	public static final int MAX_PENDING_PAGES = 4;
+	
+	/**
+	 * The default memory limit of the loaded pages (in bytes).
+	 */
+	public static final long DEFAULT_MEMORY_LIMIT = 2 << 20;
+	
+	/**
+	 * The size (on each axis) of the grid of page slots.
+	 * 
+	 * <p>Must be a power of 2, larger than the loaded area (a page that maps to an occupied slot
+	 * replaces its previous page).</p>
+	 */
+	protected static final int SLOT_GRID_SIZE = 64;
+	
+	// generation constants
+	
+	/**
+	 * The lattice size (in points) of the first noise octave.
+	 */
+	protected static final int NOISE_CELL = 32;
+	
+	/**
+	 * The number of noise octaves (each one has half the lattice size of the previous one).
+	 */
+	protected static final int NOISE_OCTAVES = 4;
+	
+	/**
+	 * The amplitude ratio of two consecutive octaves.
+	 */
+	protected static final float NOISE_PERSISTENCE = 0.5f;
+	
+	/**
+	 * The contrast applied to the noise (the sum of the octaves is concentrated around the middle
+	 * of the range).
+	 */
+	protected static final float NOISE_CONTRAST = 1.6f;
+	
+	/**
+	 * The lattice size (in points) of the noise that chooses the terrain types (so that they form
+	 * patches instead of being scattered).
+	 */
+	protected static final int TYPE_NOISE_CELL = 8;
+	
+	/**
+	 * The background generation thread's executor (shared by all streamed terrains, lazily
+	 * created).
+	 */
+	protected static ExecutorService executor = null;
+	
+	
+	/**
+	 * The seed that the terrain is generated from.
+	 */
+	protected long seed;
+	
+	/**
+	 * The maximum height of a point.
+	 */
+	protected float maxHeight;
+	
+	/**
+	 * The maximum memory used by the loaded pages (in bytes).
+	 */
+	protected long memoryLimit = DEFAULT_MEMORY_LIMIT;
+	
+	/**
+	 * The loaded pages, by slot (see {@link #getSlot}).
+	 * 
+	 * <p>Only written by the thread calling {@link #update}, read from any thread.</p>
+	 */
+	protected transient AtomicReferenceArray<TerrainPage> slots;
+	
+	/**
+	 * The loaded pages, in least recently used order (an access-ordered map).
+	 */
+	protected transient LinkedHashMap<Long, TerrainPage> recentPages;
+	
+	/**
+	 * The memory used by the loaded pages (in bytes).
+	 */
+	protected transient long memorySize;
+	
+	/**
+	 * The keys of the pages that are being generated.
+	 */
+	protected transient Set<Long> pendingPages;
+	
+	/**
+	 * The generated pages, waiting to be published by the next {@link #update}.
+	 */
+	protected transient Queue<TerrainPage> completedPages;
+	
+	/**
+	 * The player's page and the look-ahead page of the last update (x, y, aheadX, aheadY).
+	 */
+	protected transient int[] lastFocus;
+	
+	/**
+	 * Whether some missing pages could not be requested on the last update (too many pending).
+	 */
+	protected transient boolean requestsLeft;
+	
+	/**
+	 * Set when the terrain is released (the pending pages are discarded).
+	 */
+	protected transient volatile boolean released;
+	
+	
+	/**
+	 * Model object constructor.
+	 * 
+	 * <p>No pages are generated until the first {@link #update}.</p>
+	 * 
+	 * @param maxHeight The maximum height to generate.
+	 * @param seed The seed to generate the terrain from.
+	 */
+	public StreamedTerrain(float maxHeight, long seed) {
+		this.seed = seed;
+		this.maxHeight = maxHeight;
+		
+		initializeStreaming();
+	}
+	
+	/**
+	 * [Re]Initializes the (transient) page structures.
+	 */
+	protected void initializeStreaming() {
+		slots = new AtomicReferenceArray<>(SLOT_GRID_SIZE * SLOT_GRID_SIZE);
+		recentPages = new LinkedHashMap<>(16, 0.75f, true);
+		memorySize = 0;
+		pendingPages = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+		completedPages = new ConcurrentLinkedQueue<>();
+		lastFocus = null;
+		requestsLeft = false;
+		released = false;
+	}
+	
+	/**
+	 * Restores the page structures after deserialization (the pages are generated again).
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		initializeStreaming();
+	}
+	
+	/**
+	 * Returns the background generation executor, creating it if needed.
+	 * 
+	 * @return The executor service.
+	 */
+	protected static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "TerrainStreamer");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	
+	// page streaming
+	
+	/**
+	 * Updates the loaded pages for the player's current position and velocity.
+	 * 
+	 * <p>Publishes the pages generated since the last call, requests the missing pages around
+	 * the player and ahead of its heading (the closest ones first) and evicts the least recently
+	 * used pages if the memory limit is exceeded.</p>
+	 * 
+	 * <p>Should always be called from the same thread (the game's thread).</p>
+	 * 
+	 * @param x The player's X coordinate.
+	 * @param y The player's Y coordinate.
+	 * @param vx The player's velocity on X.
+	 * @param vy The player's velocity on Y.
+	 */
+	public synchronized void update(float x, float y, float vx, float vy) {
+		if (released)
+			return;
+		
+		boolean published = false;
+		TerrainPage page;
+		while ((page = completedPages.poll()) != null) {
+			publishPage(page);
+			published = true;
+		}
+		
+		// find the player's page and the one ahead of it
+		final int pageX = getPageCoordinate(x), pageY = getPageCoordinate(y);
+		float speed = (float)Math.sqrt(vx * vx + vy * vy);
+		final float dirX = (speed > 0 ? vx / speed : 0);
+		final float dirY = (speed > 0 ? vy / speed : 0);
+		float lookahead = LOOKAHEAD_PAGES * PAGE_SIZE * Terrain.UNIT_SCALE;
+		int aheadX = getPageCoordinate(x + dirX * lookahead);
+		int aheadY = getPageCoordinate(y + dirY * lookahead);
+		
+		int[] focus = { pageX, pageY, aheadX, aheadY };
+		if (!published && !requestsLeft && lastFocus != null &&
+				Arrays.equals(focus, lastFocus))
+			return;
+		lastFocus = focus;
+		
+		// collect the needed pages (marking the loaded ones as recently used)
+		Set<Long> neededPages = new HashSet<>();
+		List<Long> missingPages = new ArrayList<>();
+		collectPages(pageX, pageY, neededPages, missingPages);
+		collectPages(aheadX, aheadY, neededPages, missingPages);
+		
+		// request the missing pages: the closest first, the ones ahead before the ones behind
+		Collections.sort(missingPages, new Comparator<Long>() {
+			@Override
+			public int compare(Long key1, Long key2) {
+				return Float.compare(getPriority(key1), getPriority(key2));
+			}
+			
+			protected float getPriority(long key) {
+				int dx = (int)(key >> 32) - pageX, dy = (int)key - pageY;
+				return dx * dx + dy * dy - (dx * dirX + dy * dirY);
+			}
+		});
+		
+		int count = MAX_PENDING_PAGES - pendingPages.size();
+		requestsLeft = (missingPages.size() > count);
+		for (int k = 0; k < missingPages.size() && k < count; k++) {
+			long key = missingPages.get(k);
+			requestPage((int)(key >> 32), (int)key);
+		}
+		
+		evictPages(neededPages);
+	}
+	
+	/**
+	 * Collects the pages inside the loading radius around a page.
+	 * 
+	 * @param centerX The center page's X coordinate.
+	 * @param centerY The center page's Y coordinate.
+	 * @param neededPages Output: the keys of all pages inside the radius.
+	 * @param missingPages Output: the keys of the pages that are neither loaded nor pending.
+	 */
+	protected void collectPages(int centerX, int centerY, Set<Long> neededPages, List<Long> missingPages) {
+		for (int dx = -LOAD_RADIUS; dx <= LOAD_RADIUS; dx++) {
+			for (int dy = -LOAD_RADIUS; dy <= LOAD_RADIUS; dy++) {
+				if (dx * dx + dy * dy > LOAD_RADIUS * LOAD_RADIUS)
+					continue;
+				
+				long key = TerrainPage.getKey(centerX + dx, centerY + dy);
+				if (!neededPages.add(key))
+					continue;
+				
+				if (getPage(centerX + dx, centerY + dy) != null) {
+					recentPages.get(key); // mark as recently used
+				} else if (!pendingPages.contains(key)) {
+					missingPages.add(key);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Queues a page for generation on the background thread.
+	 * 
+	 * @param pageX The page's X coordinate.
+	 * @param pageY The page's Y coordinate.
+	 */
+	protected void requestPage(final int pageX, final int pageY) {
+		final long key = TerrainPage.getKey(pageX, pageY);
+		pendingPages.add(key);
+		
+		getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if (!released)
+						completedPages.add(generatePage(pageX, pageY));
+						
+				} finally {
+					pendingPages.remove(key);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Makes a generated page available (replacing the previous page of its slot).
+	 * 
+	 * @param page The page to publish.
+	 */
+	protected void publishPage(TerrainPage page) {
+		int slot = getSlot(page.getPageX(), page.getPageY());
+		TerrainPage previous = slots.get(slot);
+		if (previous != null) {
+			recentPages.remove(previous.getKey());
+			memorySize -= previous.getMemorySize();
+		}
+		
+		slots.set(slot, page);
+		recentPages.put(page.getKey(), page);
+		memorySize += page.getMemorySize();
+	}
+	
+	/**
+	 * Evicts the least recently used pages until the memory limit is met.
+	 * 
+	 * @param neededPages The keys of the pages that must not be evicted.
+	 */
+	protected void evictPages(Set<Long> neededPages) {
+		Iterator<TerrainPage> it = recentPages.values().iterator();
+		while (memorySize > memoryLimit && it.hasNext()) {
+			TerrainPage page = it.next();
+			if (neededPages.contains(page.getKey()))
+				continue;
+			
+			it.remove();
+			slots.set(getSlot(page.getPageX(), page.getPageY()), null);
+			memorySize -= page.getMemorySize();
+		}
+	}
+	
+	/**
+	 * Releases the loaded pages and discards the pending ones.
+	 * 
+	 * <p>The terrain can no longer be updated afterwards.</p>
+	 */
+	public synchronized void release() {
+		released = true;
+		
+		for (int slot = 0; slot < slots.length(); slot++) {
+			slots.set(slot, null);
+		}
+		recentPages.clear();
+		completedPages.clear();
+		memorySize = 0;
+	}
+	
+	
+	// page generation
+	
+	/**
+	 * Generates a page.
+	 * 
+	 * <p>Can be called from any thread (it only depends on the terrain's seed and parameters).</p>
+	 * 
+	 * @param pageX The page's X coordinate.
+	 * @param pageY The page's Y coordinate.
+	 * @return The generated page.
+	 */
+	protected TerrainPage generatePage(int pageX, int pageY) {
+		int size = PAGE_SIZE + 1;
+		int x0 = pageX * PAGE_SIZE, y0 = pageY * PAGE_SIZE;
+		
+		// compute the heights and types, with a border of 1 point (needed by the normals and the 
+		// blend weights, so they match the neighboring pages' ones)
+		float[][] heights = new float[size + 2][size + 2];
+		byte[][] types = new byte[size + 2][size + 2];
+		for (int i = 0; i < size + 2; i++) {
+			for (int j = 0; j < size + 2; j++) {
+				heights[i][j] = computeHeight(x0 + i - 1, y0 + j - 1);
+				types[i][j] = computeType(x0 + i - 1, y0 + j - 1, heights[i][j]);
+			}
+		}
+		
+		float[][] heightMap = new float[size][size];
+		byte[][] typeMap = new byte[size][size];
+		float[] normals = new float[size * size * 3];
+		float[] weights = new float[size * size * TerrainMesh.WEIGHT_COUNT];
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				heightMap[i][j] = heights[i + 1][j + 1];
+				typeMap[i][j] = types[i + 1][j + 1];
+				
+				// the normal of the surface, using central differences
+				float slopeX = (heights[i + 2][j + 1] - heights[i][j + 1]) / (2 * Terrain.UNIT_SCALE);
+				float slopeY = (heights[i + 1][j + 2] - heights[i + 1][j]) / (2 * Terrain.UNIT_SCALE);
+				TerrainMesh.computeNormal(normals, (i * size + j) * 3, slopeX, slopeY);
+				TerrainMesh.computeWeights(types, i + 1, j + 1, weights, (i * size + j) * TerrainMesh.WEIGHT_COUNT);
+			}
+		}
+		
+		return new TerrainPage(pageX, pageY, heightMap, typeMap, BufferUtils.asBuffer(normals),
+				BufferUtils.asBuffer(weights));
+	}
+	
+	/**
+	 * Computes the height of a point (using fractal value noise).
+	 * 
+	 * @param x The X coordinate of the point (in points).
+	 * @param y The Y coordinate of the point (in points).
+	 * @return The point's height.
+	 */
+	protected float computeHeight(int x, int y) {
+		float sum = 0, total = 0, amplitude = 1;
+		int cell = NOISE_CELL;
+		for (int o = 0; o < NOISE_OCTAVES; o++) {
+			sum += amplitude * computeNoise(seed + o, x, y, cell);
+			total += amplitude;
+			amplitude *= NOISE_PERSISTENCE;
+			cell /= 2;
+		}
+		
+		float h = (sum / total - 0.5f) * NOISE_CONTRAST + 0.5f;
+		return Math.max(0, Math.min(1, h)) * maxHeight;
+	}
+	
+	/**
+	 * Chooses the terrain type of a point.
+	 * 
+	 * <p>A low frequency noise selects one of the types allowed at the point's height (or the
+	 * closest type, if none is allowed).</p>
+	 * 
+	 * @param x The X coordinate of the point (in points).
+	 * @param y The Y coordinate of the point (in points).
+	 * @param h The point's height.
+	 * @return The terrain type.
+	 */
+	protected byte computeType(int x, int y, float h) {
+		int allowed = 0;
+		for (byte t = 0; t < Terrain.TERRAIN_TYPES.length; t++) {
+			if (Terrain.isTypeAllowed(t, h))
+				allowed++;
+		}
+		if (allowed == 0)
+			return Terrain.getClosestType(h);
+		
+		float noise = computeNoise(seed + NOISE_OCTAVES, x, y, TYPE_NOISE_CELL);
+		int k = Math.min((int)(noise * allowed), allowed - 1);
+		for (byte t = 0; t < Terrain.TERRAIN_TYPES.length; t++) {
+			if (Terrain.isTypeAllowed(t, h) && k-- == 0)
+				return t;
+		}
+		return Terrain.getClosestType(h);
+	}
+	
+	/**
+	 * Computes the value noise at a point.
+	 * 
+	 * <p>The lattice points have pseudo-random values (hashed from the seed and their
+	 * coordinates) and the values in between are smoothly interpolated.</p>
+	 * 
+	 * @param seed The noise's seed.
+	 * @param x The X coordinate of the point.
+	 * @param y The Y coordinate of the point.
+	 * @param cell The size of a lattice cell.
+	 * @return The noise value, in the [0, 1) range.
+	 */
+	protected static float computeNoise(long seed, int x, int y, int cell) {
+		int cx = floorDiv(x, cell), cy = floorDiv(y, cell);
+		float fx = smoothStep((x - cx * cell) / (float)cell);
+		float fy = smoothStep((y - cy * cell) / (float)cell);
+		
+		float v00 = getLatticeValue(seed, cx, cy);
+		float v10 = getLatticeValue(seed, cx + 1, cy);
+		float v01 = getLatticeValue(seed, cx, cy + 1);
+		float v11 = getLatticeValue(seed, cx + 1, cy + 1);
+		
+		float v0 = v00 + (v10 - v00) * fx;
+		float v1 = v01 + (v11 - v01) * fx;
+		return v0 + (v1 - v0) * fy;
+	}
+	
+	/**
+	 * Returns the pseudo-random value of a noise lattice point.
+	 * 
+	 * @param seed The noise's seed.
+	 * @param x The X coordinate of the lattice point.
+	 * @param y The Y coordinate of the lattice point.
+	 * @return The value, in the [0, 1) range.
+	 */
+	protected static float getLatticeValue(long seed, int x, int y) {
+		return (SplitMixRandom.hash(seed, x, y) >>> 40) * 0x1.0p-24f;
+	}
+	
+	/**
+	 * The smooth step interpolation curve (3t^2 - 2t^3).
+	 * 
+	 * @param t The interpolated value (in the [0, 1] range).
+	 * @return The smoothed value.
+	 */
+	protected static float smoothStep(float t) {
+		return t * t * (3 - 2 * t);
+	}
+	
+	/**
+	 * Integer division that rounds towards negative infinity.
+	 * 
+	 * @param a The dividend.
+	 * @param b The (positive) divisor.
+	 * @return The quotient.
+	 */
+	protected static int floorDiv(int a, int b) {
+		return (a >= 0 ? a / b : -((-a - 1) / b) - 1);
+	}
+	
+	
+	// getters / setters
+	
+	/**
+	 * Returns the page coordinate of a world coordinate.
+	 * 
+	 * @param x The world coordinate (X or Y).
+	 * @return The page coordinate.
+	 */
+	public static int getPageCoordinate(float x) {
+		return floorDiv((int)Math.floor(x / Terrain.UNIT_SCALE), PAGE_SIZE);
+	}
+	
+	/**
+	 * Returns the slot of a page.
+	 * 
+	 * @param pageX The page's X coordinate.
+	 * @param pageY The page's Y coordinate.
+	 * @return The slot's index.
+	 */
+	protected static int getSlot(int pageX, int pageY) {
+		return (pageX & (SLOT_GRID_SIZE - 1)) * SLOT_GRID_SIZE + (pageY & (SLOT_GRID_SIZE - 1));
+	}
+	
+	/**
+	 * Returns a loaded page.
+	 * 
+	 * <p>Can be called from any thread (it never locks).</p>
+	 * 
+	 * @param pageX The page's X coordinate.
+	 * @param pageY The page's Y coordinate.
+	 * @return The page, or null if it is not loaded.
+	 */
+	public TerrainPage getPage(int pageX, int pageY) {
+		TerrainPage page = slots.get(getSlot(pageX, pageY));
+		if (page == null || page.getPageX() != pageX || page.getPageY() != pageY)
+			return null;
+		return page;
+	}
+	
+	/**
+	 * Checks whether the page containing the specified point is loaded.
+	 * 
+	 * @param x The X coordinate of the point (world units).
+	 * @param y The Y coordinate of the point (world units).
+	 * @return True if the point's page is loaded.
+	 */
+	public boolean isLoaded(float x, float y) {
+		return getPage(getPageCoordinate(x), getPageCoordinate(y)) != null;
+	}
+	
+	/**
+	 * Returns the memory limit of the loaded pages.
+	 * 
+	 * @return The limit, in bytes.
+	 */
+	@SuppressWarnings("unused")
+	public synchronized long getMemoryLimit() {
+		return memoryLimit;
+	}
+	
+	/**
+	 * Changes the memory limit of the loaded pages.
+	 * 
+	 * <p>The pages around the player are never evicted, even if they exceed the limit.</p>
+	 * 
+	 * @param memoryLimit The new limit, in bytes.
+	 */
+	public synchronized void setMemoryLimit(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+	
+	/**
+	 * Returns the memory used by the loaded pages.
+	 * 
+	 * @return The used memory, in bytes.
+	 */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+	
+	/**
+	 * Returns the seed that the terrain is generated from.
+	 * 
+	 * @return The terrain's seed.
+	 */
+	@SuppressWarnings("unused")
+	public long getSeed() {
+		return seed;
+	}
+	
+	/**
+	 * Returns the terrain's dimensions (it is unbounded).
+	 * 
+	 * @return Infinite dimensions, as a 2-element array (width, length).
+	 */
+	@Override
+	public float[] getDimensions() {
+		return new float[] { Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY };
+	}
+	
+	@Override
+	public float getMaxHeight() {
+		return maxHeight;
+	}
+	
+	/**
+	 * Returns the specified point's height.
+	 * 
+	 * <p>Never locks: if the point's page is not loaded, its height is computed directly.</p>
+	 * 
+	 * @param x The X coordinate of the point (world units / scaled).
+	 * @param y The Y coordinate of the point (world units / scaled).
+	 * @return The terrain's height at the specified point.
+	 */
+	@Override
+	public float getHeightAt(float x, float y) {
+		int i = (int)Math.floor(x / Terrain.UNIT_SCALE);
+		int j = (int)Math.floor(y / Terrain.UNIT_SCALE);
+		int pageX = floorDiv(i, PAGE_SIZE), pageY = floorDiv(j, PAGE_SIZE);
+		
+		TerrainPage page = getPage(pageX, pageY);
+		if (page != null)
+			return page.getHeightMap()[i - pageX * PAGE_SIZE][j - pageY * PAGE_SIZE];
+		
+		return computeHeight(i, j);
+	}
+	
+	
+	@Override
+	public boolean collidesWith(CollisionObject obj) {
+		if (obj instanceof BaseMobileModel) {
+			// the terrain is unbounded
+			float[] position = ((BaseMobileModel)obj).getPosition().toArray();
+			return position[2] <= getHeightAt(position[0], position[1]);
+		}
+		
+		return false;
+	}
+	
+}
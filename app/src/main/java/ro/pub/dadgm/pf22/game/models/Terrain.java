@@ -1,15 +1,19 @@
 package ro.pub.dadgm.pf22.game.models;
 
-import java.util.Stack;
-
 import ro.pub.dadgm.pf22.physics.CollisionObject;
+import ro.pub.dadgm.pf22.utils.SplitMixRandom;
+import ro.pub.dadgm.pf22.utils.WorkerPool;
 
 /**
  * The model class for terrains.
  * 
  * <p>A terrain is a height map of large dimensions.</p>
+ * 
+ * <p>The generation is deterministic: it is entirely driven by the terrain's seed, so the same
+ * seed (and dimensions) always produce the same terrain, no matter how many cores are used to
+ * generate it.</p>
  */
-public class Terrain extends BaseModel implements CollisionObject {
+public class Terrain extends BaseModel implements HeightField {
 	
 	// generation constants
 	
@@ -23,12 +27,32 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 */
 	public final float GEN_DISPLACEMENT_MIN = 0.5f;
 	public final float GEN_DISPLACEMENT_SCALE = 1.0f;
-
+	
 	/**
 	 * Level of detail for the fractal algorithm.
 	 */
 	public final int FRACTAL_LOD = 8;
 	
+	/**
+	 * The probability of a terrain type to be accepted regardless of its height constraints.
+	 */
+	public final static float TYPE_RANDOM_PASS_CHANCE = 0.05f;
+	
+	/**
+	 * The probability of a terrain type to be accepted if it meets its height constraints.
+	 */
+	public final static float TYPE_PASS_CHANCE = 0.9f;
+	
+	/**
+	 * The probability of a terrain type to spread to a neighboring point.
+	 */
+	public final static float TYPE_SPREAD_CHANCE = 0.8f;
+	
+	/**
+	 * The maximum number of random terrain type extractions for a point.
+	 */
+	public final static int TYPE_MAX_ATTEMPTS = 16;
+	
 	
 	/**
 	 * Describes all possible terrain types.
@@ -48,6 +72,11 @@ public class Terrain extends BaseModel implements CollisionObject {
 	
 	// terrain attributes
 	
+	/**
+	 * The seed that the terrain was generated from.
+	 */
+	protected long seed;
+	
 	/**
 	 * Stores the dimensions (width, length) of the map.
 	 */
@@ -78,6 +107,16 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 */
 	protected int[] typeCount;
 	
+	/**
+	 * The terrain's triangulated geometry (lazily built).
+	 */
+	protected transient TerrainMesh mesh;
+	
+	/**
+	 * The quadtree of the terrain's heights (lazily built).
+	 */
+	protected transient HeightQuadtree heightTree;
+	
 	
 	/**
 	 * Model object constructor.
@@ -85,81 +124,151 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 * @param wx Terrain's width (on X).
 	 * @param wy Terrain's length (on Y).
 	 * @param maxHeight The maximum height to generate.   
+	 * @param seed The seed to generate the terrain from.
 	 */
-	public Terrain(int wx, int wy, float maxHeight) {
+	public Terrain(int wx, int wy, float maxHeight, long seed) {
 		this.dimensions = new int[] { wx, wy };
 		this.maxHeight = maxHeight;
+		this.seed = seed;
 		
 		heightMap = new float[wx][wy];
 		typeMap = new byte[wx][wy];
 		typeCount = new int[TERRAIN_TYPES.length];
 		
-		// generateMap();
-		generateFractalMap();
-		generateTypeMap();
+		// each generation stage gets its own random stream
+		SplitMixRandom random = new SplitMixRandom(seed);
+		SplitMixRandom heightRandom = random.split();
+		SplitMixRandom typeRandom = random.split();
+		
+		// generateFaultMap(heightRandom);
+		generateFractalMap(heightRandom);
+		generateTypeMap(typeRandom);
+	}
+	
+	/**
+	 * Initializes a terrain using already generated data (e.g. loaded from a {@link TerrainCache}).
+	 * 
+	 * @param seed The seed that the terrain was generated from.
+	 * @param heightMap The height map.
+	 * @param typeMap The terrain type map.
+	 * @param typeCount The point count for each terrain type.
+	 * @param maxHeight The maximum height of a point.
+	 * @param mesh The terrain's mesh (null to build it when needed).
+	 */
+	protected Terrain(long seed, float[][] heightMap, byte[][] typeMap, int[] typeCount, 
+					  float maxHeight, TerrainMesh mesh) {
+		this.dimensions = new int[] { heightMap.length, heightMap[0].length };
+		this.seed = seed;
+		this.heightMap = heightMap;
+		this.typeMap = typeMap;
+		this.typeCount = typeCount;
+		this.maxHeight = maxHeight;
+		this.mesh = mesh;
 	}
 	
 	/**
 	 * Generates terrain using the <a href="http://www.javaworld.com/article/2076745">Diamond-Square Algorithm</a>.
+	 * 
+	 * <p>The points of each step (diamond / square) of a level only depend on the previous step, 
+	 * so they are computed in parallel, one task per row. Each row gets its own random stream, 
+	 * split (in order) from the main one before the tasks are started, so the result does not 
+	 * depend on the tasks' scheduling.</p>
+	 * 
+	 * @param random The random stream to use.
 	 */
-	private void generateFractalMap() {
+	private void generateFractalMap(SplitMixRandom random) {
 		final float roughness = 0.6f;
 		final int lod = FRACTAL_LOD;
 		
-		int divisions = 1 << lod;
+		final int divisions = 1 << lod;
 		
-		float[][] terrain = new float[divisions + 1][divisions + 1];
+		final float[][] terrain = new float[divisions + 1][divisions + 1];
 		
-		terrain[0][0] = rnd();
-		terrain[0][divisions] = rnd();
-		terrain[divisions][divisions] = rnd();
-		terrain[divisions][0] = rnd();
+		terrain[0][0] = rnd(random);
+		terrain[0][divisions] = rnd(random);
+		terrain[divisions][divisions] = rnd(random);
+		terrain[divisions][0] = rnd(random);
 		
 		float rough = roughness;
 		for (int i = 0; i < lod; ++ i) {
-			int r = 1 << (lod - i), s = r >> 1;
-			for (int j = 0; j < divisions; j += r)
-				for (int k = 0; k < divisions; k += r)
-					diamond(terrain, j, k, r, rough);
-			if (s > 0)
-				for (int j = 0; j <= divisions; j += s)
-					for (int k = (j + s) % r; k <= divisions; k += r)
-						square (terrain, j - s, k - s, r, rough, divisions);
+			final int r = 1 << (lod - i), s = r >> 1;
+			final float scale = rough;
+			
+			// diamond step: one task per row of diamonds
+			final SplitMixRandom[] diamondRandoms = splitRandoms(random, divisions / r);
+			WorkerPool.parallelFor(diamondRandoms.length, new WorkerPool.IndexedTask() {
+				@Override
+				public void run(int row) {
+					int j = row * r;
+					for (int k = 0; k < divisions; k += r)
+						diamond(terrain, j, k, r, scale, diamondRandoms[row]);
+				}
+			});
+			
+			// square step: one task per row of squares
+			if (s > 0) {
+				final SplitMixRandom[] squareRandoms = splitRandoms(random, divisions / s + 1);
+				WorkerPool.parallelFor(squareRandoms.length, new WorkerPool.IndexedTask() {
+					@Override
+					public void run(int row) {
+						int j = row * s;
+						for (int k = (j + s) % r; k <= divisions; k += r)
+							square(terrain, j - s, k - s, r, scale, divisions, squareRandoms[row]);
+					}
+				});
+			}
 			
 			rough *= roughness;
 		}
 		
 		// generate the height map using the fractal terrain
-		float min = 0;
-		for (int i=0; i<dimensions[0]; i++) {
-			for (int j = 0; j < dimensions[1]; j++) {
-				float tx = (i / (float)dimensions[0]) * divisions;
-				float ty = (j / (float)dimensions[1]) * divisions;
-				
-				// do a bilinear interpolation
-				float s00 = terrain[(int)Math.floor(tx)][(int)Math.floor(ty)];
-				float s01 = terrain[(int)Math.floor(tx)][(int)Math.ceil(ty)];
-				float s10 = terrain[(int)Math.ceil(tx)][(int)Math.floor(ty)];
-				float s11 = terrain[(int)Math.ceil(tx)][(int)Math.ceil(ty)];
-				
-				float xfrac = tx - (int)tx;
-				float yfrac = ty - (int)ty;
-				float tval = (1 - yfrac) * ( (1 - xfrac)*s00 + xfrac*s01) +
-						yfrac * ( (1 - xfrac)*s10 + xfrac*s11);
-				
-				heightMap[i][j] = tval * this.maxHeight;
-				
-				min = Math.min(heightMap[i][j], min);
+		final float[] rowMin = new float[dimensions[0]];
+		WorkerPool.parallelFor(dimensions[0], new WorkerPool.IndexedTask() {
+			@Override
+			public void run(int i) {
+				float min = 0;
+				for (int j = 0; j < dimensions[1]; j++) {
+					float tx = (i / (float)dimensions[0]) * divisions;
+					float ty = (j / (float)dimensions[1]) * divisions;
+					
+					// do a bilinear interpolation
+					float s00 = terrain[(int)Math.floor(tx)][(int)Math.floor(ty)];
+					float s01 = terrain[(int)Math.floor(tx)][(int)Math.ceil(ty)];
+					float s10 = terrain[(int)Math.ceil(tx)][(int)Math.floor(ty)];
+					float s11 = terrain[(int)Math.ceil(tx)][(int)Math.ceil(ty)];
+					
+					float xfrac = tx - (int)tx;
+					float yfrac = ty - (int)ty;
+					float tval = (1 - yfrac) * ( (1 - xfrac)*s00 + xfrac*s01) +
+							yfrac * ( (1 - xfrac)*s10 + xfrac*s11);
+					
+					heightMap[i][j] = tval * maxHeight;
+					
+					min = Math.min(heightMap[i][j], min);
+				}
+				rowMin[i] = min;
 			}
+		});
+		
+		float min = 0;
+		for (float value: rowMin) {
+			min = Math.min(value, min);
 		}
 		
 		// level the map
-		float minLevel = (float)Math.random() * min*0.5f;
-		for (int i=0; i<dimensions[0]; i++) {
-			for (int j = 0; j < dimensions[1]; j++) {
-				heightMap[i][j] = heightMap[i][j] - minLevel;
+		final float minLevel = random.nextFloat() * min*0.5f;
+		final float[] rowMax = new float[dimensions[0]];
+		WorkerPool.parallelFor(dimensions[0], new WorkerPool.IndexedTask() {
+			@Override
+			public void run(int i) {
+				float max = 0;
+				for (int j = 0; j < dimensions[1]; j++) {
+					heightMap[i][j] = heightMap[i][j] - minLevel;
+					max = Math.max(heightMap[i][j], max);
+				}
+				rowMax[i] = max;
 			}
-		}
+		});
 		
 		// apply a Gaussian Blur on the heightmap to smoothen it
 		//float[][] kernel = makeGaussianKernel(11, 30);
@@ -167,14 +276,27 @@ public class Terrain extends BaseModel implements CollisionObject {
 		
 		// calculate the maximum generated height
 		maxHeight = 0;
-		for (int i=0; i<dimensions[0]; i++) {
-			for (int j = 0; j < dimensions[1]; j++) {
-				if (maxHeight < heightMap[i][j])
-					maxHeight = heightMap[i][j];
-			}
+		for (float value: rowMax) {
+			if (maxHeight < value)
+				maxHeight = value;
 		}
 	}
-
+	
+	/**
+	 * Splits a number of independent random streams from the specified one.
+	 * 
+	 * @param random The parent random stream.
+	 * @param count The number of streams to create.
+	 * @return The new random streams.
+	 */
+	private static SplitMixRandom[] splitRandoms(SplitMixRandom random, int count) {
+		SplitMixRandom[] randoms = new SplitMixRandom[count];
+		for (int i = 0; i < count; i++) {
+			randoms[i] = random.split();
+		}
+		return randoms;
+	}
+	
 	/**
 	 * Generates a diamond on the terrain.
 	 * 
@@ -183,16 +305,18 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 * @param y The Y coordinate.
 	 * @param side Diamond's side width.
 	 * @param scale Diamond's scale.
+	 * @param random The random stream to use.
 	 */
-	private void diamond (float[][] terrain, int x, int y, int side, float scale) {
+	private static void diamond (float[][] terrain, int x, int y, int side, float scale, 
+								 SplitMixRandom random) {
 		if (side > 1) {
 			int half = side / 2;
 			float avg = (terrain[x][y] + terrain[x + side][y] +
 					terrain[x + side][y + side] + terrain[x][y + side]) * 0.25f;
-			terrain[x + half][y + half] = avg + rnd () * scale;
+			terrain[x + half][y + half] = avg + rnd(random) * scale;
 		}
 	}
-
+	
 	/**
 	 * Generates a square.
 	 * 
@@ -202,8 +326,10 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 * @param side Square's side width.
 	 * @param scale Diamond's side width.
 	 * @param divisions Matrix's number of divisions.
+	 * @param random The random stream to use.
 	 */
-	private void square (float[][] terrain, int x, int y, int side, float scale, int divisions) {
+	private static void square (float[][] terrain, int x, int y, int side, float scale, int divisions,
+								SplitMixRandom random) {
 		int half = side / 2;
 		float avg = 0.0f, sum = 0.0f;
 		
@@ -220,19 +346,27 @@ public class Terrain extends BaseModel implements CollisionObject {
 			avg += terrain[x + half][y + side]; sum += 1.0;
 		}
 		
-		terrain[x + half][y + half] = avg / sum + rnd () * scale;
+		terrain[x + half][y + half] = avg / sum + rnd(random) * scale;
 	}
 	
-	private float rnd () {
-		return (float)(2.0 * Math.random() - 1.0);
+	/**
+	 * Returns a random displacement in the [-1, 1) range.
+	 * 
+	 * @param random The random stream to use.
+	 * @return The random value.
+	 */
+	private static float rnd (SplitMixRandom random) {
+		return 2.0f * random.nextFloat() - 1.0f;
 	}
 	
 	/**
 	 * Generates the terrain map using the 
 	 * <a href="http://www.lighthouse3d.com/opengl/terrain/index.php3?fault">Fault Algorithm</a>.
+	 * 
+	 * @param random The random stream to use.
 	 */
 	@SuppressWarnings("unused")
-	private void generateFaultMap() {
+	private void generateFaultMap(SplitMixRandom random) {
 		// fill the height map with maxHeight / 2
 		for (int i=0; i<dimensions[0]; i++) {
 			for (int j = 0; j < dimensions[1]; j++) {
@@ -243,15 +377,15 @@ public class Terrain extends BaseModel implements CollisionObject {
 		// iterate the algorithm
 		for (int k=0; k<GEN_ITERATIONS; k++) {
 			// generate a line
-			double v = Math.random() * 2 * Math.PI;
+			double v = random.nextDouble() * 2 * Math.PI;
 			double a = Math.sin(v);
 			double b = Math.cos(v);
 			double d = Math.sqrt(dimensions[0] * dimensions[0] + dimensions[1] * dimensions[1]);
-			double c = Math.random() * d - d / 2.0;
+			double c = random.nextDouble() * d - d / 2.0;
 			
 			for (int i = 0; i < dimensions[0]; i++) {
 				for (int j = 0; j < dimensions[1]; j++) {
-					float displacement = (float) Math.random() * GEN_DISPLACEMENT_SCALE +
+					float displacement = random.nextFloat() * GEN_DISPLACEMENT_SCALE +
 							GEN_DISPLACEMENT_MIN;
 					if ((a * i + b * j) > c) {
 						heightMap[i][j] += displacement;
@@ -284,7 +418,7 @@ public class Terrain extends BaseModel implements CollisionObject {
 		float[][] kernel = makeGaussianKernel(11, 30);
 		heightMap = convolutionFilter(heightMap, kernel, 1, 0, maxHeight);
 	}
-
+	
 	/**
 	 * Applies a convolution filter to the specified heightMap.
 	 * 
@@ -373,81 +507,152 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 * 
 	 * <p>The algorithm is the following: 
 	 * <ul>
-	 *     <li>a random type is extracted from {@link #TERRAIN_TYPES};</li>
-	 *     <li>if it doesn't meet the constraints, it has a 5% probability of passing;</li>
-	 *     <li>otherwise, the probability of selection is 50%;</li>
-	 *     <li>on success, there is a 50% probability of a neighbor to also be populated with the 
-	 *     same type;</li>
-	 *     <li>repeat until all points on the map are populated.</li>
+	 *     <li>the points are scanned in order, the ones that are not populated yet are seeded with 
+	 *     a type chosen by {@link #chooseType};</li>
+	 *     <li>the type is flood-filled from the seed: each neighbor that meets the type's height 
+	 *     constraints has a {@link #TYPE_SPREAD_CHANCE} probability of being populated with the 
+	 *     same type (and of spreading it further).</li>
 	 * </ul>
 	 * </p>
+	 * 
+	 * <p>Each point is populated (and pushed on the flood fill's stack) exactly once, so the work 
+	 * is bounded by the size of the map.</p>
+	 * 
+	 * @param random The random stream to use.
 	 */
-	private void generateTypeMap() {
-		// use a stack for doing the floodfill
-		Stack<int[]> stack = new Stack<>();
+	private void generateTypeMap(SplitMixRandom random) {
+		int wy = dimensions[1];
+		
+		// the flood fill's stack, storing point indices (i * wy + j)
+		int[] stack = new int[dimensions[0] * dimensions[1]];
 		
 		// initialization
 		for (int i=0; i<dimensions[0]; i++) {
 			for (int j = 0; j < dimensions[1]; j++) {
 				typeMap[i][j] = -1; // uninitialized
-				stack.add(new int[]{ i, j });
 			}
 		}
 		
 		// process all points
-		while (!stack.isEmpty()) {
-			int[] d = stack.pop();
-			int i = d[0];
-			int j = d[1];
-			if (typeMap[i][j] >= 0)
-				continue;
-			
-			float h = heightMap[i][j];
-			// byte t = (byte)(Math.random() * TERRAIN_TYPES.length);
-			byte t = 0;
-			
-			boolean passed = dice(0.05); // 5% chance to pass anyways
-			if (!passed) {
-				// extract the terrain type
-				Float min = (Float)TERRAIN_TYPES[t][2];
-				Float max = (Float)TERRAIN_TYPES[t][3];
-				if (min < h && h < max) {
-					passed = dice(0.9); // 90% probability to pass
-				}
-			}
-			
-			if (passed) {
+		for (int i=0; i<dimensions[0]; i++) {
+			for (int j = 0; j < dimensions[1]; j++) {
+				if (typeMap[i][j] >= 0)
+					continue;
+				
+				byte t = chooseType(heightMap[i][j], random);
 				typeMap[i][j] = t;
 				typeCount[t]++;
 				
-				// 50% chance to fill to a neighbor
-				// 4 neighbors
-				if (i>0 && dice(0.8)) { typeMap[i - 1][j] = t; typeCount[t]++; }
-				if (j>0 && dice(0.8)) { typeMap[i][j-1] = t; typeCount[t]++; }
-				if (i<dimensions[0]-1 && dice(0.8)) { typeMap[i+1][j] = t; typeCount[t]++; }
-				if (j<dimensions[1]-1 && dice(0.8)) { typeMap[i][j+1] = t; typeCount[t]++; }
-				
-			} else {
-				// reprocess
-				stack.add(d);
+				int top = 0;
+				stack[top++] = i * wy + j;
+				while (top > 0) {
+					int point = stack[--top];
+					int pi = point / wy;
+					int pj = point % wy;
+					
+					// 4 neighbors
+					top = spreadType(pi - 1, pj, t, stack, top, random);
+					top = spreadType(pi, pj - 1, t, stack, top, random);
+					top = spreadType(pi + 1, pj, t, stack, top, random);
+					top = spreadType(pi, pj + 1, t, stack, top, random);
+				}
 			}
 		}
 	}
 	
 	/**
-	 * Rolls a 2-sided dice (boolean :D ) with the specified chance.
+	 * Chooses the terrain type of a point.
 	 * 
-	 * @param chance The chance to return true.
-	 * @return Returns true or false, depending on the roll.
+	 * <p>A random type is extracted from {@link #TERRAIN_TYPES}; if it meets the height 
+	 * constraints, it is accepted with a {@link #TYPE_PASS_CHANCE} probability, otherwise with a 
+	 * {@link #TYPE_RANDOM_PASS_CHANCE} one. After {@link #TYPE_MAX_ATTEMPTS} failed extractions, 
+	 * the type whose height range is the closest is chosen.</p>
+	 * 
+	 * @param h The height of the point.
+	 * @param random The random stream to use.
+	 * @return The chosen type.
 	 */
-	private boolean dice(double chance) {
-		double r = Math.random();
-		return (0.5 - chance/2) <= r && r <= (0.5 + chance/2);
+	private static byte chooseType(float h, SplitMixRandom random) {
+		for (int k = 0; k < TYPE_MAX_ATTEMPTS; k++) {
+			byte t = (byte)random.nextInt(TERRAIN_TYPES.length);
+			float chance = (isTypeAllowed(t, h) ? TYPE_PASS_CHANCE : TYPE_RANDOM_PASS_CHANCE);
+			if (random.nextFloat() < chance)
+				return t;
+		}
+		
+		return getClosestType(h);
+	}
+	
+	/**
+	 * Returns the terrain type whose height range is the closest to the specified height.
+	 * 
+	 * @param h The height of the point.
+	 * @return The closest type.
+	 */
+	protected static byte getClosestType(float h) {
+		byte closest = 0;
+		float closestDistance = Float.MAX_VALUE;
+		for (byte t = 0; t < TERRAIN_TYPES.length; t++) {
+			float min = (Float)TERRAIN_TYPES[t][2];
+			float max = (Float)TERRAIN_TYPES[t][3];
+			float distance = Math.max(min - h, h - max);
+			if (distance < closestDistance) {
+				closest = t;
+				closestDistance = distance;
+			}
+		}
+		return closest;
+	}
+	
+	/**
+	 * Checks whether the terrain type meets its height constraints at the specified height.
+	 * 
+	 * @param t The terrain type.
+	 * @param h The height of the point.
+	 * @return True if the type is allowed.
+	 */
+	protected static boolean isTypeAllowed(byte t, float h) {
+		float min = (Float)TERRAIN_TYPES[t][2];
+		float max = (Float)TERRAIN_TYPES[t][3];
+		return (min < h && h < max);
+	}
+	
+	/**
+	 * Tries to spread a terrain type to the specified point.
+	 * 
+	 * @param i The X index of the point.
+	 * @param j The Y index of the point.
+	 * @param t The terrain type to spread.
+	 * @param stack The flood fill's stack.
+	 * @param top The current top of the stack.
+	 * @param random The random stream to use.
+	 * @return The new top of the stack.
+	 */
+	private int spreadType(int i, int j, byte t, int[] stack, int top, SplitMixRandom random) {
+		if (i < 0 || j < 0 || i >= dimensions[0] || j >= dimensions[1] || typeMap[i][j] >= 0)
+			return top;
+		if (!isTypeAllowed(t, heightMap[i][j]) || random.nextFloat() >= TYPE_SPREAD_CHANCE)
+			return top;
+		
+		typeMap[i][j] = t;
+		typeCount[t]++;
+		stack[top++] = i * dimensions[1] + j;
+		return top;
 	}
 	
 	
 	// getters / setters
 	
+	/**
+	 * Returns the seed that the terrain was generated from.
+	 * 
+	 * @return The terrain's seed.
+	 */
+	@SuppressWarnings("unused")
+	public synchronized long getSeed() {
+		return seed;
+	}
+	
 	/**
 	 * Returns the height map matrix's dimensions.
 	 * 
@@ -459,7 +664,7 @@ public class Terrain extends BaseModel implements CollisionObject {
 	
 	/**
 	 * Returns the height map's real (scaled) dimensions.
-	 *
+	 * 
 	 * @return The map's real dimensions as a 2-element array (width, length).
 	 */
 	public synchronized float[] getDimensions() {
@@ -495,11 +700,32 @@ public class Terrain extends BaseModel implements CollisionObject {
 	 * 
 	 * @return The type count map.
 	 */
-	@SuppressWarnings("unused")
 	public synchronized int[] getTypeCount() {
 		return typeCount;
 	}
 	
+	/**
+	 * Returns the terrain's mesh, building it on first use.
+	 * 
+	 * @return The terrain's mesh.
+	 */
+	public synchronized TerrainMesh getMesh() {
+		if (mesh == null)
+			mesh = TerrainMesh.build(this);
+		return mesh;
+	}
+	
+	/**
+	 * Returns the quadtree of the terrain's heights, building it on first use.
+	 * 
+	 * @return The terrain's height quadtree.
+	 */
+	public synchronized HeightQuadtree getHeightTree() {
+		if (heightTree == null)
+			heightTree = new HeightQuadtree(heightMap, 0, 0);
+		return heightTree;
+	}
+	
 	/**
 	 * Returns the guaranteed maximum height of a point on the terrain.
 	 * 
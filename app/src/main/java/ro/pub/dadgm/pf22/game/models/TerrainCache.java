@@ -0,0 +1,503 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persists the generated terrains (height map, type map and mesh) to binary files, so that a
+ * terrain is only generated once for a given seed and dimensions.
+ * 
+ * <p>The cached files are memory-mapped when loaded: the mesh buffers are used directly from the
+ * mapping (without being copied), only the height and type maps are read into arrays.</p>
+ * 
+ * <p>File format (all values in the native byte order):
+ * <ul>
+ *     <li>header: magic ("PFTR"), {@link #VERSION}, byte order mark, flags, seed, width (X),
+ *     length (Y), the generation's maximum height, the actual maximum height, the quantization
+ *     offset and scale, the number of terrain types, followed by the point count of each 
+ *     type;</li>
+ *     <li>the height map (floats or, if {@link #FLAG_QUANTIZED}, unsigned shorts);</li>
+ *     <li>the type map (bytes);</li>
+ *     <li>the vertex normals (3 floats each);</li>
+ *     <li>the vertex blend weights ({@link TerrainMesh#WEIGHT_COUNT} floats each).</li>
+ * </ul>
+ * Each section starts at a 4 byte boundary.</p>
+ * 
+ * <p>The {@link #VERSION} must be incremented whenever the format or the terrain generation
+ * algorithm changes, so that the stale files are regenerated.</p>
+ */
+public class TerrainCache {
+	
+	/**
+	 * The magic bytes that identify a terrain file.
+	 */
+	public static final int MAGIC = ('P' << 24) | ('F' << 16) | ('T' << 8) | 'R';
+	
+	/**
+	 * The current version of the file format / terrain generator.
+	 */
+	public static final int VERSION = 4;
+	
+	/**
+	 * Used to detect files written on a platform with a different byte order.
+	 */
+	protected static final int BYTE_ORDER_MARK = 0x01020304;
+	
+	/**
+	 * Flag set when the heights are quantized to 16 bits.
+	 */
+	public static final int FLAG_QUANTIZED = 1;
+	
+	/**
+	 * The default minimum number of height map points for the heights to be quantized.
+	 */
+	public static final int DEFAULT_QUANTIZE_THRESHOLD = 128 * 128;
+	
+	/**
+	 * The default maximum number of terrain files kept in the cache directory.
+	 */
+	public static final int DEFAULT_MAX_FILES = 4;
+	
+	/**
+	 * The extension of the terrain files.
+	 */
+	protected static final String FILE_EXTENSION = ".bin";
+	
+	/**
+	 * The maximum value of a quantized height.
+	 */
+	protected static final int QUANTIZED_MAX = 0xFFFF;
+	
+	/**
+	 * The directory to store the terrain files into.
+	 */
+	protected File directory;
+	
+	/**
+	 * The minimum number of points of a height map for it to be stored quantized.
+	 */
+	protected int quantizeThreshold = DEFAULT_QUANTIZE_THRESHOLD;
+	
+	/**
+	 * The maximum number of terrain files kept in the cache directory.
+	 */
+	protected int maxFiles = DEFAULT_MAX_FILES;
+	
+	
+	/**
+	 * Initializes the cache.
+	 * 
+	 * @param directory The directory to store the terrain files into (created if it doesn't exist).
+	 */
+	public TerrainCache(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Returns the cache file of a terrain.
+	 * 
+	 * @param seed The terrain's seed.
+	 * @param wx Terrain's width (on X).
+	 * @param wy Terrain's length (on Y).
+	 * @return The terrain file.
+	 */
+	public File getFile(long seed, int wx, int wy) {
+		return new File(directory, "terrain_" + Long.toHexString(seed) + "_" + wx + "x" + wy + FILE_EXTENSION);
+	}
+	
+	/**
+	 * Loads a terrain from the cache.
+	 * 
+	 * @param wx Terrain's width (on X).
+	 * @param wy Terrain's length (on Y).
+	 * @param maxHeight The maximum height that the terrain was generated with.
+	 * @param seed The terrain's seed.
+	 * @return The loaded terrain (with its mesh), or null if it isn't cached (or the file is
+	 *         stale / invalid).
+	 */
+	public Terrain load(int wx, int wy, float maxHeight, long seed) {
+		File file = getFile(seed, wx, wy);
+		if (!file.isFile())
+			return null;
+		
+		try {
+			Terrain terrain = read(file, wx, wy, maxHeight, seed);
+			if (terrain == null) {
+				Log.w(TerrainCache.class.getSimpleName(), "Discarding stale terrain file '" + file + "'.");
+				if (!file.delete())
+					Log.w(TerrainCache.class.getSimpleName(), "Unable to delete '" + file + "'.");
+				
+			} else {
+				// mark the file as recently used (see prune)
+				//noinspection ResultOfMethodCallIgnored
+				file.setLastModified(System.currentTimeMillis());
+			}
+			return terrain;
+			
+		} catch (IOException | RuntimeException e) {
+			Log.w(TerrainCache.class.getSimpleName(), "Unable to load terrain file '" + file + "'.", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores a terrain into the cache (building its mesh, if not already built).
+	 * 
+	 * <p>The file is written to a temporary location first and renamed when complete, so that
+	 * an interrupted write never leaves a corrupt file. The cache is then pruned (see
+	 * {@link #prune}).</p>
+	 * 
+	 * @param terrain The terrain to store.
+	 * @param maxHeight The maximum height that the terrain was generated with.
+	 * @return Whether the terrain was successfully stored.
+	 */
+	public boolean save(Terrain terrain, float maxHeight) {
+		int[] dims = terrain.getMatrixDimensions();
+		File file = getFile(terrain.getSeed(), dims[0], dims[1]);
+		File tmpFile = new File(directory, file.getName() + ".tmp");
+		
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			Log.w(TerrainCache.class.getSimpleName(), "Unable to create the cache directory!");
+			return false;
+		}
+		
+		try {
+			ByteBuffer data = write(terrain, maxHeight, dims[0] * dims[1] >= quantizeThreshold);
+			
+			FileOutputStream out = new FileOutputStream(tmpFile);
+			try {
+				FileChannel channel = out.getChannel();
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+			} finally {
+				out.close();
+			}
+			
+			if (!tmpFile.renameTo(file))
+				throw new IOException("Unable to rename '" + tmpFile + "'!");
+			prune();
+			return true;
+			
+		} catch (IOException | RuntimeException e) {
+			Log.w(TerrainCache.class.getSimpleName(), "Unable to save terrain file '" + file + "'.", e);
+			//noinspection ResultOfMethodCallIgnored
+			tmpFile.delete();
+			return false;
+		}
+	}
+	
+	/**
+	 * Deletes the least recently used terrain files, so that at most {@link #maxFiles} remain
+	 * in the cache directory.
+	 * 
+	 * <p>The files are ordered by their modification time, which is updated each time a file is
+	 * loaded.</p>
+	 */
+	public void prune() {
+		File[] files = directory.listFiles();
+		if (files == null || files.length <= maxFiles)
+			return;
+		
+		List<File> terrainFiles = new ArrayList<>();
+		for (File file: files) {
+			if (file.isFile() && file.getName().endsWith(FILE_EXTENSION))
+				terrainFiles.add(file);
+		}
+		
+		// newest first
+		Collections.sort(terrainFiles, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsTime = lhs.lastModified(), rhsTime = rhs.lastModified();
+				return (lhsTime > rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1));
+			}
+		});
+		
+		for (int i = maxFiles; i < terrainFiles.size(); i++) {
+			File file = terrainFiles.get(i);
+			if (!file.delete())
+				Log.w(TerrainCache.class.getSimpleName(), "Unable to delete '" + file + "'.");
+		}
+	}
+	
+	
+	/**
+	 * Maps and parses a terrain file.
+	 * 
+	 * @param file The file to read.
+	 * @param wx The expected width (on X).
+	 * @param wy The expected length (on Y).
+	 * @param maxHeight The expected generation's maximum height.
+	 * @param seed The expected seed.
+	 * @return The loaded terrain, null if the file doesn't match the expected parameters / version.
+	 * @throws IOException If the file could not be read.
+	 */
+	protected Terrain read(File file, int wx, int wy, float maxHeight, long seed) throws IOException {
+		MappedByteBuffer data;
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			// the mapping remains valid after the file is closed
+			data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		} finally {
+			in.close();
+		}
+		data.order(ByteOrder.nativeOrder());
+		
+		int typeNum = Terrain.TERRAIN_TYPES.length;
+		if (data.remaining() < getHeaderSize(typeNum))
+			return null;
+		
+		// check the header
+		if (data.getInt() != MAGIC || data.getInt() != VERSION || data.getInt() != BYTE_ORDER_MARK)
+			return null;
+		int flags = data.getInt();
+		if (data.getLong() != seed || data.getInt() != wx || data.getInt() != wy ||
+				data.getFloat() != maxHeight)
+			return null;
+		
+		float terrainMaxHeight = data.getFloat();
+		float heightOffset = data.getFloat();
+		float heightScale = data.getFloat();
+		
+		if (data.getInt() != typeNum)
+			return null;
+		int[] typeCount = new int[typeNum];
+		for (int t = 0; t < typeNum; t++) {
+			typeCount[t] = data.getInt();
+		}
+		
+		boolean quantized = (flags & FLAG_QUANTIZED) != 0;
+		if (data.capacity() != getDataSize(wx, wy, quantized, typeNum))
+			return null;
+		
+		// the height map
+		float[][] heightMap = new float[wx][wy];
+		if (quantized) {
+			ShortBuffer heights = data.asShortBuffer();
+			for (int i = 0; i < wx; i++) {
+				for (int j = 0; j < wy; j++) {
+					heightMap[i][j] = heightOffset + (heights.get() & QUANTIZED_MAX) * heightScale;
+				}
+			}
+			data.position(data.position() + align(wx * wy * 2));
+			
+		} else {
+			FloatBuffer heights = data.asFloatBuffer();
+			for (int i = 0; i < wx; i++) {
+				heights.get(heightMap[i]);
+			}
+			data.position(data.position() + wx * wy * 4);
+		}
+		
+		// the type map
+		byte[][] typeMap = new byte[wx][wy];
+		for (int i = 0; i < wx; i++) {
+			data.get(typeMap[i]);
+		}
+		data.position(data.position() + align(wx * wy) - wx * wy);
+		
+		// the mesh (used directly from the mapped file)
+		FloatBuffer normals = slice(data, wx * wy * 3 * 4).asFloatBuffer();
+		FloatBuffer weights = slice(data, wx * wy * TerrainMesh.WEIGHT_COUNT * 4).asFloatBuffer();
+		
+		return new Terrain(seed, heightMap, typeMap, typeCount, terrainMaxHeight,
+				new TerrainMesh(normals, weights));
+	}
+	
+	/**
+	 * Serializes a terrain.
+	 * 
+	 * @param terrain The terrain to serialize.
+	 * @param maxHeight The maximum height that the terrain was generated with.
+	 * @param quantize Whether to quantize the heights to 16 bits.
+	 * @return The serialized data.
+	 */
+	protected static ByteBuffer write(Terrain terrain, float maxHeight, boolean quantize) {
+		int[] dims = terrain.getMatrixDimensions();
+		float[][] heightMap = terrain.getHeightMap();
+		byte[][] typeMap = terrain.getTypeMap();
+		int[] typeCount = terrain.getTypeCount();
+		TerrainMesh mesh = terrain.getMesh();
+		
+		int typeNum = Terrain.TERRAIN_TYPES.length;
+		
+		// compute the quantization's range
+		float heightOffset = 0, heightScale = 0;
+		if (quantize) {
+			float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+			for (float[] row: heightMap) {
+				for (float h: row) {
+					min = Math.min(min, h);
+					max = Math.max(max, h);
+				}
+			}
+			heightOffset = min;
+			heightScale = (max - min) / QUANTIZED_MAX;
+		}
+		
+		ByteBuffer data = ByteBuffer.allocate(getDataSize(dims[0], dims[1], quantize, typeNum));
+		data.order(ByteOrder.nativeOrder());
+		
+		// the header
+		data.putInt(MAGIC).putInt(VERSION).putInt(BYTE_ORDER_MARK);
+		data.putInt(quantize ? FLAG_QUANTIZED : 0);
+		data.putLong(terrain.getSeed()).putInt(dims[0]).putInt(dims[1]).putFloat(maxHeight);
+		data.putFloat(terrain.getMaxHeight()).putFloat(heightOffset).putFloat(heightScale);
+		data.putInt(typeNum);
+		for (int t = 0; t < typeNum; t++) {
+			data.putInt(typeCount[t]);
+		}
+		
+		// the height map
+		for (float[] row: heightMap) {
+			for (float h: row) {
+				if (quantize) {
+					int q = (heightScale > 0 ? Math.round((h - heightOffset) / heightScale) : 0);
+					data.putShort((short)Math.min(Math.max(q, 0), QUANTIZED_MAX));
+				} else {
+					data.putFloat(h);
+				}
+			}
+		}
+		pad(data);
+		
+		// the type map
+		for (byte[] row: typeMap) {
+			data.put(row);
+		}
+		pad(data);
+		
+		// the mesh
+		data.asFloatBuffer().put(mesh.getNormals().duplicate());
+		data.position(data.position() + dims[0] * dims[1] * 3 * 4);
+		data.asFloatBuffer().put(mesh.getWeights().duplicate());
+		data.position(data.position() + dims[0] * dims[1] * TerrainMesh.WEIGHT_COUNT * 4);
+		
+		data.flip();
+		return data;
+	}
+	
+	/**
+	 * Returns the size of a file's header.
+	 * 
+	 * @param typeNum The number of terrain types.
+	 * @return The header size, in bytes.
+	 */
+	protected static int getHeaderSize(int typeNum) {
+		return 4 * 4 + 8 + 4 * 6 + 4 + typeNum * 4;
+	}
+	
+	/**
+	 * Computes the size of a terrain file.
+	 * 
+	 * @param wx Terrain's width (on X).
+	 * @param wy Terrain's length (on Y).
+	 * @param quantized Whether the heights are quantized.
+	 * @param typeNum The number of terrain types.
+	 * @return The file size, in bytes.
+	 */
+	protected static int getDataSize(int wx, int wy, boolean quantized, int typeNum) {
+		int points = wx * wy;
+		return getHeaderSize(typeNum) + align(points * (quantized ? 2 : 4)) + align(points) + 
+				points * (3 + TerrainMesh.WEIGHT_COUNT) * 4;
+	}
+	
+	/**
+	 * Rounds a size up to a multiple of 4.
+	 * 
+	 * @param size The size to align.
+	 * @return The aligned size.
+	 */
+	protected static int align(int size) {
+		return (size + 3) & ~3;
+	}
+	
+	/**
+	 * Advances the buffer's position to a 4 byte boundary.
+	 * 
+	 * @param data The buffer to pad.
+	 */
+	protected static void pad(ByteBuffer data) {
+		while ((data.position() & 3) != 0) {
+			data.put((byte)0);
+		}
+	}
+	
+	/**
+	 * Slices the next bytes of a buffer (and advances its position past them).
+	 * 
+	 * @param data The source buffer.
+	 * @param length The number of bytes to slice.
+	 * @return The slice (native-ordered).
+	 */
+	protected static ByteBuffer slice(ByteBuffer data, int length) {
+		ByteBuffer slice = data.slice();
+		slice.limit(length);
+		data.position(data.position() + length);
+		return slice.order(ByteOrder.nativeOrder());
+	}
+	
+	
+	// getters / setters
+	
+	/**
+	 * Returns the minimum number of points of a height map for it to be stored quantized.
+	 * 
+	 * @return The quantization threshold.
+	 */
+	@SuppressWarnings("unused")
+	public int getQuantizeThreshold() {
+		return quantizeThreshold;
+	}
+	
+	/**
+	 * Sets the minimum number of points of a height map for it to be stored quantized.
+	 * 
+	 * <p>Quantized heights take half the space, with a precision of 1 / 65535 of the terrain's
+	 * height range. Use 0 to always quantize the heights and {@link Integer#MAX_VALUE} to never
+	 * quantize them.</p>
+	 * 
+	 * @param quantizeThreshold The new threshold.
+	 */
+	@SuppressWarnings("unused")
+	public void setQuantizeThreshold(int quantizeThreshold) {
+		this.quantizeThreshold = quantizeThreshold;
+	}
+	
+	/**
+	 * Returns the maximum number of terrain files kept in the cache directory.
+	 * 
+	 * @return The maximum number of files.
+	 */
+	@SuppressWarnings("unused")
+	public int getMaxFiles() {
+		return maxFiles;
+	}
+	
+	/**
+	 * Sets the maximum number of terrain files kept in the cache directory (applied when the
+	 * next terrain is saved).
+	 * 
+	 * @param maxFiles The new maximum number of files.
+	 */
+	@SuppressWarnings("unused")
+	public void setMaxFiles(int maxFiles) {
+		this.maxFiles = maxFiles;
+	}
+	
+}
@@ -0,0 +1,191 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import ro.pub.dadgm.pf22.render.utils.BufferUtils;
+import ro.pub.dadgm.pf22.utils.WorkerPool;
+
+/**
+ * Stores the baked lighting of a terrain (one luminance texel for each point of the height map).
+ * 
+ * <p>Since both the terrain and the light are static, the lighting is computed once (see
+ * {@link #bake}), after the terrain was generated: each texel holds the diffuse lighting of its
+ * point plus the ambient term, attenuated by the point's ambient occlusion. The view dependent
+ * (specular) term is not baked.</p>
+ * 
+ * <p>The texels are indexed by <code>i * width_y + j</code> (like the mesh's vertices) and store
+ * the light's intensity scaled by {@link #LIGHT_RANGE} (so the values above 1 are preserved).</p>
+ */
+public class TerrainLightmap {
+	
+	/**
+	 * The ambient light's intensity.
+	 */
+	public static final float AMBIENT = 0.3f;
+	
+	/**
+	 * The diffuse light's intensity.
+	 */
+	public static final float DIFFUSE = 1.0f;
+	
+	/**
+	 * The maximum light intensity that can be stored (mapped to the texel value 255).
+	 */
+	public static final float LIGHT_RANGE = 2.0f;
+	
+	/**
+	 * The number of directions that the horizon is searched on (for the ambient occlusion).
+	 */
+	public static final int AO_DIRECTIONS = 8;
+	
+	/**
+	 * The number of samples on each direction (the distance doubles after each sample, starting
+	 * from 1 point).
+	 */
+	public static final int AO_STEPS = 5;
+	
+	/**
+	 * The lightmap's dimensions (the same as the height map's).
+	 */
+	protected final int width, length;
+	
+	/**
+	 * The luminance texels (a byte for each point).
+	 */
+	protected final ByteBuffer texels;
+	
+	
+	/**
+	 * Initializes a lightmap object with the specified data.
+	 * 
+	 * @param width The width (on X).
+	 * @param length The length (on Y).
+	 * @param texels The luminance texels buffer.
+	 */
+	public TerrainLightmap(int width, int length, ByteBuffer texels) {
+		this.width = width;
+		this.length = length;
+		this.texels = texels;
+	}
+	
+	/**
+	 * Bakes the lighting of a terrain.
+	 * 
+	 * <p>The light is a point light at the specified (world) position. The ambient occlusion is
+	 * horizon based: on each of the {@link #AO_DIRECTIONS} directions, the highest elevation of
+	 * the terrain (as seen from the point) occludes the sky in proportion with its sine. The
+	 * points are independent, so the rows are computed in parallel.</p>
+	 * 
+	 * @param terrain The terrain to bake the lighting of.
+	 * @param lightPosition The light's position (x, y, z).
+	 * @return The new lightmap object.
+	 */
+	public static TerrainLightmap bake(Terrain terrain, final float[] lightPosition) {
+		final int[] dims = terrain.getMatrixDimensions();
+		final float[][] heightMap = terrain.getHeightMap();
+		final FloatBuffer normals = terrain.getMesh().getNormals();
+		final byte[] texels = new byte[dims[0] * dims[1]];
+		
+		WorkerPool.parallelFor(dims[0], new WorkerPool.IndexedTask() {
+			@Override
+			public void run(int i) {
+				for (int j = 0; j < dims[1]; j++) {
+					int v = i * dims[1] + j;
+					
+					// the diffuse term
+					float lx = lightPosition[0] - i * Terrain.UNIT_SCALE;
+					float ly = lightPosition[1] - j * Terrain.UNIT_SCALE;
+					float lz = lightPosition[2] - heightMap[i][j];
+					float distance = (float)Math.sqrt(lx * lx + ly * ly + lz * lz);
+					float lambertian = (distance > 0 ? Math.max(0, (normals.get(v * 3) * lx +
+							normals.get(v * 3 + 1) * ly + normals.get(v * 3 + 2) * lz) / distance) : 1);
+					
+					float light = AMBIENT * computeOcclusion(heightMap, i, j) + DIFFUSE * lambertian;
+					texels[v] = (byte)Math.round(Math.min(light / LIGHT_RANGE, 1) * 255);
+				}
+			}
+		});
+		
+		return new TerrainLightmap(dims[0], dims[1], BufferUtils.asBuffer(texels));
+	}
+	
+	/**
+	 * Computes the ambient occlusion of a height map point.
+	 * 
+	 * @param heightMap The height map.
+	 * @param i The point's X coordinate.
+	 * @param j The point's Y coordinate.
+	 * @return The fraction of the sky that is visible from the point (1 if not occluded).
+	 */
+	public static float computeOcclusion(float[][] heightMap, int i, int j) {
+		int wx = heightMap.length, wy = heightMap[0].length;
+		float h = heightMap[i][j];
+		
+		float occlusion = 0;
+		for (int d = 0; d < AO_DIRECTIONS; d++) {
+			double angle = 2 * Math.PI * d / AO_DIRECTIONS;
+			float dx = (float)Math.cos(angle), dy = (float)Math.sin(angle);
+			
+			// find the horizon's maximum slope (the samples outside the terrain are skipped)
+			float maxSlope = 0;
+			for (int s = 0, dist = 1; s < AO_STEPS; s++, dist *= 2) {
+				int si = i + Math.round(dx * dist), sj = j + Math.round(dy * dist);
+				if (si < 0 || sj < 0 || si >= wx || sj >= wy)
+					break;
+				
+				float horizontal = (float)Math.sqrt((si - i) * (si - i) + (sj - j) * (sj - j)) * Terrain.UNIT_SCALE;
+				maxSlope = Math.max(maxSlope, (heightMap[si][sj] - h) / horizontal);
+			}
+			
+			// the sine of the horizon's elevation
+			occlusion += maxSlope / (float)Math.sqrt(maxSlope * maxSlope + 1);
+		}
+		
+		return 1 - occlusion / AO_DIRECTIONS;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the lightmap's width (on X).
+	 * 
+	 * @return The width, in texels.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the lightmap's length (on Y).
+	 * 
+	 * @return The length, in texels.
+	 */
+	public int getLength() {
+		return length;
+	}
+	
+	/**
+	 * Returns the luminance texels buffer (a byte for each point).
+	 * 
+	 * <p>Use {@link ByteBuffer#duplicate()} if the buffer's position needs to be changed.</p>
+	 * 
+	 * @return The texels buffer.
+	 */
+	public ByteBuffer getTexels() {
+		return texels;
+	}
+	
+	/**
+	 * Returns the light intensity of a point.
+	 * 
+	 * @param i The point's X coordinate.
+	 * @param j The point's Y coordinate.
+	 * @return The light intensity (in the [0, {@link #LIGHT_RANGE}] range).
+	 */
+	public float getLight(int i, int j) {
+		return (texels.get(i * length + j) & 0xFF) / 255f * LIGHT_RANGE;
+	}
+	
+}
@@ -0,0 +1,166 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import java.nio.FloatBuffer;
+
+import ro.pub.dadgm.pf22.render.utils.BufferUtils;
+import ro.pub.dadgm.pf22.utils.WorkerPool;
+
+/**
+ * Stores the precomputed geometry of a terrain (the vertex normals and texture blend weights).
+ * 
+ * <p>The vertices are the points of the height map, indexed by <code>i * width_y + j</code>.
+ * The geometry is derived from the height map, so it can either be built using {@link #build} 
+ * or loaded from the {@link TerrainCache}. The triangles are not stored, since they depend on 
+ * the level of detail that the terrain is rendered with.</p>
+ * 
+ * <p>The buffers are native-ordered (they can be directly uploaded to the GPU) and must not be
+ * modified.</p>
+ */
+public class TerrainMesh {
+	
+	/**
+	 * The number of blend weights of each vertex (one for each terrain type).
+	 */
+	public static final int WEIGHT_COUNT = Terrain.TERRAIN_TYPES.length;
+	
+	/**
+	 * The radius (in points) of the neighborhood that a vertex's blend weights are computed from.
+	 */
+	public static final int BLEND_RADIUS = 1;
+	
+	/**
+	 * The vertex normals (3 floats for each vertex).
+	 */
+	protected final FloatBuffer normals;
+	
+	/**
+	 * The texture blend weights ({@link #WEIGHT_COUNT} floats for each vertex, see
+	 * {@link #computeWeights}).
+	 */
+	protected final FloatBuffer weights;
+	
+	
+	/**
+	 * Initializes a mesh object with the specified data.
+	 * 
+	 * @param normals The vertex normals buffer.
+	 * @param weights The texture blend weights buffer.
+	 */
+	public TerrainMesh(FloatBuffer normals, FloatBuffer weights) {
+		this.normals = normals;
+		this.weights = weights;
+	}
+	
+	/**
+	 * Builds the mesh of the specified terrain.
+	 * 
+	 * <p>The normal of a vertex is computed from the height map's slopes, using central 
+	 * differences (one-sided on the borders), and its blend weights from the type map (see 
+	 * {@link #computeWeights}). Each vertex only depends on the terrain's maps, so the rows are 
+	 * computed in parallel, directly into primitive arrays.</p>
+	 * 
+	 * @param terrain The terrain to build the mesh for.
+	 * @return The new mesh object.
+	 */
+	public static TerrainMesh build(Terrain terrain) {
+		final int[] dims = terrain.getMatrixDimensions();
+		final float[][] heightMap = terrain.getHeightMap();
+		final byte[][] typeMap = terrain.getTypeMap();
+		final float[] normals = new float[dims[0] * dims[1] * 3];
+		final float[] weights = new float[dims[0] * dims[1] * WEIGHT_COUNT];
+		
+		WorkerPool.parallelFor(dims[0], new WorkerPool.IndexedTask() {
+			@Override
+			public void run(int i) {
+				int i0 = Math.max(i - 1, 0), i1 = Math.min(i + 1, dims[0] - 1);
+				for (int j = 0; j < dims[1]; j++) {
+					int j0 = Math.max(j - 1, 0), j1 = Math.min(j + 1, dims[1] - 1);
+					
+					float slopeX = (heightMap[i1][j] - heightMap[i0][j]) / ((i1 - i0) * Terrain.UNIT_SCALE);
+					float slopeY = (heightMap[i][j1] - heightMap[i][j0]) / ((j1 - j0) * Terrain.UNIT_SCALE);
+					computeNormal(normals, (i * dims[1] + j) * 3, slopeX, slopeY);
+					computeWeights(typeMap, i, j, weights, (i * dims[1] + j) * WEIGHT_COUNT);
+				}
+			}
+		});
+		
+		return new TerrainMesh(BufferUtils.asBuffer(normals), BufferUtils.asBuffer(weights));
+	}
+	
+	/**
+	 * Computes the (unit) normal of a height map surface from its slopes.
+	 * 
+	 * @param normals The array to store the normal into.
+	 * @param offset The normal's offset inside the array.
+	 * @param slopeX The height's derivative on X.
+	 * @param slopeY The height's derivative on Y.
+	 */
+	public static void computeNormal(float[] normals, int offset, float slopeX, float slopeY) {
+		float length = (float)Math.sqrt(slopeX * slopeX + slopeY * slopeY + 1);
+		normals[offset] = -slopeX / length;
+		normals[offset + 1] = -slopeY / length;
+		normals[offset + 2] = 1 / length;
+	}
+	
+	/**
+	 * Computes the texture blend weights of a vertex from the types of its neighborhood.
+	 * 
+	 * <p>Each point within {@link #BLEND_RADIUS} contributes to the weight of its type with a tent
+	 * filter (the closer points weigh more) and the weights are normalized to sum to 1. So a 
+	 * vertex inside a region of a single type only samples that type's texture, while the 
+	 * borders between types are smoothly blended. The neighborhood is clamped to the map's 
+	 * borders.</p>
+	 * 
+	 * @param typeMap The type map.
+	 * @param i The vertex's X coordinate (inside the type map).
+	 * @param j The vertex's Y coordinate (inside the type map).
+	 * @param weights The array to store the weights into.
+	 * @param offset The weights' offset inside the array.
+	 */
+	public static void computeWeights(byte[][] typeMap, int i, int j, float[] weights, int offset) {
+		for (int t = 0; t < WEIGHT_COUNT; t++) {
+			weights[offset + t] = 0;
+		}
+		
+		float total = 0;
+		int i0 = Math.max(i - BLEND_RADIUS, 0), i1 = Math.min(i + BLEND_RADIUS, typeMap.length - 1);
+		int j0 = Math.max(j - BLEND_RADIUS, 0), j1 = Math.min(j + BLEND_RADIUS, typeMap[0].length - 1);
+		for (int ni = i0; ni <= i1; ni++) {
+			for (int nj = j0; nj <= j1; nj++) {
+				float w = (BLEND_RADIUS + 1 - Math.abs(ni - i)) * (BLEND_RADIUS + 1 - Math.abs(nj - j));
+				weights[offset + typeMap[ni][nj]] += w;
+				total += w;
+			}
+		}
+		
+		for (int t = 0; t < WEIGHT_COUNT; t++) {
+			weights[offset + t] /= total;
+		}
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the vertex normals buffer (3 floats for each vertex).
+	 * 
+	 * <p>Use {@link FloatBuffer#duplicate()} if the buffer's position needs to be changed.</p>
+	 * 
+	 * @return The normals buffer.
+	 */
+	public FloatBuffer getNormals() {
+		return normals;
+	}
+	
+	/**
+	 * Returns the texture blend weights buffer ({@link #WEIGHT_COUNT} floats for each vertex).
+	 * 
+	 * <p>Use {@link FloatBuffer#duplicate()} if the buffer's position needs to be changed.</p>
+	 * 
+	 * @return The weights buffer.
+	 */
+	public FloatBuffer getWeights() {
+		return weights;
+	}
+	
+}
@@ -0,0 +1,176 @@
+package ro.pub.dadgm.pf22.game.models;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A square page of a {@link StreamedTerrain}.
+ * 
+ * <p>A page covers {@link StreamedTerrain#PAGE_SIZE} x {@link StreamedTerrain#PAGE_SIZE} quads,
+ * so it stores <code>PAGE_SIZE + 1</code> points on each side (the points of an edge are shared
+ * with the neighboring page and have the same values in both).</p>
+ * 
+ * <p>Pages are immutable once generated, so they can be read from any thread without locking.</p>
+ */
+public class TerrainPage {
+	
+	/**
+	 * The page's coordinates (in pages).
+	 */
+	protected final int pageX, pageY;
+	
+	/**
+	 * The height map of the page's points.
+	 * 
+	 * <p>The array is indexed first by X, then Y (local to the page).</p>
+	 */
+	protected final float[][] heightMap;
+	
+	/**
+	 * The terrain type of each point (index of {@link Terrain#TERRAIN_TYPES}).
+	 */
+	protected final byte[][] typeMap;
+	
+	/**
+	 * The vertex normals (3 floats for each point, indexed by <code>i * (PAGE_SIZE + 1) + j</code>).
+	 */
+	protected final FloatBuffer normals;
+	
+	/**
+	 * The texture blend weights ({@link TerrainMesh#WEIGHT_COUNT} floats for each point, indexed
+	 * like the normals).
+	 */
+	protected final FloatBuffer weights;
+	
+	/**
+	 * The quadtree of the page's heights.
+	 */
+	protected final HeightQuadtree heightTree;
+	
+	
+	/**
+	 * Initializes a page with the specified (generated) data (and builds its height quadtree).
+	 * 
+	 * @param pageX The page's X coordinate (in pages).
+	 * @param pageY The page's Y coordinate (in pages).
+	 * @param heightMap The height map.
+	 * @param typeMap The terrain type map.
+	 * @param normals The vertex normals buffer.
+	 * @param weights The texture blend weights buffer.
+	 */
+	public TerrainPage(int pageX, int pageY, float[][] heightMap, byte[][] typeMap, 
+					   FloatBuffer normals, FloatBuffer weights) {
+		this.pageX = pageX;
+		this.pageY = pageY;
+		this.heightMap = heightMap;
+		this.typeMap = typeMap;
+		this.normals = normals;
+		this.weights = weights;
+		this.heightTree = new HeightQuadtree(heightMap, pageX * StreamedTerrain.PAGE_SIZE,
+				pageY * StreamedTerrain.PAGE_SIZE);
+	}
+	
+	/**
+	 * Packs a page's coordinates into a single key.
+	 * 
+	 * @param pageX The page's X coordinate.
+	 * @param pageY The page's Y coordinate.
+	 * @return The page's key.
+	 */
+	public static long getKey(int pageX, int pageY) {
+		return ((long)pageX << 32) | (pageY & 0xFFFFFFFFL);
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the page's X coordinate.
+	 * 
+	 * @return The X coordinate (in pages).
+	 */
+	public int getPageX() {
+		return pageX;
+	}
+	
+	/**
+	 * Returns the page's Y coordinate.
+	 * 
+	 * @return The Y coordinate (in pages).
+	 */
+	public int getPageY() {
+		return pageY;
+	}
+	
+	/**
+	 * Returns the page's key (see {@link #getKey(int, int)}).
+	 * 
+	 * @return The page's key.
+	 */
+	public long getKey() {
+		return getKey(pageX, pageY);
+	}
+	
+	/**
+	 * Returns the page's height map.
+	 * 
+	 * <p>The map should not be modified!</p>
+	 * 
+	 * @return The height map.
+	 */
+	public float[][] getHeightMap() {
+		return heightMap;
+	}
+	
+	/**
+	 * Returns the page's terrain type map.
+	 * 
+	 * <p>The map should not be modified!</p>
+	 * 
+	 * @return The type map.
+	 */
+	public byte[][] getTypeMap() {
+		return typeMap;
+	}
+	
+	/**
+	 * Returns the page's vertex normals.
+	 * 
+	 * <p>The buffer should not be modified!</p>
+	 * 
+	 * @return The normals buffer.
+	 */
+	public FloatBuffer getNormals() {
+		return normals;
+	}
+	
+	/**
+	 * Returns the page's texture blend weights.
+	 * 
+	 * <p>The buffer should not be modified!</p>
+	 * 
+	 * @return The weights buffer.
+	 */
+	public FloatBuffer getWeights() {
+		return weights;
+	}
+	
+	/**
+	 * Returns the quadtree of the page's heights.
+	 * 
+	 * @return The height quadtree.
+	 */
+	public HeightQuadtree getHeightTree() {
+		return heightTree;
+	}
+	
+	/**
+	 * Returns the memory used by the page's data.
+	 * 
+	 * @return The (approximate) size, in bytes.
+	 */
+	public long getMemorySize() {
+		long points = (long)heightMap.length * heightMap[0].length;
+		return points * (4 + 1) + (normals.capacity() + weights.capacity()) * 4;
+	}
+	
+}
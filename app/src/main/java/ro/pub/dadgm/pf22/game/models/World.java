@@ -18,6 +18,9 @@ import ro.pub.dadgm.pf22.utils.events.CollectionListener;
  * The maximum elevation is defined in {@link #WORLD_MAX_HEIGHT} and if a plane exceeds it, it will 
  * be set back to an inferior location.</p>
  * 
+ * <p>In the endless mode, the world has no horizontal limits: its terrain is a 
+ * {@link StreamedTerrain}, generated in pages around the player.</p>
+ * 
  * <p>This class acts as a container of other model objects and manages them. 
  * All methods are thread-safe and can be called from any thread (unless otherwise noted).</p>
  */
@@ -28,7 +31,8 @@ public class World extends BaseModel {
 	/**
 	 * World's horizontal space (X and Y).
 	 * 
-	 * <p>Warning: their product must be smaller than the maximum value of a unsigned short (65536)!</p>
+	 * <p>The terrain is rendered in chunks (with their own vertex indices), so its size is not 
+	 * limited by the 16-bit indices.</p>
 	 */
 	public static float WORLD_WIDTH_X = 50 * Terrain.UNIT_SCALE;
 	public static float WORLD_WIDTH_Y = 50 * Terrain.UNIT_SCALE;
@@ -42,9 +46,15 @@ public class World extends BaseModel {
 	// world components
 	
 	/**
-	 * Defines the terrain object.
+	 * Defines the terrain object (a {@link Terrain} or, for an endless world, a
+	 * {@link StreamedTerrain}).
+	 */
+	protected HeightField terrain;
+	
+	/**
+	 * Whether the world is endless (see {@link StreamedTerrain}).
 	 */
-	protected Terrain terrain;
+	protected boolean endless;
 	
 	/**
 	 * Player's Plane object.
@@ -94,12 +104,53 @@ public class World extends BaseModel {
 	
 	/**
 	 * Model object constructor.
+	 * 
+	 * @param seed The seed used to generate the world's terrain.
+	 */
+	public World(long seed) {
+		this(seed, null);
+	}
+	
+	/**
+	 * Model object constructor.
+	 * 
+	 * <p>If a terrain cache is given, the terrain is loaded from it (if it was already generated) 
+	 * or generated and stored into it (together with its mesh).</p>
+	 * 
+	 * @param seed The seed used to generate the world's terrain.
+	 * @param terrainCache The terrain cache to use (optional).
 	 */
-	public World() {
-		// generate the terrain
-		terrain = new Terrain((int)Math.ceil(WORLD_WIDTH_X / Terrain.UNIT_SCALE),
-				(int)Math.ceil(WORLD_WIDTH_Y / Terrain.UNIT_SCALE), 
-				WORLD_MAX_HEIGHT * 0.5f);
+	public World(long seed, TerrainCache terrainCache) {
+		this(seed, terrainCache, false);
+	}
+	
+	/**
+	 * Model object constructor.
+	 * 
+	 * <p>The terrain of an endless world is streamed, so it is never cached.</p>
+	 * 
+	 * @param seed The seed used to generate the world's terrain.
+	 * @param terrainCache The terrain cache to use (optional).
+	 * @param endless Whether to create an endless world.
+	 */
+	public World(long seed, TerrainCache terrainCache, boolean endless) {
+		int wx = (int)Math.ceil(WORLD_WIDTH_X / Terrain.UNIT_SCALE);
+		int wy = (int)Math.ceil(WORLD_WIDTH_Y / Terrain.UNIT_SCALE);
+		float maxHeight = WORLD_MAX_HEIGHT * 0.5f;
+		
+		// load or generate the terrain
+		this.endless = endless;
+		terrain = null;
+		if (endless)
+			terrain = new StreamedTerrain(maxHeight, seed);
+		else if (terrainCache != null)
+			terrain = terrainCache.load(wx, wy, maxHeight, seed);
+		if (terrain == null) {
+			Terrain generatedTerrain = new Terrain(wx, wy, maxHeight, seed);
+			if (terrainCache != null)
+				terrainCache.save(generatedTerrain, maxHeight);
+			terrain = generatedTerrain;
+		}
 		
 		player = new PrimaryPlane();
 		
@@ -127,10 +178,21 @@ public class World extends BaseModel {
 	 *
 	 * @return The terrain object of the world.
 	 */
-	public synchronized Terrain getTerrain() {
+	public synchronized HeightField getTerrain() {
 		return terrain;
 	}
 	
+	/**
+	 * Returns whether the world is endless.
+	 * 
+	 * <p>If true, the terrain is a {@link StreamedTerrain}.</p>
+	 * 
+	 * @return True for an endless world.
+	 */
+	public synchronized boolean isEndless() {
+		return endless;
+	}
+	
 	/**
 	 * Returns the player's plane object.
 	 *
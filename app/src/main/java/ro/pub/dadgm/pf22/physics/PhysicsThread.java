@@ -3,6 +3,9 @@ package ro.pub.dadgm.pf22.physics;
 import java.util.Set;
 
 import ro.pub.dadgm.pf22.utils.Vector3D;
+import ro.pub.dadgm.pf22.utils.metrics.Counter;
+import ro.pub.dadgm.pf22.utils.metrics.Histogram;
+import ro.pub.dadgm.pf22.utils.metrics.Metrics;
 
 /**
  * The main physics simulation thread.
@@ -26,6 +29,31 @@ public class PhysicsThread extends Thread {
 	 */
 	public final int PHYSICS_SIMULATION_PERIOD = 50; // milliseconds
 	
+	/**
+	 * The simulation steps' duration (microseconds).
+	 */
+	protected static final Histogram TICK_TIME = Metrics.histogram("physics.tick_time", "us");
+	
+	/**
+	 * The number of simulation steps.
+	 */
+	protected static final Counter TICKS = Metrics.counter("physics.ticks");
+	
+	/**
+	 * The number of objects whose movement was integrated.
+	 */
+	protected static final Counter OBJECTS_INTEGRATED = Metrics.counter("physics.objects_integrated");
+	
+	/**
+	 * The number of object pairs tested for collisions.
+	 */
+	protected static final Counter PAIRS_TESTED = Metrics.counter("physics.pairs_tested");
+	
+	/**
+	 * The number of collisions found.
+	 */
+	protected static final Counter COLLISIONS = Metrics.counter("physics.collisions");
+	
 	
 	/**
 	 * The simulated mobile objects collection. 
@@ -61,6 +89,11 @@ public class PhysicsThread extends Thread {
 	 */
 	protected long pausedTimeElapsed;
 	
+	/**
+	 * The duration of the last simulation step (milliseconds).
+	 */
+	protected volatile float stepTime = 0;
+	
 	
 	/**
 	 * Initializes the physics simulation for the specified set of objects.
@@ -115,15 +148,29 @@ public class PhysicsThread extends Thread {
 			// check for collisions
 			@SuppressWarnings("unchecked")
 			CollisionObject[] collidableObjectsSnapshot = collidableObjects.toArray(new CollisionObject[collidableObjects.size()]);
+			int collisions = 0;
 			for (int i = 0; i < collidableObjectsSnapshot.length; i++) {
 				for (int j = i + 1; j < collidableObjectsSnapshot.length; j++) {
 					if (collidableObjectsSnapshot[i].collidesWith(collidableObjectsSnapshot[j])) {
 						// return an event
 						listener.onCollisionDetected(collidableObjectsSnapshot[i], collidableObjectsSnapshot[j]);
+						collisions++;
 					}
 				}
 			}
 			
+			long stepNanos = System.nanoTime() - now;
+			stepTime = stepNanos / 1000000f;
+			
+			if (Metrics.isEnabled()) {
+				int collidables = collidableObjectsSnapshot.length;
+				TICK_TIME.record(stepNanos / 1000);
+				TICKS.increment();
+				OBJECTS_INTEGRATED.add(mobileObjectsSnapshot.length);
+				PAIRS_TESTED.add(collidables * (collidables - 1) / 2);
+				COLLISIONS.add(collisions);
+			}
+			
 			// wait and repeat
 			try {
 				sleep(PHYSICS_SIMULATION_PERIOD, 0);
@@ -153,6 +200,15 @@ public class PhysicsThread extends Thread {
 		lastTime = System.nanoTime() - pausedTimeElapsed;
 	}
 	
+	/**
+	 * Returns the duration of the last simulation step (without the wait).
+	 * 
+	 * @return The step's duration, in milliseconds.
+	 */
+	public float getStepTime() {
+		return stepTime;
+	}
+	
 	/**
 	 * Calculates the new position for an object.
 	 * 
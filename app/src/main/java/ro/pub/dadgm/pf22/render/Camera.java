@@ -2,6 +2,8 @@ package ro.pub.dadgm.pf22.render;
 
 import android.opengl.Matrix;
 
+import ro.pub.dadgm.pf22.render.utils.FrustumUtils;
+
 /**
  * Stores 3D scene camera information (the view and projection matrices).
  */
@@ -32,7 +34,7 @@ public class Camera {
 	 * Stores the viewport's width/height ratio (used to determine if portrait or landscape).
 	 */
 	protected float viewportRatio;
-
+	
 	/**
 	 * Viewport's dimensions (in pixels).
 	 */
@@ -94,7 +96,7 @@ public class Camera {
 		
 		return outVec;
 	}
-
+	
 	/**
 	 * Computes the reverse V*P matrix and stores it into the {@link #reverseMatrix} field.
 	 * 
@@ -119,6 +121,29 @@ public class Camera {
 		return tmpMatrix;
 	}
 	
+	/**
+	 * Computes the camera's position in world space (from the view matrix).
+	 * 
+	 * @return The camera's position (x, y, z).
+	 */
+	public float[] computePosition() {
+		float[] tmpMatrix = new float[16];
+		Matrix.invertM(tmpMatrix, 0, viewMatrix, 0);
+		
+		return new float[] { tmpMatrix[12], tmpMatrix[13], tmpMatrix[14] };
+	}
+	
+	/**
+	 * Computes the view frustum's planes in world space.
+	 * 
+	 * @param planes The array to store the planes into (see {@link FrustumUtils}).
+	 */
+	public void computeFrustumPlanes(float[] planes) {
+		float[] tmpMatrix = new float[16];
+		Matrix.multiplyMM(tmpMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+		FrustumUtils.extractPlanes(planes, tmpMatrix);
+	}
+	
 	// getters / setters
 	
 	/**
@@ -145,7 +170,7 @@ public class Camera {
 	
 	/**
 	 * Returns the camera's projection matrix.
-	 *
+	 * 
 	 * @return The GL projection matrix.
 	 */
 	public float[] getProjectionMatrix() {
@@ -154,7 +179,7 @@ public class Camera {
 	
 	/**
 	 * Sets the camera's projection matrix.
-	 *
+	 * 
 	 * @param projectionMatrix The GL projection matrix.
 	 */
 	public void setProjectionMatrix(float[] projectionMatrix) {
@@ -173,7 +198,25 @@ public class Camera {
 	public float getViewportRatio() {
 		return viewportRatio;
 	}
-
+	
+	/**
+	 * Returns the viewport's width.
+	 * 
+	 * @return Viewport's width (window pixels).
+	 */
+	public float getViewportWidth() {
+		return viewportDims[0];
+	}
+	
+	/**
+	 * Returns the viewport's height.
+	 * 
+	 * @return Viewport's height (window pixels).
+	 */
+	public float getViewportHeight() {
+		return viewportDims[1];
+	}
+	
 	/**
 	 * Sets the viewport dimensions.
 	 * 
@@ -2,20 +2,48 @@ package ro.pub.dadgm.pf22.render;
 
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
+import android.util.Log;
+
+import java.io.File;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
+import ro.pub.dadgm.pf22.activity.MainActivity;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
+import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
+import ro.pub.dadgm.pf22.render.utils.TextureLoader;
+
 /**
  * Implements the {@link android.opengl.GLSurfaceView.Renderer} interface.
  * 
  * <p>The actual drawing is done inside the {@link View} objects, which can be changed through the 
  * execution of the program using the {@link #setView} method. </p>
  * 
- * <p>All methods except the constructor and {@link #setView} should be called frm the OpenGL thread.</p>
+ * <p>The frames are drawn continuously only while the view animates (see 
+ * {@link View#isAnimating()}) or assets are being uploaded. Otherwise, the surface is switched to 
+ * {@link GLSurfaceView#RENDERMODE_WHEN_DIRTY} and a frame is only drawn when requested (see 
+ * {@link #invalidate()}). The continuous mode is kept for a few more frames after the animation 
+ * stops, so the views that draw a frame late (built in background) show their final state.</p>
+ * 
+ * <p>All methods except the constructor, {@link #setView} and {@link #invalidate()} should be 
+ * called frm the OpenGL thread.</p>
  */
 public class GLRenderer implements GLSurfaceView.Renderer {
 	
+	/**
+	 * The number of frames still drawn continuously after the view stops animating.
+	 */
+	public static final int SETTLE_FRAMES = 2;
+	
+	
+	/**
+	 * The surface whose render mode is switched.
+	 */
+	protected final GLSurfaceView surfaceView;
+	
 	/**
 	 * Whether the GL surface has been initialized.
 	 */
@@ -31,12 +59,45 @@ public class GLRenderer implements GLSurfaceView.Renderer {
 	 */
 	protected int width = -1, height;
 	
+	/**
+	 * The asset manager whose GPU uploads are processed before each frame.
+	 */
+	protected GLAssetManager assetManager;
+	
+	/**
+	 * Records the frames' timing (the views mark their own phases).
+	 */
+	protected final FrameProfiler profiler = FrameProfiler.getInstance();
+	
+	/**
+	 * Whether the frames are currently drawn continuously.
+	 */
+	protected boolean continuous = true;
+	
+	/**
+	 * The number of frames drawn since the view last animated (or a frame was requested).
+	 */
+	protected volatile int idleFrames = 0;
+	
 	
 	/**
-	 * Default constructor.
+	 * Constructs the renderer.
+	 * 
+	 * @param surfaceView The surface to draw on (starts in the continuous render mode).
+	 */
+	public GLRenderer(GLSurfaceView surfaceView) {
+		this.surfaceView = surfaceView;
+		assetManager = GLAssetManager.getInstance();
+	}
+	
+	/**
+	 * Notifies the renderer that the view changed (e.g. it was touched).
+	 * 
+	 * <p>Can be called from any thread. The caller should also request a frame (see 
+	 * {@link GLSurfaceView#requestRender()}).</p>
 	 */
-	public GLRenderer() {
-		// nothing to do
+	public void invalidate() {
+		idleFrames = 0;
 	}
 	
 	
@@ -79,8 +140,24 @@ public class GLRenderer implements GLSurfaceView.Renderer {
 		
 		surfaceCreated = true;
 		
-		if (currentView != null)
+		// a new context was created, all previously loaded GL objects are lost
+		long startTime = System.nanoTime();
+		assetManager.onContextCreated();
+		ShaderLoader.clear();
+		ShaderLoader.initBinaryCache(new File(MainActivity.getAppContext().getCacheDir(), ShaderLoader.BINARY_CACHE_DIR));
+		TextureLoader.clear();
+		
+		if (currentView != null) {
 			currentView.onActivate();
+			
+			// the assets with retained data are already decoded, upload them at once
+			assetManager.update(GLAssetManager.RECOVERY_UPLOAD_BUDGET);
+		}
+		
+		Log.d(GLRenderer.class.getSimpleName(), "Context (re)created in " + 
+				(System.nanoTime() - startTime) / 1000000 + " ms (retained data: " + 
+				RetainedDataCache.getInstance().getSize() + " entries, " + 
+				RetainedDataCache.getInstance().getMemoryUsage() / 1024 + " KB).");
 	}
 	
 	@Override
@@ -94,11 +171,46 @@ public class GLRenderer implements GLSurfaceView.Renderer {
 	
 	@Override
 	public void onDrawFrame(GL10 unused) {
+		profiler.beginFrame();
+		
 		// draw background
 		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 		
+		// upload the assets loaded in background
+		assetManager.update(GLAssetManager.DEFAULT_UPLOAD_BUDGET);
+		profiler.mark(FrameProfiler.PHASE_UPLOAD);
+		
 		if (currentView != null) {
 			currentView.draw();
 		}
+		
+		updateRenderMode();
+		profiler.endFrame();
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Switches between the continuous and the on demand rendering, depending on whether the view 
+	 * still animates.
+	 */
+	protected void updateRenderMode() {
+		boolean animating = (currentView != null && currentView.isAnimating()) || 
+				assetManager.hasPendingUploads();
+		
+		int idle = (animating ? 0 : idleFrames + 1);
+		idleFrames = idle;
+		
+		boolean continuous = (idle <= SETTLE_FRAMES);
+		if (continuous != this.continuous) {
+			this.continuous = continuous;
+			if (!continuous) {
+				// the intervals between the frames drawn on demand are meaningless
+				profiler.reset();
+			}
+			surfaceView.setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY : 
+					GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+		}
 	}
 }
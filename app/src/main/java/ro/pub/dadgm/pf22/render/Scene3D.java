@@ -1,6 +1,7 @@
 package ro.pub.dadgm.pf22.render;
 
 import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.SpriteBatch;
 
 /**
  * Scene3D is the facade interface that {@link View}s use to provide drawing services to the 
@@ -29,4 +30,12 @@ public interface Scene3D {
 	 */
 	public DrawText getDrawText();
 	
+	/**
+	 * Provides access to the scene's sprite batch (used by the HUD objects to queue their quads 
+	 * and text).
+	 * 
+	 * @return The scene's SpriteBatch instance, or null if the scene draws immediately.
+	 */
+	public SpriteBatch getSpriteBatch();
+	
 }
@@ -2,6 +2,8 @@ package ro.pub.dadgm.pf22.render;
 
 import android.opengl.GLES20;
 
+import java.util.Arrays;
+
 import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
 
 /**
@@ -17,10 +19,123 @@ import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
  * 
  * <p>It provides convenience methods for setting attributes uniforms and textures.</p>
  * 
+ * <p>A shader can be a variant of its sources, specialized by a set of preprocessor defines (see 
+ * {@link ShaderLoader}). The common defines and the shading quality tiers are declared here.</p>
+ * 
  * <p>Can be extended to enhance its functionality with that of a specific shader group.</p>
  */
 public class Shader {
 	
+	/**
+	 * Define that enables the diffuse texture (<code>u_texture</code>).
+	 */
+	public static final String DEFINE_TEXTURE = "TEXTURE";
+	
+	/**
+	 * Define that enables the texture's separate alpha plane (<code>u_alphaTexture</code>).
+	 */
+	public static final String DEFINE_ALPHA_TEXTURE = "ALPHA_TEXTURE";
+	
+	/**
+	 * Define that computes the lighting per vertex (instead of per fragment).
+	 */
+	public static final String DEFINE_VERTEX_LIGHTING = "VERTEX_LIGHTING";
+	
+	/**
+	 * Define that disables the specular term of the lighting.
+	 */
+	public static final String DEFINE_NO_SPECULAR = "NO_SPECULAR";
+	
+	/**
+	 * The shading quality tiers.
+	 * 
+	 * <p>The cheaper tiers are meant for the objects whose details can't be seen (e.g. far away
+	 * from the camera).</p>
+	 */
+	public static enum Quality {
+		/**
+		 * Per fragment lighting, with specular highlights.
+		 */
+		HIGH(),
+		
+		/**
+		 * Per fragment lighting, without specular highlights.
+		 */
+		MEDIUM(DEFINE_NO_SPECULAR),
+		
+		/**
+		 * Per vertex diffuse lighting.
+		 */
+		LOW(DEFINE_VERTEX_LIGHTING, DEFINE_NO_SPECULAR);
+		
+		/**
+		 * The camera distance from which the {@link #MEDIUM} tier is used.
+		 */
+		public static final float MEDIUM_DISTANCE = 20f;
+		
+		/**
+		 * The camera distance from which the {@link #LOW} tier is used.
+		 */
+		public static final float LOW_DISTANCE = 60f;
+		
+		/**
+		 * The scale of the tiers' distances (lowered by the quality settings, so the cheaper tiers
+		 * are used closer to the camera).
+		 */
+		private static volatile float distanceScale = 1;
+		
+		/**
+		 * The tier's defines.
+		 */
+		private final String[] defines;
+		
+		
+		/**
+		 * Initializes a quality tier.
+		 * 
+		 * @param defines The tier's defines.
+		 */
+		Quality(String... defines) {
+			this.defines = defines;
+		}
+		
+		/**
+		 * Returns the tier's defines, combined with the specified ones.
+		 * 
+		 * @param extraDefines The other defines of the variant.
+		 * @return The variant's defines.
+		 */
+		public String[] getDefines(String... extraDefines) {
+			String[] result = Arrays.copyOf(defines, defines.length + extraDefines.length);
+			System.arraycopy(extraDefines, 0, result, defines.length, extraDefines.length);
+			return result;
+		}
+		
+		/**
+		 * Selects the quality tier for an object.
+		 * 
+		 * @param distance The object's distance from the camera.
+		 * @return The quality tier to use.
+		 */
+		public static Quality select(float distance) {
+			final float scale = distanceScale;
+			if (distance >= LOW_DISTANCE * scale)
+				return LOW;
+			if (distance >= MEDIUM_DISTANCE * scale)
+				return MEDIUM;
+			return HIGH;
+		}
+		
+		/**
+		 * Sets the scale of the tiers' distances (the level of detail bias).
+		 * 
+		 * @param scale The scale (1 for the default distances).
+		 */
+		public static void setDistanceScale(float scale) {
+			distanceScale = scale;
+		}
+	}
+	
 	/**
 	 * The camera object that contains the view and projection matrices.
 	 */
@@ -31,6 +146,11 @@ public class Shader {
 	 */
 	protected Integer vertexResource, fragmentResource;
 	
+	/**
+	 * The variant's preprocessor defines (null for the base variant).
+	 */
+	protected String[] defines;
+	
 	/**
 	 * The linked shader's handle.
 	 */
@@ -45,10 +165,23 @@ public class Shader {
 	 * @param fragmentResource The fragment shader's android resource identifier.   
 	 */
 	public Shader(int vertexResource, int fragmentResource) {
+		this(vertexResource, fragmentResource, null);
+	}
+	
+	/**
+	 * Loads / initializes a variant of the shader program using the specified raw android 
+	 * resources.
+	 * 
+	 * @param vertexResource The vertex shader's android resource identifier.
+	 * @param fragmentResource The fragment shader's android resource identifier.
+	 * @param defines The variant's preprocessor defines (null for the base variant).
+	 */
+	public Shader(int vertexResource, int fragmentResource, String[] defines) {
 		this.vertexResource = vertexResource;
 		this.fragmentResource = fragmentResource;
+		this.defines = defines;
 		
-		this.program = ShaderLoader.createProgram(vertexResource, fragmentResource, null);
+		this.program = ShaderLoader.createProgram(vertexResource, fragmentResource, defines, null);
 		if (this.program == 0)
 			throw new UnknownError("Unable to load the shader program! Please check the log for errors.");
 	}
@@ -61,7 +194,7 @@ public class Shader {
 	 */
 	public void destroy() {
 		if (vertexResource != null && this.fragmentResource != null) {
-			ShaderLoader.deleteShaders(this.vertexResource, this.fragmentResource);
+			ShaderLoader.deleteShaders(this.vertexResource, this.fragmentResource, this.defines);
 		}
 	}
 	
@@ -88,7 +221,7 @@ public class Shader {
 	public void use() {
 		GLES20.glUseProgram(program);
 	}
-
+	
 	/**
 	 * Returns the specified shader attribute's location.
 	 * 
@@ -101,7 +234,7 @@ public class Shader {
 	
 	/**
 	 * Returns the specified shader uniform's location.
-	 *
+	 * 
 	 * @param uniformName The uniform to return location for.
 	 * @return The uniform's GL handle.
 	 */
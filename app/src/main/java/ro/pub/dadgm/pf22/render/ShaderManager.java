@@ -3,19 +3,37 @@ package ro.pub.dadgm.pf22.render;
 import java.util.HashMap;
 import java.util.Map;
 
+import ro.pub.dadgm.pf22.render.assets.AssetHandle;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
+
 /**
  * Manages a collection of shader programs that are used to draw the scene.
  * 
  * <p>The shaders can be registered by the view or the scene objects.</p>
+ * 
+ * <p>The objects can also pick a variant of a registered shader (specialized by a set of 
+ * preprocessor defines, see {@link #getVariant}); the variants are compiled on first use.</p>
  */
 public class ShaderManager {
 	
 	/**
 	 * A map of available shaders.
 	 * 
-	 * <p>A shader program is identified by a unique name.</p>
+	 * <p>A shader program is identified by a unique name. The programs themselves are shared 
+	 * assets, so the map stores their handles.</p>
+	 */
+	protected Map<String, AssetHandle<Shader>> shaderMap;
+	
+	/**
+	 * The vertex and fragment resources of the registered shaders (for building their variants).
 	 */
-	protected Map<String, Shader> shaderMap;
+	protected Map<String, int[]> resourceMap;
+	
+	/**
+	 * The last camera sent to the shaders (for the variants created afterwards).
+	 */
+	protected Camera camera = null;
 	
 	
 	/**
@@ -23,6 +41,7 @@ public class ShaderManager {
 	 */
 	public ShaderManager() {
 		shaderMap = new HashMap<>();
+		resourceMap = new HashMap<>();
 	}
 	
 	/**
@@ -33,9 +52,16 @@ public class ShaderManager {
 	 * @param fragmentResource The fragment shader's android resource identifier.
 	 */
 	public void registerShader(String name, int vertexResource, int fragmentResource) {
-		Shader shader = new Shader(vertexResource, fragmentResource);
+		GLAssetManager assetManager = GLAssetManager.getInstance();
+		AssetHandle<Shader> shader = assetManager.acquireShader(vertexResource, fragmentResource);
 		
-		shaderMap.put(name, shader);
+		// the shader is needed right away
+		assetManager.finishLoading(shader);
+		
+		AssetHandle<Shader> oldShader = shaderMap.put(name, shader);
+		if (oldShader != null)
+			oldShader.release();
+		resourceMap.put(name, new int[] { vertexResource, fragmentResource });
 	}
 	
 	/**
@@ -47,7 +73,44 @@ public class ShaderManager {
 	 * @return The shader object or null if not found.
 	 */
 	public Shader getShader(String name) {
-		return shaderMap.get(name);
+		AssetHandle<Shader> shader = shaderMap.get(name);
+		if (shader == null)
+			return null;
+		return shader.get();
+	}
+	
+	/**
+	 * Returns a variant of a registered shader.
+	 * 
+	 * <p>The variant is compiled the first time it's requested (so, preferably, call this method 
+	 * when initializing the objects, not while drawing them). Returns null if the base shader is 
+	 * not registered.</p>
+	 * 
+	 * @param name The base shader's identifier.
+	 * @param defines The variant's preprocessor defines (the base shader if empty).
+	 * @return The shader object or null if not found.
+	 */
+	public Shader getVariant(String name, String... defines) {
+		String definesKey = ShaderLoader.getDefinesKey(defines);
+		if (definesKey.isEmpty())
+			return getShader(name);
+		
+		String key = name + "#" + definesKey;
+		AssetHandle<Shader> shader = shaderMap.get(key);
+		if (shader == null) {
+			int[] resources = resourceMap.get(name);
+			if (resources == null)
+				return null;
+			
+			GLAssetManager assetManager = GLAssetManager.getInstance();
+			shader = assetManager.acquireShader(resources[0], resources[1], defines);
+			assetManager.finishLoading(shader);
+			shaderMap.put(key, shader);
+			
+			if (camera != null)
+				shader.get().setCamera(camera);
+		}
+		return shader.get();
 	}
 	
 	/**
@@ -56,17 +119,21 @@ public class ShaderManager {
 	 * @param camera The new or modified camera object to send to the shaders.
 	 */
 	public void notifyCameraChanged(Camera camera) {
-		for (Shader shader: shaderMap.values()) {
-			shader.setCamera(camera);
+		this.camera = camera;
+		for (AssetHandle<Shader> shader: shaderMap.values()) {
+			if (shader.isReady())
+				shader.get().setCamera(camera);
 		}
 	}
 	
 	/**
-	 * Destroys all managed shaders and cleans up the cache.
+	 * Releases all managed shaders and cleans up the cache.
+	 * 
+	 * <p>The shader programs are destroyed when they are no longer used by any manager.</p>
 	 */
 	public void destroy() {
-		for (Shader shader: shaderMap.values()) {
-			shader.destroy();
+		for (AssetHandle<Shader> shader: shaderMap.values()) {
+			shader.release();
 		}
 		clear();
 	}
@@ -77,6 +144,8 @@ public class ShaderManager {
 	 */
 	public void clear() {
 		shaderMap.clear();
+		resourceMap.clear();
+		camera = null;
 	}
 	
 }
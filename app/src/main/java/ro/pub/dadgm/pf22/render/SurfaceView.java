@@ -6,12 +6,17 @@ import android.opengl.GLSurfaceView;
 import android.support.annotation.NonNull;
 import android.view.MotionEvent;
 
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+
 /**
  * Sets up the OpenGL ES 2.0 drawing context and sets the accompanying {@link GLRenderer} class as 
  * the renderer.
+ * 
+ * <p>The renderer only draws continuously while needed. A new frame is requested each time the 
+ * view is touched or changed and each time an asset was loaded in background.</p>
  */
 public class SurfaceView extends android.opengl.GLSurfaceView {
-
+	
 	/**
 	 * The current view that needs to be displayed.
 	 */
@@ -38,9 +43,17 @@ public class SurfaceView extends android.opengl.GLSurfaceView {
 		setEGLConfigChooser(8, 8, 8, 8, 16, 0);
 		
 		// Set the Renderer for drawing on the GLSurfaceView
-		renderer = new GLRenderer();
+		renderer = new GLRenderer(this);
 		setRenderer(renderer);
 		setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+		
+		// the loaded assets need to be uploaded (by drawing a frame)
+		GLAssetManager.getInstance().setUploadListener(new Runnable() {
+			@Override
+			public void run() {
+				requestRender();
+			}
+		});
 	}
 	
 	/**
@@ -57,14 +70,29 @@ public class SurfaceView extends android.opengl.GLSurfaceView {
 	
 	@Override
 	public boolean onTouchEvent(@NonNull MotionEvent e) {
-		return currentView != null && currentView.onTouchEvent(e);
+		boolean handled = currentView != null && currentView.onTouchEvent(e);
+		
+		// the touch might have changed the view (or the game's state)
+		requestRender();
+		return handled;
+	}
+	
+	/**
+	 * Requests a new frame (even if the view doesn't animate).
+	 * 
+	 * <p>Can be called from any thread.</p>
+	 */
+	@Override
+	public void requestRender() {
+		renderer.invalidate();
+		super.requestRender();
 	}
 	
 	/**
 	 * Changes the current view.
 	 * 
 	 * <p>Can be called from the Activity thread.</p>
-	 *
+	 * 
 	 * @param view The new view object to set.
 	 */
 	public void setView(View view) {
@@ -78,8 +106,9 @@ public class SurfaceView extends android.opengl.GLSurfaceView {
 				renderer.setView(getCurrentView());
 			}
 		});
+		requestRender();
 	}
-
+	
 	/**
 	 * Returns the current view.
 	 * 
@@ -37,6 +37,16 @@ public interface View {
 	 */
 	public void onResize(int width, int height);
 	
+	/**
+	 * Returns whether the view needs to be redrawn continuously.
+	 * 
+	 * <p>While no view animates, the frames are only drawn on demand (when touched, when an asset 
+	 * was loaded etc.).</p>
+	 * 
+	 * @return True if the view changes from frame to frame (e.g. a running game).
+	 */
+	public boolean isAnimating();
+	
 	/**
 	 * Receives a touchscreen event.
 	 * 
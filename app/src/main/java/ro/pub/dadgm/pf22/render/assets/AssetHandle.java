@@ -0,0 +1,236 @@
+package ro.pub.dadgm.pf22.render.assets;
+
+import java.util.concurrent.FutureTask;
+
+/**
+ * A reference-counted handle to an asset managed by the {@link GLAssetManager}.
+ * 
+ * <p>Handles are shared: all acquire calls for the same asset return the same instance and
+ * increment its reference count. Each acquirer must call {@link #release()} exactly once, when it
+ * no longer needs the asset (usually when its owner object is destroyed).</p>
+ * 
+ * <p>Loading is done in two stages: {@link #decode()} runs on a background worker and must not
+ * touch OpenGL, while {@link #upload()} and {@link #unload()} are always called from the OpenGL
+ * thread.</p>
+ * 
+ * <p>A handle is only valid in the EGL context generation it was created in: afterwards it is
+ * never ready (see {@link GLAssetManager#getContextGeneration()}).</p>
+ * 
+ * @param <T> The type of the loaded asset.
+ */
+public abstract class AssetHandle<T> {
+	
+	/**
+	 * The loading states of an asset.
+	 */
+	public static enum State {
+		/** Waiting for the background worker to decode it. */
+		QUEUED,
+		/** Decoded, waiting for the OpenGL thread to upload it. */
+		DECODED,
+		/** Loaded and usable. */
+		READY,
+		/** The asset could not be loaded. */
+		FAILED,
+		/** The asset was released and must not be used anymore. */
+		RELEASED
+	}
+	
+	/**
+	 * The manager that owns this asset.
+	 */
+	protected final GLAssetManager manager;
+	
+	/**
+	 * The asset's unique key.
+	 */
+	protected final String key;
+	
+	/**
+	 * The EGL context generation the asset was created in.
+	 */
+	protected final int generation;
+	
+	/**
+	 * The number of active references.
+	 * 
+	 * <p>Guarded by the manager's lock.</p>
+	 */
+	protected int refCount = 0;
+	
+	/**
+	 * The current loading state.
+	 */
+	protected volatile State state = State.QUEUED;
+	
+	/**
+	 * The loaded asset object (only valid in the READY state).
+	 */
+	protected volatile T value;
+	
+	/**
+	 * The background decode task.
+	 */
+	protected FutureTask<Void> decodeTask;
+	
+	
+	/**
+	 * Initializes the handle.
+	 * 
+	 * @param manager The owner manager.
+	 * @param key The asset's unique key.
+	 */
+	protected AssetHandle(GLAssetManager manager, String key) {
+		this.manager = manager;
+		this.key = key;
+		this.generation = manager.getContextGeneration();
+	}
+	
+	/**
+	 * Reads / parses the asset's data. Called on a background worker thread.
+	 * 
+	 * @throws Exception If the asset could not be decoded.
+	 */
+	protected abstract void decode() throws Exception;
+	
+	/**
+	 * Uploads the decoded data to the GPU. Called from the OpenGL thread.
+	 * 
+	 * @return The loaded asset object.
+	 */
+	protected abstract T upload();
+	
+	/**
+	 * Frees all resources held by the asset. Called from the OpenGL thread.
+	 * 
+	 * <p>Can be called in any state, so it must cope with partially loaded data.</p>
+	 */
+	protected abstract void unload();
+	
+	/**
+	 * Waits for the asset's dependencies (if any) to be loaded.
+	 * 
+	 * <p>Called from the OpenGL thread by {@link GLAssetManager#finishLoading}.</p>
+	 */
+	protected void finishDependencies() {
+		// no dependencies by default
+	}
+	
+	/**
+	 * Checks whether the asset's decoded data is retained (see 
+	 * {@link ro.pub.dadgm.pf22.render.utils.RetainedDataCache}), so {@link #decode()} is cheap
+	 * enough to be run on the acquiring thread.
+	 * 
+	 * @return True if the asset does not need to be read / decoded again.
+	 */
+	protected boolean isRetained() {
+		return false;
+	}
+	
+	/**
+	 * Runs the decode stage and advances the state.
+	 * 
+	 * @return True if the asset needs to be uploaded.
+	 */
+	boolean performDecode() {
+		if (state != State.QUEUED)
+			return false;
+		
+		try {
+			decode();
+			
+		} catch (Exception e) {
+			manager.logFailure(this, e);
+			synchronized (this) {
+				if (state == State.QUEUED)
+					state = State.FAILED;
+			}
+			return false;
+		}
+		
+		synchronized (this) {
+			if (state != State.QUEUED)
+				return false;
+			state = State.DECODED;
+		}
+		return true;
+	}
+	
+	/**
+	 * Runs the upload stage and advances the state.
+	 */
+	void performUpload() {
+		synchronized (this) {
+			if (state != State.DECODED)
+				return;
+		}
+		
+		try {
+			value = upload();
+			state = State.READY;
+			
+		} catch (RuntimeException | UnknownError e) {
+			manager.logFailure(this, e);
+			state = State.FAILED;
+		}
+	}
+	
+	/**
+	 * Marks the asset as released and frees its resources.
+	 */
+	void performUnload() {
+		synchronized (this) {
+			state = State.RELEASED;
+		}
+		decodeTask.cancel(false);
+		unload();
+		value = null;
+	}
+	
+	/**
+	 * Returns the loaded asset object.
+	 * 
+	 * @return The asset object, or null if it is not loaded (yet).
+	 */
+	public T get() {
+		return (state == State.READY && generation == manager.getContextGeneration() ? value : null);
+	}
+	
+	/**
+	 * Checks whether the asset (including its dependencies) is ready to be used.
+	 * 
+	 * @return True if the asset was successfully loaded.
+	 */
+	public boolean isReady() {
+		return state == State.READY && generation == manager.getContextGeneration();
+	}
+	
+	/**
+	 * Returns the current loading state of the asset.
+	 * 
+	 * @return The asset's state.
+	 */
+	@SuppressWarnings("unused")
+	public State getState() {
+		return state;
+	}
+	
+	/**
+	 * Returns the asset's unique key.
+	 * 
+	 * @return Asset's key.
+	 */
+	public String getKey() {
+		return key;
+	}
+	
+	/**
+	 * Drops a reference to the asset.
+	 * 
+	 * <p>The asset is unloaded (on the next frame) when the last reference is released.</p>
+	 */
+	public void release() {
+		manager.release(this);
+	}
+	
+}
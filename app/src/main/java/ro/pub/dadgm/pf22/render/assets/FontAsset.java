@@ -0,0 +1,68 @@
+package ro.pub.dadgm.pf22.render.assets;
+
+import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
+
+/**
+ * Font map asset.
+ * 
+ * <p>The font's precompiled distance field atlas is read in background; only the resulting 
+ * texture is uploaded on the OpenGL thread.</p>
+ * 
+ * <p>The font map (including its atlas) is retained after upload (see 
+ * {@link RetainedDataCache}), so the atlas is not read again when it is reloaded.</p>
+ */
+class FontAsset extends AssetHandle<DrawText.GLFont> {
+	
+	/**
+	 * The font's asset path.
+	 */
+	protected final String fontFile;
+	
+	/**
+	 * The loaded font map.
+	 */
+	protected DrawText.GLFont font;
+	
+	
+	/**
+	 * Initializes the font asset.
+	 * 
+	 * @param manager The owner manager.
+	 * @param key The asset's unique key.
+	 * @param fontFile The path to the font asset.
+	 */
+	FontAsset(GLAssetManager manager, String key, String fontFile) {
+		super(manager, key);
+		
+		this.fontFile = fontFile;
+	}
+	
+	@Override
+	protected void decode() {
+		font = (DrawText.GLFont)RetainedDataCache.getInstance().get(key);
+		if (font == null)
+			font = new DrawText.GLFont(fontFile);
+	}
+	
+	@Override
+	protected boolean isRetained() {
+		return RetainedDataCache.getInstance().contains(key);
+	}
+	
+	@Override
+	protected DrawText.GLFont upload() {
+		font.uploadTexture();
+		RetainedDataCache.getInstance().put(key, font, font.getDataSize());
+		return font;
+	}
+	
+	@Override
+	protected void unload() {
+		// the atlas might be retained, it is left to the garbage collector
+		if (font != null) {
+			font.destroyTexture();
+		}
+	}
+	
+}
@@ -0,0 +1,422 @@
+package ro.pub.dadgm.pf22.render.assets;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
+import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
+import ro.pub.dadgm.pf22.render.utils.objloader.TDModel;
+
+/**
+ * Central manager for the GPU assets (meshes, textures, shaders and fonts).
+ * 
+ * <p>Assets are handed out as shared, reference-counted {@link AssetHandle}s. The expensive CPU
+ * work (reading, decoding, parsing) is done on a pool of background workers, while the GPU uploads
+ * are staged and executed on the OpenGL thread by {@link #update(long)}, within a per-frame time
+ * budget.</p>
+ * 
+ * <p>An asset is unloaded when its last reference is released. The actual unloading is deferred
+ * until the next {@link #update(long)} call, so assets shared by two views survive a view switch
+ * (the old view releases them right before the new one acquires them).</p>
+ * 
+ * <p>The decoded data of the assets is retained (see {@link RetainedDataCache}) after upload, so
+ * an asset acquired again (e.g. after the EGL context was lost) is not read / decoded again: its
+ * (trivial) decode stage is run right away and it is uploaded on the next update. Each asset
+ * belongs to the context generation it was acquired in (see {@link #getContextGeneration()}); the
+ * assets of a lost context are never returned (their GL names could belong to new objects).</p>
+ * 
+ * <p>The acquire / release methods are thread-safe; all the others must be called from the OpenGL
+ * thread.</p>
+ */
+public class GLAssetManager {
+	
+	/**
+	 * The number of background workers used for decoding.
+	 */
+	public static final int WORKER_THREADS = 2;
+	
+	/**
+	 * The default time budget (in nanoseconds) to spend on GPU uploads each frame.
+	 */
+	public static final long DEFAULT_UPLOAD_BUDGET = 4000000;
+	
+	/**
+	 * The time budget (in nanoseconds) for the bulk upload done after the context was recreated.
+	 */
+	public static final long RECOVERY_UPLOAD_BUDGET = 200000000;
+	
+	/**
+	 * The singleton instance.
+	 */
+	protected static GLAssetManager instance = null;
+	
+	/**
+	 * The loaded (or loading) assets, indexed by their keys.
+	 * 
+	 * <p>Also used as the lock that guards the reference counts and the release queue.</p>
+	 */
+	protected final Map<String, AssetHandle<?>> assets;
+	
+	/**
+	 * The assets whose reference count reached zero, to be unloaded on the next update.
+	 */
+	protected final List<AssetHandle<?>> releaseQueue;
+	
+	/**
+	 * The decoded assets waiting to be uploaded on the OpenGL thread.
+	 */
+	protected final Queue<AssetHandle<?>> uploadQueue;
+	
+	/**
+	 * The background decoding workers.
+	 */
+	protected final ExecutorService executor;
+	
+	/**
+	 * The current EGL context's generation (incremented each time a context is created).
+	 */
+	protected volatile int contextGeneration = 0;
+	
+	/**
+	 * Notified each time an asset was decoded and waits to be uploaded (may be null).
+	 */
+	protected volatile Runnable uploadListener = null;
+		
+	
+	/**
+	 * Returns the application-wide asset manager instance.
+	 * 
+	 * @return The asset manager.
+	 */
+	public static synchronized GLAssetManager getInstance() {
+		if (instance == null)
+			instance = new GLAssetManager();
+		return instance;
+	}
+	
+	/**
+	 * Constructs the asset manager and starts its workers.
+	 */
+	protected GLAssetManager() {
+		assets = new HashMap<>();
+		releaseQueue = new ArrayList<>();
+		uploadQueue = new ConcurrentLinkedQueue<>();
+		
+		executor = Executors.newFixedThreadPool(WORKER_THREADS, new ThreadFactory() {
+			protected int counter = 0;
+			
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "AssetLoader-" + (counter++));
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+	
+	
+	/**
+	 * Acquires a mesh (Wavefront OBJ model) asset.
+	 * 
+	 * <p>The model is read from the "model.obj" file found inside the specified asset directory.
+	 * If requested, its materials are read from "materials.mtl" and their textures are acquired as
+	 * dependencies.</p>
+	 * 
+	 * @param modelPath The asset path of the model's directory (with a trailing slash).
+	 * @param withMaterials Whether to load the model's materials.
+	 * @return The mesh's handle.
+	 */
+	@SuppressWarnings("unchecked")
+	public AssetHandle<TDModel> acquireMesh(String modelPath, boolean withMaterials) {
+		String key = "mesh_" + modelPath;
+		return (AssetHandle<TDModel>) acquire(new MeshAsset(this, key, modelPath, withMaterials));
+	}
+	
+	/**
+	 * Acquires a texture asset.
+	 * 
+	 * <p>The texture is loaded with linear filtering and repeat wrapping.</p>
+	 * 
+	 * @param path The asset path of the image.
+	 * @return The texture's handle (its value is the GL texture name).
+	 */
+	@SuppressWarnings("unchecked")
+	public AssetHandle<Integer> acquireTexture(String path) {
+		String key = "tex_" + path;
+		return (AssetHandle<Integer>) acquire(new TextureAsset(this, key, path));
+	}
+	
+	/**
+	 * Acquires a shader program asset.
+	 * 
+	 * @param vertexResource The vertex shader's android resource identifier.
+	 * @param fragmentResource The fragment shader's android resource identifier.
+	 * @return The shader's handle.
+	 */
+	public AssetHandle<Shader> acquireShader(int vertexResource, int fragmentResource) {
+		return acquireShader(vertexResource, fragmentResource, null);
+	}
+	
+	/**
+	 * Acquires a variant of a shader program asset.
+	 * 
+	 * @param vertexResource The vertex shader's android resource identifier.
+	 * @param fragmentResource The fragment shader's android resource identifier.
+	 * @param defines The variant's preprocessor defines (null for the base variant).
+	 * @return The shader's handle.
+	 */
+	@SuppressWarnings("unchecked")
+	public AssetHandle<Shader> acquireShader(int vertexResource, int fragmentResource, String[] defines) {
+		String definesKey = ShaderLoader.getDefinesKey(defines);
+		String key = "shader_" + vertexResource + "_" + fragmentResource + 
+				(definesKey.isEmpty() ? "" : "_" + definesKey);
+		return (AssetHandle<Shader>) acquire(new ShaderAsset(this, key, vertexResource, fragmentResource, defines));
+	}
+	
+	/**
+	 * Acquires a font map asset (the same map is used for all sizes).
+	 * 
+	 * @param fontFile The path to the font asset.
+	 * @return The font's handle.
+	 */
+	@SuppressWarnings("unchecked")
+	public AssetHandle<DrawText.GLFont> acquireFont(String fontFile) {
+		String key = "font_" + fontFile;
+		return (AssetHandle<DrawText.GLFont>) acquire(new FontAsset(this, key, fontFile));
+	}
+	
+	/**
+	 * Returns the already registered asset with the same key or registers the specified candidate
+	 * and schedules it for decoding.
+	 * 
+	 * @param candidate A new (not yet registered) asset handle.
+	 * @return The registered asset handle, with its reference count incremented.
+	 */
+	protected AssetHandle<?> acquire(final AssetHandle<?> candidate) {
+		synchronized (assets) {
+			AssetHandle<?> handle = assets.get(candidate.getKey());
+			if (handle != null) {
+				handle.refCount++;
+				// (this also keeps it alive if it was waiting in the release queue)
+				return handle;
+			}
+			
+			candidate.refCount = 1;
+			candidate.decodeTask = new FutureTask<>(new Callable<Void>() {
+				@Override
+				public Void call() {
+					if (candidate.performDecode()) {
+						uploadQueue.add(candidate);
+						
+						Runnable listener = uploadListener;
+						if (listener != null)
+							listener.run();
+					}
+					return null;
+				}
+			});
+			assets.put(candidate.getKey(), candidate);
+		}
+		
+		if (candidate.isRetained()) {
+			// nothing to read, so skip the workers' queue
+			candidate.decodeTask.run();
+		} else {
+			executor.execute(candidate.decodeTask);
+		}
+		return candidate;
+	}
+	
+	/**
+	 * Drops a reference to the specified asset.
+	 * 
+	 * <p>Use {@link AssetHandle#release()} instead.</p>
+	 * 
+	 * @param handle The asset handle to release.
+	 */
+	void release(AssetHandle<?> handle) {
+		synchronized (assets) {
+			if (assets.get(handle.getKey()) != handle)
+				return; // stale handle (from a previous GL context)
+			if (handle.refCount <= 0)
+				return;
+			
+			handle.refCount--;
+			if (handle.refCount == 0)
+				releaseQueue.add(handle);
+		}
+	}
+	
+	/**
+	 * Processes the pending asset operations: unloads the released assets and uploads the decoded
+	 * ones until the time budget is exhausted.
+	 * 
+	 * <p>At least one upload is done on each call, so loading always makes progress. Must be called
+	 * from the OpenGL thread, once per frame.</p>
+	 * 
+	 * @param budget The upload time budget, in nanoseconds.
+	 */
+	public void update(long budget) {
+		long startTime = System.nanoTime();
+		
+		processReleases();
+		
+		AssetHandle<?> handle;
+		while ((handle = uploadQueue.poll()) != null) {
+			uploadAsset(handle);
+			
+			if (System.nanoTime() - startTime >= budget)
+				break;
+		}
+	}
+	
+	/**
+	 * Synchronously loads the specified asset.
+	 * 
+	 * <p>If a worker did not pick it up yet, the asset is decoded on the calling thread. Use this
+	 * only for assets that are needed right away (e.g. shaders). Must be called from the OpenGL
+	 * thread.</p>
+	 * 
+	 * @param handle The asset to load.
+	 * @param <T> The type of the asset.
+	 * @return The loaded asset object.
+	 */
+	public <T> T finishLoading(AssetHandle<T> handle) {
+		if (!handle.isReady()) {
+			// run the decode task inline (no-op if already started) and wait for it
+			handle.decodeTask.run();
+			try {
+				handle.decodeTask.get();
+				
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				
+			} catch (ExecutionException e) {
+				// the failure is reflected into the asset's state
+			}
+			
+			uploadAsset(handle);
+			handle.finishDependencies();
+		}
+		
+		if (handle.get() == null)
+			throw new RuntimeException("Unable to load the asset '" + handle.getKey() + "'!");
+		return handle.get();
+	}
+	
+	/**
+	 * Forgets all assets (without freeing any GL objects) and starts a new context generation.
+	 * 
+	 * <p>To be called when the EGL context has been reset. The outstanding handles become stale
+	 * and their release is ignored. Their retained data is kept, so acquiring them again is
+	 * cheap.</p>
+	 */
+	public void onContextCreated() {
+		synchronized (assets) {
+			contextGeneration++;
+			for (AssetHandle<?> handle: assets.values()) {
+				handle.decodeTask.cancel(false);
+				handle.state = AssetHandle.State.RELEASED;
+			}
+			assets.clear();
+			releaseQueue.clear();
+		}
+		uploadQueue.clear();
+	}
+	
+	/**
+	 * Returns whether there are decoded assets waiting to be uploaded.
+	 * 
+	 * @return True if the upload queue isn't empty.
+	 */
+	public boolean hasPendingUploads() {
+		return !uploadQueue.isEmpty();
+	}
+	
+	/**
+	 * Sets the object notified each time an asset is ready to be uploaded (e.g. to request a new 
+	 * frame, when they are only drawn on demand).
+	 * 
+	 * <p>The listener is run on the decoding thread.</p>
+	 * 
+	 * @param uploadListener The listener (null to remove it).
+	 */
+	public void setUploadListener(Runnable uploadListener) {
+		this.uploadListener = uploadListener;
+	}
+	
+	/**
+	 * Returns the current EGL context's generation.
+	 * 
+	 * <p>The objects that own GL names should store the generation they were created in and 
+	 * ignore those names (instead of deleting or reusing them) once the generation changes.</p>
+	 * 
+	 * @return The context generation.
+	 */
+	public int getContextGeneration() {
+		return contextGeneration;
+	}
+	
+	/**
+	 * Unloads the assets that are still unreferenced.
+	 */
+	protected void processReleases() {
+		List<AssetHandle<?>> toUnload;
+		synchronized (assets) {
+			if (releaseQueue.isEmpty())
+				return;
+			
+			toUnload = new ArrayList<>(releaseQueue.size());
+			for (AssetHandle<?> handle: releaseQueue) {
+				if (handle.refCount == 0 && assets.get(handle.getKey()) == handle) {
+					assets.remove(handle.getKey());
+					toUnload.add(handle);
+				}
+			}
+			releaseQueue.clear();
+		}
+		
+		for (AssetHandle<?> handle: toUnload) {
+			handle.performUnload();
+		}
+	}
+	
+	/**
+	 * Uploads a decoded asset, unless it was released in the meantime.
+	 * 
+	 * @param handle The asset to upload.
+	 */
+	protected void uploadAsset(AssetHandle<?> handle) {
+		synchronized (assets) {
+			if (assets.get(handle.getKey()) != handle)
+				return;
+		}
+		handle.performUpload();
+	}
+	
+	/**
+	 * Logs an asset loading failure.
+	 * 
+	 * @param handle The asset that failed to load.
+	 * @param e The error.
+	 */
+	void logFailure(AssetHandle<?> handle, Throwable e) {
+		Log.w("GLAssetManager", "Unable to load the asset '" + handle.getKey() + "'!", e);
+	}
+	
+}
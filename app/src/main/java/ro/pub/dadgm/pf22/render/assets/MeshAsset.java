@@ -0,0 +1,184 @@
+package ro.pub.dadgm.pf22.render.assets;
+
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import ro.pub.dadgm.pf22.activity.MainActivity;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
+import ro.pub.dadgm.pf22.render.utils.objloader.Material;
+import ro.pub.dadgm.pf22.render.utils.objloader.OBJParser;
+import ro.pub.dadgm.pf22.render.utils.objloader.TDModel;
+import ro.pub.dadgm.pf22.render.utils.objloader.TDModelPart;
+
+/**
+ * Wavefront OBJ model asset.
+ * 
+ * <p>The model is parsed in background, and its materials' textures are acquired as separate 
+ * (shared) texture assets. The mesh is ready only after all of its textures are.</p>
+ * 
+ * <p>The parsed model is retained after upload (see {@link RetainedDataCache}), so it is not
+ * parsed again when the mesh is reloaded (only its textures are acquired again).</p>
+ */
+class MeshAsset extends AssetHandle<TDModel> {
+	
+	/**
+	 * The asset path of the model's directory.
+	 */
+	protected final String modelPath;
+	
+	/**
+	 * Whether to load the model's materials file.
+	 */
+	protected final boolean withMaterials;
+	
+	/**
+	 * The parsed model.
+	 */
+	protected TDModel model;
+	
+	/**
+	 * The texture assets used by the model's materials.
+	 * 
+	 * <p>Guarded by the asset's monitor.</p>
+	 */
+	protected final List<AssetHandle<Integer>> textures;
+	
+	
+	/**
+	 * Initializes the mesh asset.
+	 * 
+	 * @param manager The owner manager.
+	 * @param key The asset's unique key.
+	 * @param modelPath The asset path of the model's directory (with a trailing slash).
+	 * @param withMaterials Whether to load the model's materials file.
+	 */
+	MeshAsset(GLAssetManager manager, String key, String modelPath, boolean withMaterials) {
+		super(manager, key);
+		
+		this.modelPath = modelPath;
+		this.withMaterials = withMaterials;
+		this.textures = new ArrayList<>();
+	}
+	
+	@Override
+	protected void decode() throws IOException {
+		model = (TDModel)RetainedDataCache.getInstance().get(key);
+		if (model != null) {
+			// forget the texture handles of the previous load
+			for (TDModelPart part: model.getParts()) {
+				if (part.getMaterial() != null)
+					part.getMaterial().setTextureHandle(null);
+			}
+		} else {
+			model = parseModel();
+		}
+		
+		// acquire the materials' textures
+		for (TDModelPart part: model.getParts()) {
+			Material mat = part.getMaterial();
+			if (mat == null || mat.getTextureHandle() != null)
+				continue;
+			String textureFile = mat.getTextureFile();
+			if (textureFile == null || textureFile.isEmpty())
+				continue;
+			
+			AssetHandle<Integer> texture = manager.acquireTexture(modelPath + textureFile);
+			synchronized (this) {
+				if (state == State.RELEASED) {
+					// the mesh was released in the meantime
+					texture.release();
+					return;
+				}
+				textures.add(texture);
+			}
+			mat.setTextureHandle(texture);
+		}
+	}
+	
+	/**
+	 * Reads and parses the model's files.
+	 * 
+	 * @return The parsed model.
+	 * @throws IOException If the files could not be read.
+	 */
+	protected TDModel parseModel() throws IOException {
+		AssetManager assetManager = MainActivity.getAppContext().getAssets();
+		InputStream modelStream = null, materialStream = null;
+		try {
+			modelStream = assetManager.open(modelPath + "model.obj");
+			if (withMaterials)
+				materialStream = assetManager.open(modelPath + "materials.mtl");
+			
+			return new OBJParser().parseOBJ(modelStream, materialStream);
+			
+		} finally {
+			if (modelStream != null)
+				modelStream.close();
+			if (materialStream != null)
+				materialStream.close();
+		}
+	}
+	
+	@Override
+	protected boolean isRetained() {
+		return RetainedDataCache.getInstance().contains(key);
+	}
+	
+	@Override
+	protected TDModel upload() {
+		model.initializeBuffers();
+		RetainedDataCache.getInstance().put(key, model, model.getDataSize());
+		return model;
+	}
+	
+	@Override
+	protected void unload() {
+		synchronized (this) {
+			for (AssetHandle<Integer> texture: textures) {
+				texture.release();
+			}
+			textures.clear();
+		}
+		
+		if (value != null) {
+			value.destroyBuffers();
+		}
+	}
+	
+	@Override
+	protected void finishDependencies() {
+		List<AssetHandle<Integer>> texturesCopy;
+		synchronized (this) {
+			texturesCopy = new ArrayList<>(textures);
+		}
+		
+		for (AssetHandle<Integer> texture: texturesCopy) {
+			try {
+				manager.finishLoading(texture);
+				
+			} catch (RuntimeException e) {
+				// already logged, the part will be drawn without its texture
+			}
+		}
+	}
+	
+	@Override
+	public boolean isReady() {
+		if (!super.isReady())
+			return false;
+		
+		synchronized (this) {
+			for (AssetHandle<Integer> texture: textures) {
+				State textureState = texture.getState();
+				if (textureState == State.QUEUED || textureState == State.DECODED)
+					return false;
+			}
+		}
+		return true;
+	}
+	
+}
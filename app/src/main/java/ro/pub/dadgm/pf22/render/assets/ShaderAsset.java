@@ -0,0 +1,62 @@
+package ro.pub.dadgm.pf22.render.assets;
+
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
+
+/**
+ * Shader program asset.
+ * 
+ * <p>Shader compilation can only be done on the OpenGL thread, so all the work is done in the 
+ * upload stage (the sources are tiny).</p>
+ * 
+ * <p>Unloading the asset keeps its GL program alive (inside the {@link ShaderLoader}'s cache,
+ * until the context is lost), so acquiring it again (e.g. on the next view switch) doesn't rebuild
+ * the program.</p>
+ */
+class ShaderAsset extends AssetHandle<Shader> {
+	
+	/**
+	 * The vertex and fragment shaders' android resource identifiers.
+	 */
+	protected final int vertexResource, fragmentResource;
+	
+	/**
+	 * The variant's preprocessor defines (null for the base variant).
+	 */
+	protected final String[] defines;
+	
+	
+	/**
+	 * Initializes the shader asset.
+	 * 
+	 * @param manager The owner manager.
+	 * @param key The asset's unique key.
+	 * @param vertexResource The vertex shader's android resource identifier.
+	 * @param fragmentResource The fragment shader's android resource identifier.
+	 * @param defines The variant's preprocessor defines (null for the base variant).
+	 */
+	ShaderAsset(GLAssetManager manager, String key, int vertexResource, int fragmentResource, 
+				String[] defines) {
+		super(manager, key);
+		
+		this.vertexResource = vertexResource;
+		this.fragmentResource = fragmentResource;
+		this.defines = defines;
+	}
+	
+	@Override
+	protected void decode() {
+		// nothing to do
+	}
+	
+	@Override
+	protected Shader upload() {
+		return new Shader(vertexResource, fragmentResource, defines);
+	}
+	
+	@Override
+	protected void unload() {
+		// the program is kept by the shader loader
+	}
+	
+}
@@ -0,0 +1,145 @@
+package ro.pub.dadgm.pf22.render.assets;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import ro.pub.dadgm.pf22.activity.MainActivity;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
+import ro.pub.dadgm.pf22.render.utils.TextureLoader;
+import ro.pub.dadgm.pf22.texcompress.TextureContainer;
+
+/**
+ * Image texture asset.
+ * 
+ * <p>The image is decoded in background and uploaded as a linear filtered, repeating texture. 
+ * Its precompiled (ETC1) version is preferred, if available. The GL texture is shared with the 
+ * {@link TextureLoader}'s cache (using the same key as 
+ * {@link TextureLoader#loadTextureFromAsset(String)}).</p>
+ * 
+ * <p>The decoded image is retained after upload (see {@link TextureLoader#retainImage}), so it
+ * is not decoded again when the texture is reloaded.</p>
+ */
+class TextureAsset extends AssetHandle<Integer> {
+	
+	/**
+	 * The asset path of the image.
+	 */
+	protected final String path;
+	
+	/**
+	 * The key used for the texture in the {@link TextureLoader}'s cache.
+	 */
+	protected final String cacheKey;
+	
+	/**
+	 * The precompiled texture (until uploaded).
+	 */
+	protected TextureContainer container;
+	
+	/**
+	 * The decoded bitmap (until uploaded, only used if there is no precompiled version).
+	 */
+	protected Bitmap bitmap;
+	
+	
+	/**
+	 * Initializes the texture asset.
+	 * 
+	 * @param manager The owner manager.
+	 * @param key The asset's unique key.
+	 * @param path The asset path of the image.
+	 */
+	TextureAsset(GLAssetManager manager, String key, String path) {
+		super(manager, key);
+		
+		this.path = path;
+		this.cacheKey = "asset_" + path;
+	}
+	
+	@Override
+	protected void decode() throws IOException {
+		// no need to decode it if it is still resident
+		if (TextureLoader.isCached(cacheKey))
+			return;
+		
+		Object image = TextureLoader.getRetainedImage(cacheKey);
+		if (image instanceof TextureContainer) {
+			container = (TextureContainer)image;
+			return;
+		} else if (image instanceof Bitmap) {
+			bitmap = (Bitmap)image;
+			return;
+		}
+		
+		container = TextureLoader.readCompressedAsset(path);
+		if (container != null)
+			return;
+		
+		InputStream assetStream = MainActivity.getAppContext().getAssets().open(path);
+		try {
+			bitmap = BitmapFactory.decodeStream(assetStream);
+			
+		} finally {
+			assetStream.close();
+		}
+		
+		if (bitmap == null)
+			throw new IOException("Unable to decode the image '" + path + "'!");
+	}
+	
+	@Override
+	protected boolean isRetained() {
+		return TextureLoader.isCached(cacheKey) || RetainedDataCache.getInstance().contains(cacheKey);
+	}
+	
+	@Override
+	protected Integer upload() {
+		int texture;
+		if (container != null) {
+			texture = TextureLoader.loadCompressedTexture(container, cacheKey);
+			if (texture != 0)
+				TextureLoader.retainImage(cacheKey, container);
+			container = null;
+		} else {
+			texture = TextureLoader.loadTextureCached(bitmap, cacheKey);
+		}
+		if (texture == 0 && bitmap == null) {
+			// it was evicted in the meantime (or ETC1 is not supported), load it synchronously
+			texture = TextureLoader.loadTextureFromAsset(path);
+		}
+		if (bitmap != null) {
+			// keep the bitmap for reloading (or free its memory)
+			if (texture == 0 || !TextureLoader.retainImage(cacheKey, bitmap))
+				bitmap.recycle();
+			bitmap = null;
+		}
+		
+		if (texture == 0)
+			throw new RuntimeException("Unable to allocate texture for '" + path + "'!");
+		
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+				(TextureLoader.isMipmapped(texture) ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR));
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+		
+		return texture;
+	}
+	
+	@Override
+	protected void unload() {
+		// (a decoded bitmap might be retained, it is left to the garbage collector)
+		container = null;
+		bitmap = null;
+		if (value != null) {
+			// the texture stays resident until evicted by the TextureLoader
+			TextureLoader.releaseTexture(value);
+		}
+	}
+	
+}
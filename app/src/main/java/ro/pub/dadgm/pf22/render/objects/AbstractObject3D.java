@@ -93,9 +93,14 @@ public abstract class AbstractObject3D implements Object3D {
 		return priority;
 	}
 	
+	@Override
+	public boolean computeBounds(float[] bounds) {
+		return false;
+	}
+	
 	@Override
 	public void destroy() {
-		
+	
 	}
 	
 }
@@ -0,0 +1,25 @@
+package ro.pub.dadgm.pf22.render.objects;
+
+import ro.pub.dadgm.pf22.render.utils.RenderCommandBuffer;
+
+/**
+ * A 3D object that can be drawn through a {@link RenderCommandBuffer}.
+ * 
+ * <p>Its drawing is split in two: the commands (transforms, material and mesh) are built away from
+ * the OpenGL thread, then they are executed on it (only issuing the GL calls). The
+ * {@link #draw()} method still draws the object directly.</p>
+ */
+public interface CommandObject3D extends Object3D, RenderCommandBuffer.Renderer {
+	
+	/**
+	 * Adds the object's draw commands to a frame's buffer.
+	 * 
+	 * <p>Called from the frame builder's thread: must not issue any GL calls and must only read
+	 * the frame's snapshot (see {@link RenderCommandBuffer}) and the state that is safe to be
+	 * read concurrently.</p>
+	 * 
+	 * @param buffer The frame's command buffer.
+	 */
+	public void buildCommands(RenderCommandBuffer buffer);
+	
+}
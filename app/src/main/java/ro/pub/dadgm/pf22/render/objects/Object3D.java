@@ -6,8 +6,8 @@ package ro.pub.dadgm.pf22.render.objects;
  * <p>The objects can do initialization work like loading shaders / mesh / textures in their 
  * constructors.</p>
  * 
- * <p>The objects' equals method is used for searching for it in the {@link ObjectsManager} collection, 
- * but the default {@link Object} implementation (reference comparison) is usually fine.</p>
+ * <p>The {@link ObjectsManager} collection searches the objects by reference (their equals method 
+ * is not used).</p>
  */
 public interface Object3D {
 	
@@ -42,6 +42,17 @@ public interface Object3D {
 	 */
 	public int getPriority();
 	
+	/**
+	 * Computes the object's bounding box (in world space), used for culling the object when it is
+	 * not visible.
+	 * 
+	 * <p>The box must contain the whole drawn object (in its current position / orientation).</p>
+	 * 
+	 * @param bounds Output: the bounds (minX, minY, minZ, maxX, maxY, maxZ).
+	 * @return False if the object has no bounds (it is always drawn).
+	 */
+	public boolean computeBounds(float[] bounds);
+	
 	/**
 	 * Called when the object needs to be destroyed.
 	 * 
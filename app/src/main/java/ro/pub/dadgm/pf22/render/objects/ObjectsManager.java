@@ -3,119 +3,259 @@ package ro.pub.dadgm.pf22.render.objects;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.TreeMap;
 
 /**
- * Manages a list of renderable [3D] objects and provides utility methods for querying / manipulating 
+ * Manages a list of renderable [3D] objects and provides utility methods for querying / manipulating
  * it.
  * 
- * <p>An object ({@link Object3D}) has two properties: a drawing priority which specified the order 
- * in which the objects will be iterated and, optionally, a tag (a string that can be used to group 
+ * <p>An object ({@link Object3D}) has two properties: a drawing priority which specified the order
+ * in which the objects will be iterated and, optionally, a tag (a string that can be used to group
  * multiple objects for easy management).</p>
+ * 
+ * <p>The objects are stored in dense arrays (one for each priority) and are identified internally
+ * by integer handles, so they can be added / removed in constant time (the last object of the
+ * priority takes the removed one's place) without allocating memory once the arrays grew large
+ * enough. Each tag keeps a bitset of its objects' handles.</p>
+ * 
+ * <p>The objects are searched by reference (their equals method is not used).</p>
+ * 
+ * <p>{@link #drawAll()} and {@link #get(int)} walk a flat array of the objects sorted by
+ * priority (rebuilt after the collection is modified), so they don't allocate any iterators.</p>
  */
 public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D> {
 	
 	/**
-	 * An internally used collection (set) that propagates its changes to the parent 
-	 * manager.
+	 * The value returned by {@link #findHandle(Object)} for objects not found in the collection.
+	 */
+	public static final int NO_HANDLE = -1;
+	
+	/**
+	 * The initial number of handles (the arrays are doubled when full).
 	 */
-	protected class ObjectsCollection extends AbstractCollection<O3D> {
+	protected static final int INITIAL_CAPACITY = 16;
+	
+	
+	/**
+	 * A dense array with the handles of the objects having the same priority.
+	 */
+	protected static class PriorityBucket {
 		
 		/**
-		 * The internal objects list.
+		 * The priority of the bucket's objects.
 		 */
-		protected HashSet<O3D> objects;
+		protected final int priority;
+		
+		/**
+		 * The handles of the objects (only the first {@link #count} are used).
+		 */
+		protected int[] handles;
+		
+		/**
+		 * The number of objects in the bucket.
+		 */
+		protected int count = 0;
+		
+		
+		/**
+		 * Creates an empty bucket.
+		 * 
+		 * @param priority The priority of the bucket's objects.
+		 */
+		protected PriorityBucket(int priority) {
+			this.priority = priority;
+			this.handles = new int[INITIAL_CAPACITY];
+		}
+		
+	}
+	
+	/**
+	 * A tag's view of the collection. Propagates its changes to the parent manager.
+	 * 
+	 * <p>Iterates the tag's bitset, so it doesn't depend on the other tags' objects.</p>
+	 */
+	protected class TagCollection extends AbstractCollection<O3D> {
+		
+		/**
+		 * The tag's index.
+		 */
+		protected final int tagId;
+		
 		
 		/**
 		 * Internal collection constructor.
+		 * 
+		 * @param tagId The tag's index.
 		 */
-		protected ObjectsCollection() {
-			this.objects = new HashSet<>();
+		protected TagCollection(int tagId) {
+			this.tagId = tagId;
 		}
 		
+		/**
+		 * Adds an object to the parent manager.
+		 * 
+		 * @param obj The object to add (must have the collection's tag).
+		 * @return True if the object was added, false if it was already present.
+		 */
 		@Override
 		public boolean add(O3D obj) {
-			boolean added = objects.add(obj);
-			if (!added) return false;
-			
-			// notify the manager a new object has been added
-			ObjectsManager.this.objectAdded(obj);
+			if (getTagId(obj.getTag()) != tagId)
+				throw new IllegalArgumentException("The object doesn't have the collection's tag!");
 			
-			return true;
+			return ObjectsManager.this.add(obj);
 		}
 		
 		@Override
 		public boolean remove(Object obj) {
-			if (!(obj instanceof Object3D))
-				throw new ClassCastException("The object must implement Object3D!");
-			
-			if (!objects.remove(obj)) return false;
-			
-			// notify the manager an object has been removed
-			ObjectsManager.this.objectRemoved(((Object3D)obj));
-			
-			return true;
+			return contains(obj) && ObjectsManager.this.remove(obj);
 		}
 		
 		@Override
 		@NotNull
 		public Iterator<O3D> iterator() {
-			final Iterator<O3D> internalIterator = objects.iterator();
-			
 			return new Iterator<O3D>() {
-				protected O3D current;
+				protected int next = nextTagHandle(tagId, 0);
+				protected int current = NO_HANDLE;
 				
 				@Override
 				public boolean hasNext() {
-					return internalIterator.hasNext();
+					return next != NO_HANDLE;
 				}
 				
 				@Override
 				public O3D next() {
-					current = internalIterator.next();
-					return current;
+					if (next == NO_HANDLE)
+						throw new NoSuchElementException("hasNext() == false");
+					current = next;
+					next = nextTagHandle(tagId, current + 1);
+					return getByHandle(current);
 				}
 				
 				@Override
 				public void remove() {
-					if (current == null)
+					if (current == NO_HANDLE)
 						throw new IllegalStateException("No current element in iteration!");
 					
-					// use the collection's implementation
-					ObjectsCollection.this.remove(current);
+					// the other handles keep their bits, so the iteration can continue
+					removeHandle(current);
+					current = NO_HANDLE;
 				}
 			};
 		}
 		
 		@Override
 		public boolean contains(Object obj) {
-			return objects.contains(obj);
+			if (!(obj instanceof Object3D))
+				throw new ClassCastException("The object must implement Object3D!");
+			
+			int handle = findHandle(obj);
+			return handle != NO_HANDLE && handleTags[handle] == tagId;
 		}
 		
 		@Override
 		public int size() {
-			return objects.size();
+			return tagSizes[tagId];
 		}
 		
 	}
 	
+	
+	/**
+	 * The objects, indexed by their handles (null for the free handles).
+	 */
+	protected Object[] handleObjects;
+	
+	/**
+	 * The bucket of each handle's object.
+	 */
+	protected PriorityBucket[] handleBuckets;
+	
+	/**
+	 * The position of each handle inside its bucket.
+	 */
+	protected int[] handleIndices;
+	
+	/**
+	 * The tag index of each handle's object.
+	 */
+	protected int[] handleTags;
+	
+	/**
+	 * The handles released by removed objects (a stack, reused first).
+	 */
+	protected int[] freeHandles;
+	
+	/**
+	 * The number of free handles.
+	 */
+	protected int freeCount = 0;
+	
+	/**
+	 * The number of handles ever used (since the last {@link #clear()}).
+	 */
+	protected int handleLimit = 0;
+	
 	/**
-	 * The objects are stored inside a map.
+	 * The priority buckets, sorted by priority.
+	 */
+	protected PriorityBucket[] buckets;
+	
+	/**
+	 * The number of priority buckets.
+	 */
+	protected int bucketCount = 0;
+	
+	/**
+	 * Maps the tags to their indices.
 	 * 
 	 * <p>Must support the null key! (HashMap does that)</p>
 	 */
-	protected Map<String, ObjectsCollection> objectsMap;
+	protected Map<String, Integer> tagIds;
 	
 	/**
-	 * An internal map that retains the objects grouped by priority.
+	 * The bitsets of the tags' handles, indexed by tag.
 	 */
-	protected Map<Integer, Collection<O3D>> priorityMap;
+	protected long[][] tagBits;
+	
+	/**
+	 * The number of objects having each tag.
+	 */
+	protected int[] tagSizes;
+	
+	/**
+	 * The tags' collections, created on demand.
+	 */
+	protected Object[] tagViews;
+	
+	/**
+	 * The number of known tags.
+	 */
+	protected int tagCount = 0;
+	
+	/**
+	 * The keys of the open addressing table that finds an object's handle (by reference).
+	 */
+	protected Object[] indexKeys;
+	
+	/**
+	 * The handles of the table's keys.
+	 */
+	protected int[] indexHandles;
+	
+	/**
+	 * The objects, sorted by priority (only the first {@link #size} are used).
+	 */
+	protected Object[] sorted;
+	
+	/**
+	 * Whether the sorted array reflects the last changes.
+	 */
+	protected boolean sortedValid = true;
 	
 	/**
 	 * Cached collection size.
@@ -127,8 +267,21 @@ public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D
 	 * Constructs an empty objects collection.
 	 */
 	public ObjectsManager() {
-		objectsMap = new HashMap<>();
-		priorityMap = new TreeMap<>();
+		handleObjects = new Object[INITIAL_CAPACITY];
+		handleBuckets = new PriorityBucket[INITIAL_CAPACITY];
+		handleIndices = new int[INITIAL_CAPACITY];
+		handleTags = new int[INITIAL_CAPACITY];
+		freeHandles = new int[INITIAL_CAPACITY];
+		buckets = new PriorityBucket[4];
+		
+		tagIds = new HashMap<>();
+		tagBits = new long[4][];
+		tagSizes = new int[4];
+		tagViews = new Object[4];
+		
+		indexKeys = new Object[INITIAL_CAPACITY * 2];
+		indexHandles = new int[INITIAL_CAPACITY * 2];
+		sorted = new Object[INITIAL_CAPACITY];
 	}
 	
 	/**
@@ -145,39 +298,175 @@ public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D
 	 * Draws all objects in the collection.
 	 */
 	public void drawAll() {
-		for (O3D obj: this) {
-			obj.draw();
+		updateSorted();
+		
+		final Object[] objects = sorted;
+		for (int i = 0, count = size; i < count; i++) {
+			((Object3D)objects[i]).draw();
 		}
 	}
 	
+	/**
+	 * Returns an object by its position in the drawing order.
+	 * 
+	 * <p>Allows iterating the collection by index (without allocating an iterator). The positions
+	 * change when the collection is modified.</p>
+	 * 
+	 * @param index The object's position (0 &lt;= index &lt; {@link #size()}).
+	 * @return The object.
+	 */
+	@SuppressWarnings("unchecked")
+	public O3D get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Invalid object index: " + index);
+		
+		updateSorted();
+		return (O3D)sorted[index];
+	}
+	
 	
 	/**
 	 * Returns all objects that have the specified tag.
 	 * 
-	 * <p>The returned collection is mutable, the changes (addition / deletion) will be propagated 
+	 * <p>The returned collection is mutable, the changes (addition / deletion) will be propagated
 	 * to the parent ObjectsManager instance.</p>
 	 * 
 	 * <p>Warning: the objects in this collection are not sorted by priority!</p>
 	 * 
 	 * @param tag The tag to search by. Null is a valid value (objects without tag).
-	 * @return A mutable collection with all objects with the specified tag.
+	 * @return A mutable collection with all objects with the specified tag (null if no object was
+	 * ever added with this tag).
 	 */
+	@SuppressWarnings("unchecked")
 	public Collection<O3D> getObjectsByTag(String tag) {
-		return objectsMap.get(tag);
+		Integer tagId = tagIds.get(tag);
+		if (tagId == null)
+			return null;
+		
+		if (tagViews[tagId] == null)
+			tagViews[tagId] = this.new TagCollection(tagId);
+		return (Collection<O3D>)tagViews[tagId];
 	}
 	
 	
-	// Collection implementation below
+	// handle-based access
 	
-	@Override
-	public boolean add(O3D obj) {
-		String tag = obj.getTag();
+	/**
+	 * Adds an object to the collection and returns its handle.
+	 * 
+	 * <p>The handle stays valid until the object is removed (it may be reused by the objects
+	 * added afterwards).</p>
+	 * 
+	 * @param obj The object to add.
+	 * @return The object's handle (the existing one if the object was already added).
+	 */
+	public int addObject(O3D obj) {
+		int handle = findHandle(obj);
+		if (handle != NO_HANDLE)
+			return handle;
 		
-		if (!objectsMap.containsKey(tag)) {
-			objectsMap.put(tag, this.new ObjectsCollection());
+		if (freeCount > 0) {
+			handle = freeHandles[--freeCount];
+		} else {
+			if (handleLimit == handleObjects.length)
+				growHandles();
+			handle = handleLimit++;
 		}
 		
-		return objectsMap.get(tag).add(obj);
+		PriorityBucket bucket = getBucket(obj.getPriority());
+		if (bucket.count == bucket.handles.length)
+			bucket.handles = Arrays.copyOf(bucket.handles, bucket.count * 2);
+		bucket.handles[bucket.count] = handle;
+		
+		int tagId = getTagId(obj.getTag());
+		if (tagId < 0)
+			tagId = addTag(obj.getTag());
+		tagBits[tagId][handle >>> 6] |= 1L << handle;
+		tagSizes[tagId]++;
+		
+		handleObjects[handle] = obj;
+		handleBuckets[handle] = bucket;
+		handleIndices[handle] = bucket.count++;
+		handleTags[handle] = tagId;
+		indexPut(obj, handle);
+		
+		size++;
+		sortedValid = false;
+		return handle;
+	}
+	
+	/**
+	 * Removes an object by its handle.
+	 * 
+	 * @param handle The object's handle.
+	 * @return True if the handle was valid and the object was removed.
+	 */
+	public boolean removeHandle(int handle) {
+		if (handle < 0 || handle >= handleLimit || handleObjects[handle] == null)
+			return false;
+		
+		// swap the bucket's last object into the removed one's place
+		PriorityBucket bucket = handleBuckets[handle];
+		int index = handleIndices[handle];
+		int last = bucket.handles[--bucket.count];
+		bucket.handles[index] = last;
+		handleIndices[last] = index;
+		
+		int tagId = handleTags[handle];
+		tagBits[tagId][handle >>> 6] &= ~(1L << handle);
+		tagSizes[tagId]--;
+		
+		indexRemove(handleObjects[handle]);
+		handleObjects[handle] = null;
+		handleBuckets[handle] = null;
+		freeHandles[freeCount++] = handle;
+		
+		size--;
+		sortedValid = false;
+		return true;
+	}
+	
+	/**
+	 * Returns the object having the specified handle.
+	 * 
+	 * @param handle The object's handle.
+	 * @return The object, or null if the handle is not used.
+	 */
+	@SuppressWarnings("unchecked")
+	public O3D getByHandle(int handle) {
+		if (handle < 0 || handle >= handleLimit)
+			return null;
+		return (O3D)handleObjects[handle];
+	}
+	
+	/**
+	 * Finds an object's handle.
+	 * 
+	 * @param obj The object to search (by reference).
+	 * @return The object's handle, or {@link #NO_HANDLE} if it's not in the collection.
+	 */
+	public int findHandle(Object obj) {
+		if (obj == null)
+			return NO_HANDLE;
+		
+		final int mask = indexKeys.length - 1;
+		for (int i = indexSlot(obj, mask); ; i = (i + 1) & mask) {
+			Object key = indexKeys[i];
+			if (key == null)
+				return NO_HANDLE;
+			if (key == obj)
+				return indexHandles[i];
+		}
+	}
+	
+	
+	// Collection implementation below
+	
+	@Override
+	public boolean add(O3D obj) {
+		int oldSize = size;
+		addObject(obj);
+		return size != oldSize;
 	}
 	
 	/**
@@ -188,51 +477,33 @@ public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D
 	 */
 	@Override
 	public boolean remove(Object obj) {
-		if (!(obj instanceof Object3D)) 
+		if (!(obj instanceof Object3D))
 			throw new ClassCastException("The object must implement Object3D!");
 		
-		String tag = ((Object3D)obj).getTag();
-		return objectsMap.containsKey(tag) && objectsMap.get(tag).remove(obj);
+		return removeHandle(findHandle(obj));
 	}
 	
 	@Override
 	@NotNull
 	public Iterator<O3D> iterator() {
-		final Iterator<Map.Entry<Integer, Collection<O3D>>> mapIter = 
-				priorityMap.entrySet().iterator();
-		
 		/**
 		 * The iterator class for the objects manager's collection.
-		 * Iterates through all the objects in the (sorted) priority map.
+		 * Iterates through the objects sorted by priority.
 		 */
 		return new Iterator<O3D>() {
-			protected Iterator<O3D> curIter = null;
+			protected int next = 0;
 			protected O3D current;
 			
 			@Override
 			public boolean hasNext() {
-				if (curIter == null) {
-					if (!mapIter.hasNext()) 
-						return false;
-					curIter = mapIter.next().getValue().iterator();
-				}
-				if (curIter.hasNext())
-					return true;
-				
-				while (mapIter.hasNext()) {
-					curIter = mapIter.next().getValue().iterator();
-					if (curIter.hasNext()) 
-						return true;
-				}
-				
-				return false;
+				return next < size;
 			}
 			
 			@Override
 			public O3D next() {
 				if (!hasNext())
 					throw new NoSuchElementException("hasNext() == false");
-				current = curIter.next();
+				current = get(next++);
 				return current;
 			}
 			
@@ -241,16 +512,33 @@ public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D
 				if (current == null)
 					throw new IllegalStateException("No current element in iteration!");
 				
-				// use the parent remove() method
+				// the bucket's last object (not iterated yet) takes the removed one's place
 				ObjectsManager.this.remove(current);
+				current = null;
+				next--;
 			}
 		};
 	}
 	
 	@Override
 	public void clear() {
-		objectsMap = new HashMap<>();
-		priorityMap = new TreeMap<>();
+		Arrays.fill(handleObjects, 0, handleLimit, null);
+		Arrays.fill(handleBuckets, 0, handleLimit, null);
+		freeCount = 0;
+		handleLimit = 0;
+		
+		for (int i = 0; i < bucketCount; i++) {
+			buckets[i].count = 0;
+		}
+		for (int i = 0; i < tagCount; i++) {
+			Arrays.fill(tagBits[i], 0);
+			tagSizes[i] = 0;
+		}
+		
+		Arrays.fill(indexKeys, null);
+		Arrays.fill(sorted, null);
+		sortedValid = true;
+		size = 0;
 	}
 	
 	@Override
@@ -258,8 +546,7 @@ public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D
 		if (!(obj instanceof Object3D))
 			throw new ClassCastException("The object must implement Object3D!");
 		
-		String tag = ((Object3D)obj).getTag();
-		return objectsMap.containsKey(tag) && objectsMap.get(tag).contains(obj);
+		return findHandle(obj) != NO_HANDLE;
 	}
 	
 	@Override
@@ -271,36 +558,189 @@ public class ObjectsManager<O3D extends Object3D> extends AbstractCollection<O3D
 	// some internally used methods
 	
 	/**
-	 * Called internally when a new object is added to the collection.
+	 * Rebuilds the array of objects sorted by priority, if the collection was modified.
+	 */
+	protected void updateSorted() {
+		if (sortedValid)
+			return;
+		
+		if (sorted.length < size)
+			sorted = new Object[handleObjects.length];
+		
+		int count = 0;
+		for (int i = 0; i < bucketCount; i++) {
+			PriorityBucket bucket = buckets[i];
+			for (int j = 0; j < bucket.count; j++) {
+				sorted[count++] = handleObjects[bucket.handles[j]];
+			}
+		}
+		// drop the references to the removed objects
+		for (int i = count; i < sorted.length && sorted[i] != null; i++) {
+			sorted[i] = null;
+		}
+		
+		sortedValid = true;
+	}
+	
+	/**
+	 * Returns the bucket of a priority, inserting it (in order) if missing.
 	 * 
-	 * @param obj the object that was added
+	 * @param priority The priority to search.
+	 * @return The priority's bucket.
 	 */
-	protected void objectAdded(O3D obj) {
-		// increment size
-		size++;
+	protected PriorityBucket getBucket(int priority) {
+		int low = 0, high = bucketCount - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int current = buckets[middle].priority;
+			if (current < priority) {
+				low = middle + 1;
+			} else if (current > priority) {
+				high = middle - 1;
+			} else {
+				return buckets[middle];
+			}
+		}
+		
+		if (bucketCount == buckets.length)
+			buckets = Arrays.copyOf(buckets, bucketCount * 2);
+		System.arraycopy(buckets, low, buckets, low + 1, bucketCount - low);
+		buckets[low] = new PriorityBucket(priority);
+		bucketCount++;
 		
-		Integer priority = obj.getPriority();
-		if (!priorityMap.containsKey(priority)) {
-			// use a HashSet because of the efficient contains() and remove() implementations
-			priorityMap.put(priority, new HashSet<O3D>());
+		return buckets[low];
+	}
+	
+	/**
+	 * Returns a tag's index.
+	 * 
+	 * @param tag The tag (may be null).
+	 * @return The tag's index, or -1 if the tag is not known.
+	 */
+	protected int getTagId(String tag) {
+		Integer tagId = tagIds.get(tag);
+		return (tagId != null ? tagId : -1);
+	}
+	
+	/**
+	 * Registers a new tag.
+	 * 
+	 * @param tag The tag (may be null).
+	 * @return The tag's index.
+	 */
+	protected int addTag(String tag) {
+		if (tagCount == tagSizes.length) {
+			tagBits = Arrays.copyOf(tagBits, tagCount * 2);
+			tagSizes = Arrays.copyOf(tagSizes, tagCount * 2);
+			tagViews = Arrays.copyOf(tagViews, tagCount * 2);
 		}
 		
-		priorityMap.get(priority).add(obj);
+		int tagId = tagCount++;
+		tagBits[tagId] = new long[(handleObjects.length + 63) >>> 6];
+		tagIds.put(tag, tagId);
+		return tagId;
 	}
-
+	
 	/**
-	 * Called internally when a single object is removed from the collection.
+	 * Returns the next handle having the specified tag.
 	 * 
-	 * @param obj The object that was removed.
+	 * @param tagId The tag's index.
+	 * @param from The handle to start searching from.
+	 * @return The next handle (from included), or {@link #NO_HANDLE} if none left.
 	 */
-	protected void objectRemoved(Object3D obj) {
-		// decrement size
-		size--;
+	protected int nextTagHandle(int tagId, int from) {
+		final long[] bits = tagBits[tagId];
+		int word = from >>> 6;
+		if (word >= bits.length)
+			return NO_HANDLE;
+		
+		long current = bits[word] & (-1L << from);
+		while (current == 0) {
+			if (++word >= bits.length)
+				return NO_HANDLE;
+			current = bits[word];
+		}
+		return (word << 6) + Long.numberOfTrailingZeros(current);
+	}
+	
+	/**
+	 * Doubles the capacity of the handle arrays (and of the structures indexed by handles).
+	 */
+	protected void growHandles() {
+		int capacity = handleObjects.length * 2;
+		handleObjects = Arrays.copyOf(handleObjects, capacity);
+		handleBuckets = Arrays.copyOf(handleBuckets, capacity);
+		handleIndices = Arrays.copyOf(handleIndices, capacity);
+		handleTags = Arrays.copyOf(handleTags, capacity);
+		freeHandles = Arrays.copyOf(freeHandles, capacity);
+		
+		for (int i = 0; i < tagCount; i++) {
+			tagBits[i] = Arrays.copyOf(tagBits[i], (capacity + 63) >>> 6);
+		}
+		
+		// keep the lookup table at most half full
+		indexKeys = new Object[capacity * 2];
+		indexHandles = new int[capacity * 2];
+		for (int handle = 0; handle < handleLimit; handle++) {
+			if (handleObjects[handle] != null)
+				indexPut(handleObjects[handle], handle);
+		}
+	}
+	
+	/**
+	 * Computes the home slot of an object inside the lookup table.
+	 * 
+	 * @param obj The object.
+	 * @param mask The table's size minus one.
+	 * @return The slot's index.
+	 */
+	protected static int indexSlot(Object obj, int mask) {
+		int hash = System.identityHashCode(obj);
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+	
+	/**
+	 * Inserts an object into the lookup table (the object must not be present).
+	 * 
+	 * @param obj The object.
+	 * @param handle The object's handle.
+	 */
+	protected void indexPut(Object obj, int handle) {
+		final int mask = indexKeys.length - 1;
+		int i = indexSlot(obj, mask);
+		while (indexKeys[i] != null) {
+			i = (i + 1) & mask;
+		}
+		indexKeys[i] = obj;
+		indexHandles[i] = handle;
+	}
+	
+	/**
+	 * Removes an object from the lookup table.
+	 * 
+	 * <p>The following entries of the probe sequence are shifted back, so no tombstones are
+	 * needed.</p>
+	 * 
+	 * @param obj The object (must be present).
+	 */
+	protected void indexRemove(Object obj) {
+		final int mask = indexKeys.length - 1;
+		int i = indexSlot(obj, mask);
+		while (indexKeys[i] != obj) {
+			i = (i + 1) & mask;
+		}
+		indexKeys[i] = null;
 		
-		// remove it from the sorted objects map
-		Integer priority = obj.getPriority();
-		if (priorityMap.containsKey(priority)) {
-			priorityMap.get(priority).remove(obj);
+		for (int j = (i + 1) & mask; indexKeys[j] != null; j = (j + 1) & mask) {
+			int home = indexSlot(indexKeys[j], mask);
+			// move the entry unless its home slot lies cyclically inside (i, j]
+			boolean reachable = (i <= j ? (i < home && home <= j) : (i < home || home <= j));
+			if (!reachable) {
+				indexKeys[i] = indexKeys[j];
+				indexHandles[i] = indexHandles[j];
+				indexKeys[j] = null;
+				i = j;
+			}
 		}
 	}
 	
@@ -3,23 +3,28 @@ package ro.pub.dadgm.pf22.render.objects.game;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
-import java.io.IOException;
-import java.io.InputStream;
-
-import ro.pub.dadgm.pf22.activity.MainActivity;
 import ro.pub.dadgm.pf22.game.models.Plane;
 import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.ShaderManager;
+import ro.pub.dadgm.pf22.render.assets.AssetHandle;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
 import ro.pub.dadgm.pf22.render.objects.AbstractObject3D;
+import ro.pub.dadgm.pf22.render.objects.CommandObject3D;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.RenderCommandBuffer;
 import ro.pub.dadgm.pf22.render.utils.objloader.Material;
-import ro.pub.dadgm.pf22.render.utils.objloader.OBJParser;
 import ro.pub.dadgm.pf22.render.utils.objloader.TDModel;
 import ro.pub.dadgm.pf22.render.utils.objloader.TDModelPart;
 import ro.pub.dadgm.pf22.render.views.GameScene;
 
 /**
  * Implements a 3D fighter jet model.
+ * 
+ * <p>The jet's matrices are computed while building the frame's commands, the command's material 
+ * being the shader quality tier.</p>
  */
-public class FighterJet3D extends AbstractObject3D {
+public class FighterJet3D extends AbstractObject3D implements CommandObject3D {
 	
 	/**
 	 * The asset path of the model's resources.
@@ -27,9 +32,39 @@ public class FighterJet3D extends AbstractObject3D {
 	protected final static String MODEL_PATH = "objects/f22_raptor/";
 	
 	/**
-	 * The fighter jet's model object.
+	 * The radius of the (scaled) model's bounding sphere (the mesh's radius is about 12.2).
+	 */
+	protected final static float BOUNDING_RADIUS = 13 / 19f;
+	
+	/**
+	 * The mesh id of the commands (all jets share the model).
+	 */
+	protected final static int MESH_ID = MODEL_PATH.hashCode();
+	
+	/**
+	 * The quality tiers (indexed by their ordinal, which the commands store as their material).
 	 */
-	protected static TDModel modelObj = null;
+	protected final static Shader.Quality[] QUALITIES = Shader.Quality.values();
+	
+	/**
+	 * The defines of the materials' shader variants: untextured, textured and textured with a 
+	 * separate alpha plane.
+	 */
+	protected final static String[][] MATERIAL_DEFINES = {
+			{ },
+			{ Shader.DEFINE_TEXTURE },
+			{ Shader.DEFINE_TEXTURE, Shader.DEFINE_ALPHA_TEXTURE }
+	};
+	
+	/**
+	 * The shader variants, indexed by the quality tier and the material's variant.
+	 */
+	protected Shader[][] shaders;
+	
+	/**
+	 * The handle of the shared model asset.
+	 */
+	protected AssetHandle<TDModel> model;
 	
 	/**
 	 * The plane model object.
@@ -48,84 +83,135 @@ public class FighterJet3D extends AbstractObject3D {
 		
 		this.plane = plane;
 		
-		// get shader program
-		shader = scene.getShaderManager().getShader("s3d_tex_phong");
-		
-		// load the object's assets
-		OBJParser parser = new OBJParser();
-		InputStream modelStream, materialStream;
-		try {
-			modelStream = MainActivity.getAppContext().getAssets().open(MODEL_PATH + "model.obj");
-			materialStream = MainActivity.getAppContext().getAssets().open(MODEL_PATH + "materials.mtl");
-			
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to read fighter jet model file!", e);
+		// get the shader variants
+		ShaderManager shaderManager = scene.getShaderManager();
+		shaders = new Shader[QUALITIES.length][MATERIAL_DEFINES.length];
+		for (Shader.Quality quality: QUALITIES) {
+			for (int m = 0; m < MATERIAL_DEFINES.length; m++) {
+				shaders[quality.ordinal()][m] = shaderManager.getVariant("s3d_tex_phong", 
+						quality.getDefines(MATERIAL_DEFINES[m]));
+			}
 		}
-		if (modelObj == null) 
-			modelObj = parser.parseOBJ(modelStream, materialStream);
+		shader = shaders[Shader.Quality.HIGH.ordinal()][0];
 		
-		modelObj.initializeBuffers();
+		// acquire the model (loaded in background if not already available)
+		model = GLAssetManager.getInstance().acquireMesh(MODEL_PATH, true);
 	}
 	
 	@Override
-	public void draw() {
+	public boolean computeBounds(float[] bounds) {
 		float[] position = plane.getPosition().toArray();
+		for (int k = 0; k < 3; k++) {
+			bounds[k] = position[k] - BOUNDING_RADIUS;
+			bounds[k + 3] = position[k] + BOUNDING_RADIUS;
+		}
+		return true;
+	}
+	
+	@Override
+	public void draw() {
+		if (!model.isReady())
+			return; // still loading
 		
-		Matrix.setIdentityM(modelMatrix, 0);
-		Matrix.translateM(modelMatrix, 0, position[0], position[1], position[2]);
-		Matrix.scaleM(modelMatrix, 0, 1/19f, 1/19f, 1/19f);
-		Matrix.rotateM(modelMatrix, 0, plane.getYaw(), 0, 0, 1);
-		Matrix.rotateM(modelMatrix, 0, plane.getPitch(), 0, 1, 0);
-		Matrix.rotateM(modelMatrix, 0, plane.getRoll(), 1, 0, 0);
-		Matrix.rotateM(modelMatrix, 0, -90, 0, 0, 1);
-		
-		float[] lightPosition = GameScene.LIGHT_POSITION;
+		float[] position = plane.getPosition().toArray();
+		computeModelMatrix(modelMatrix, 0, position);
 		float[] normalMatrix = scene.getCamera().computeNormalMatrix(modelMatrix);
 		
-		shader.use();
-		
-		// get shader attributes' locations
-		int a_position = shader.getAttribLocation("a_position");
-		int a_normal = shader.getAttribLocation("a_normal");
-		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
-		
-		// get shader uniforms' locations
-		int u_normalMatrix = shader.getUniformLocation("u_normalMatrix");
-		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
-		int u_lightPos = shader.getUniformLocation("u_lightPos");
-		
-		int u_texture = shader.getUniformLocation("u_texture");
-		int u_textureEnable = shader.getUniformLocation("u_textureEnable");
+		// the cheaper variants are used far from the camera
+		float[] cameraPosition = scene.getCamera().computePosition();
+		float dx = position[0] - cameraPosition[0], dy = position[1] - cameraPosition[1], 
+				dz = position[2] - cameraPosition[2];
+		render(modelMatrix, 0, normalMatrix, 0, 
+				Shader.Quality.select((float)Math.sqrt(dx * dx + dy * dy + dz * dz)));
+	}
+	
+	@Override
+	public void buildCommands(RenderCommandBuffer buffer) {
+		if (!model.isReady())
+			return; // still loading
 		
-		int u_ambientColor = shader.getUniformLocation("u_ambientColor");
-		int u_diffuseColor = shader.getUniformLocation("u_diffuseColor");
-		int u_specularColor = shader.getUniformLocation("u_specularColor");
-		int u_alpha = shader.getUniformLocation("u_alpha");
-		int u_shininess = shader.getUniformLocation("u_shininess");
+		float[] position = plane.getPosition().toArray();
+		Shader.Quality quality = Shader.Quality.select(
+				buffer.computeCameraDistance(position[0], position[1], position[2]));
 		
-		// send the matrices
-		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrix, 0);
-		GLES20.glUniformMatrix4fv(u_normalMatrix, 1, false, normalMatrix, 0);
+		int command = buffer.addCommand(this, priority, quality.ordinal(), MESH_ID);
+		computeModelMatrix(buffer.getTransforms(), RenderCommandBuffer.getModelOffset(command), position);
+		buffer.computeNormalMatrix(command);
+	}
+	
+	@Override
+	public void executeCommand(RenderCommandBuffer buffer, int command) {
+		if (!model.isReady())
+			return;
 		
-		// send the vertex data to the shader
-		int vbo = modelObj.getVBO();
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-		GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false,
-				4 * 4 * 2 /* bytes */, 0);
-		GLES20.glVertexAttribPointer(a_normal, 3 /* coords */, GLES20.GL_FLOAT, false,
-				4 * 4 * 2 /* bytes */, 4 * 4);
-		GLES20.glEnableVertexAttribArray(a_position);
-		GLES20.glEnableVertexAttribArray(a_normal);
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		float[] transforms = buffer.getTransforms();
+		render(transforms, RenderCommandBuffer.getModelOffset(command), 
+				transforms, RenderCommandBuffer.getNormalOffset(command), 
+				QUALITIES[buffer.getMaterial(command)]);
+	}
+	
+	/**
+	 * Computes the jet's model matrix.
+	 * 
+	 * @param matrix The array to store the matrix into.
+	 * @param offset The matrix's offset inside the array.
+	 * @param position The plane's position.
+	 */
+	protected void computeModelMatrix(float[] matrix, int offset, float[] position) {
+		Matrix.setIdentityM(matrix, offset);
+		Matrix.translateM(matrix, offset, position[0], position[1], position[2]);
+		Matrix.scaleM(matrix, offset, 1/19f, 1/19f, 1/19f);
+		Matrix.rotateM(matrix, offset, plane.getYaw(), 0, 0, 1);
+		Matrix.rotateM(matrix, offset, plane.getPitch(), 0, 1, 0);
+		Matrix.rotateM(matrix, offset, plane.getRoll(), 1, 0, 0);
+		Matrix.rotateM(matrix, offset, -90, 0, 0, 1);
+	}
+	
+	/**
+	 * Draws the model (must be ready) with the specified matrices.
+	 * 
+	 * @param modelMatrices The array containing the model matrix.
+	 * @param modelOffset The model matrix's offset.
+	 * @param normalMatrices The array containing the normal matrix.
+	 * @param normalOffset The normal matrix's offset.
+	 * @param quality The quality tier of the shader variants.
+	 */
+	protected void render(float[] modelMatrices, int modelOffset, float[] normalMatrices, 
+			int normalOffset, Shader.Quality quality) {
+		TDModel modelObj = model.get();
+		float[] lightPosition = GameScene.LIGHT_POSITION;
+		Shader[] variants = shaders[quality.ordinal()];
 		
-		GLES20.glUniform3fv(u_lightPos, 1, lightPosition, 0);
+		// the locations of the current variant's attributes / uniforms
+		Shader shader = null;
+		int a_textureCoords = -1, u_texture = -1, u_alphaTexture = -1;
+		int u_ambientColor = -1, u_diffuseColor = -1, u_specularColor = -1, u_alpha = -1, u_shininess = -1;
 		
 		// send the faces (parts)
 		for (TDModelPart part: modelObj.getParts()) {
-			// load the texture
 			Material mat = part.getMaterial();
-			int texture = mat.loadTexture(MODEL_PATH);
+			int texture = mat.getTexture();
+			int alphaTexture = (texture > 0 ? mat.getAlphaTexture() : 0);
 			
+			// switch the shader variant (only when the material's variant changes)
+			Shader variant = variants[texture > 0 ? (alphaTexture > 0 ? 2 : 1) : 0];
+			if (variant != shader) {
+				shader = variant;
+				useShader(shader, modelObj, modelMatrices, modelOffset, normalMatrices, normalOffset, 
+						lightPosition);
+				
+				a_textureCoords = shader.getAttribLocation("a_textureCoords");
+				u_texture = shader.getUniformLocation("u_texture");
+				u_alphaTexture = shader.getUniformLocation("u_alphaTexture");
+				
+				u_ambientColor = shader.getUniformLocation("u_ambientColor");
+				u_diffuseColor = shader.getUniformLocation("u_diffuseColor");
+				u_specularColor = shader.getUniformLocation("u_specularColor");
+				u_alpha = shader.getUniformLocation("u_alpha");
+				u_shininess = shader.getUniformLocation("u_shininess");
+			}
+			
+			// load the texture
 			if (texture > 0) {
 				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, modelObj.getTextureCoordsBuf(mat));
 				GLES20.glVertexAttribPointer(a_textureCoords, 2, GLES20.GL_FLOAT, false,
@@ -136,11 +222,14 @@ public class FighterJet3D extends AbstractObject3D {
 				GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
 				GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
 				GLES20.glUniform1i(u_texture, 0);
-				GLES20.glUniform1i(u_textureEnable, 1);
 				
-			} else {
-				// disable texture
-				GLES20.glUniform1i(u_textureEnable, 0);
+				// bind the separate alpha plane of compressed textures
+				if (alphaTexture > 0) {
+					GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+					GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, alphaTexture);
+					GLES20.glUniform1i(u_alphaTexture, 1);
+					GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+				}
 			}
 			
 			// set up colors and textures
@@ -153,8 +242,56 @@ public class FighterJet3D extends AbstractObject3D {
 			// draw!
 			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, part.getIBO());
 			GLES20.glDrawElements(GLES20.GL_TRIANGLES, part.getFacesCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+			FrameProfiler.getInstance().countDraw(part.getFacesCount() / 3);
 			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 		}
 	}
 	
+	/**
+	 * Activates a shader variant and sends it the model's vertex data, matrices and light.
+	 * 
+	 * @param shader The shader variant.
+	 * @param modelObj The model.
+	 * @param modelMatrices The array containing the model matrix.
+	 * @param modelOffset The model matrix's offset.
+	 * @param normalMatrices The array containing the normal matrix.
+	 * @param normalOffset The normal matrix's offset.
+	 * @param lightPosition The light's position.
+	 */
+	protected void useShader(Shader shader, TDModel modelObj, float[] modelMatrices, int modelOffset, 
+			float[] normalMatrices, int normalOffset, float[] lightPosition) {
+		shader.use();
+		
+		// get shader attributes' locations
+		int a_position = shader.getAttribLocation("a_position");
+		int a_normal = shader.getAttribLocation("a_normal");
+		
+		// get shader uniforms' locations
+		int u_normalMatrix = shader.getUniformLocation("u_normalMatrix");
+		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
+		int u_lightPos = shader.getUniformLocation("u_lightPos");
+		
+		// send the matrices
+		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrices, modelOffset);
+		GLES20.glUniformMatrix4fv(u_normalMatrix, 1, false, normalMatrices, normalOffset);
+		
+		// send the vertex data to the shader
+		int vbo = modelObj.getVBO();
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+		GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false,
+				4 * 4 * 2 /* bytes */, 0);
+		GLES20.glVertexAttribPointer(a_normal, 3 /* coords */, GLES20.GL_FLOAT, false,
+				4 * 4 * 2 /* bytes */, 4 * 4);
+		GLES20.glEnableVertexAttribArray(a_position);
+		GLES20.glEnableVertexAttribArray(a_normal);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		
+		GLES20.glUniform3fv(u_lightPos, 1, lightPosition, 0);
+	}
+	
+	@Override
+	public void destroy() {
+		model.release();
+	}
+	
 }
@@ -0,0 +1,442 @@
+package ro.pub.dadgm.pf22.render.objects.game;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+import ro.pub.dadgm.pf22.game.models.Projectile;
+import ro.pub.dadgm.pf22.render.Camera;
+import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+import ro.pub.dadgm.pf22.render.objects.AbstractObject3D;
+import ro.pub.dadgm.pf22.render.utils.BufferUtils;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.ParticlePool;
+import ro.pub.dadgm.pf22.utils.SplitMixRandom;
+
+/**
+ * Draws the game's particle effects: the explosions, the rockets' exhaust trails and the hits'
+ * sparks.
+ * 
+ * <p>Each effect type has its own {@link ParticlePool}, simulated on the OpenGL thread when drawn,
+ * and its own vertex buffer: the particles are streamed into it (orphaning its previous storage)
+ * and drawn as point sprites with a single draw call.</p>
+ * 
+ * <p>The effects are emitted by the scene, as a reaction to the game's events; the exhaust trails
+ * follow the projectiles registered as emitters.</p>
+ * 
+ * <p>Note: The shader used to draw the particles should abide by the following conventions:
+ * <ul>
+ *     <li>shader's identifier is 'particle'.</li>
+ *     <li>the vertex shader accepts the a_position, a_size and a_color attributes;</li>
+ *     <li>the following uniforms are used: u_pointScale (the point size of a particle of size 1
+ *     at distance 1), u_viewMatrix and u_projectionMatrix;</li>
+ * </ul>
+ * </p>
+ */
+public class ParticleEffects3D extends AbstractObject3D {
+	
+	/**
+	 * The indices of the effect types (in the pools array).
+	 */
+	protected static final int EXPLOSION = 0, EXHAUST = 1, SPARKS = 2;
+	
+	/**
+	 * The capacities of the effect types' pools.
+	 */
+	protected static final int[] CAPACITIES = { 4096, 8192, 2048 };
+	
+	/**
+	 * The number of particles of an explosion.
+	 */
+	protected static final int EXPLOSION_PARTICLES = 160;
+	
+	/**
+	 * The number of sparks of a projectile's hit.
+	 */
+	protected static final int SPARK_PARTICLES = 40;
+	
+	/**
+	 * The number of exhaust particles emitted by a projectile each second.
+	 */
+	protected static final float EXHAUST_RATE = 90;
+	
+	/**
+	 * The maximum simulated time step (seconds), so a stalled frame won't make the particles jump.
+	 */
+	protected static final float MAX_TIME_STEP = 0.1f;
+	
+	
+	/**
+	 * The particle pools, indexed by the effect type.
+	 */
+	protected final ParticlePool[] pools;
+	
+	/**
+	 * The vertex buffer objects, one per effect type.
+	 */
+	protected int[] vbos;
+	
+	/**
+	 * The EGL context generation the buffers were allocated in.
+	 */
+	protected int generation = -1;
+	
+	/**
+	 * The work array the particles' vertices are written into.
+	 */
+	protected final float[] workVertices;
+	
+	/**
+	 * The work buffer used to upload the vertices.
+	 */
+	protected final FloatBuffer workVertexBuf;
+	
+	/**
+	 * The projectiles that emit exhaust trails (only the first {@link #emitterCount} are used).
+	 */
+	protected Projectile[] emitters = new Projectile[16];
+	
+	/**
+	 * The emitters' fractional particles (carried over to the next frame).
+	 */
+	protected float[] emitterCarry = new float[16];
+	
+	/**
+	 * The number of emitters.
+	 */
+	protected int emitterCount = 0;
+	
+	/**
+	 * The random generator used to scatter the particles.
+	 */
+	protected final SplitMixRandom random;
+	
+	/**
+	 * The time of the last simulation step (nanoseconds, 0 if none).
+	 */
+	protected long lastUpdate = 0;
+	
+	/**
+	 * Whether the simulation is paused (the particles are still drawn).
+	 */
+	protected boolean paused = false;
+	
+	/**
+	 * The fraction of the particles that are emitted (lowered by the quality settings).
+	 */
+	protected float detail = 1;
+	
+	/**
+	 * The scale of the scene's render target, relative to the viewport (the sprites' sizes are
+	 * given in pixels).
+	 */
+	protected float resolutionScale = 1;
+	
+	
+	/**
+	 * Initializes the particle effects.
+	 * 
+	 * @param scene The parent scene object.
+	 * @param tag An optional tag.
+	 * @param priority An optional priority (should be drawn after the opaque objects).
+	 */
+	public ParticleEffects3D(Scene3D scene, String tag, int priority) {
+		super(scene, tag, priority);
+		
+		shader = scene.getShaderManager().getShader("particle");
+		random = new SplitMixRandom(System.nanoTime());
+		
+		// fire turning into rising smoke
+		pools = new ParticlePool[CAPACITIES.length];
+		pools[EXPLOSION] = new ParticlePool(CAPACITIES[EXPLOSION]);
+		pools[EXPLOSION].setColors(new float[] { 1.0f, 0.7f, 0.25f, 0.0f },
+				new float[] { 0.05f, 0.05f, 0.05f, 0.5f });
+		pools[EXPLOSION].setAcceleration(0, 0, 0.6f);
+		pools[EXPLOSION].setDrag(2.0f);
+		pools[EXPLOSION].setGrowth(2.5f);
+		
+		// a thin flame, expanding into smoke
+		pools[EXHAUST] = new ParticlePool(CAPACITIES[EXHAUST]);
+		pools[EXHAUST].setColors(new float[] { 1.0f, 0.55f, 0.15f, 0.0f },
+				new float[] { 0.08f, 0.08f, 0.08f, 0.3f });
+		pools[EXHAUST].setAcceleration(0, 0, 0.2f);
+		pools[EXHAUST].setDrag(1.0f);
+		pools[EXHAUST].setGrowth(3.0f);
+		
+		// bright sparks, falling and cooling down
+		pools[SPARKS] = new ParticlePool(CAPACITIES[SPARKS]);
+		pools[SPARKS].setColors(new float[] { 1.0f, 0.95f, 0.6f, 0.0f },
+				new float[] { 0.6f, 0.1f, 0.0f, 0.0f });
+		pools[SPARKS].setAcceleration(0, 0, -4.0f);
+		pools[SPARKS].setDrag(0.5f);
+		pools[SPARKS].setGrowth(-0.5f);
+		
+		int maxCapacity = 0;
+		for (int capacity: CAPACITIES) {
+			maxCapacity = Math.max(maxCapacity, capacity);
+		}
+		workVertices = new float[maxCapacity * ParticlePool.VERTEX_SIZE];
+		workVertexBuf = BufferUtils.allocateFloatBuffer(workVertices.length);
+		vbos = new int[CAPACITIES.length];
+	}
+	
+	/**
+	 * Emits an explosion (e.g. of a destroyed plane).
+	 * 
+	 * @param x The X coordinate of the explosion's center.
+	 * @param y The Y coordinate of the explosion's center.
+	 * @param z The Z coordinate of the explosion's center.
+	 */
+	public void explode(float x, float y, float z) {
+		emitBurst(pools[EXPLOSION], (int)(EXPLOSION_PARTICLES * detail), x, y, z, 3.0f, 1.6f, 0.4f);
+		emitBurst(pools[SPARKS], (int)(SPARK_PARTICLES * detail), x, y, z, 5.0f, 0.5f, 0.1f);
+	}
+	
+	/**
+	 * Emits the sparks of a projectile's hit.
+	 * 
+	 * @param x The X coordinate of the hit.
+	 * @param y The Y coordinate of the hit.
+	 * @param z The Z coordinate of the hit.
+	 */
+	public void spark(float x, float y, float z) {
+		emitBurst(pools[SPARKS], (int)(SPARK_PARTICLES * detail), x, y, z, 4.0f, 0.4f, 0.08f);
+		emitBurst(pools[EXPLOSION], (int)(SPARK_PARTICLES / 2 * detail), x, y, z, 1.0f, 0.6f, 0.15f);
+	}
+	
+	/**
+	 * Starts emitting the exhaust trail of a projectile.
+	 * 
+	 * @param projectile The projectile.
+	 */
+	public void addEmitter(Projectile projectile) {
+		if (emitterCount == emitters.length) {
+			Projectile[] newEmitters = new Projectile[emitterCount * 2];
+			System.arraycopy(emitters, 0, newEmitters, 0, emitterCount);
+			emitters = newEmitters;
+			float[] newCarry = new float[emitterCount * 2];
+			System.arraycopy(emitterCarry, 0, newCarry, 0, emitterCount);
+			emitterCarry = newCarry;
+		}
+		emitters[emitterCount] = projectile;
+		emitterCarry[emitterCount] = 0;
+		emitterCount++;
+	}
+	
+	/**
+	 * Stops emitting the exhaust trail of a projectile (its particles fade out normally).
+	 * 
+	 * @param projectile The projectile.
+	 */
+	public void removeEmitter(Projectile projectile) {
+		for (int i = 0; i < emitterCount; i++) {
+			if (emitters[i] == projectile) {
+				emitterCount--;
+				emitters[i] = emitters[emitterCount];
+				emitterCarry[i] = emitterCarry[emitterCount];
+				emitters[emitterCount] = null;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Pauses / resumes the simulation (e.g. when the game is paused).
+	 * 
+	 * @param paused Whether to pause the simulation.
+	 */
+	public void setPaused(boolean paused) {
+		this.paused = paused;
+	}
+	
+	/**
+	 * Sets the fraction of the particles that are emitted.
+	 * 
+	 * @param detail The fraction (0 disables the effects).
+	 */
+	public void setDetail(float detail) {
+		this.detail = detail;
+	}
+	
+	/**
+	 * Sets the scale of the render target the particles are drawn into.
+	 * 
+	 * @param resolutionScale The render target's size, relative to the viewport's.
+	 */
+	public void setResolutionScale(float resolutionScale) {
+		this.resolutionScale = resolutionScale;
+	}
+	
+	@Override
+	public void draw() {
+		long now = System.nanoTime();
+		float dt = (lastUpdate != 0 ? Math.min((now - lastUpdate) / 1e9f, MAX_TIME_STEP) : 0);
+		lastUpdate = now;
+		
+		if (!paused && dt > 0) {
+			emitExhaust(dt);
+			for (ParticlePool pool: pools) {
+				pool.update(dt);
+			}
+		}
+		
+		boolean empty = true;
+		for (ParticlePool pool: pools) {
+			empty &= (pool.getCount() == 0);
+		}
+		if (empty)
+			return;
+		
+		allocateBuffers();
+		shader.use();
+		
+		// get shader attributes' locations
+		int a_position = shader.getAttribLocation("a_position");
+		int a_size = shader.getAttribLocation("a_size");
+		int a_color = shader.getAttribLocation("a_color");
+		
+		// a particle of size 1 at distance 1 covers (projection's Y scale) half viewports
+		Camera camera = scene.getCamera();
+		GLES20.glUniform1f(shader.getUniformLocation("u_pointScale"),
+				camera.getViewportHeight() * resolutionScale * camera.getProjectionMatrix()[5] / 2);
+		
+		// the particles are translucent: tested against the depth buffer, but not written to it
+		GLES20.glDepthMask(false);
+		
+		final int stride = ParticlePool.VERTEX_SIZE * 4;
+		for (int type = 0; type < pools.length; type++) {
+			int count = pools[type].fillVertices(workVertices);
+			if (count == 0)
+				continue;
+			
+			// stream the vertices into the effect's buffer (orphaning its previous storage)
+			int length = count * ParticlePool.VERTEX_SIZE;
+			workVertexBuf.clear();
+			workVertexBuf.put(workVertices, 0, length);
+			workVertexBuf.flip();
+			
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbos[type]);
+			GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER,
+					CAPACITIES[type] * ParticlePool.VERTEX_SIZE * 4, null, GLES20.GL_STREAM_DRAW);
+			GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, length * 4, workVertexBuf);
+			
+			// send the vertex data (interleaved)
+			GLES20.glVertexAttribPointer(a_position, 3, GLES20.GL_FLOAT, false, stride, 0);
+			GLES20.glVertexAttribPointer(a_size, 1, GLES20.GL_FLOAT, false, stride, 3 * 4);
+			GLES20.glVertexAttribPointer(a_color, 4, GLES20.GL_FLOAT, false, stride, 4 * 4);
+			GLES20.glEnableVertexAttribArray(a_position);
+			GLES20.glEnableVertexAttribArray(a_size);
+			GLES20.glEnableVertexAttribArray(a_color);
+			
+			// draw!
+			GLES20.glDrawArrays(GLES20.GL_POINTS, 0, count);
+			FrameProfiler.getInstance().countDraw(0);
+		}
+		
+		// the other objects draw from client side arrays
+		GLES20.glDisableVertexAttribArray(a_size);
+		GLES20.glDisableVertexAttribArray(a_color);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glDepthMask(true);
+	}
+	
+	@Override
+	public void destroy() {
+		if (vbos[0] != 0 && generation == GLAssetManager.getInstance().getContextGeneration()) {
+			GLES20.glDeleteBuffers(vbos.length, vbos, 0);
+		}
+		vbos = new int[CAPACITIES.length];
+		
+		for (ParticlePool pool: pools) {
+			pool.clear();
+		}
+		for (int i = 0; i < emitterCount; i++) {
+			emitters[i] = null;
+		}
+		emitterCount = 0;
+		lastUpdate = 0;
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Emits a burst of particles in random directions.
+	 * 
+	 * @param pool The pool to emit the particles into.
+	 * @param count The number of particles.
+	 * @param x The X coordinate of the burst's center.
+	 * @param y The Y coordinate of the burst's center.
+	 * @param z The Z coordinate of the burst's center.
+	 * @param maxSpeed The particles' maximum speed.
+	 * @param maxLife The particles' maximum life span (they live at least half of it).
+	 * @param size The particles' initial size.
+	 */
+	protected void emitBurst(ParticlePool pool, int count, float x, float y, float z,
+			float maxSpeed, float maxLife, float size) {
+		for (int i = 0; i < count; i++) {
+			// a random direction (normalized) and speed
+			float dx = random.nextFloat() * 2 - 1, dy = random.nextFloat() * 2 - 1,
+					dz = random.nextFloat() * 2 - 1;
+			float length = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+			if (length < 0.001f)
+				continue;
+			float speed = maxSpeed * random.nextFloat() / length;
+			
+			if (!pool.emit(x, y, z, dx * speed, dy * speed, dz * speed,
+					maxLife * (0.5f + random.nextFloat() / 2), size))
+				return; // full
+		}
+	}
+	
+	/**
+	 * Emits the exhaust particles of the projectiles (at the rate of {@link #EXHAUST_RATE}).
+	 * 
+	 * @param dt The elapsed time (seconds).
+	 */
+	protected void emitExhaust(float dt) {
+		ParticlePool pool = pools[EXHAUST];
+		for (int i = 0; i < emitterCount; i++) {
+			Projectile projectile = emitters[i];
+			float particles = emitterCarry[i] + EXHAUST_RATE * detail * dt;
+			int count = (int)particles;
+			emitterCarry[i] = particles - count;
+			if (count == 0)
+				continue;
+			
+			float x = projectile.getPosition().getX(), y = projectile.getPosition().getY(),
+					z = projectile.getPosition().getZ();
+			float vx = projectile.getVelocity().getX(), vy = projectile.getVelocity().getY(),
+					vz = projectile.getVelocity().getZ();
+			
+			for (int k = 0; k < count; k++) {
+				// spread along the distance travelled since the last frame, drifting backwards
+				float back = random.nextFloat() * dt;
+				if (!pool.emit(x - vx * back, y - vy * back, z - vz * back,
+						-0.1f * vx + (random.nextFloat() - 0.5f) * 0.3f,
+						-0.1f * vy + (random.nextFloat() - 0.5f) * 0.3f,
+						-0.1f * vz + (random.nextFloat() - 0.5f) * 0.3f,
+						0.4f + random.nextFloat() * 0.2f, 0.12f))
+					return; // full
+			}
+		}
+	}
+	
+	/**
+	 * Allocates the vertex buffers (if missing or lost along with the OpenGL context).
+	 */
+	protected void allocateBuffers() {
+		int currentGeneration = GLAssetManager.getInstance().getContextGeneration();
+		if (vbos[0] != 0 && generation == currentGeneration)
+			return;
+		
+		GLES20.glGenBuffers(vbos.length, vbos, 0);
+		for (int buffer: vbos) {
+			if (buffer <= 0)
+				throw new RuntimeException("Unable to allocate the particles' buffers!");
+		}
+		generation = currentGeneration;
+	}
+	
+}
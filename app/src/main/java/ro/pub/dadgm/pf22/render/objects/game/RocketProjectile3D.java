@@ -3,23 +3,26 @@ package ro.pub.dadgm.pf22.render.objects.game;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
-import java.io.IOException;
-import java.io.InputStream;
-
-import ro.pub.dadgm.pf22.activity.MainActivity;
 import ro.pub.dadgm.pf22.game.models.Projectile;
 import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.assets.AssetHandle;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
 import ro.pub.dadgm.pf22.render.objects.AbstractObject3D;
+import ro.pub.dadgm.pf22.render.objects.CommandObject3D;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.RenderCommandBuffer;
 import ro.pub.dadgm.pf22.render.utils.objloader.Material;
-import ro.pub.dadgm.pf22.render.utils.objloader.OBJParser;
 import ro.pub.dadgm.pf22.render.utils.objloader.TDModel;
 import ro.pub.dadgm.pf22.render.utils.objloader.TDModelPart;
 import ro.pub.dadgm.pf22.render.views.GameScene;
 
 /**
  * Implements a 3D rocket projectile model.
+ * 
+ * <p>Drawn through the frame's command buffer, like the jets (see {@link FighterJet3D}).</p>
  */
-public class RocketProjectile3D extends AbstractObject3D {
+public class RocketProjectile3D extends AbstractObject3D implements CommandObject3D {
 	
 	/**
 	 * The asset path of the model's resources.
@@ -27,9 +30,41 @@ public class RocketProjectile3D extends AbstractObject3D {
 	protected final static String MODEL_PATH = "objects/rocket/";
 	
 	/**
-	 * The fighter jet's model object.
+	 * The radius of the (scaled) model's bounding sphere, around its origin (the mesh is not
+	 * centered, its farthest vertex is about 16.5 away).
+	 */
+	protected final static float BOUNDING_RADIUS = 17 / 10f;
+	
+	/**
+	 * The mesh id of the commands (all rockets share the model).
+	 */
+	protected final static int MESH_ID = MODEL_PATH.hashCode();
+	
+	/**
+	 * The quality tiers (indexed by their ordinal, which the commands store as their material).
+	 */
+	protected final static Shader.Quality[] QUALITIES = Shader.Quality.values();
+	
+	/**
+	 * The material used for all the rocket's parts.
+	 */
+	protected final static Material ROCKET_MATERIAL = new Material("rocket");
+	
+	static {
+		ROCKET_MATERIAL.setAmbientColor(0.5f, 0.3f, 0.05f);
+		ROCKET_MATERIAL.setDiffuseColor(1.0f, 0.4f, 0.1f);
+		ROCKET_MATERIAL.setSpecularColor(0.9f, 0.4f, 0.05f);
+	}
+	
+	/**
+	 * The shader variants, indexed by the quality tier (the material is untextured).
 	 */
-	protected static TDModel modelObj = null;
+	protected Shader[] shaders;
+	
+	/**
+	 * The handle of the shared model asset.
+	 */
+	protected AssetHandle<TDModel> model;
 	
 	/**
 	 * The plane model object.
@@ -49,54 +84,112 @@ public class RocketProjectile3D extends AbstractObject3D {
 		
 		this.projectile = projectile;
 		
-		// get shader program
-		shader = scene.getShaderManager().getShader("s3d_tex_phong");
-		
-		// load the object's assets
-		OBJParser parser = new OBJParser();
-		InputStream modelStream/*, materialStream*/;
-		try {
-			modelStream = MainActivity.getAppContext().getAssets().open(MODEL_PATH + "model.obj");
-			// materialStream = MainActivity.getAppContext().getAssets().open(MODEL_PATH + "materials.mtl");
-			
-		} catch (IOException e) {
-			throw new RuntimeException("Unable to read rocket model file!", e);
+		// get the shader variants
+		shaders = new Shader[QUALITIES.length];
+		for (Shader.Quality quality: QUALITIES) {
+			shaders[quality.ordinal()] = scene.getShaderManager().getVariant("s3d_tex_phong", 
+					quality.getDefines());
 		}
-		if (modelObj == null)
-			modelObj = parser.parseOBJ(modelStream, null);
+		shader = shaders[Shader.Quality.HIGH.ordinal()];
 		
-		modelObj.initializeBuffers();
+		// acquire the model (loaded in background if not already available)
+		model = GLAssetManager.getInstance().acquireMesh(MODEL_PATH, false);
+	}
+	
+	@Override
+	public boolean computeBounds(float[] bounds) {
+		float[] position = projectile.getPosition().toArray();
+		for (int k = 0; k < 3; k++) {
+			bounds[k] = position[k] - BOUNDING_RADIUS;
+			bounds[k + 3] = position[k] + BOUNDING_RADIUS;
+		}
+		return true;
 	}
 	
 	@Override
 	public void draw() {
+		if (!model.isReady())
+			return; // still loading
+		
 		float[] position = projectile.getPosition().toArray();
+		computeModelMatrix(modelMatrix, 0, position);
+		float[] normalMatrix = scene.getCamera().computeNormalMatrix(modelMatrix);
 		
-		Matrix.setIdentityM(modelMatrix, 0);
-		Matrix.translateM(modelMatrix, 0, position[0], position[1], position[2]);
-		Matrix.scaleM(modelMatrix, 0, 1 / 10f, 1 / 10f, 1 / 10f);
-		Matrix.rotateM(modelMatrix, 0, projectile.getYaw(), 0, 0, 1);
-		Matrix.rotateM(modelMatrix, 0, projectile.getPitch(), 0, 1, 0);
-		Matrix.rotateM(modelMatrix, 0, -90, 0, 0, 1);
+		// the cheaper variants are used far from the camera
+		float[] cameraPosition = scene.getCamera().computePosition();
+		float dx = position[0] - cameraPosition[0], dy = position[1] - cameraPosition[1], 
+				dz = position[2] - cameraPosition[2];
+		render(modelMatrix, 0, normalMatrix, 0, 
+				Shader.Quality.select((float)Math.sqrt(dx * dx + dy * dy + dz * dz)));
+	}
+	
+	@Override
+	public void buildCommands(RenderCommandBuffer buffer) {
+		if (!model.isReady())
+			return; // still loading
+		
+		float[] position = projectile.getPosition().toArray();
+		Shader.Quality quality = Shader.Quality.select(
+				buffer.computeCameraDistance(position[0], position[1], position[2]));
 		
+		int command = buffer.addCommand(this, priority, quality.ordinal(), MESH_ID);
+		computeModelMatrix(buffer.getTransforms(), RenderCommandBuffer.getModelOffset(command), position);
+		buffer.computeNormalMatrix(command);
+	}
+	
+	@Override
+	public void executeCommand(RenderCommandBuffer buffer, int command) {
+		if (!model.isReady())
+			return;
+		
+		float[] transforms = buffer.getTransforms();
+		render(transforms, RenderCommandBuffer.getModelOffset(command), 
+				transforms, RenderCommandBuffer.getNormalOffset(command), 
+				QUALITIES[buffer.getMaterial(command)]);
+	}
+	
+	/**
+	 * Computes the rocket's model matrix.
+	 * 
+	 * @param matrix The array to store the matrix into.
+	 * @param offset The matrix's offset inside the array.
+	 * @param position The projectile's position.
+	 */
+	protected void computeModelMatrix(float[] matrix, int offset, float[] position) {
+		Matrix.setIdentityM(matrix, offset);
+		Matrix.translateM(matrix, offset, position[0], position[1], position[2]);
+		Matrix.scaleM(matrix, offset, 1 / 10f, 1 / 10f, 1 / 10f);
+		Matrix.rotateM(matrix, offset, projectile.getYaw(), 0, 0, 1);
+		Matrix.rotateM(matrix, offset, projectile.getPitch(), 0, 1, 0);
+		Matrix.rotateM(matrix, offset, -90, 0, 0, 1);
+	}
+	
+	/**
+	 * Draws the model (must be ready) with the specified matrices.
+	 * 
+	 * @param modelMatrices The array containing the model matrix.
+	 * @param modelOffset The model matrix's offset.
+	 * @param normalMatrices The array containing the normal matrix.
+	 * @param normalOffset The normal matrix's offset.
+	 * @param quality The quality tier of the shader variant.
+	 */
+	protected void render(float[] modelMatrices, int modelOffset, float[] normalMatrices, 
+			int normalOffset, Shader.Quality quality) {
+		TDModel modelObj = model.get();
 		float[] lightPosition = GameScene.LIGHT_POSITION;
-		float[] normalMatrix = scene.getCamera().computeNormalMatrix(modelMatrix);
 		
+		Shader shader = shaders[quality.ordinal()];
 		shader.use();
 		
 		// get shader attributes' locations
 		int a_position = shader.getAttribLocation("a_position");
 		int a_normal = shader.getAttribLocation("a_normal");
-		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
 		
 		// get shader uniforms' locations
 		int u_normalMatrix = shader.getUniformLocation("u_normalMatrix");
 		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
 		int u_lightPos = shader.getUniformLocation("u_lightPos");
 		
-		int u_texture = shader.getUniformLocation("u_texture");
-		int u_textureEnable = shader.getUniformLocation("u_textureEnable");
-		
 		int u_ambientColor = shader.getUniformLocation("u_ambientColor");
 		int u_diffuseColor = shader.getUniformLocation("u_diffuseColor");
 		int u_specularColor = shader.getUniformLocation("u_specularColor");
@@ -104,8 +197,8 @@ public class RocketProjectile3D extends AbstractObject3D {
 		int u_shininess = shader.getUniformLocation("u_shininess");
 		
 		// send the matrices
-		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrix, 0);
-		GLES20.glUniformMatrix4fv(u_normalMatrix, 1, false, normalMatrix, 0);
+		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrices, modelOffset);
+		GLES20.glUniformMatrix4fv(u_normalMatrix, 1, false, normalMatrices, normalOffset);
 		
 		// send the vertex data to the shader
 		int vbo = modelObj.getVBO();
@@ -120,45 +213,27 @@ public class RocketProjectile3D extends AbstractObject3D {
 		
 		GLES20.glUniform3fv(u_lightPos, 1, lightPosition, 0);
 		
+		// all parts use the same (untextured) material
+		Material mat = ROCKET_MATERIAL;
+		GLES20.glUniform3fv(u_ambientColor, 1, mat.getAmbientColor(), 0);
+		GLES20.glUniform3fv(u_diffuseColor, 1, mat.getDiffuseColor(), 0);
+		GLES20.glUniform3fv(u_specularColor, 1, mat.getSpecularColor(), 0);
+		GLES20.glUniform1f(u_alpha, mat.getAlpha());
+		GLES20.glUniform1f(u_shininess, mat.getShine());
+		
 		// send the faces (parts)
 		for (TDModelPart part: modelObj.getParts()) {
-			// load the texture
-			Material mat = new Material("rocket");
-			mat.setAmbientColor(0.5f, 0.3f, 0.05f);
-			mat.setDiffuseColor(1.0f, 0.4f, 0.1f);
-			mat.setSpecularColor(0.9f, 0.4f, 0.05f);
-			
-			int texture = mat.loadTexture(MODEL_PATH);
-			
-			if (texture > 0) {
-				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, modelObj.getTextureCoordsBuf(mat));
-				GLES20.glVertexAttribPointer(a_textureCoords, 2, GLES20.GL_FLOAT, false,
-						0 /* bytes */, 0);
-				GLES20.glEnableVertexAttribArray(a_textureCoords);
-				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-
-				GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-				GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-				GLES20.glUniform1i(u_texture, 0);
-				GLES20.glUniform1i(u_textureEnable, 1);
-				
-			} else {
-				// disable texture
-				GLES20.glUniform1i(u_textureEnable, 0);
-			}
-			
-			// set up colors and textures
-			GLES20.glUniform3fv(u_ambientColor, 1, mat.getAmbientColor(), 0);
-			GLES20.glUniform3fv(u_diffuseColor, 1, mat.getDiffuseColor(), 0);
-			GLES20.glUniform3fv(u_specularColor, 1, mat.getSpecularColor(), 0);
-			GLES20.glUniform1f(u_alpha, mat.getAlpha());
-			GLES20.glUniform1f(u_shininess, mat.getShine());
-			
 			// draw!
 			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, part.getIBO());
 			GLES20.glDrawElements(GLES20.GL_TRIANGLES, part.getFacesCount(), GLES20.GL_UNSIGNED_SHORT, 0);
+			FrameProfiler.getInstance().countDraw(part.getFacesCount() / 3);
 			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 		}
 	}
 	
+	@Override
+	public void destroy() {
+		model.release();
+	}
+	
 }
@@ -4,6 +4,7 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 
 import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.Shader;
 import ro.pub.dadgm.pf22.render.objects.AbstractObject3D;
 
 /**
@@ -31,7 +32,7 @@ public class SkyBox extends AbstractObject3D {
 		super(scene, tag, priority);
 		
 		// get shader program
-		shader = scene.getShaderManager().getShader("s3d_tex_phong");
+		shader = scene.getShaderManager().getVariant("s3d_tex_phong", Shader.DEFINE_TEXTURE);
 		
 		// load the textures
 		texture = 0;
@@ -0,0 +1,223 @@
+package ro.pub.dadgm.pf22.render.objects.game;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import ro.pub.dadgm.pf22.game.models.StreamedTerrain;
+import ro.pub.dadgm.pf22.game.models.TerrainPage;
+import ro.pub.dadgm.pf22.render.Camera;
+import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.utils.FrustumUtils;
+import ro.pub.dadgm.pf22.render.views.GameScene;
+
+/**
+ * Draws a {@link StreamedTerrain} (the endless mode's terrain).
+ * 
+ * <p>Each page of the terrain is drawn as a chunk. The pages generated by the model are uploaded
+ * incrementally (at most {@link #UPLOADS_PER_FRAME} on each frame, the closest to the camera
+ * first) and the chunks of the evicted pages are released. Only the chunks around the camera
+ * are drawn, with the same level of detail and culling as the ones of a fixed terrain.</p>
+ */
+public class StreamedTerrain3D extends Terrain3D {
+	
+	/**
+	 * The maximum number of pages that are uploaded on each frame.
+	 */
+	public static final int UPLOADS_PER_FRAME = 2;
+	
+	/**
+	 * The radius (in pages) of the drawn area around the camera.
+	 */
+	protected static final int DRAW_RADIUS = StreamedTerrain.LOAD_RADIUS;
+	
+	/**
+	 * Reference to the terrain's model object.
+	 */
+	protected StreamedTerrain streamedTerrain;
+	
+	/**
+	 * The uploaded chunks, by their page's key.
+	 */
+	protected final Map<Long, TerrainChunk> loadedChunks = new HashMap<>();
+	
+	/**
+	 * The pages of the uploaded chunks, by key.
+	 */
+	protected final Map<Long, TerrainPage> loadedPages = new HashMap<>();
+	
+	/**
+	 * The position of the light (it follows the camera, so the terrain is lit the same way
+	 * everywhere).
+	 */
+	protected final float[] lightPosition = new float[3];
+	
+	/**
+	 * Whether pages were uploaded on the last frame (more may follow).
+	 */
+	protected boolean uploading = false;
+		
+	// work arrays (reused on each frame)
+	
+	/**
+	 * The chunks of the drawn area (null if not uploaded).
+	 */
+	protected TerrainChunk[][] areaChunks;
+	
+	
+	/**
+	 * Initializes the streamed terrain 3D object (the lighting of the pages is not baked, since the
+	 * light follows the camera).
+	 * 
+	 * @param scene The parent scene object.
+	 * @param terrain The terrain's model object.
+	 * @param tag An optional tag.
+	 * @param priority An optional priority.
+	 */
+	public StreamedTerrain3D(Scene3D scene, StreamedTerrain terrain, String tag, int priority) {
+		super(scene, false, tag, priority);
+		
+		this.streamedTerrain = terrain;
+		generateTerrain3D();
+	}
+	
+	/**
+	 * Loads the textures of all terrain types (the pages are uploaded while drawing).
+	 */
+	@Override
+	protected void generateTerrain3D() {
+		int size = 2 * DRAW_RADIUS + 1;
+		maxLevel = Integer.numberOfTrailingZeros(StreamedTerrain.PAGE_SIZE);
+		chunkLevels = new int[size][size];
+		chunkVisible = new boolean[size][size];
+		areaChunks = new TerrainChunk[size][size];
+		
+		for (int t = 0; t < textures.length; t++) {
+			textures[t] = loadTexture(t);
+		}
+	}
+	
+	/**
+	 * Uploads a page as a new chunk.
+	 * 
+	 * @param page The page to upload.
+	 */
+	protected void uploadPage(TerrainPage page) {
+		float[][] heightMap = page.getHeightMap();
+		TerrainChunk chunk = new TerrainChunk(heightMap, page.getPageX() * StreamedTerrain.PAGE_SIZE,
+				page.getPageY() * StreamedTerrain.PAGE_SIZE, 0, 0,
+				StreamedTerrain.PAGE_SIZE, StreamedTerrain.PAGE_SIZE);
+		chunk.load(heightMap, page.getNormals(), page.getWeights(), TEXTURE_SCALE);
+		
+		loadedChunks.put(page.getKey(), chunk);
+		loadedPages.put(page.getKey(), page);
+	}
+	
+	/**
+	 * Synchronizes the uploaded chunks with the model's pages, then updates the level of detail
+	 * and visibility of the chunks around the camera.
+	 */
+	@Override
+	protected void updateChunks() {
+		Camera camera = scene.getCamera();
+		float[] cameraPosition = camera.computePosition();
+		camera.computeFrustumPlanes(frustumPlanes);
+		
+		lightPosition[0] = cameraPosition[0];
+		lightPosition[1] = cameraPosition[1];
+		lightPosition[2] = GameScene.LIGHT_POSITION[2];
+		
+		// release the chunks of the evicted pages
+		Iterator<Map.Entry<Long, TerrainPage>> it = loadedPages.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, TerrainPage> entry = it.next();
+			TerrainPage page = entry.getValue();
+			if (streamedTerrain.getPage(page.getPageX(), page.getPageY()) != page) {
+				loadedChunks.remove(entry.getKey()).destroy();
+				it.remove();
+			}
+		}
+		
+		// upload the closest new pages
+		int centerX = StreamedTerrain.getPageCoordinate(cameraPosition[0]);
+		int centerY = StreamedTerrain.getPageCoordinate(cameraPosition[1]);
+		uploading = false;
+		for (int n = 0; n < UPLOADS_PER_FRAME; n++) {
+			TerrainPage closest = null;
+			int closestDistance = Integer.MAX_VALUE;
+			for (int dx = -DRAW_RADIUS; dx <= DRAW_RADIUS; dx++) {
+				for (int dy = -DRAW_RADIUS; dy <= DRAW_RADIUS; dy++) {
+					TerrainPage page = streamedTerrain.getPage(centerX + dx, centerY + dy);
+					if (page == null || loadedPages.containsKey(page.getKey()))
+						continue;
+					
+					if (dx * dx + dy * dy < closestDistance) {
+						closest = page;
+						closestDistance = dx * dx + dy * dy;
+					}
+				}
+			}
+			if (closest == null)
+				break;
+			uploadPage(closest);
+			uploading = true;
+		}
+		
+		// compute the levels of the drawn area's chunks
+		int size = 2 * DRAW_RADIUS + 1;
+		for (int ax = 0; ax < size; ax++) {
+			for (int ay = 0; ay < size; ay++) {
+				long key = TerrainPage.getKey(centerX - DRAW_RADIUS + ax, centerY - DRAW_RADIUS + ay);
+				TerrainChunk chunk = loadedChunks.get(key);
+				areaChunks[ax][ay] = chunk;
+				
+				if (chunk != null) {
+					float[] bounds = chunk.getBounds();
+					chunkLevels[ax][ay] = computeLevel(FrustumUtils.distanceToBox(bounds, cameraPosition));
+					chunkVisible[ax][ay] = FrustumUtils.intersectsBox(frustumPlanes, bounds);
+				} else {
+					chunkLevels[ax][ay] = -1;
+					chunkVisible[ax][ay] = false;
+				}
+			}
+		}
+		
+		visibleChunks.clear();
+		for (int ax = 0; ax < size; ax++) {
+			for (int ay = 0; ay < size; ay++) {
+				if (!chunkVisible[ax][ay])
+					continue;
+				
+				// the missing neighbors are not drawn, so their edges don't need stitching
+				int level = chunkLevels[ax][ay];
+				edgeLevels[TerrainChunk.EDGE_LEFT] = getNeighborLevel(ax - 1, ay, level);
+				edgeLevels[TerrainChunk.EDGE_RIGHT] = getNeighborLevel(ax + 1, ay, level);
+				edgeLevels[TerrainChunk.EDGE_BOTTOM] = getNeighborLevel(ax, ay - 1, level);
+				edgeLevels[TerrainChunk.EDGE_TOP] = getNeighborLevel(ax, ay + 1, level);
+				
+				areaChunks[ax][ay].update(level, edgeLevels);
+				visibleChunks.add(areaChunks[ax][ay]);
+			}
+		}
+	}
+	
+	@Override
+	public boolean isLoading() {
+		return uploading;
+	}
+	
+	@Override
+	protected void destroyChunks() {
+		for (TerrainChunk chunk: loadedChunks.values()) {
+			chunk.destroy();
+		}
+		loadedChunks.clear();
+		loadedPages.clear();
+	}
+	
+	@Override
+	protected float[] getLightPosition() {
+		return lightPosition;
+	}
+	
+}
@@ -4,20 +4,51 @@ import android.opengl.GLES20;
 import android.opengl.Matrix;
 
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import ro.pub.dadgm.pf22.game.models.Terrain;
+import ro.pub.dadgm.pf22.game.models.TerrainLightmap;
+import ro.pub.dadgm.pf22.game.models.TerrainMesh;
+import ro.pub.dadgm.pf22.render.Camera;
 import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
 import ro.pub.dadgm.pf22.render.objects.AbstractObject3D;
-import ro.pub.dadgm.pf22.render.utils.BufferUtils;
-import ro.pub.dadgm.pf22.render.utils.NormalUtils;
+import ro.pub.dadgm.pf22.render.utils.FrustumUtils;
+import ro.pub.dadgm.pf22.render.utils.RetainedDataCache;
 import ro.pub.dadgm.pf22.render.utils.TextureLoader;
 import ro.pub.dadgm.pf22.render.views.GameScene;
+import ro.pub.dadgm.pf22.utils.WorkerPool;
 
 
 /**
  * Draws the 3D terrain.
+ * 
+ * <p>The terrain is split into square chunks of {@link #CHUNK_SIZE} quads (see
+ * {@link TerrainChunk}). On each frame, every chunk gets a level of detail based on its distance
+ * to the camera (the detail halves each time the distance doubles, starting from
+ * {@link #LOD_DISTANCE}, which can be lowered at runtime) and only the chunks that intersect the
+ * view frustum are drawn.</p>
+ * 
+ * <p>The chunks' vertices are built on the worker threads (see {@link WorkerPool}), so creating the
+ * object does not stall the rendering: the OpenGL thread only uploads the ready buffers (at most
+ * {@link #UPLOADS_PER_FRAME} chunks on each frame) and the terrain appears as they arrive.</p>
+ * 
+ * <p>The terrain types are drawn by texture splatting: the textures of all types are bound at once
+ * and the shader blends them using the vertices' weights, so each chunk takes a single draw 
+ * call.</p>
+ * 
+ * <p>Optionally, the terrain's lighting is baked (see {@link TerrainLightmap}) on the workers, 
+ * after the chunks. Once the lightmap is uploaded, the terrain is drawn with an unlit shader that
+ * only samples it (instead of computing the Phong model for each fragment).</p>
+ * 
+ * <p>Once everything is uploaded, the chunks' vertex data and the lightmap are retained (see 
+ * {@link RetainedDataCache}). A new object of the same terrain (e.g. after the EGL context was
+ * lost) uploads them at once, instead of rebuilding them.</p>
  */
 public class Terrain3D extends AbstractObject3D {
 	
@@ -27,398 +58,668 @@ public class Terrain3D extends AbstractObject3D {
 	protected final String TEXTURE_PATH = "textures/";
 	
 	/**
-	 * Defines a terrain parcel that has a specific texture.
+	 * The size of a chunk (in quads).
+	 * 
+	 * <p>Must be a power of 2 (the coarsest level of detail draws a chunk as a single quad).</p>
 	 */
-	protected class TerrainParcel {
-		
-		/**
-		 * The type identifier of the parcel (index of {@link Terrain#TERRAIN_TYPES}).
-		 */
-		protected byte type;
-		
-		// work arrays
-		
-		/**
-		 * Stores the texture coordinates.
-		 */
-		protected float[] textureCoords;
-		
-		/**
-		 * The list of triangles (vertex indices).
-		 */
-		protected ArrayList<Integer> triangles;
-		
-		/**
-		 * Stores the triangle indices count (aka the size of the index buffer).
-		 */
-		protected int indexCount;
+	public static final int CHUNK_SIZE = 16;
+	
+	/**
+	 * The distance (in world units) up to which the chunks are drawn at full detail.
+	 */
+	public static final float LOD_DISTANCE = 12 * Terrain.UNIT_SCALE;
+	
+	/**
+	 * The maximum number of chunks that are uploaded on each frame.
+	 */
+	public static final int UPLOADS_PER_FRAME = 4;
+	
+	/**
+	 * The number of texture layers that the splatting shader blends.
+	 */
+	protected static final int SPLAT_LAYERS = 3;
+	
+	/**
+	 * The texture coordinates' scale (texture repetitions per terrain quad).
+	 */
+	protected static final float TEXTURE_SCALE = 0.8f;
+	
+	/**
+	 * Reference to the terrain's model object (null if a subclass draws another kind of model).
+	 */
+	protected Terrain terrain;
+	
+	/**
+	 * The terrain's chunks, indexed by their X and Y position (null until uploaded).
+	 */
+	protected TerrainChunk[][] chunks;
+	
+	/**
+	 * Whether the terrain's lighting is baked into a lightmap.
+	 */
+	protected final boolean bakeLighting;
+	
+	/**
+	 * The shader program that draws the terrain with the baked lighting.
+	 */
+	protected Shader lightmapShader;
+	
+	/**
+	 * The lightmap baked by the workers, waiting to be uploaded (null otherwise).
+	 */
+	protected volatile TerrainLightmap lightmap;
+	
+	/**
+	 * The uploaded lightmap texture (0 if not uploaded yet).
+	 */
+	protected int lightmapTexture;
+	
+	/**
+	 * The uploaded lightmap (kept for retaining it).
+	 */
+	protected TerrainLightmap uploadedLightmap;
+	
+	/**
+	 * The EGL context generation the lightmap texture was created in.
+	 */
+	protected int lightmapGeneration;
+	
+	/**
+	 * The number of uploaded chunks.
+	 */
+	protected int uploadedChunks = 0;
+	
+	/**
+	 * Whether the chunks were restored from the retained data (so they are all uploaded at once).
+	 */
+	protected boolean restored = false;
+	
+	/**
+	 * Whether the terrain's data was retained.
+	 */
+	protected boolean retained = false;
+	
+	/**
+	 * The lightmap coordinates' scale and offset (the vertex position's Y and X are mapped to the
+	 * lightmap's texel centers).
+	 */
+	protected final float[] lightmapScale = new float[2], lightmapOffset = new float[2];
+	
+	/**
+	 * The chunks whose vertices were built by the workers, waiting to be uploaded.
+	 */
+	protected final Queue<TerrainChunk> preparedChunks = new ConcurrentLinkedQueue<>();
+	
+	/**
+	 * Stores the built data of a terrain, for uploading it again.
+	 */
+	protected static class RetainedTerrain {
 		
 		/**
-		 * Texture coordinates buffer (for all vertices).
+		 * The terrain's model object.
 		 */
-		protected int vbo;
+		protected final Terrain terrain;
 		
 		/**
-		 * Parcel's triangles.
+		 * The chunks (with their vertex data kept).
 		 */
-		protected int ibo;
+		protected final TerrainChunk[][] chunks;
 		
 		/**
-		 * Stores the loaded texture resource for the parcel.
+		 * The baked lightmap (null if the lighting is not baked).
 		 */
-		protected int texture;
+		protected final TerrainLightmap lightmap;
 		
-		/**
-		 * Initializes a new parcel.
-		 * 
-		 * @param type Terrain type ID.
-		 */
-		public TerrainParcel(byte type) {
-			this.type = type;
-			
-			// initialize the arrays / buffers
-			textureCoords = new float[Terrain3D.this.vertexCount * 2];
-			triangles = new ArrayList<>();
-		}
 		
 		/**
-		 * Adds the specified triangle to the list.
+		 * Initializes the retained terrain.
 		 * 
-		 * @param v1 The first vertex.
-		 * @param v2 Second vertex.
-		 * @param v3 Last vertex.
+		 * @param terrain The terrain's model object.
+		 * @param chunks The chunks.
+		 * @param lightmap The baked lightmap (or null).
 		 */
-		public void addTriangle(int v1, int v2, int v3) {
-			triangles.add(v1);
-			triangles.add(v2);
-			triangles.add(v3);
+		protected RetainedTerrain(Terrain terrain, TerrainChunk[][] chunks, TerrainLightmap lightmap) {
+			this.terrain = terrain;
+			this.chunks = chunks;
+			this.lightmap = lightmap;
 		}
 		
 		/**
-		 * Sets the specified texture coordinate entry.
+		 * Computes the memory used by the retained data.
 		 * 
-		 * @param v The target vertex.
-		 * @param tx The X texture coordinate.
-		 * @param ty The Y texture coordinate.
+		 * @return The size, in bytes.
 		 */
-		public void addTextureCoordinate(int v, float tx, float ty) {
-			textureCoords[2*v] = tx;
-			textureCoords[2*v + 1] = ty;
-		}
-		
-		/**
-		 * Loads the buffers/textures and cleans up the temporary data used.
-		 */
-		public void load() {
-			FloatBuffer textureCoordsBuf = BufferUtils.asBuffer(textureCoords);
-			textureCoords = null;
-			// allocate a VBO
-			int[] allocatedVBO = { 0 };
-			GLES20.glGenBuffers(1, allocatedVBO, 0);
-			if (allocatedVBO[0] <= 0)
-				throw new RuntimeException("Unable to allocate VBO!");
-			this.vbo = allocatedVBO[0];
-			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, allocatedVBO[0]);
-			GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, textureCoordsBuf.capacity() * 4,
-					textureCoordsBuf, GLES20.GL_STATIC_DRAW);
-			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-			
-			ShortBuffer vertexIndicesBuf = BufferUtils.allocateShortBuffer(triangles.size());
-			for (Integer v: triangles)
-				vertexIndicesBuf.put((short)((int)v));
-			vertexIndicesBuf.position(0);
-			indexCount = triangles.size();
-			triangles = null;
-			// allocate an IBO
-			int[] allocatedIBO = { 0 };
-			GLES20.glGenBuffers(1, allocatedIBO, 0);
-			if (allocatedIBO[0] <= 0)
-				throw new RuntimeException("Unable to allocate IBO!");
-			ibo = allocatedIBO[0];
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, allocatedIBO[0]);
-			GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, vertexIndicesBuf.capacity() * 2,
-					vertexIndicesBuf, GLES20.GL_STATIC_DRAW);
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
-			
-			Object[] terrainInfo = Terrain.TERRAIN_TYPES[type];
-			String textureFile = (String)terrainInfo[1];
-			if (textureFile != null) {
-				texture = TextureLoader.loadTextureFromAsset(TEXTURE_PATH + textureFile);
-				if (texture == 0)
-					throw new RuntimeException("Unable to load texture file '" + textureFile + "'!");
-				
-				GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST_MIPMAP_LINEAR);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-				GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+		protected long getDataSize() {
+			long size = (lightmap != null ? lightmap.getTexels().capacity() : 0);
+			for (TerrainChunk[] column: chunks) {
+				for (TerrainChunk chunk: column) {
+					size += chunk.getDataSize();
+				}
 			}
+			return size;
 		}
 	}
 	
 	/**
-	 * Reference to the terrain's model object.
+	 * The maximum level of detail of a chunk.
 	 */
-	protected Terrain terrain;
+	protected int maxLevel;
 	
 	/**
-	 * The total number of vertices.
+	 * The distance up to which the chunks are drawn at full detail (see {@link #LOD_DISTANCE}).
 	 */
-	protected int vertexCount;
+	protected float lodDistance = LOD_DISTANCE;
 	
 	/**
-	 * The VBO that stores the vertex data.
+	 * The loaded texture of each terrain type.
+	 * 
+	 * <p>The key is the index of the type in {@link Terrain#TERRAIN_TYPES}.</p>
 	 */
-	protected int vbo;
+	protected int[] textures;
+	
+	// work arrays (reused on each frame)
 	
 	/**
-	 * The different parcels that make up the terrain.
-	 * 
-	 * <p>The key is the index of the type in {@link Terrain#TERRAIN_TYPES}.</p>
+	 * The current level of detail of each chunk.
 	 */
-	protected TerrainParcel[] parcels;
+	protected int[][] chunkLevels;
 	
+	/**
+	 * Whether each chunk is visible in the current frame.
+	 */
+	protected boolean[][] chunkVisible;
 	
 	/**
-	 * Initializes the terrain 3D object.
+	 * The chunks that are visible in the current frame.
+	 */
+	protected final List<TerrainChunk> visibleChunks = new ArrayList<>();
+	
+	/**
+	 * The view frustum's planes.
+	 */
+	protected float[] frustumPlanes = new float[FrustumUtils.PLANES_SIZE];
+	
+	/**
+	 * The neighbors' levels of a chunk.
+	 */
+	protected int[] edgeLevels = new int[4];
+	
+	
+	/**
+	 * Initializes the terrain 3D object (with baked lighting).
 	 * 
 	 * @param scene The parent scene object.
 	 * @param tag An optional tag.
 	 * @param priority An optional priority.
 	 */
 	public Terrain3D(Scene3D scene, Terrain terrain, String tag, int priority) {
-		super(scene, tag, priority);
+		this(scene, terrain, true, tag, priority);
+	}
+	
+	/**
+	 * Initializes the terrain 3D object.
+	 * 
+	 * @param scene The parent scene object.
+	 * @param bakeLighting Whether to bake the terrain's lighting.
+	 * @param tag An optional tag.
+	 * @param priority An optional priority.
+	 */
+	public Terrain3D(Scene3D scene, Terrain terrain, boolean bakeLighting, String tag, int priority) {
+		this(scene, bakeLighting, tag, priority);
 		
 		this.terrain = terrain;
+		generateTerrain3D();
+	}
+	
+	/**
+	 * Initializes the state shared by all terrain 3D objects, without generating the terrain (used
+	 * by the subclasses that draw another kind of model, e.g. {@link StreamedTerrain3D}; they must 
+	 * call {@link #generateTerrain3D()} themselves).
+	 * 
+	 * @param scene The parent scene object.
+	 * @param bakeLighting Whether to bake the terrain's lighting.
+	 * @param tag An optional tag.
+	 * @param priority An optional priority.
+	 */
+	protected Terrain3D(Scene3D scene, boolean bakeLighting, String tag, int priority) {
+		super(scene, tag, priority);
 		
-		// get shader program
-		shader = scene.getShaderManager().getShader("s3d_tex_phong");
+		this.bakeLighting = bakeLighting;
 		
-		// generate the terrain from the model object's height map
-		parcels = new TerrainParcel[Terrain.TERRAIN_TYPES.length];
-		generateTerrain3D();
+		if (TerrainMesh.WEIGHT_COUNT > SPLAT_LAYERS)
+			throw new RuntimeException("Unable to splat more than " + SPLAT_LAYERS + " terrain types!");
+		
+		// get shader programs
+		shader = scene.getShaderManager().getShader("s3d_splat");
+		if (bakeLighting)
+			lightmapShader = scene.getShaderManager().getShader("s3d_lightmap");
+		
+		maxLevel = Integer.numberOfTrailingZeros(CHUNK_SIZE);
+		textures = new int[Terrain.TERRAIN_TYPES.length];
 	}
 	
 	/**
-	 * Generates the terrain's vertices, polygons, texture coordinates and normals.
+	 * Loads the terrain textures and starts building the chunks (on the worker threads).
+	 * 
+	 * <p>The terrain's mesh (normals) is also built on the workers, if it wasn't already, and the
+	 * lighting is baked after the chunks are ready (if enabled). If the terrain's data was 
+	 * retained, it is only queued for uploading.</p>
 	 */
 	protected void generateTerrain3D() {
 		int[] dims = terrain.getMatrixDimensions();
-		float[][] heightMap = terrain.getHeightMap();
-		byte[][] typeMap = terrain.getTypeMap();
 		
-		vertexCount = (dims[0] * dims[1]);
+		// the last chunks can be smaller
+		final int quadsX = dims[0] - 1, quadsY = dims[1] - 1;
+		final int chunksX = (quadsX + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		final int chunksY = (quadsY + CHUNK_SIZE - 1) / CHUNK_SIZE;
 		
-		// compute vertex and normals data
-		float[] vertexNormals = new float[vertexCount * 8];
-		for (int i=0; i<dims[0]; i++) {
-			for (int j=0; j<dims[1]; j++) {
-				int v = (i * dims[1] + j); // the current vertex
-				
-				// fill in the vertex array
-				vertexNormals[8*v] = i * Terrain.UNIT_SCALE; // x
-				vertexNormals[8*v+1] = j * Terrain.UNIT_SCALE; // y
-				vertexNormals[8*v+2] = heightMap[i][j]; // z
+		chunks = new TerrainChunk[chunksX][chunksY];
+		chunkLevels = new int[chunksX][chunksY];
+		chunkVisible = new boolean[chunksX][chunksY];
+		
+		if (!restoreData()) {
+			buildChunks(quadsX, quadsY);
+		}
+		
+		lightmapScale[0] = 1 / (dims[1] * Terrain.UNIT_SCALE);
+		lightmapScale[1] = 1 / (dims[0] * Terrain.UNIT_SCALE);
+		lightmapOffset[0] = 0.5f / dims[1];
+		lightmapOffset[1] = 0.5f / dims[0];
+		
+		// load the textures of the present terrain types
+		int[] typeCount = terrain.getTypeCount();
+		for (int t = 0; t < textures.length; t++) {
+			if (typeCount[t] > 0)
+				textures[t] = loadTexture(t);
+		}
+	}
+	
+	/**
+	 * Starts building the chunks (and baking the lightmap, if enabled) on the worker threads.
+	 * 
+	 * @param quadsX The terrain's size on X (in quads).
+	 * @param quadsY The terrain's size on Y (in quads).
+	 */
+	protected void buildChunks(final int quadsX, final int quadsY) {
+		final int chunksX = chunks.length, chunksY = chunks[0].length;
+		
+		WorkerPool.getExecutor().execute(new Runnable() {
+			@Override
+			public void run() {
+				final float[][] heightMap = terrain.getHeightMap();
+				final FloatBuffer normals = terrain.getMesh().getNormals();
+				final FloatBuffer weights = terrain.getMesh().getWeights();
 				
-				// compute the triangles
-				byte t = typeMap[i][j];
-				if (parcels[t] == null) {
-					parcels[t] = new TerrainParcel(t);
-				}
-				TerrainParcel parcel = parcels[t];
+				WorkerPool.parallelFor(chunksX * chunksY, new WorkerPool.IndexedTask() {
+					@Override
+					public void run(int index) {
+						int x = (index / chunksY) * CHUNK_SIZE, y = (index % chunksY) * CHUNK_SIZE;
+						TerrainChunk chunk = new TerrainChunk(heightMap, x, y,
+								Math.min(CHUNK_SIZE, quadsX - x), Math.min(CHUNK_SIZE, quadsY - y));
+						chunk.prepare(heightMap, normals, weights, TEXTURE_SCALE);
+						preparedChunks.add(chunk);
+					}
+				});
 				
-				if ((i < dims[0]-1) && (j < dims[1]-1)) {
-					int v2 = ((i+1)*dims[1] + j); // bottom-left
-					int v3 = ((i+1)*dims[1] + j+1); // bottom-right
-					int v4 = (i*dims[1] + j+1); // top-right
-					
-					parcel.addTriangle(v, v2, v3);
-					parcel.addTriangle(v, v3, v4);
-					
-					// compute texture coordinates for the triangle's vertices
-					final float texScale = 0.8f;
-					parcel.addTextureCoordinate(v, j*texScale, i*texScale);
-					parcel.addTextureCoordinate(v2, j*texScale, (i+1f)*texScale);
-					parcel.addTextureCoordinate(v3, (j+1f)*texScale, (i+1f)*texScale);
-					parcel.addTextureCoordinate(v4, (j+1f)*texScale, i*texScale);
-				}
+				if (bakeLighting)
+					lightmap = TerrainLightmap.bake(terrain, getLightPosition());
 			}
+		});
+	}
+	
+	/**
+	 * Queues the terrain's retained chunks and lightmap for uploading.
+	 * 
+	 * @return Whether the terrain's data was retained.
+	 */
+	protected boolean restoreData() {
+		Object data = RetainedDataCache.getInstance().get(getRetainKey());
+		if (!(data instanceof RetainedTerrain))
+			return false;
+		
+		RetainedTerrain retainedTerrain = (RetainedTerrain)data;
+		if (retainedTerrain.terrain != terrain || retainedTerrain.chunks.length != chunks.length ||
+				(bakeLighting && retainedTerrain.lightmap == null))
+			return false;
+		
+		for (TerrainChunk[] column: retainedTerrain.chunks) {
+			Collections.addAll(preparedChunks, column);
 		}
+		if (bakeLighting)
+			lightmap = retainedTerrain.lightmap;
+		restored = true;
+		return true;
+	}
+	
+	/**
+	 * Retains the chunks and the lightmap, once they are all uploaded.
+	 */
+	protected void retainData() {
+		if (retained || uploadedChunks < chunks.length * chunks[0].length || 
+				(bakeLighting && lightmapTexture == 0))
+			return;
 		
-		// calculate the normals
-		for (int i=0; i<dims[0]; i++) {
-			for (int j = 0; j < dims[1]; j++) {
-				int v = (i * dims[1] + j); // current vertex
-				
-				// there can be up to 6 neighbouring triangles to the current vertex
-				float[] tmp = new float[3];
-				int v1, v2, v3, v4; // the 4 vertices of a quad
-				
-				if (i > 0 && j > 0) { // upper-left quad
-					v1 = ((i-1)*dims[1] + j-1);
-					v2 = ((i)*dims[1] + j-1);
-					v3 = v; // current vertex is the third in the quad
-					v4 = ((i-1)*dims[1] + j);
-					// The 3-1-2 triangle
-					NormalUtils.computeNormal(tmp, 0, vertexNormals, 8*v3, vertexNormals, 8*v1, vertexNormals, 8*v2);
-					vertexNormals[8*v+4] += tmp[0];
-					vertexNormals[8*v+5] += tmp[1];
-					vertexNormals[8*v+6] += tmp[2];
-					// The 3-4-1 triangle
-					NormalUtils.computeNormal(tmp, 0, vertexNormals, 8*v3, vertexNormals, 8*v4, vertexNormals, 8*v1);
-					vertexNormals[8*v+4] += tmp[0];
-					vertexNormals[8*v+5] += tmp[1];
-					vertexNormals[8*v+6] += tmp[2];
-				}
-				
-				if (i > 0 && j < (dims[1]-1)) { // upper-right quad
-					v1 = ((i-1)*dims[1] + j);
-					v2 = v; // current vertex is the second in the quad
-					v3 = ((i)*dims[1] + j+1);
-					// v4 = 0; // not important
-					// The 2-3-1 triangle
-					NormalUtils.computeNormal(tmp, 0, vertexNormals, 8*v2, vertexNormals, 8*v3, vertexNormals, 8*v1);
-					vertexNormals[8*v+4] += tmp[0];
-					vertexNormals[8*v+5] += tmp[1];
-					vertexNormals[8*v+6] += tmp[2];
+		RetainedTerrain data = new RetainedTerrain(terrain, chunks, uploadedLightmap);
+		RetainedDataCache.getInstance().put(getRetainKey(), data, data.getDataSize());
+		retained = true;
+	}
+	
+	/**
+	 * Returns the key of the terrain's retained data.
+	 * 
+	 * @return The retained data's key.
+	 */
+	protected String getRetainKey() {
+		return "terrain_" + System.identityHashCode(terrain);
+	}
+	
+	/**
+	 * Returns whether the terrain is still being uploaded (it changes from frame to frame).
+	 * 
+	 * <p>Must be called from the OpenGL thread.</p>
+	 * 
+	 * @return True if some chunks (or the lightmap) are not uploaded yet.
+	 */
+	public boolean isLoading() {
+		return uploadedChunks < chunks.length * chunks[0].length || 
+				(bakeLighting && lightmapTexture == 0);
+	}
+	
+	/**
+	 * Uploads the chunks prepared by the workers (at most {@link #UPLOADS_PER_FRAME}, or all of
+	 * them if they were restored).
+	 * 
+	 * <p>The chunks keep their vertex data, to be retained.</p>
+	 */
+	protected void uploadChunks() {
+		int limit = (restored ? Integer.MAX_VALUE : UPLOADS_PER_FRAME);
+		TerrainChunk chunk;
+		for (int n = 0; n < limit && (chunk = preparedChunks.poll()) != null; n++) {
+			chunk.upload(true);
+			chunks[chunk.x / CHUNK_SIZE][chunk.y / CHUNK_SIZE] = chunk;
+			uploadedChunks++;
+		}
+	}
+	
+	/**
+	 * Uploads the lightmap baked by the workers (if ready).
+	 * 
+	 * <p>The texels are indexed by X, then Y, so the lightmap's width is the terrain's length (on 
+	 * Y). It has no mipmaps (the texture can have any size).</p>
+	 */
+	protected void uploadLightmap() {
+		TerrainLightmap baked = lightmap;
+		if (baked == null)
+			return;
+		
+		int[] texture = { 0 };
+		GLES20.glGenTextures(1, texture, 0);
+		if (texture[0] == 0)
+			throw new RuntimeException("Unable to allocate the terrain's lightmap!");
+		
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_LUMINANCE, baked.getLength(), baked.getWidth(),
+				0, GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, baked.getTexels().duplicate());
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		
+		lightmapTexture = texture[0];
+		lightmapGeneration = GLAssetManager.getInstance().getContextGeneration();
+		uploadedLightmap = baked;
+		lightmap = null;
+	}
+	
+	/**
+	 * Loads the texture of a terrain type.
+	 * 
+	 * @param type The terrain type.
+	 * @return The loaded texture (0 if the type has no texture).
+	 */
+	protected int loadTexture(int type) {
+		Object[] terrainInfo = Terrain.TERRAIN_TYPES[type];
+		String textureFile = (String)terrainInfo[1];
+		if (textureFile == null)
+			return 0;
+		
+		int texture = TextureLoader.loadTextureFromAsset(TEXTURE_PATH + textureFile);
+		if (texture == 0)
+			throw new RuntimeException("Unable to load texture file '" + textureFile + "'!");
+		
+		TextureLoader.generateMipmap(texture);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST_MIPMAP_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+		
+		return texture;
+	}
+	
+	/**
+	 * Sets the distance up to which the chunks are drawn at full detail (used by the quality
+	 * settings).
+	 * 
+	 * @param lodDistance The distance (in world units).
+	 */
+	public void setLodDistance(float lodDistance) {
+		this.lodDistance = lodDistance;
+	}
+	
+	/**
+	 * Computes the level of detail for a distance.
+	 * 
+	 * @param distance The distance to the camera.
+	 * @return The level of detail.
+	 */
+	protected int computeLevel(float distance) {
+		int level = 0;
+		for (float d = lodDistance; distance > d && level < maxLevel; d *= 2) {
+			level++;
+		}
+		return level;
+	}
+	
+	/**
+	 * Updates the level of detail and visibility of all chunks.
+	 * 
+	 * <p>The levels are computed for all chunks (even the invisible ones), since they determine
+	 * the seams of their neighbors. The visible chunks are stored into {@link #visibleChunks}.</p>
+	 */
+	protected void updateChunks() {
+		uploadChunks();
+		if (bakeLighting && lightmapTexture == 0)
+			uploadLightmap();
+		retainData();
+		
+		Camera camera = scene.getCamera();
+		float[] cameraPosition = camera.computePosition();
+		camera.computeFrustumPlanes(frustumPlanes);
+		
+		for (int cx = 0; cx < chunks.length; cx++) {
+			for (int cy = 0; cy < chunks[cx].length; cy++) {
+				if (chunks[cx][cy] == null) {
+					chunkLevels[cx][cy] = -1;
+					chunkVisible[cx][cy] = false;
+					continue;
 				}
 				
-				if (i < (dims[0]-1) && j > 0) { // lower-left quad
-					v1 = ((i)*dims[1] + j-1);
-					// v2 = 0; // not important
-					v3 = ((i+1)*dims[1] + j);
-					v4 = v; // current vertex is the last in the quad
-					// The 4-1-3 triangle
-					NormalUtils.computeNormal(tmp, 0, vertexNormals, 8*v4, vertexNormals, 8*v1, vertexNormals, 8*v3);
-					vertexNormals[8*v+4] += tmp[0];
-					vertexNormals[8*v+5] += tmp[1];
-					vertexNormals[8*v+6] += tmp[2];
-				}
+				float[] bounds = chunks[cx][cy].getBounds();
+				chunkLevels[cx][cy] = computeLevel(FrustumUtils.distanceToBox(bounds, cameraPosition));
+				chunkVisible[cx][cy] = FrustumUtils.intersectsBox(frustumPlanes, bounds);
+			}
+		}
+		
+		visibleChunks.clear();
+		for (int cx = 0; cx < chunks.length; cx++) {
+			for (int cy = 0; cy < chunks[cx].length; cy++) {
+				if (!chunkVisible[cx][cy])
+					continue;
 				
-				if (i < (dims[0]-1) && j < (dims[1]-1)) { // upper-right quad
-					v1 = v; // current vertex is the third in the quad
-					v2 = ((i+1)*dims[1] + j);
-					v3 = ((i+1)*dims[1] + j+1);
-					v4 = ((i)*dims[1] + j+1);
-					// The 1-2-3 triangle
-					NormalUtils.computeNormal(tmp, 0, vertexNormals, 8*v1, vertexNormals, 8*v2, vertexNormals, 8*v3);
-					vertexNormals[8*v+4] += tmp[0];
-					vertexNormals[8*v+5] += tmp[1];
-					vertexNormals[8*v+6] += tmp[2];
-					// The 1-3-4 triangle
-					NormalUtils.computeNormal(tmp, 0, vertexNormals, 8*v1, vertexNormals, 8*v3, vertexNormals, 8*v4);
-					vertexNormals[8*v+4] += tmp[0];
-					vertexNormals[8*v+5] += tmp[1];
-					vertexNormals[8*v+6] += tmp[2];
-				}
+				// the missing neighbors are not drawn, so their edges don't need stitching
+				int level = chunkLevels[cx][cy];
+				edgeLevels[TerrainChunk.EDGE_LEFT] = getNeighborLevel(cx - 1, cy, level);
+				edgeLevels[TerrainChunk.EDGE_RIGHT] = getNeighborLevel(cx + 1, cy, level);
+				edgeLevels[TerrainChunk.EDGE_BOTTOM] = getNeighborLevel(cx, cy - 1, level);
+				edgeLevels[TerrainChunk.EDGE_TOP] = getNeighborLevel(cx, cy + 1, level);
 				
-				// average all the normals
-				NormalUtils.normalize(vertexNormals, 8*v+4);
+				chunks[cx][cy].update(level, edgeLevels);
+				visibleChunks.add(chunks[cx][cy]);
 			}
 		}
-		
-		// generate VBOs
-		FloatBuffer vertexNormalBuf = BufferUtils.asBuffer(vertexNormals);
-		vertexNormalBuf.position(0);
-		int[] allocatedVBO = { 0 };
-		GLES20.glGenBuffers(1, allocatedVBO, 0);
-		if (allocatedVBO[0] <= 0)
-			throw new RuntimeException("Unable to allocate VBO!");
-		vbo = allocatedVBO[0];
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexNormalBuf.capacity() * 4,
-				vertexNormalBuf, GLES20.GL_STATIC_DRAW);
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-		
-		// load the generated data
-		for (TerrainParcel parcel : parcels) {
-			if (parcel != null) {
-				parcel.load();
+	}
+	
+	/**
+	 * Returns the level of a neighboring chunk.
+	 * 
+	 * @param cx The neighbor's X position.
+	 * @param cy The neighbor's Y position.
+	 * @param level The level to return if the neighbor is missing (or outside the terrain).
+	 * @return The neighbor's level.
+	 */
+	protected int getNeighborLevel(int cx, int cy, int level) {
+		if (cx < 0 || cy < 0 || cx >= chunkLevels.length || cy >= chunkLevels[cx].length)
+			return level;
+		return (chunkLevels[cx][cy] >= 0 ? chunkLevels[cx][cy] : level);
+	}
+	
+	/**
+	 * Releases the chunks' buffers.
+	 * 
+	 * <p>The chunks that were not uploaded yet only hold memory buffers, so they are dropped.</p>
+	 */
+	protected void destroyChunks() {
+		for (TerrainChunk[] column: chunks) {
+			for (TerrainChunk chunk: column) {
+				if (chunk != null)
+					chunk.destroy();
 			}
 		}
+		preparedChunks.clear();
+	}
+	
+	/**
+	 * Returns the position of the light that the terrain is lit by.
+	 * 
+	 * @return The light's position (x, y, z).
+	 */
+	protected float[] getLightPosition() {
+		return GameScene.LIGHT_POSITION;
 	}
 	
 	
 	@Override
-	public void draw() {
-		Matrix.setIdentityM(modelMatrix, 0);
+	public void destroy() {
+		// release the textures (they remain cached until evicted)
+		for (int t = 0; t < textures.length; t++) {
+			if (textures[t] > 0) {
+				TextureLoader.releaseTexture(textures[t]);
+				textures[t] = 0;
+			}
+		}
 		
-		final float[] lightPosition = GameScene.LIGHT_POSITION;
-		final float[] ambientColor = new float[] { 0.3f, 0.3f, 0.3f } ;
-		final float[] diffuseColor = new float[] { 1.0f, 1.0f, 1.0f } ;
-		final float[] specularColor = new float[] { 0.5f, 0.5f, 0.5f } ;
+		if (lightmapTexture > 0) {
+			if (lightmapGeneration == GLAssetManager.getInstance().getContextGeneration())
+				GLES20.glDeleteTextures(1, new int[] { lightmapTexture }, 0);
+			lightmapTexture = 0;
+		}
 		
-		float[] normalMatrix = scene.getCamera().computeNormalMatrix(modelMatrix);
+		// the terrain is no longer shown, its data is not worth keeping
+		RetainedDataCache.getInstance().remove(getRetainKey());
+		destroyChunks();
+	}
+	
+	@Override
+	public void draw() {
+		updateChunks();
+		
+		Matrix.setIdentityM(modelMatrix, 0);
 		
+		// use the baked lighting, once available
+		Shader shader = (lightmapTexture > 0 ? lightmapShader : this.shader);
 		shader.use();
 		
 		// get shader attributes' locations
 		int a_position = shader.getAttribLocation("a_position");
 		int a_normal = shader.getAttribLocation("a_normal");
 		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
+		int a_weights = shader.getAttribLocation("a_weights");
 		
 		// get shader uniforms' locations
-		int u_normalMatrix = shader.getUniformLocation("u_normalMatrix");
 		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
-		int u_lightPos = shader.getUniformLocation("u_lightPos");
-		
-		int u_texture = shader.getUniformLocation("u_texture");
-		int u_textureEnable = shader.getUniformLocation("u_textureEnable");
-		
-		int u_ambientColor = shader.getUniformLocation("u_ambientColor");
-		int u_diffuseColor = shader.getUniformLocation("u_diffuseColor");
-		int u_specularColor = shader.getUniformLocation("u_specularColor");
-		int u_alpha = shader.getUniformLocation("u_alpha");
-		int u_shininess = shader.getUniformLocation("u_shininess");
 		
 		// send the matrices
 		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrix, 0);
-		GLES20.glUniformMatrix4fv(u_normalMatrix, 1, false, normalMatrix, 0);
-		
-		// send the vertex data to the shader
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-		GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false,
-				4 * 4 * 2 /* bytes */, 0);
-		GLES20.glVertexAttribPointer(a_normal, 3 /* coords */, GLES20.GL_FLOAT, false,
-				4 * 4 * 2 /* bytes */, 4 * 4);
+		
+		if (lightmapTexture > 0) {
+			setupLightmap(shader);
+		} else {
+			setupLighting(shader);
+		}
+		
+		// bind the texture of each layer to its own unit (the missing types' layers have no weight)
+		for (int t = 0; t < textures.length; t++) {
+			GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + t);
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textures[t]);
+			GLES20.glUniform1i(shader.getUniformLocation("u_texture" + t), t);
+		}
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		
 		GLES20.glEnableVertexAttribArray(a_position);
-		GLES20.glEnableVertexAttribArray(a_normal);
-		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-		
-		GLES20.glUniform3fv(u_lightPos, 1, lightPosition, 0);
-		
-		for (TerrainParcel parcel: parcels) {
-			if (parcel == null) continue;
-			
-			if (parcel.texture > 0) {
-				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, parcel.vbo);
-				GLES20.glVertexAttribPointer(a_textureCoords, 2, GLES20.GL_FLOAT, false,
-						0 /* bytes */, 0);
-				GLES20.glEnableVertexAttribArray(a_textureCoords);
-				GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-				
-				GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-				GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, parcel.texture);
-				GLES20.glUniform1i(u_texture, 0);
-				GLES20.glUniform1i(u_textureEnable, 1);
-				
-			} else {
-				// disable texture
-				GLES20.glUniform1i(u_textureEnable, 0);
-			}
-			
-			// set up colors and textures
-			GLES20.glUniform3fv(u_ambientColor, 1, ambientColor, 0);
-			GLES20.glUniform3fv(u_diffuseColor, 1, diffuseColor, 0);
-			GLES20.glUniform3fv(u_specularColor, 1, specularColor, 0);
-			GLES20.glUniform1f(u_alpha, 1.0f);
-			GLES20.glUniform1f(u_shininess, 8.0f);
-			
-			// draw!
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, parcel.ibo);
-			GLES20.glDrawElements(GLES20.GL_TRIANGLES, parcel.indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
-			GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		if (a_normal >= 0)
+			GLES20.glEnableVertexAttribArray(a_normal);
+		GLES20.glEnableVertexAttribArray(a_textureCoords);
+		GLES20.glEnableVertexAttribArray(a_weights);
+		
+		// draw!
+		for (TerrainChunk chunk: visibleChunks) {
+			chunk.bind(a_position, a_normal, a_textureCoords, a_weights);
+			chunk.draw();
 		}
+		
+		GLES20.glDisableVertexAttribArray(a_weights);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+	
+	/**
+	 * Sets up the uniforms of the per-fragment (Phong) lighting.
+	 * 
+	 * @param shader The (already used) shader program.
+	 */
+	protected void setupLighting(Shader shader) {
+		final float[] lightPosition = getLightPosition();
+		final float[] ambientColor = new float[] { 0.3f, 0.3f, 0.3f } ;
+		final float[] diffuseColor = new float[] { 1.0f, 1.0f, 1.0f } ;
+		final float[] specularColor = new float[] { 0.5f, 0.5f, 0.5f } ;
+		
+		float[] normalMatrix = scene.getCamera().computeNormalMatrix(modelMatrix);
+		
+		GLES20.glUniformMatrix4fv(shader.getUniformLocation("u_normalMatrix"), 1, false, normalMatrix, 0);
+		GLES20.glUniform3fv(shader.getUniformLocation("u_lightPos"), 1, lightPosition, 0);
+		
+		// set up colors
+		GLES20.glUniform3fv(shader.getUniformLocation("u_ambientColor"), 1, ambientColor, 0);
+		GLES20.glUniform3fv(shader.getUniformLocation("u_diffuseColor"), 1, diffuseColor, 0);
+		GLES20.glUniform3fv(shader.getUniformLocation("u_specularColor"), 1, specularColor, 0);
+		GLES20.glUniform1f(shader.getUniformLocation("u_shininess"), 8.0f);
+	}
+	
+	/**
+	 * Binds the lightmap (to the unit after the layers' textures) and sets up its uniforms.
+	 * 
+	 * @param shader The (already used) shader program.
+	 */
+	protected void setupLightmap(Shader shader) {
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + SPLAT_LAYERS);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, lightmapTexture);
+		GLES20.glUniform1i(shader.getUniformLocation("u_lightmap"), SPLAT_LAYERS);
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		
+		GLES20.glUniform2fv(shader.getUniformLocation("u_lightmapScale"), 1, lightmapScale, 0);
+		GLES20.glUniform2fv(shader.getUniformLocation("u_lightmapOffset"), 1, lightmapOffset, 0);
+		GLES20.glUniform1f(shader.getUniformLocation("u_lightRange"), TerrainLightmap.LIGHT_RANGE);
 	}
 	
 }
@@ -0,0 +1,456 @@
+package ro.pub.dadgm.pf22.render.objects.game;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import ro.pub.dadgm.pf22.game.models.Terrain;
+import ro.pub.dadgm.pf22.game.models.TerrainMesh;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+import ro.pub.dadgm.pf22.render.utils.BufferUtils;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+
+/**
+ * A rectangular part of the terrain that is rendered with its own level of detail.
+ * 
+ * <p>A chunk stores its vertices (at full detail) in its own VBO, so the vertex indices are local
+ * to the chunk and the terrain's size is not limited by the 16-bit indices. The triangles are
+ * generated for the current level of detail: at level <code>L</code>, the chunk is drawn as a
+ * grid of quads that are <code>2^L</code> points wide (geomipmapping).</p>
+ * 
+ * <p>The seams between chunks with different levels are stitched by snapping the finer chunk's
+ * edge vertices to the coarser neighbor's grid, so the shared edges are identical (without
+ * cracks). The snapped triangles that become degenerate are discarded.</p>
+ * 
+ * <p>The terrain types are blended per vertex (see {@link TerrainMesh#computeWeights}), so all of 
+ * a chunk's triangles are drawn with a single call (the shader samples all type textures).</p>
+ * 
+ * <p>The vertex data can be kept after upload (see {@link #upload(boolean)}), so the chunk can
+ * be uploaded again into a new EGL context without being rebuilt. The buffers of a lost context
+ * are never deleted (their names could belong to new objects).</p>
+ */
+public class TerrainChunk {
+	
+	/**
+	 * The chunk edges (indices of the edge levels array).
+	 * 
+	 * <p>The left / right edges are the ones at the minimum / maximum X, the bottom / top ones
+	 * are at the minimum / maximum Y.</p>
+	 */
+	public static final int EDGE_LEFT = 0, EDGE_RIGHT = 1, EDGE_BOTTOM = 2, EDGE_TOP = 3;
+	
+	/**
+	 * The number of floats for each vertex (position, normal, texture coordinates, blend weights).
+	 */
+	protected static final int VERTEX_SIZE = 3 + 3 + 2 + TerrainMesh.WEIGHT_COUNT;
+	
+	/**
+	 * The terrain coordinates (in points) of the height map's first point.
+	 * 
+	 * <p>Zero, unless the height map is only a part of the terrain (e.g. a streamed page).</p>
+	 */
+	protected final int originX, originY;
+	
+	/**
+	 * The height map coordinates of the chunk's first point.
+	 */
+	protected final int x, y;
+	
+	/**
+	 * The chunk's size (in quads).
+	 */
+	protected final int sizeX, sizeY;
+	
+	/**
+	 * The chunk's bounding box (minX, minY, minZ, maxX, maxY, maxZ), in world units.
+	 */
+	protected final float[] bounds = new float[6];
+	
+	/**
+	 * The vertex data, built by {@link #prepare} and waiting to be uploaded (null otherwise, 
+	 * unless it was kept for reloading).
+	 */
+	protected volatile FloatBuffer vertexData;
+	
+	/**
+	 * The VBO that stores the vertex data.
+	 */
+	protected int vbo;
+	
+	/**
+	 * The IBO that stores the triangles of the current level of detail.
+	 */
+	protected int ibo;
+	
+	/**
+	 * The EGL context generation the buffers were allocated in.
+	 */
+	protected int generation = -1;
+	
+	/**
+	 * The number of indices inside the IBO.
+	 */
+	protected int indexCount;
+	
+	/**
+	 * The level of detail that the IBO was built for (-1 if not built).
+	 */
+	protected int level = -1;
+	
+	/**
+	 * The neighbors' levels of detail that the IBO was built for.
+	 */
+	protected int[] edgeLevels = new int[] { -1, -1, -1, -1 };
+	
+	
+	/**
+	 * Initializes the chunk.
+	 * 
+	 * @param heightMap The terrain's height map.
+	 * @param x The X coordinate of the chunk's first point.
+	 * @param y The Y coordinate of the chunk's first point.
+	 * @param sizeX The chunk's size on X (in quads).
+	 * @param sizeY The chunk's size on Y (in quads).
+	 */
+	public TerrainChunk(float[][] heightMap, int x, int y, int sizeX, int sizeY) {
+		this(heightMap, 0, 0, x, y, sizeX, sizeY);
+	}
+	
+	/**
+	 * Initializes a chunk of a height map that is a part of a larger terrain.
+	 * 
+	 * @param heightMap The height map.
+	 * @param originX The terrain X coordinate of the height map's first point.
+	 * @param originY The terrain Y coordinate of the height map's first point.
+	 * @param x The X coordinate of the chunk's first point (inside the height map).
+	 * @param y The Y coordinate of the chunk's first point (inside the height map).
+	 * @param sizeX The chunk's size on X (in quads).
+	 * @param sizeY The chunk's size on Y (in quads).
+	 */
+	public TerrainChunk(float[][] heightMap, int originX, int originY, int x, int y, int sizeX, int sizeY) {
+		this.originX = originX;
+		this.originY = originY;
+		this.x = x;
+		this.y = y;
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		
+		// compute the bounding box
+		float minZ = Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int i = x; i <= x + sizeX; i++) {
+			for (int j = y; j <= y + sizeY; j++) {
+				minZ = Math.min(minZ, heightMap[i][j]);
+				maxZ = Math.max(maxZ, heightMap[i][j]);
+			}
+		}
+		bounds[0] = (originX + x) * Terrain.UNIT_SCALE;
+		bounds[1] = (originY + y) * Terrain.UNIT_SCALE;
+		bounds[2] = minZ;
+		bounds[3] = (originX + x + sizeX) * Terrain.UNIT_SCALE;
+		bounds[4] = (originY + y + sizeY) * Terrain.UNIT_SCALE;
+		bounds[5] = maxZ;
+	}
+	
+	/**
+	 * Builds and uploads the chunk's vertices.
+	 * 
+	 * <p>Must be called from the OpenGL thread!</p>
+	 * 
+	 * @param heightMap The terrain's height map.
+	 * @param normals The terrain's vertex normals.
+	 * @param weights The terrain's texture blend weights.
+	 * @param textureScale The texture coordinates' scale.
+	 */
+	public void load(float[][] heightMap, FloatBuffer normals, FloatBuffer weights, float textureScale) {
+		prepare(heightMap, normals, weights, textureScale);
+		upload();
+	}
+	
+	/**
+	 * Builds the chunk's vertex data (without uploading it).
+	 * 
+	 * <p>Does not use OpenGL, so it can be called from any thread (before {@link #upload}).</p>
+	 * 
+	 * @param heightMap The terrain's height map.
+	 * @param normals The terrain's vertex normals.
+	 * @param weights The terrain's texture blend weights.
+	 * @param textureScale The texture coordinates' scale.
+	 */
+	public void prepare(float[][] heightMap, FloatBuffer normals, FloatBuffer weights, float textureScale) {
+		int wy = heightMap[0].length;
+		
+		// the texture coordinates start from the fractional part of the origin's ones, so they stay
+		// small (and continuous across height maps, since the textures are repeated)
+		double textureOriginX = originX * (double)textureScale;
+		double textureOriginY = originY * (double)textureScale;
+		float textureX = (float)(textureOriginX - Math.floor(textureOriginX));
+		float textureY = (float)(textureOriginY - Math.floor(textureOriginY));
+		
+		float[] vertices = new float[(sizeX + 1) * (sizeY + 1) * VERTEX_SIZE];
+		
+		for (int i = 0; i <= sizeX; i++) {
+			for (int j = 0; j <= sizeY; j++) {
+				int v = getVertexIndex(i, j) * VERTEX_SIZE;
+				int p = (x + i) * wy + (y + j); // the terrain's vertex
+				int n = p * 3;
+				
+				vertices[v] = (originX + x + i) * Terrain.UNIT_SCALE;
+				vertices[v + 1] = (originY + y + j) * Terrain.UNIT_SCALE;
+				vertices[v + 2] = heightMap[x + i][y + j];
+				vertices[v + 3] = normals.get(n);
+				vertices[v + 4] = normals.get(n + 1);
+				vertices[v + 5] = normals.get(n + 2);
+				vertices[v + 6] = textureY + (y + j) * textureScale;
+				vertices[v + 7] = textureX + (x + i) * textureScale;
+				for (int t = 0; t < TerrainMesh.WEIGHT_COUNT; t++) {
+					vertices[v + 8 + t] = weights.get(p * TerrainMesh.WEIGHT_COUNT + t);
+				}
+			}
+		}
+		
+		vertexData = BufferUtils.asBuffer(vertices);
+	}
+	
+	/**
+	 * Uploads the vertex data built by {@link #prepare} (and frees it).
+	 * 
+	 * <p>Must be called from the OpenGL thread!</p>
+	 */
+	public void upload() {
+		upload(false);
+	}
+	
+	/**
+	 * Uploads the vertex data built by {@link #prepare} into new buffers.
+	 * 
+	 * <p>Must be called from the OpenGL thread!</p>
+	 * 
+	 * @param keepData Whether to keep the vertex data, for uploading it again later.
+	 */
+	public void upload(boolean keepData) {
+		FloatBuffer vertexBuf = vertexData;
+		if (vertexBuf == null)
+			throw new IllegalStateException("The terrain chunk's vertices were not prepared!");
+		
+		int[] buffers = { 0, 0 };
+		GLES20.glGenBuffers(2, buffers, 0);
+		if (buffers[0] <= 0 || buffers[1] <= 0)
+			throw new RuntimeException("Unable to allocate the terrain chunk's buffers!");
+		vbo = buffers[0];
+		ibo = buffers[1];
+		generation = GLAssetManager.getInstance().getContextGeneration();
+		
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBuf.capacity() * 4,
+				vertexBuf, GLES20.GL_STATIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		
+		if (!keepData)
+			vertexData = null;
+		level = -1;
+	}
+	
+	/**
+	 * Updates the chunk's level of detail, rebuilding its triangles if it changed.
+	 * 
+	 * <p>Must be called from the OpenGL thread!</p>
+	 * 
+	 * @param level The new level of detail.
+	 * @param edgeLevels The levels of the neighboring chunks, for each edge (use the chunk's own
+	 *                   level for the terrain's borders).
+	 */
+	public void update(int level, int[] edgeLevels) {
+		if (this.level == level && Arrays.equals(this.edgeLevels, edgeLevels))
+			return;
+		
+		short[] indices = buildIndices(level, edgeLevels);
+		indexCount = indices.length;
+		
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.length * 2,
+				BufferUtils.asBuffer(indices), GLES20.GL_DYNAMIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		
+		this.level = level;
+		System.arraycopy(edgeLevels, 0, this.edgeLevels, 0, 4);
+	}
+	
+	/**
+	 * Generates the chunk's triangles for the specified level of detail.
+	 * 
+	 * @param level The level of detail.
+	 * @param edgeLevels The neighbors' levels, for each edge.
+	 * @return The vertex indices (local to the chunk).
+	 */
+	public short[] buildIndices(int level, int[] edgeLevels) {
+		int step = 1 << level;
+		int[] edgeSteps = new int[4];
+		for (int e = 0; e < 4; e++) {
+			edgeSteps[e] = 1 << Math.max(level, edgeLevels[e]);
+		}
+		
+		short[] triangles = new short[((sizeX + step - 1) / step) * ((sizeY + step - 1) / step) * 6];
+		int count = 0;
+		
+		for (int i0 = 0; i0 < sizeX; i0 += step) {
+			int i1 = Math.min(i0 + step, sizeX);
+			for (int j0 = 0; j0 < sizeY; j0 += step) {
+				int j1 = Math.min(j0 + step, sizeY);
+				
+				int v1 = getSnappedVertex(i0, j0, edgeSteps);
+				int v2 = getSnappedVertex(i1, j0, edgeSteps);
+				int v3 = getSnappedVertex(i1, j1, edgeSteps);
+				int v4 = getSnappedVertex(i0, j1, edgeSteps);
+				
+				count = addTriangle(triangles, count, v1, v2, v3);
+				count = addTriangle(triangles, count, v1, v3, v4);
+			}
+		}
+		
+		return Arrays.copyOf(triangles, count);
+	}
+	
+	/**
+	 * Returns the index of a chunk vertex, after snapping it to the grid of its edge.
+	 * 
+	 * @param i The local X coordinate.
+	 * @param j The local Y coordinate.
+	 * @param edgeSteps The grid steps of each edge.
+	 * @return The vertex index.
+	 */
+	protected int getSnappedVertex(int i, int j, int[] edgeSteps) {
+		if (i == 0)
+			j = snap(j, edgeSteps[EDGE_LEFT], sizeY);
+		else if (i == sizeX)
+			j = snap(j, edgeSteps[EDGE_RIGHT], sizeY);
+		
+		if (j == 0)
+			i = snap(i, edgeSteps[EDGE_BOTTOM], sizeX);
+		else if (j == sizeY)
+			i = snap(i, edgeSteps[EDGE_TOP], sizeX);
+		
+		return getVertexIndex(i, j);
+	}
+	
+	/**
+	 * Snaps a coordinate to a grid (down to the previous grid point).
+	 * 
+	 * <p>The grid points are the multiples of the step, plus the end of the edge.</p>
+	 * 
+	 * @param pos The coordinate to snap.
+	 * @param step The grid's step.
+	 * @param size The edge's length.
+	 * @return The snapped coordinate.
+	 */
+	protected static int snap(int pos, int step, int size) {
+		return (pos == size ? size : pos - pos % step);
+	}
+	
+	/**
+	 * Adds a triangle to a list, unless it is degenerate.
+	 * 
+	 * @param triangles The triangles list.
+	 * @param count The current size of the list.
+	 * @param v1 The first vertex.
+	 * @param v2 The second vertex.
+	 * @param v3 The third vertex.
+	 * @return The new size of the list.
+	 */
+	protected static int addTriangle(short[] triangles, int count, int v1, int v2, int v3) {
+		if (v1 == v2 || v2 == v3 || v1 == v3)
+			return count;
+		
+		triangles[count++] = (short)v1;
+		triangles[count++] = (short)v2;
+		triangles[count++] = (short)v3;
+		return count;
+	}
+	
+	/**
+	 * Returns the index of a chunk vertex.
+	 * 
+	 * @param i The local X coordinate.
+	 * @param j The local Y coordinate.
+	 * @return The vertex index.
+	 */
+	public int getVertexIndex(int i, int j) {
+		return i * (sizeY + 1) + j;
+	}
+	
+	/**
+	 * Draws the chunk's triangles.
+	 * 
+	 * <p>The chunk's buffers must be bound (see {@link #bind}).</p>
+	 */
+	public void draw() {
+		if (indexCount > 0) {
+			GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCount, GLES20.GL_UNSIGNED_SHORT, 0);
+			FrameProfiler.getInstance().countDraw(indexCount / 3);
+		}
+	}
+	
+	/**
+	 * Binds the chunk's buffers to the shader's attributes.
+	 * 
+	 * @param a_position The position attribute's location.
+	 * @param a_normal The normal attribute's location (-1 if the shader has no normals).
+	 * @param a_textureCoords The texture coordinates attribute's location.
+	 * @param a_weights The blend weights attribute's location.
+	 */
+	public void bind(int a_position, int a_normal, int a_textureCoords, int a_weights) {
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+		GLES20.glVertexAttribPointer(a_position, 3, GLES20.GL_FLOAT, false, VERTEX_SIZE * 4, 0);
+		if (a_normal >= 0)
+			GLES20.glVertexAttribPointer(a_normal, 3, GLES20.GL_FLOAT, false, VERTEX_SIZE * 4, 3 * 4);
+		GLES20.glVertexAttribPointer(a_textureCoords, 2, GLES20.GL_FLOAT, false, VERTEX_SIZE * 4, 6 * 4);
+		GLES20.glVertexAttribPointer(a_weights, TerrainMesh.WEIGHT_COUNT, GLES20.GL_FLOAT, false, 
+				VERTEX_SIZE * 4, 8 * 4);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+	}
+	
+	/**
+	 * Releases the chunk's buffers (the buffers of a lost context are only forgotten).
+	 */
+	public void destroy() {
+		if (vbo > 0 && generation == GLAssetManager.getInstance().getContextGeneration()) {
+			GLES20.glDeleteBuffers(2, new int[] { vbo, ibo }, 0);
+		}
+		vbo = ibo = 0;
+		level = -1;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the chunk's bounding box.
+	 * 
+	 * @return The bounds (minX, minY, minZ, maxX, maxY, maxZ), in world units.
+	 */
+	public float[] getBounds() {
+		return bounds;
+	}
+	
+	/**
+	 * Returns the memory used by the chunk's (kept) vertex data.
+	 * 
+	 * @return The size, in bytes (0 if the data was freed).
+	 */
+	public long getDataSize() {
+		FloatBuffer vertexBuf = vertexData;
+		return (vertexBuf != null ? vertexBuf.capacity() * 4 : 0);
+	}
+	
+	/**
+	 * Returns the chunk's current level of detail.
+	 * 
+	 * @return The level of detail (-1 if the triangles weren't built yet).
+	 */
+	@SuppressWarnings("unused")
+	public int getLevel() {
+		return level;
+	}
+	
+}
@@ -61,6 +61,25 @@ public class CenteredContainer extends HUDObject {
 		repositionObjects();
 	}
 	
+	@Override
+	public boolean isDirty() {
+		if (dirty)
+			return true;
+		for (int i = 0; i < objects.size(); i++) {
+			if (objects.get(i).isDirty())
+				return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public void clearDirty() {
+		super.clearDirty();
+		for (int i = 0; i < objects.size(); i++) {
+			objects.get(i).clearDirty();
+		}
+	}
+	
 	@Override
 	public void destroy() {
 		for (HUDObject object: objects) {
@@ -4,18 +4,15 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.opengl.GLES20;
-import android.opengl.Matrix;
 import android.support.annotation.NonNull;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.nio.FloatBuffer;
-
 import ro.pub.dadgm.pf22.render.Scene3D;
-import ro.pub.dadgm.pf22.render.utils.BufferUtils;
 import ro.pub.dadgm.pf22.render.utils.DrawText;
-import ro.pub.dadgm.pf22.render.utils.TextureLoader;
+import ro.pub.dadgm.pf22.render.utils.SpriteAtlas;
+import ro.pub.dadgm.pf22.render.utils.SpriteBatch;
+import ro.pub.dadgm.pf22.render.utils.TextMesh;
 
 /**
  * Draws a menu button (a circle with a letter inside).
@@ -23,36 +20,14 @@ import ro.pub.dadgm.pf22.render.utils.TextureLoader;
 public class HUDButton extends HUDObject {
 	
 	/**
-	 * Button texture's dimensions.
-	 */
-	protected static final int[] dimensions = { 64, 64 };
-	
-	/**
-	 * The object's triangles.
+	 * The name of the button's sprite (inside the scene's sprite atlas).
 	 */
-	protected static final float[] staticVertexArray = {
-			0f, 1f, 0, // top left
-			0f, 0f, 0, // bottom left
-			1f, 0f, 0, // bottom right
-			1f, 1f, 0  // top right
-	};
+	protected static final String SPRITE_NAME = "hud_button";
 	
 	/**
-	 * Object's triangles (vertex indices array).
+	 * Button sprite's dimensions.
 	 */
-	protected static final short[] staticIndexArray = {
-			0, 1, 2, 0, 2, 3 // 2 triangles that form a quad
-	};
-	
-	/**
-	 * The vertex texture coordinates.
-	 */
-	protected static final float[] staticTextureCoordsArray = {
-			0f, 0f, // top left
-			0f, 1f, // bottom left
-			1f, 1f, // bottom right
-			1f, 0f  // top right
-	};
+	protected static final int[] dimensions = { 64, 64 };
 	
 	/**
 	 * Static color to blend the object's texture.
@@ -89,14 +64,9 @@ public class HUDButton extends HUDObject {
 	protected DrawText drawText;
 	
 	/**
-	 * The button's texture handle.
-	 */
-	protected int texture;
-	
-	/**
-	 * A FloatBuffer for the texture coordinates.
+	 * Scene's sprite batch (the button's quad is queued into it).
 	 */
-	protected FloatBuffer textureCoordsBuf;
+	protected SpriteBatch spriteBatch;
 	
 	/**
 	 * Stores true if the current item is hovered.
@@ -108,6 +78,11 @@ public class HUDButton extends HUDObject {
 	 */
 	protected String caption;
 	
+	/**
+	 * The retained geometry of the caption.
+	 */
+	protected TextMesh captionMesh = new TextMesh("");
+	
 	/**
 	 * The onclick listerer bound to the current item.
 	 */
@@ -128,14 +103,16 @@ public class HUDButton extends HUDObject {
 		super(scene, tag, priority);
 		
 		this.drawText = scene.getDrawText();
+		this.spriteBatch = scene.getSpriteBatch();
 		this.clickListener = clickListener;
 		
-		shader = scene.getShaderManager().getShader("simple_tex");
-		
-		generateTexture();
-		vertexBuffer = BufferUtils.asBuffer(staticVertexArray);
-		vertexIndexBuffer = BufferUtils.asBuffer(staticIndexArray);
-		textureCoordsBuf = BufferUtils.asBuffer(staticTextureCoordsArray);
+		// the sprite is shared by all buttons
+		SpriteAtlas atlas = spriteBatch.getAtlas();
+		if (!atlas.hasSprite(SPRITE_NAME)) {
+			Bitmap bitmap = generateBitmap();
+			atlas.addSprite(SPRITE_NAME, bitmap);
+			bitmap.recycle();
+		}
 		
 		// fixed dimensions
 		setDimensions(0.7f, 0.7f);
@@ -144,14 +121,11 @@ public class HUDButton extends HUDObject {
 	}
 	
 	/**
-	 * Generates the bitmap texture used for the button.
+	 * Generates the bitmap used for the button (to be packed into the sprite atlas).
+	 * 
+	 * @return The generated bitmap.
 	 */
-	protected void generateTexture() {
-		final String cacheKey = "bitmap_hud_button";
-		texture = TextureLoader.loadTextureCached(null, cacheKey);
-		if (texture > 0)
-			return;
-		
+	protected static Bitmap generateBitmap() {
 		Paint paint = new Paint();
 		paint.setAntiAlias(true);
 		
@@ -168,14 +142,7 @@ public class HUDButton extends HUDObject {
 		paint.setColor(Color.argb(254, 255, 255, 255)); // opaque white
 		canvas.drawCircle(dimensions[0]/2, dimensions[1]/2, dimensions[0]/2 - 4, paint);
 		
-		texture = TextureLoader.loadTextureCached(bitmap, cacheKey);
-		if (texture == 0) 
-			throw new RuntimeException("Unable to allocate texture for the button!");
-		
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+		return bitmap;
 	}
 	
 	
@@ -189,44 +156,13 @@ public class HUDButton extends HUDObject {
 			isHovered = hovered;
 		}
 		
-		// update the object's model matrix
-		Matrix.setIdentityM(modelMatrix, 0);
-		Matrix.translateM(modelMatrix, 0, position.getX(), position.getY(), position.getZ());
-		Matrix.scaleM(modelMatrix, 0, width, height, 1);
-		
-		shader.use();
-		
-		// get shader attributes' locations
-		int a_position = shader.getAttribLocation("a_position");
-		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
-		
-		// get shader uniforms' locations
-		int u_texture = shader.getUniformLocation("u_texture");
-		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
-		int u_color = shader.getUniformLocation("u_color");
-		
-		// send the matrices
-		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrix, 0);
-		
-		// send the vertex data to the shader
-		GLES20.glEnableVertexAttribArray(a_position);
-		GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false,
-				3 * 4 /* bytes */, vertexBuffer);
-		
-		GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 0, textureCoordsBuf);
-		GLES20.glEnableVertexAttribArray(a_textureCoords);
-		
-		// send texture and color data (use the first texture unit)
-		GLES20.glUniform4fv(u_color, 1, (isHovered? hoverColor : staticColor ), 0);
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-		GLES20.glUniform1i(u_texture, 0);
-		
-		GLES20.glDrawElements(GLES20.GL_TRIANGLES, staticIndexArray.length, GLES20.GL_UNSIGNED_SHORT, vertexIndexBuffer);
+		// queue the button's quad, then its caption
+		spriteBatch.drawSprite(SPRITE_NAME, position.getX(), position.getY(), position.getZ(), 
+				width, height, (isHovered? hoverColor : staticColor ));
 		
 		prepareDrawText();
 		drawText.setColor((isHovered? hoverTextColor : staticTextColor ));
-		drawText.drawText(caption);
+		drawText.drawText(captionMesh);
 	}
 	
 	@Override
@@ -234,21 +170,21 @@ public class HUDButton extends HUDObject {
 		if (e.getAction() == MotionEvent.ACTION_HOVER_ENTER || 
 				e.getAction() == MotionEvent.ACTION_HOVER_MOVE) {
 			synchronized (this) {
-				hovered = true;
+				setHovered(true);
 			}
 			return true;
 		}
 		
 		if (e.getAction() == MotionEvent.ACTION_HOVER_EXIT) {
 			synchronized (this) {
-				hovered = false;
+				setHovered(false);
 			}
 			return true;
 		}
 		
 		if (e.getAction() == MotionEvent.ACTION_UP) {
 			synchronized (this) {
-				hovered = false;
+				setHovered(false);
 			}
 			clickListener.onClick(null);
 			return true;
@@ -257,6 +193,26 @@ public class HUDButton extends HUDObject {
 		return false;
 	}
 	
+	/**
+	 * Changes the hover state, marking the object as dirty if it changed.
+	 * 
+	 * <p>Must be called while holding the object's lock.</p>
+	 * 
+	 * @param hovered The new hover state.
+	 */
+	protected void setHovered(boolean hovered) {
+		if (this.hovered != hovered) {
+			this.hovered = hovered;
+			markDirty();
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		// the sprite is shared by all buttons, it stays inside the atlas
+		captionMesh.destroy();
+	}
+	
 	/**
 	 * Changes the menu item's caption. 
 	 * Automatically recalculates the object's width.
@@ -264,7 +220,10 @@ public class HUDButton extends HUDObject {
 	 * @param caption The new caption to set.
 	 */
 	public void setCaption(String caption) {
+		if (!captionMesh.setText(caption))
+			return;
 		this.caption = caption;
+		markDirty();
 		
 		prepareDrawText();
 	}
@@ -278,7 +237,7 @@ public class HUDButton extends HUDObject {
 		float fHeight = height * 0.8f;
 		
 		drawText.reset();
-		drawText.useFont("fonts/Roboto-Regular.ttf", 48);
+		drawText.useFont("fonts/Roboto-Regular.ttf");
 		
 		drawText.setStartPosition(position.getX() + width / 2, position.getY() + 0.1f, position.getZ());
 		drawText.setScale(fHeight);
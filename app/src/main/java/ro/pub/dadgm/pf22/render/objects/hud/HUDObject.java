@@ -15,6 +15,10 @@ import ro.pub.dadgm.pf22.utils.Point3D;
  * 
  * <p>A HUD object has a set of coordinates: (x,y) defines the 2D position on the screen and z is 
  * used for depth-positioning (for overlapping objects).</p>
+ * 
+ * <p>The HUD is drawn in retained mode: each object records whether it changed since the HUD was 
+ * last drawn (see {@link #isDirty()}), so the views can draw the previous frame's HUD again 
+ * when nothing changed.</p>
  */
 public abstract class HUDObject extends AbstractObject3D {
 	
@@ -38,6 +42,13 @@ public abstract class HUDObject extends AbstractObject3D {
 	 */
 	protected boolean visibility;
 	
+	/**
+	 * Whether the object's appearance changed since it was last drawn.
+	 * 
+	 * <p>Can be set from the Activity thread (e.g. on hover).</p>
+	 */
+	protected volatile boolean dirty = true;
+	
 	/**
 	 * The constructor with mandatory parameters.
 	 * 
@@ -114,7 +125,34 @@ public abstract class HUDObject extends AbstractObject3D {
 	 * @param visibility The visibility to set.
 	 */
 	public void setVisibility(boolean visibility) {
-		this.visibility = visibility;
+		if (this.visibility != visibility) {
+			this.visibility = visibility;
+			markDirty();
+		}
+	}
+	
+	/**
+	 * Checks whether the object (or, for containers, any of its children) changed since it was 
+	 * last drawn.
+	 * 
+	 * @return True if the object needs to be drawn again.
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+	
+	/**
+	 * Marks the object as changed (its next frame must be redrawn).
+	 */
+	public void markDirty() {
+		dirty = true;
+	}
+	
+	/**
+	 * Marks the object (and, for containers, its children) as drawn.
+	 */
+	public void clearDirty() {
+		dirty = false;
 	}
 	
 	/**
@@ -129,10 +167,11 @@ public abstract class HUDObject extends AbstractObject3D {
 	/**
 	 * Updates the object's bounding box.
 	 * 
-	 * <p>Should be called if the position is altered.</p>
+	 * <p>Should be called if the position is altered (this also marks the object as dirty).</p>
 	 */
 	public void updateBoundingBox() {
 		this.boundingBox = new BoundingBox2D(position.getX(), position.getY(), width, height);
+		markDirty();
 	}
 	
 }
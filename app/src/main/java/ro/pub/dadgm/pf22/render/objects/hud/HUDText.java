@@ -2,6 +2,7 @@ package ro.pub.dadgm.pf22.render.objects.hud;
 
 import ro.pub.dadgm.pf22.render.Scene3D;
 import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.TextMesh;
 
 /**
  * Draws a simple HUD text (centered).
@@ -14,9 +15,9 @@ public class HUDText extends HUDObject {
 	protected DrawText drawText;
 	
 	/**
-	 * HUD text to draw.
+	 * The retained geometry of the text.
 	 */
-	protected String text;
+	protected TextMesh textMesh = new TextMesh("");
 	
 	
 	/**
@@ -44,32 +45,41 @@ public class HUDText extends HUDObject {
 		if (!visibility) return;
 		
 		prepareDrawText();
-		drawText.drawText(text);
+		drawText.drawText(textMesh);
 	}
 	
 	/**
 	 * Changes the HUD item's caption. 
-	 * Automatically recalculates the object's width.
-	 *
+	 * Automatically recalculates the object's width (only if the caption is different).
+	 * 
+	 * <p>The caption is copied, so the caller can reuse its buffer.</p>
+	 * 
 	 * @param caption The new caption to set.
 	 */
-	public void setCaption(String caption) {
-		this.text = caption;
+	public void setCaption(CharSequence caption) {
+		if (!textMesh.setText(caption))
+			return;
 		
 		prepareDrawText();
 		width = drawText.calculateDrawWidth(caption) * drawText.getModelScale();
+		markDirty();
+	}
+	
+	@Override
+	public void destroy() {
+		textMesh.destroy();
 	}
 	
 	/**
 	 * Prepares the DrawText instance for drawing text.
-	 *
+	 * 
 	 * <p>Aka defines font properties to be used for drawing.</p>
 	 */
 	protected void prepareDrawText() {
 		float fHeight = height;
 		
 		drawText.reset();
-		drawText.useFont("fonts/Roboto-Regular.ttf", 48);
+		drawText.useFont("fonts/Roboto-Regular.ttf");
 		
 		drawText.setStartPosition(position.getX() + width / 2, position.getY(), position.getZ());
 		drawText.setScale(fHeight);
@@ -3,14 +3,12 @@ package ro.pub.dadgm.pf22.render.objects.hud;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES20;
-import android.opengl.Matrix;
-
-import java.nio.FloatBuffer;
 
 import ro.pub.dadgm.pf22.R;
 import ro.pub.dadgm.pf22.activity.MainActivity;
 import ro.pub.dadgm.pf22.render.Scene3D;
-import ro.pub.dadgm.pf22.render.utils.BufferUtils;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+import ro.pub.dadgm.pf22.render.utils.SpriteBatch;
 import ro.pub.dadgm.pf22.render.utils.TextureLoader;
 
 /**
@@ -18,6 +16,10 @@ import ro.pub.dadgm.pf22.render.utils.TextureLoader;
  * 
  * <p>This object's dimensions must be equal to that of the scene's and the image will be zoomed 
  * across them.</p>
+ * 
+ * <p>The image is too large for the scene's sprite atlas, so it is queued with its own texture 
+ * (the batch draws it separately). The texture is pinned while the object lives, so it must be
+ * released by {@link #destroy()}.</p>
  */
 public class MenuBackground extends HUDObject {
 	
@@ -27,21 +29,9 @@ public class MenuBackground extends HUDObject {
 	protected int texture;
 	
 	/**
-	 * The object's triangles.
+	 * The OpenGL context generation the texture was loaded into.
 	 */
-	protected static final float[] staticVertexArray = {
-		0f, 1f, 0, // top left
-		0f, 0f, 0, // bottom left
-		1f, 0f, 0, // bottom right
-		1f, 1f, 0  // top right
-	};
-	
-	/**
-	 * Object's triangles (vertex indices array).
-	 */
-	protected static final short[] staticIndexArray = {
-		0, 1, 2, 0, 2, 3 // 2 triangles that form a quad
-	};
+	protected int generation;
 	
 	/**
 	 * Static color to blend the texture.
@@ -52,10 +42,15 @@ public class MenuBackground extends HUDObject {
 	
 	
 	/**
-	 * A FloatBuffer for the texture coordinates.
+	 * Scene's sprite batch (the background's quad is queued into it).
 	 */
-	protected FloatBuffer textureCoordsBuf;
-
+	protected SpriteBatch spriteBatch;
+	
+	/**
+	 * The texture coordinates to draw (s0, t0, s1, t1).
+	 */
+	protected float[] textureRegion = new float[4];
+	
 	/**
 	 * Texture's width/height ratio.
 	 */
@@ -72,32 +67,31 @@ public class MenuBackground extends HUDObject {
 	public MenuBackground(Scene3D scene, String tag, int priority) {
 		super(scene, tag, priority);
 		
-		// load the GLSL program
-		shader = scene.getShaderManager().getShader("simple_tex");
-		
-		// initialize the object's geometry
-		vertexBuffer = BufferUtils.asBuffer(staticVertexArray);
-		vertexIndexBuffer = BufferUtils.asBuffer(staticIndexArray);
+		this.spriteBatch = scene.getSpriteBatch();
 		
-		// load the menu background as a texture
-		// disable pre-scaling
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inScaled = false;
-		final Bitmap bitmap = BitmapFactory.decodeResource(MainActivity.getAppContext().getResources(), R.drawable.background, options);
-		if (bitmap == null) 
-			throw new RuntimeException("Unable to load the background image!");
+		// load the menu background as a texture (the decoded image is retained for reloading)
+		String imageKey = "res_" + R.drawable.background;
+		Bitmap bitmap = (Bitmap)TextureLoader.getRetainedImage(imageKey);
+		if (bitmap == null) {
+			// disable pre-scaling
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inScaled = false;
+			bitmap = BitmapFactory.decodeResource(MainActivity.getAppContext().getResources(), R.drawable.background, options);
+			if (bitmap == null) 
+				throw new RuntimeException("Unable to load the background image!");
+		}
 		
 		texture = TextureLoader.loadTexture(bitmap);
+		generation = GLAssetManager.getInstance().getContextGeneration();
 		textureRatio = (float)bitmap.getWidth() / (float)bitmap.getHeight();
-		bitmap.recycle();
+		if (!TextureLoader.retainImage(imageKey, bitmap))
+			bitmap.recycle();
 		
 		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
 		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
 		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
 		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
 		
-		textureCoordsBuf = BufferUtils.allocateFloatBuffer(4 * 2);
-		
 		if (texture == 0) 
 			throw new RuntimeException("Unable to load the background texture!");
 	}
@@ -105,55 +99,24 @@ public class MenuBackground extends HUDObject {
 	
 	@Override
 	public void draw() {
-		// update the object's model matrix
-		Matrix.setIdentityM(modelMatrix, 0);
-		Matrix.translateM(modelMatrix, 0, position.getX(), position.getY(), position.getZ());
-		Matrix.scaleM(modelMatrix, 0, width, height, 1);
-		
-		shader.use();
-		
-		// get shader attributes' locations
-		int a_position = shader.getAttribLocation("a_position");
-		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
-		
-		// get shader uniforms' locations
-		int u_texture = shader.getUniformLocation("u_texture");
-		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
-		int u_color = shader.getUniformLocation("u_color");
-		
-		// send the matrices
-		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, modelMatrix, 0);
-		
-		// send the vertex data to the shader
-		GLES20.glEnableVertexAttribArray(a_position);
-		GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false, 
-				3 * 4 /* bytes */, vertexBuffer);
-		
-		// send texture and color data (use the first texture unit)
-		GLES20.glUniform4fv(u_color, 1, staticColor, 0);
-		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
-		GLES20.glUniform1i(u_texture, 0);
-		
 		// zoom the image, centered by X
 		float screenRatio = width / height;
 		float dx = Math.abs( textureRatio - screenRatio ) / 2.0f / textureRatio;
-		float[] textureCoords = {
-				dx, 0f, // top left
-				dx, 1f, // bottom left
-				1.0f - dx, 1f, // bottom right
-				1.0f - dx, 0f  // top right
-		};
-		
-		// send the texture coords
-		textureCoordsBuf.put(textureCoords);
-		textureCoordsBuf.flip();
-		GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 0, textureCoordsBuf);
-		GLES20.glEnableVertexAttribArray(a_textureCoords);
-		textureCoordsBuf.clear();
+		textureRegion[0] = dx;
+		textureRegion[1] = 0f;
+		textureRegion[2] = 1.0f - dx;
+		textureRegion[3] = 1f;
 		
-		// draw!
-		GLES20.glDrawElements(GLES20.GL_TRIANGLES, staticIndexArray.length, GLES20.GL_UNSIGNED_SHORT, vertexIndexBuffer);
+		spriteBatch.drawSprite(texture, textureRegion, position.getX(), position.getY(), 
+				position.getZ(), width, height, staticColor);
+	}
+	
+	@Override
+	public void destroy() {
+		// the texture of a lost context is only forgotten
+		if (texture != 0 && generation == GLAssetManager.getInstance().getContextGeneration())
+			TextureLoader.releaseTexture(texture);
+		texture = 0;
 	}
 	
 }
@@ -6,6 +6,7 @@ import android.view.View;
 
 import ro.pub.dadgm.pf22.render.Scene3D;
 import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.TextMesh;
 
 /**
  * Draws a menu item (as hover-able text).
@@ -18,7 +19,7 @@ public class MenuItem extends HUDObject {
 	protected static final float[] staticColor = {
 		0.5f, 0.5f, 1.0f, 1.0f
 	};
-
+	
 	/**
 	 * The hover color of the item.
 	 */
@@ -41,6 +42,11 @@ public class MenuItem extends HUDObject {
 	 */
 	protected String caption;
 	
+	/**
+	 * The retained geometry of the caption.
+	 */
+	protected TextMesh captionMesh = new TextMesh("");
+	
 	/**
 	 * The onclick listerer bound to the current item.
 	 */
@@ -82,7 +88,7 @@ public class MenuItem extends HUDObject {
 			}
 		}
 		
-		drawText.drawText(caption);
+		drawText.drawText(captionMesh);
 	}
 	
 	@Override
@@ -92,21 +98,21 @@ public class MenuItem extends HUDObject {
 		if (e.getAction() == MotionEvent.ACTION_HOVER_ENTER || 
 				e.getAction() == MotionEvent.ACTION_HOVER_MOVE) {
 			synchronized (this) {
-				hovered = true;
+				setHovered(true);
 			}
 			return true;
 		}
 		
 		if (e.getAction() == MotionEvent.ACTION_HOVER_EXIT) {
 			synchronized (this) {
-				hovered = false;
+				setHovered(false);
 			}
 			return true;
 		}
 		
 		if (e.getAction() == MotionEvent.ACTION_UP) {
 			synchronized (this) {
-				hovered = false;
+				setHovered(false);
 			}
 			clickListener.onClick(null);
 			return true;
@@ -116,13 +122,35 @@ public class MenuItem extends HUDObject {
 	}
 	
 	/**
-	 * Changes the menu item's caption. 
+	 * Changes the hover state, marking the object as dirty if it changed.
+	 * 
+	 * <p>Must be called while holding the object's lock.</p>
+	 * 
+	 * @param hovered The new hover state.
+	 */
+	protected void setHovered(boolean hovered) {
+		if (this.hovered != hovered) {
+			this.hovered = hovered;
+			markDirty();
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		captionMesh.destroy();
+	}
+	
+	/**
+	 * Changes the menu item's caption.  
 	 * Automatically recalculates the object's width.
 	 * 
 	 * @param caption The new caption to set.
 	 */
 	public void setCaption(String caption) {
+		if (!captionMesh.setText(caption))
+			return;
 		this.caption = caption;
+		markDirty();
 		
 		prepareDrawText();
 		width = drawText.calculateDrawWidth(caption) * drawText.getModelScale();
@@ -137,7 +165,7 @@ public class MenuItem extends HUDObject {
 		float fHeight = height * 0.8f;
 		
 		drawText.reset();
-		drawText.useFont("fonts/Roboto-Regular.ttf", 48);
+		drawText.useFont("fonts/Roboto-Regular.ttf");
 		
 		drawText.setStartPosition(position.getX() + width / 2, position.getY(), position.getZ());
 		drawText.setScale(fHeight);
@@ -2,6 +2,7 @@ package ro.pub.dadgm.pf22.render.objects.hud;
 
 import ro.pub.dadgm.pf22.render.Scene3D;
 import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.TextMesh;
 
 /**
  * Draws the menu title (as text).
@@ -18,6 +19,11 @@ public class MenuTitle extends HUDObject {
 	 */
 	protected String text, subText;
 	
+	/**
+	 * The retained geometry of the title's texts.
+	 */
+	protected TextMesh textMesh, subTextMesh;
+	
 	
 	/**
 	 * Initializes the menu background object.
@@ -31,6 +37,8 @@ public class MenuTitle extends HUDObject {
 		
 		this.text = text;
 		this.subText = subText;
+		this.textMesh = new TextMesh(text);
+		this.subTextMesh = new TextMesh(subText);
 		
 		this.drawText = scene.getDrawText();
 	}
@@ -46,18 +54,24 @@ public class MenuTitle extends HUDObject {
 		float fHeight2 = fHeight * 0.7f;
 		
 		drawText.reset();
-
+		
 		drawText.setStartPosition(position.getX(), position.getY() - fHeight, position.getZ());
 		drawText.setAlignment(DrawText.FontAlign.ALIGN_CENTER);
 		drawText.setColor(new float[] { 1.0f, 1.0f, 1.0f, 1.0f });
 		drawText.setScale(fHeight);
 		
-		drawText.useFont("fonts/Roboto-Regular.ttf", 48);
-		drawText.drawText(text);
+		drawText.useFont("fonts/Roboto-Regular.ttf");
+		drawText.drawText(textMesh);
 		
 		drawText.setStartPosition(position.getX(), position.getY() - fHeight - fHeight2, position.getZ());
 		drawText.setScale(fHeight * 0.7f);
-		drawText.drawText(subText);
+		drawText.drawText(subTextMesh);
+	}
+	
+	@Override
+	public void destroy() {
+		textMesh.destroy();
+		subTextMesh.destroy();
 	}
 	
 }
@@ -0,0 +1,179 @@
+package ro.pub.dadgm.pf22.render.objects.hud;
+
+import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.utils.DrawText;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.TextMesh;
+
+/**
+ * Shows the {@link FrameProfiler}'s stats: the percentiles (p50 / p95 / p99) of the frame's
+ * interval, work time and phases, the number of janky frames and the last frame's draw calls and
+ * triangles.
+ * 
+ * <p>The lines are drawn left aligned, downwards from the object's position. They are only
+ * updated every {@link #UPDATE_FRAMES} frames (see {@link #update()}), so the HUD isn't rebuilt on
+ * each frame. The captions are formatted without allocating any objects.</p>
+ */
+public class ProfilerOverlay extends HUDObject {
+	
+	/**
+	 * The number of frames between two updates of the stats.
+	 */
+	public static final int UPDATE_FRAMES = 30;
+	
+	/**
+	 * The height of a line of text.
+	 */
+	protected static final float LINE_HEIGHT = 0.3f;
+	
+	/**
+	 * The color of the text.
+	 */
+	protected static final float[] TEXT_COLOR = { 1f, 1f, 0.4f, 1f };
+	
+	/**
+	 * The first lines' captions (followed by the phases' lines and the draw calls' line).
+	 */
+	protected static final String[] SERIES_NAMES = { "interval", "work" };
+	
+	/**
+	 * The series of the first lines.
+	 */
+	protected static final int[] SERIES = { FrameProfiler.SERIES_INTERVAL, FrameProfiler.SERIES_WORK };
+	
+	
+	/**
+	 * Scene's DrawText instance.
+	 */
+	protected DrawText drawText;
+	
+	/**
+	 * The profiler whose stats are shown.
+	 */
+	protected FrameProfiler profiler;
+	
+	/**
+	 * The lines' retained geometry.
+	 */
+	protected final TextMesh[] lines;
+	
+	/**
+	 * The buffer the captions are formatted into.
+	 */
+	protected final StringBuilder caption = new StringBuilder(64);
+	
+	/**
+	 * The number of frames since the last update.
+	 */
+	protected int frames = 0;
+	
+	
+	/**
+	 * Initializes the overlay.
+	 * 
+	 * @param scene The parent scene object.
+	 * @param tag An optional tag.
+	 * @param priority An optional priority.
+	 */
+	public ProfilerOverlay(Scene3D scene, String tag, int priority) {
+		super(scene, tag, priority);
+		
+		this.drawText = scene.getDrawText();
+		this.profiler = FrameProfiler.getInstance();
+		
+		lines = new TextMesh[SERIES.length + FrameProfiler.PHASE_COUNT + 1];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = new TextMesh("");
+		}
+		
+		// the overlay doesn't receive touches
+		width = 0;
+		height = 0;
+	}
+	
+	/**
+	 * Updates the stats (every {@link #UPDATE_FRAMES} calls). To be called once per frame.
+	 */
+	public void update() {
+		if (++frames < UPDATE_FRAMES)
+			return;
+		frames = 0;
+		
+		profiler.computeStats();
+		boolean changed = false;
+		int line = 0;
+		for (int i = 0; i < SERIES.length; i++) {
+			caption.setLength(0);
+			caption.append(SERIES_NAMES[i]).append(": ");
+			appendPercentiles(SERIES[i]);
+			if (SERIES[i] == FrameProfiler.SERIES_INTERVAL)
+				caption.append(", jank: ").append(profiler.getJankCount());
+			changed |= lines[line++].setText(caption);
+		}
+		for (int phase = 0; phase < FrameProfiler.PHASE_COUNT; phase++) {
+			caption.setLength(0);
+			caption.append(FrameProfiler.PHASE_NAMES[phase]).append(": ");
+			appendPercentiles(phase);
+			changed |= lines[line++].setText(caption);
+		}
+		caption.setLength(0);
+		caption.append("draws: ").append(profiler.getDrawCalls())
+				.append(", triangles: ").append(profiler.getTriangles());
+		changed |= lines[line].setText(caption);
+		
+		if (changed)
+			markDirty();
+	}
+	
+	@Override
+	public void draw() {
+		if (!visibility) return;
+		
+		drawText.reset();
+		drawText.useFont("fonts/Roboto-Regular.ttf");
+		drawText.setColor(TEXT_COLOR);
+		drawText.setScale(LINE_HEIGHT);
+		
+		for (int i = 0; i < lines.length; i++) {
+			drawText.setStartPosition(position.getX(), position.getY() - i * LINE_HEIGHT,
+					position.getZ());
+			drawText.drawText(lines[i]);
+		}
+	}
+	
+	@Override
+	public void destroy() {
+		for (TextMesh line: lines) {
+			line.destroy();
+		}
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Appends a series' percentiles to the caption.
+	 * 
+	 * @param series The series.
+	 */
+	protected void appendPercentiles(int series) {
+		appendMillis(profiler.getPercentile(series, FrameProfiler.P50));
+		caption.append(" / ");
+		appendMillis(profiler.getPercentile(series, FrameProfiler.P95));
+		caption.append(" / ");
+		appendMillis(profiler.getPercentile(series, FrameProfiler.P99));
+		caption.append(" ms");
+	}
+	
+	/**
+	 * Appends a duration to the caption, with a single decimal (the floats are formatted by hand,
+	 * since appending them would allocate).
+	 * 
+	 * @param millis The duration (milliseconds).
+	 */
+	protected void appendMillis(float millis) {
+		int tenths = Math.round(millis * 10);
+		caption.append(tenths / 10).append('.').append(tenths % 10);
+	}
+	
+}
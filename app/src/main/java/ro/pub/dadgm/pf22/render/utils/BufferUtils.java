@@ -53,6 +53,20 @@ public class BufferUtils {
 		return intBuf;
 	}
 	
+	/**
+	 * Allocates a new (direct) ByteBuffer and copies its contents from the specified byte[] array.
+	 * 
+	 * @param data The byte[] array to use for filling the buffer.
+	 * @return The newly allocated buffer.
+	 */
+	public static ByteBuffer asBuffer(byte[] data) {
+		ByteBuffer byteBuf = ByteBuffer.allocateDirect(data.length).order(ByteOrder.nativeOrder());
+		byteBuf.put(data);
+		byteBuf.position(0);
+		
+		return byteBuf;
+	}
+	
 	/**
 	 * Allocates a FloatBuffer with the given length.
 	 * 
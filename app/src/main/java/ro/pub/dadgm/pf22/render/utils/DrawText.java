@@ -1,21 +1,22 @@
 package ro.pub.dadgm.pf22.render.utils;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Typeface;
 import android.opengl.GLES20;
 import android.opengl.Matrix;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
 import ro.pub.dadgm.pf22.activity.MainActivity;
+import ro.pub.dadgm.pf22.render.Camera;
 import ro.pub.dadgm.pf22.render.Scene3D;
 import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.assets.AssetHandle;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+import ro.pub.dadgm.pf22.texcompress.FontAtlas;
 import ro.pub.dadgm.pf22.utils.Point3D;
 
 /**
@@ -23,8 +24,13 @@ import ro.pub.dadgm.pf22.utils.Point3D;
  * 
  * <p>Inspired by https://github.com/d3kod/Texample2.</p>
  * 
- * <p>It uses a font map as a texture to draw the text strings using OpenGL functions.</p>
+ * <p>It uses a font map as a texture to draw the text strings using OpenGL functions. The font 
+ * maps store signed distance fields (precompiled at build time), so the text is drawn sharp at any 
+ * size from a single map per font.</p>
  * 
+ * <p>If the scene has a {@link SpriteBatch}, the text's glyphs are queued into it (as quads 
+ * transformed on the CPU) instead of being drawn.</p>
+ *  
  * <p>Note: The shader used to draw the text should abide by the following conventions:
  * <ul>
  *     <li>shader's identifier is 'draw_text'.</li>
@@ -36,29 +42,33 @@ import ro.pub.dadgm.pf22.utils.Point3D;
  */
 public class DrawText {
 	
-	// several constants
-	
-	// the ascii code of the first character in map's interval
-	public static final char CHAR_START = 32; // ' ' (space) character
+	/**
+	 * The suffix of a font's precompiled distance field atlas (see the <code>texcompress</code> 
+	 * module).
+	 */
+	public static final String ATLAS_SUFFIX = ".sdf";
 	
-	// the last character to generate map for
-	public static final char CHAR_END = 126; // '~'
+	/**
+	 * The initial length (in "printed characters") of the internal buffers used to draw.
+	 * 
+	 * <p>The buffers grow as needed, so any text is drawn with a single call.</p>
+	 */
+	public static final int DRAW_BUFFERS_LENGTH = 32;
 	
-	// and the characters count
-	public final char CHARS = (CHAR_END - CHAR_START + 1);
+	/**
+	 * The number of floats per vertex: the 2D position and the texture coordinates (interleaved).
+	 */
+	public static final int VERTEX_SIZE = 4;
 	
 	/**
-	 * The length (in "printed characters") of the internal buffer used to draw.
-	 * 
-	 * <p>The higher, the better the performance on drawing large texts, but beware of the GPU memory 
-	 * consumption!</p>
+	 * The number of vertices per character (two triangles, so no index buffer is needed).
 	 */
-	public final int DRAW_BUFFERS_LENGTH = 20;
+	public static final int CHAR_VERTICES = 6;
 	
 	/**
-	 * Texture character padding to use.
+	 * Horizontal padding added on each side of a character's advance (in font pixels).
 	 */
-	public final int PAD_X = 2, PAD_Y = 2;
+	public static final int PAD_X = 2;
 	
 	
 	/**
@@ -71,62 +81,28 @@ public class DrawText {
 	}
 	
 	/**
-	 * Represents the font map (font as an OpenGL texture) for a specific font and size combination.
+	 * Represents the signed distance field map of a font (font as an OpenGL texture).
 	 * 
-	 * <p>Its constructor generates the full texture data for the given parameters and the object 
-	 * provides several getters for retrieving the generated texture / several font metrics.</p>
+	 * <p>The atlas and the font's metrics are generated at build time (see 
+	 * {@link FontAtlas}); its constructor only reads them (this can be done on any thread) and the 
+	 * texture is created by {@link #uploadTexture()}, on the OpenGL thread. A single map is used 
+	 * to draw the font at any size.</p>
+	 * 
+	 * <p>Font maps are shared assets, use {@link ro.pub.dadgm.pf22.render.assets.GLAssetManager} 
+	 * to obtain them.</p>
 	 */
-	protected class GLFont {
+	public static class GLFont {
 		
 		/**
 		 * The name of the represented font.
 		 */
 		private String font;
 		
-		// font metrics: 
-		
-		/**
-		 * The size of the represented font.
-		 */
-		private int fontSize;
-		
-		/**
-		 * Stores the font's descent value (recommended distance from baseline to draw).
-		 */
-		private float fontDescent;
-		
-		/**
-		 * Stores the maximum height of the font (in pixels).
-		 */
-		private float maxHeight;
-		
-		/**
-		 * Stores the maximum width of a character.
-		 */
-		private float maxWidth;
-		
 		/**
-		 * An array with the width (pixels) of each character.
+		 * The font's distance field atlas and metrics (kept after upload, for reloading the 
+		 * texture).
 		 */
-		private float[] charWidths;
-		
-		
-		// texture coordinates
-		
-		/**
-		 * The width and height of a texture cell (which contains a 2D-rendered character).
-		 */
-		private int texCellWidth, texCellHeight;
-		
-		/**
-		 * Stores the number of rows and columns of texture cells.
-		 */
-		private int texRows, texCols;
-		
-		/**
-		 * The chosen size of the texture.
-		 */
-		private int textureSize;
+		private FontAtlas atlas;
 		
 		/**
 		 * The generated OpenGL texture handle.
@@ -135,115 +111,80 @@ public class DrawText {
 		
 		
 		/**
-		 * Constructs a GLFont instance with the specified parameters.
+		 * Constructs a GLFont instance by reading the font's precompiled atlas.
 		 * 
-		 * @param font The represented font's name / path.
-		 * @param fontSize The font size.
+		 * @param font The represented font's asset path.
 		 */
-		public GLFont(String font, int fontSize) {
+		public GLFont(String font) {
 			this.font = font;
-			this.fontSize = fontSize;
-
-			charWidths = new float[CHARS];
-
-			generateTexture();
+			
+			readAtlas();
 		}
 		
 		/**
-		 * Determines the font metrics and generates the texture.
+		 * Reads the font's atlas from the assets.
 		 */
-		public void generateTexture() {
-			// use a Paint instance to draw the 2D characters of the current font
-			Typeface tf = Typeface.createFromAsset(MainActivity.getAppContext().getAssets(), font);
-			Paint paint = new Paint();
-			paint.setAntiAlias(true);
-			paint.setTextSize(fontSize);
-			paint.setColor(0xffffffff);
-			paint.setTypeface(tf);
-			
-			// get font's metrics
-			Paint.FontMetrics fm = paint.getFontMetrics();
-			maxHeight = (float)Math.ceil( Math.abs(fm.bottom) + Math.abs(fm.top) );
-			fontDescent = (float)Math.ceil( Math.abs(fm.descent) );
-			
-			// determine the width of each character
-			char[] s = new char[2]; // character string to draw
-			float[] w = new float[2]; // output widths array
-			int cnt = 0; // character counter
-			for (char c = CHAR_START; c <= CHAR_END; c++)  {
-				s[0] = c;
-				paint.getTextWidths( s, 0, 1, w ); // get the character's width
-				charWidths[cnt] = w[0];
-				if ( charWidths[cnt] > maxWidth )
-					maxWidth = charWidths[cnt];
-				
-				cnt++;
-			}
-			
-			// determine texture cell size
-			texCellWidth = (int)maxWidth + (2 * PAD_X);
-			texCellHeight = (int)maxHeight + (2 * PAD_Y);
-			
-			// compute the size of the texture that needs to be allocated
-			int[] textureSizes = { 256, 512, 1024, 2048 };
-			textureSize = 0;
-			for (int size: textureSizes) {
-				texCols = size / texCellWidth;
-				texRows = size / texCellHeight;
-				if (texRows * texCols >= CHARS) {
-					// found the optimal texture size!
-					textureSize = size;
-					break;
+		protected void readAtlas() {
+			String path = font + ATLAS_SUFFIX;
+			try {
+				InputStream in = new BufferedInputStream(
+						MainActivity.getAppContext().getAssets().open(path));
+				try {
+					atlas = FontAtlas.read(in);
+				} finally {
+					in.close();
 				}
+				
+			} catch (IOException e) {
+				throw new RuntimeException("Unable to load the font atlas '" + path + "'!", e);
 			}
-			if (textureSize == 0)
-				throw new RuntimeException("The font map doesn't fit inside a OpenGL texture! " +
-						"Try with a smaller font size.");
-			
-			// create the texture bitmap
-			Bitmap bitmap = Bitmap.createBitmap(textureSize, textureSize, Bitmap.Config.ARGB_4444);
-			Canvas canvas = new Canvas(bitmap);
-			bitmap.eraseColor( Color.TRANSPARENT ); // full transparency
-			
-			// build the font map!
-			for (char c = CHAR_START; c <= CHAR_END; c++)  {
-				s[0] = c;
-				float[] coords = getCharCoords(c);
-				canvas.drawText( s, 0, 1, 
-						coords[0] + PAD_X, // add X padding
-						coords[1] + texCellHeight-1 - fontDescent - PAD_Y, // use fontDescent from baseline
-						paint );
-			}
-			
-			// transform the generated bitmap in a texture
-			textureId = TextureLoader.loadTexture(bitmap);
-			if (textureId == 0)
+		}
+		
+		/**
+		 * Transforms the distance field atlas into a (single channel) texture.
+		 * 
+		 * <p>The atlas is kept, so the texture can be uploaded again (e.g. into a new context).</p>
+		 * 
+		 * <p>Must be called from the OpenGL thread!</p>
+		 */
+		public void uploadTexture() {
+			int[] textures = { 0 };
+			GLES20.glGenTextures(1, textures, 0);
+			if (textures[0] == 0)
 				throw new RuntimeException("Unable to allocate texture for the font map!");
+			textureId = textures[0];
 			
-			// set texture properties
-			GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+			GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_ALPHA, atlas.getWidth(), 
+					atlas.getHeight(), 0, GLES20.GL_ALPHA, GLES20.GL_UNSIGNED_BYTE, 
+					BufferUtils.asBuffer(atlas.getPixels()));
+			GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 4);
 			
-			bitmap.recycle(); // free bitmap memory
+			// set texture properties (the field is interpolated, no mipmaps are needed)
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 		}
-
+		
 		/**
-		 * Destroys all allocated resources (textures) used by this font.
+		 * Frees the font's texture (the atlas is kept).
 		 */
-		public void destroy() {
-			TextureLoader.unloadTexture(textureId);
+		public void destroyTexture() {
+			if (textureId != 0) {
+				GLES20.glDeleteTextures(1, new int[] { textureId }, 0);
+				textureId = 0;
+			}
 		}
 		
 		/**
-		 * Getter for the allocated texture size.
+		 * Returns the memory used by the font's atlas.
 		 * 
-		 * @return The texture size that needs to be allocated.
+		 * @return The size, in bytes (one byte per pixel).
 		 */
-		public int getTextureSize() {
-			return textureSize;
+		public long getDataSize() {
+			return atlas.getPixels().length;
 		}
 		
 		/**
@@ -256,21 +197,12 @@ public class DrawText {
 		}
 		
 		/**
-		 * Returns the texture start coodinates of a specific character.
+		 * Returns the font's distance field atlas.
 		 * 
-		 * @param c The character to retrieve the texture coordinates for.
-		 * @return The 2D texture coordinates as an [x, y] float array.
+		 * @return The atlas (with the font's metrics).
 		 */
-		public float[] getCharCoords(char c) {
-			char idx = (char)(c - CHAR_START);
-			if (idx < 0 || idx >= charWidths.length) {
-				idx = 0;
-			}
-			
-			int i = (int)Math.floor(idx / texCols); // the line that contains the cell
-			int j = idx - texCols * i; // the column that contains the cell
-			
-			return new float[] { j * texCellWidth, i * texCellHeight };
+		public FontAtlas getAtlas() {
+			return atlas;
 		}
 		
 		/**
@@ -280,11 +212,7 @@ public class DrawText {
 		 * @return The character's width.
 		 */
 		public float getCharWidth(char c) {
-			char idx = (char)(c - CHAR_START);
-			if (idx < 0 || idx >= charWidths.length) {
-				idx = 0;
-			}
-			return charWidths[idx];
+			return atlas.getAdvance(c);
 		}
 	}
 	
@@ -295,11 +223,9 @@ public class DrawText {
 	protected Scene3D scene;
 	
 	/**
-	 * The compiled (with textures generated) fonts cache.
-	 * 
-	 * <p>The key has the form "{fontFile}_{size}".</p> 
+	 * The handles of the fonts used by this instance, indexed by their asset path.
 	 */
-	protected Map<String, GLFont> fontCache;
+	protected Map<String, AssetHandle<GLFont>> fontCache;
 	
 	/**
 	 * The current font to use for rendering text.
@@ -314,19 +240,15 @@ public class DrawText {
 	protected float[] workModelMatrix = new float[16];
 	
 	/**
-	 * The work vertex buffer used to draw text.
+	 * The work array the vertices are built into (see {@link #VERTEX_SIZE}).
 	 */
-	protected FloatBuffer workVertexBuf;
+	protected float[] workVertices;
 	
 	/**
-	 * The indices buffer used for drawing.
+	 * The work vertex buffer used to draw text (or to upload it into a {@link TextMesh}).
 	 */
-	protected ShortBuffer workIndexBuf;
+	protected FloatBuffer workVertexBuf;
 	
-	/**
-	 * A temporary texture coordinates buffer used to map texture to the vertices.
-	 */
-	protected FloatBuffer workTextureCoordsBuf;
 	
 	/**
 	 * The current font color.
@@ -360,10 +282,6 @@ public class DrawText {
 	 * @param scene The parent scene that provides drawing services.
 	 */
 	public DrawText(Scene3D scene) {
-		final int NUM_VERTEX_COORDINATES = 3; // use 3D coordinates
-		final int NUM_VERTICES_CHAR = 4; // unique vertices per character
-		final int NUM_TRIANGLES_CHAR = 2; // triangles per character
-		
 		this.scene = scene;
 		this.fontCache = new HashMap<>();
 		Matrix.setIdentityM(workModelMatrix, 0);
@@ -371,15 +289,9 @@ public class DrawText {
 		currentColor = new float[4];
 		startPosition = new Point3D();
 		
-		// allocate the internal buffers
-		// we have 4 unique vertices for each character
-		workVertexBuf = BufferUtils.allocateFloatBuffer(DRAW_BUFFERS_LENGTH * 
-				NUM_VERTEX_COORDINATES * NUM_VERTICES_CHAR);
-		workTextureCoordsBuf = BufferUtils.allocateFloatBuffer(DRAW_BUFFERS_LENGTH *
-				NUM_VERTEX_COORDINATES * NUM_VERTICES_CHAR);
-		// that form a quad
-		workIndexBuf = BufferUtils.allocateShortBuffer(DRAW_BUFFERS_LENGTH *
-				NUM_TRIANGLES_CHAR * 3); /* each triangle has 3 vertices */
+		// allocate the internal buffers (they grow when needed)
+		workVertices = new float[DRAW_BUFFERS_LENGTH * CHAR_VERTICES * VERTEX_SIZE];
+		workVertexBuf = BufferUtils.allocateFloatBuffer(workVertices.length);
 		
 		currentFont = null;
 		reset();
@@ -389,32 +301,35 @@ public class DrawText {
 	 * Destroys the instance, freeing all allocated resources (i.e. textures).
 	 */
 	public void destroy() {
-		for (Map.Entry<String, GLFont> fontEntry: fontCache.entrySet()) {
-			fontEntry.getValue().destroy();
+		for (AssetHandle<GLFont> fontHandle: fontCache.values()) {
+			fontHandle.release();
 		}
 		fontCache.clear();
+		currentFont = null;
 	}
 	
 	/**
 	 * Changes the current font to the specified one.
 	 * 
-	 * <p>Beware that if the specified font and size combination was never used before, a new texture 
-	 * needs to be generated (which can take some time). Make sure to call this at least once during 
+	 * <p>The size of the drawn text is given by the scale (see {@link #setScale(float)}), the 
+	 * same font map being used for all sizes. Beware that if the specified font was never loaded 
+	 * before, its map needs to be read and uploaded. Make sure to call this at least once during 
 	 * the init process of the view that uses it.</p>
 	 * 
 	 * @param fontFile The path to the font asset.
-	 * @param size Font size to use.
 	 */
-	public void useFont(String fontFile, int size) {
-		String key = fontFile + "_" + size;
-		if (fontCache.containsKey(key)) {
-			currentFont = fontCache.get(key);
-			
+	public void useFont(String fontFile) {
+		AssetHandle<GLFont> fontHandle = fontCache.get(fontFile);
+		if (fontHandle == null) {
+			fontHandle = GLAssetManager.getInstance().acquireFont(fontFile);
+			fontCache.put(fontFile, fontHandle);
+		}
+		
+		if (fontHandle.isReady()) {
+			currentFont = fontHandle.get();
 		} else {
-			// we need to generate it
-			GLFont glFont = new GLFont(fontFile, size);
-			currentFont = glFont;
-			fontCache.put(key, glFont);
+			// we need to wait for it to be generated
+			currentFont = GLAssetManager.getInstance().finishLoading(fontHandle);
 		}
 	}
 	
@@ -436,10 +351,10 @@ public class DrawText {
 	public void setSpaceX(float spaceX) {
 		this.spaceX = spaceX;
 	}
-
+	
 	/**
 	 * Sets the starting position of the text.
-	 *
+	 * 
 	 * @param position The new position to set.
 	 */
 	@SuppressWarnings("unused")
@@ -460,6 +375,8 @@ public class DrawText {
 	
 	/**
 	 * Sets the uniform scaling factor to use when drawing.
+	 * 
+	 * @param scale The height of a line of text (in object space).
 	 */
 	public void setScale(float scale) {
 		this.scale = scale;
@@ -497,16 +414,77 @@ public class DrawText {
 	 * <p>Note that the text will be rendered with the current font.
 	 * If no font was specified, a runtime exception will be thrown.</p>
 	 * 
+	 * <p>The text's geometry is rebuilt on each call; use a {@link TextMesh} (see 
+	 * {@link #drawText(TextMesh)}) for the texts that are drawn on each frame.</p>
+	 * 
 	 * @param text The text to draw.
 	 */
 	public void drawText(String text) {
-		float curX; // current X position to draw the character
-		final float curY = 0; // doesn't change
+		if (currentFont == null)
+			throw new IllegalStateException("No font selected!");
 		
+		int vertexCount = buildVertices(text);
+		if (vertexCount == 0)
+			return;
+		
+		SpriteBatch batch = scene.getSpriteBatch();
+		if (batch != null) {
+			batchVertices(batch, workVertices, vertexCount);
+		} else {
+			drawVertices(0, vertexCount);
+		}
+	}
+	
+	/**
+	 * Draws a retained text mesh to the screen.
+	 * 
+	 * <p>The mesh is drawn using the current draw properties (font, color, position etc.). Its 
+	 * geometry is only rebuilt if its text, the font, the spacing or the alignment changed since 
+	 * it was last drawn (or if its buffer was lost along with the OpenGL context).</p>
+	 * 
+	 * @param mesh The text mesh to draw.
+	 */
+	public void drawText(TextMesh mesh) {
 		if (currentFont == null)
 			throw new IllegalStateException("No font selected!");
 		
+		if (mesh.needsUpdate(currentFont, spaceX, alignment)) {
+			int vertexCount = buildVertices(mesh.getText());
+			mesh.update(currentFont, spaceX, alignment, workVertices, vertexCount);
+		}
+		if (mesh.getVertexCount() == 0)
+			return;
+		
+		SpriteBatch batch = scene.getSpriteBatch();
+		if (batch != null) {
+			batchVertices(batch, mesh.getVertices(), mesh.getVertexCount());
+			return;
+		}
+		
+		if (mesh.needsUpload()) {
+			ensureCapacity(mesh.getVertexCount() / CHAR_VERTICES);
+			mesh.upload(workVertexBuf);
+		}
+		drawVertices(mesh.getVBO(), mesh.getVertexCount());
+	}
+	
+	/**
+	 * Builds the vertices of a text (using the current font, spacing and alignment) into the work 
+	 * vertex array (and buffer).
+	 * 
+	 * <p>Each character is drawn as two triangles covering its atlas cell (the line's height and 
+	 * the character's advance, extended by the field's spread); the vertices contain the 2D 
+	 * position (in font pixels, relative to the start position) and the texture coordinates.</p>
+	 * 
+	 * @param text The text to build the vertices for.
+	 * @return The number of vertices built.
+	 */
+	protected int buildVertices(CharSequence text) {
+		final int length = text.length();
+		ensureCapacity(length);
+		
 		// set starting X position
+		float curX; // current X position to draw the character
 		final float drawWidth = calculateDrawWidth(text);
 		switch (alignment) {
 			case ALIGN_CENTER:
@@ -518,111 +496,147 @@ public class DrawText {
 				curX = 0;
 		}
 		
-		// split the text into chunks for max DRAW_BUFFERS_LENGTH characters
-		int charsLeft = text.length();
-		int curCharPosition = 0;
-		while (charsLeft > 0) {
-			int chunkLength = charsLeft;
-			if (charsLeft > DRAW_BUFFERS_LENGTH)
-				chunkLength = DRAW_BUFFERS_LENGTH;
-			short vi = 0;
-			
-			// fill out the vertex/index/texture coordinate buffers
-			for (short i=0; i<chunkLength; i++) {
-				final char c = text.charAt(curCharPosition);
-				final float width = currentFont.getCharWidth(c) + 2*PAD_X;
-				final float height = currentFont.maxHeight + 2*PAD_Y;
-				
-				final float textureSize = (float)currentFont.getTextureSize();
-				final float[] texCoords = currentFont.getCharCoords(c);
-				texCoords[0] /= textureSize;
-				texCoords[1] /= textureSize;
-				final float texWidth = width / textureSize;
-				final float texHeight = height / textureSize;
-				
-				// compute the vertices of the character's quad
-				workVertexBuf.put(new float[]{
-						// top-left vertex:
-						curX, curY + height, 0,
-						// bottom-left vertex:
-						curX, curY, 0,
-						// bottom-right vertex:
-						curX + width, curY, 0,
-						// top-right vertex:
-						curX + width, curY + height, 0,
-				});
-				// put the vertices' indexes
-				workIndexBuf.put(new short[]{
-						// 2 triangles that form a quad
-						vi, (short) (vi+1), (short) (vi+2), 
-						vi, (short) (vi+2), (short) (vi+3)
-				});
-				// now fill in the texture coordinates for the current char
-				workTextureCoordsBuf.put(new float[]{
-						// top-left vertex:
-						texCoords[0], texCoords[1],
-						// bottom-left vertex:
-						texCoords[0], texCoords[1] + texHeight,
-						// bottom-right vertex:
-						texCoords[0] + texWidth, texCoords[1] + texHeight,
-						// top-right vertex:
-						texCoords[0] + texWidth, texCoords[1],
-				});
-				
-				// advance the iterators
-				vi += 4; // 4 vertices per iteration
-				curX += width + spaceX;
-				curCharPosition++;
-				charsLeft--;
-			}
-			
-			// draw the buffers
-			workVertexBuf.flip();
-			workIndexBuf.flip();
-			workTextureCoordsBuf.flip();
-			
-			final Shader shader = scene.getShaderManager().getShader("draw_text");
-			shader.use();
-			
-			Matrix.setIdentityM(workModelMatrix, 0);
-			Matrix.translateM(workModelMatrix, 0,
-					startPosition.getX(), startPosition.getY(), startPosition.getZ());
-			Matrix.scaleM(workModelMatrix, 0, getModelScale(), getModelScale(), 1);
-			
-			// get shader attributes' locations
-			int a_position = shader.getAttribLocation("a_position");
-			int a_textureCoords = shader.getAttribLocation("a_textureCoords");
-			
-			// get shader uniforms' locations
-			int u_texture = shader.getUniformLocation("u_texture");
-			int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
-			int u_color = shader.getUniformLocation("u_color");
-			
-			// send the matrices
-			GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, workModelMatrix, 0);
-			
-			// send the vertex data to the shader
-			GLES20.glEnableVertexAttribArray(a_position);
-			GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false, 0, workVertexBuf);
-			
-			// send texture and color data (use the first texture unit)
-			GLES20.glUniform4fv(u_color, 1, currentColor, 0);
-			GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, currentFont.getTextureId());
-			GLES20.glUniform1i(u_texture, 0);
+		final FontAtlas atlas = currentFont.getAtlas();
+		final float spread = atlas.getSpread();
+		final float y0 = -spread, y1 = atlas.getLineHeight() + spread;
+		final float atlasWidth = atlas.getWidth(), atlasHeight = atlas.getHeight();
+		final float texHeight = atlas.getCellHeight() / atlasHeight;
+		final float[] v = workVertices;
+		int k = 0;
+		
+		for (int i=0; i<length; i++) {
+			final char c = text.charAt(i);
+			final int cellWidth = atlas.getCellWidth(c);
 			
-			// send the texture coords
-			GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 0, workTextureCoordsBuf);
-			GLES20.glEnableVertexAttribArray(a_textureCoords);
+			final float s0 = atlas.getCellX(c) / atlasWidth;
+			final float t0 = atlas.getCellY(c) / atlasHeight;
+			final float s1 = s0 + cellWidth / atlasWidth;
+			final float t1 = t0 + texHeight;
+			final float x0 = curX + PAD_X - spread;
+			final float x1 = x0 + cellWidth;
 			
-			// draw!
-			GLES20.glDrawElements(GLES20.GL_TRIANGLES, chunkLength * 6, GLES20.GL_UNSIGNED_SHORT, workIndexBuf);
+			// first triangle: top-left, bottom-left, bottom-right
+			v[k++] = x0; v[k++] = y1; v[k++] = s0; v[k++] = t0;
+			v[k++] = x0; v[k++] = y0; v[k++] = s0; v[k++] = t1;
+			v[k++] = x1; v[k++] = y0; v[k++] = s1; v[k++] = t1;
+			// second triangle: top-left, bottom-right, top-right
+			v[k++] = x0; v[k++] = y1; v[k++] = s0; v[k++] = t0;
+			v[k++] = x1; v[k++] = y0; v[k++] = s1; v[k++] = t1;
+			v[k++] = x1; v[k++] = y1; v[k++] = s1; v[k++] = t0;
 			
-			// clear the buffers
-			workVertexBuf.clear();
-			workIndexBuf.clear();
-			workTextureCoordsBuf.clear();
+			curX += atlas.getAdvance(c) + 2*PAD_X + spaceX;
+		}
+		
+		workVertexBuf.clear();
+		workVertexBuf.put(v, 0, k);
+		workVertexBuf.flip();
+		
+		return length * CHAR_VERTICES;
+	}
+	
+	/**
+	 * Grows the work buffers (if needed) to fit the vertices of the specified number of characters.
+	 * 
+	 * @param chars The number of characters.
+	 */
+	protected void ensureCapacity(int chars) {
+		int length = chars * CHAR_VERTICES * VERTEX_SIZE;
+		if (workVertices.length >= length)
+			return;
+		
+		int newLength = workVertices.length;
+		while (newLength < length) {
+			newLength *= 2;
+		}
+		workVertices = new float[newLength];
+		workVertexBuf = BufferUtils.allocateFloatBuffer(newLength);
+	}
+	
+	/**
+	 * Queues text vertices into a sprite batch, using the current draw properties.
+	 * 
+	 * <p>The position and scale are applied here (the batch's quads are already in the scene's 
+	 * space); each character's two triangles become a single quad.</p>
+	 * 
+	 * @param batch The sprite batch to queue the glyphs into.
+	 * @param vertices The vertex data (see {@link #VERTEX_SIZE}).
+	 * @param vertexCount The number of vertices.
+	 */
+	protected void batchVertices(SpriteBatch batch, float[] vertices, int vertexCount) {
+		final float modelScale = getModelScale();
+		final float x = startPosition.getX(), y = startPosition.getY(), z = startPosition.getZ();
+		final float smoothing = calculateSmoothing();
+		final int texture = currentFont.getTextureId();
+		
+		for (int k = 0; k < vertexCount * VERTEX_SIZE; k += CHAR_VERTICES * VERTEX_SIZE) {
+			// the top-left and the bottom-right vertices are the first and the third ones
+			final int br = k + 2 * VERTEX_SIZE;
+			batch.drawGlyph(texture, 
+					x + vertices[k] * modelScale, y + vertices[br + 1] * modelScale, 
+					x + vertices[br] * modelScale, y + vertices[k + 1] * modelScale, z, 
+					vertices[k + 2], vertices[k + 3], vertices[br + 2], vertices[br + 3], 
+					currentColor, smoothing);
+		}
+	}
+	
+	/**
+	 * Draws text vertices using the current draw properties, with a single draw call.
+	 * 
+	 * @param vbo The vertex buffer object to draw from, or 0 to use the work vertex buffer.
+	 * @param vertexCount The number of vertices to draw.
+	 */
+	protected void drawVertices(int vbo, int vertexCount) {
+		final Shader shader = scene.getShaderManager().getShader("draw_text");
+		shader.use();
+		
+		Matrix.setIdentityM(workModelMatrix, 0);
+		Matrix.translateM(workModelMatrix, 0,
+				startPosition.getX(), startPosition.getY(), startPosition.getZ());
+		Matrix.scaleM(workModelMatrix, 0, getModelScale(), getModelScale(), 1);
+		
+		// get shader attributes' locations
+		int a_position = shader.getAttribLocation("a_position");
+		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
+		
+		// get shader uniforms' locations
+		int u_texture = shader.getUniformLocation("u_texture");
+		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
+		int u_color = shader.getUniformLocation("u_color");
+		int u_smoothing = shader.getUniformLocation("u_smoothing");
+		
+		// send the matrices
+		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, workModelMatrix, 0);
+		
+		// send texture and color data (use the first texture unit)
+		GLES20.glUniform4fv(u_color, 1, currentColor, 0);
+		GLES20.glUniform1f(u_smoothing, calculateSmoothing());
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, currentFont.getTextureId());
+		GLES20.glUniform1i(u_texture, 0);
+		
+		// send the vertex data (interleaved positions and texture coords) to the shader
+		if (vbo != 0) {
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+			GLES20.glVertexAttribPointer(a_position, 2 /* coords */, GLES20.GL_FLOAT, false, 
+					VERTEX_SIZE * 4, 0);
+			GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 
+					VERTEX_SIZE * 4, 2 * 4);
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		} else {
+			workVertexBuf.position(0);
+			GLES20.glVertexAttribPointer(a_position, 2 /* coords */, GLES20.GL_FLOAT, false, 
+					VERTEX_SIZE * 4, workVertexBuf);
+			workVertexBuf.position(2);
+			GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 
+					VERTEX_SIZE * 4, workVertexBuf);
+			workVertexBuf.position(0);
 		}
+		GLES20.glEnableVertexAttribArray(a_position);
+		GLES20.glEnableVertexAttribArray(a_textureCoords);
+		
+		// draw!
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
+		FrameProfiler.getInstance().countDraw(vertexCount / 3);
 	}
 	
 	/**
@@ -631,7 +645,7 @@ public class DrawText {
 	 * @param text The text to calculate dimension for.
 	 * @return Text's width when drawn.
 	 */
-	public float calculateDrawWidth(String text) {
+	public float calculateDrawWidth(CharSequence text) {
 		if (currentFont == null)
 			throw new IllegalStateException("No font selected!");
 		
@@ -646,7 +660,7 @@ public class DrawText {
 		
 		return width;
 	}
-
+	
 	/**
 	 * Returns the scale of the model transformation.
 	 * 
@@ -655,7 +669,27 @@ public class DrawText {
 	 * @return The model scale factor.
 	 */
 	public float getModelScale() {
-		return 1f / currentFont.maxHeight * scale;
+		return 1f / currentFont.getAtlas().getLineHeight() * scale;
+	}
+	
+	/**
+	 * Calculates the width of the outline's antialiasing, in distance field units.
+	 * 
+	 * <p>The outline is smoothed over a screen pixel (centered on it), so the screen size of an 
+	 * atlas pixel is estimated using the scene's (orthographic) projection.</p>
+	 * 
+	 * @return The smoothing width (for the draw_text shader).
+	 */
+	protected float calculateSmoothing() {
+		final Camera camera = scene.getCamera();
+		final float screenPixels = getModelScale() * camera.getProjectionMatrix()[5] * 
+				camera.getViewportHeight() / 2;
+		if (screenPixels <= 0)
+			return 0.5f;
+		
+		// the field maps [-spread, spread] atlas pixels to [0, 1]
+		final float smoothing = 0.25f / (screenPixels * currentFont.getAtlas().getSpread());
+		return Math.min(0.5f, smoothing);
 	}
 	
 	/**
@@ -666,25 +700,14 @@ public class DrawText {
 	@SuppressWarnings("unused")
 	public void drawTextureMap() {
 		
-		// create a rectangle from -1 to 1
+		// create a rectangle from -1 to 1 (two triangles, with the texture's coordinates)
 		final float[] debugVertexArray = {
-				-1f,  1f, 0, // top left
-				-1f, -1f, 0, // bottom left
-				1f, -1f, 0, // bottom right
-				1f,  1f, 0 // top right
-		};
-		
-		// quad's triangles
-		final short[] debugIndexArray = {
-				0, 1, 2, 0, 2, 3
-		};
-		
-		// texture's coordinates
-		final float[] debugTextureCoords = {
-				0f, 0f, // top left
-				0f, 1f, // bottom left
-				1f, 1f, // bottom right
-				1f, 0f  // top right
+				-1f,  1f, 0f, 0f, // top left
+				-1f, -1f, 0f, 1f, // bottom left
+				1f, -1f, 1f, 1f, // bottom right
+				-1f,  1f, 0f, 0f, // top left
+				1f, -1f, 1f, 1f, // bottom right
+				1f,  1f, 1f, 0f  // top right
 		};
 		
 		// the color to use for drawing.
@@ -692,13 +715,9 @@ public class DrawText {
 				1.0f, 0.1f, 0.1f, 1.0f
 		};
 		
+		workVertexBuf.clear();
 		workVertexBuf.put(debugVertexArray);
-		workIndexBuf.put(debugIndexArray);
-		workTextureCoordsBuf.put(debugTextureCoords);
-		
 		workVertexBuf.flip();
-		workIndexBuf.flip();
-		workTextureCoordsBuf.flip();
 		
 		final Shader shader = scene.getShaderManager().getShader("draw_text");
 		shader.use();
@@ -711,35 +730,34 @@ public class DrawText {
 		int u_texture = shader.getUniformLocation("u_texture");
 		int u_modelMatrix = shader.getUniformLocation("u_modelMatrix");
 		int u_color = shader.getUniformLocation("u_color");
+		int u_smoothing = shader.getUniformLocation("u_smoothing");
 		
 		// send the matrices
-		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, workModelMatrix, 0);
 		Matrix.setIdentityM(workModelMatrix, 0);
-		// Matrix.scaleM(workModelMatrix, 0, 1, 1, 1);
-		// Matrix.translateM(workModelMatrix, 0, 0, 0, 0);
+		GLES20.glUniformMatrix4fv(u_modelMatrix, 1, false, workModelMatrix, 0);
 		
 		// send the vertex data to the shader
 		GLES20.glEnableVertexAttribArray(a_position);
-		GLES20.glVertexAttribPointer(a_position, 3 /* coords */, GLES20.GL_FLOAT, false,
-				3 * 4 /* bytes */, workVertexBuf);
+		GLES20.glVertexAttribPointer(a_position, 2 /* coords */, GLES20.GL_FLOAT, false,
+				VERTEX_SIZE * 4 /* bytes */, workVertexBuf);
 		
 		// send texture and color data (use the first texture unit)
 		GLES20.glUniform4fv(u_color, 1, debugColor, 0);
+		GLES20.glUniform1f(u_smoothing, 0.5f);
 		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
 		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, currentFont.getTextureId());
 		GLES20.glUniform1i(u_texture, 0);
 		
 		// send the texture coords
-		workTextureCoordsBuf.position(0);
-		GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 0, workTextureCoordsBuf);
+		workVertexBuf.position(2);
+		GLES20.glVertexAttribPointer(a_textureCoords, 2 /* coords */, GLES20.GL_FLOAT, false, 
+				VERTEX_SIZE * 4 /* bytes */, workVertexBuf);
 		GLES20.glEnableVertexAttribArray(a_textureCoords);
 		
 		// draw!
-		GLES20.glDrawElements(GLES20.GL_TRIANGLES, debugIndexArray.length, GLES20.GL_UNSIGNED_SHORT, workIndexBuf);
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, debugVertexArray.length / VERTEX_SIZE);
 		
 		workVertexBuf.clear();
-		workIndexBuf.clear();
-		workTextureCoordsBuf.clear();
 	}
 	
 }
@@ -0,0 +1,239 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+/**
+ * Builds the frames' command buffers on a worker thread, one frame ahead of the OpenGL thread.
+ * 
+ * <p>Two buffers are used: while the OpenGL thread executes a frame's commands, the next frame is
+ * built into the other buffer by the pipeline's own thread (so it never waits behind the terrain
+ * jobs of the shared worker pool). The scene traversal and the matrix math thus overlap the
+ * previous frame's GL submission, and the frames are drawn from a snapshot taken one frame
+ * earlier.</p>
+ * 
+ * <p>All methods must be called from the OpenGL thread.</p>
+ */
+public class FramePipeline {
+	
+	/**
+	 * Fills the frames' command buffers.
+	 */
+	public static interface FrameBuilder {
+		
+		/**
+		 * Takes the snapshot of the state needed to build a frame (on the OpenGL thread).
+		 * 
+		 * <p>Should call {@link RenderCommandBuffer#begin}.</p>
+		 * 
+		 * @param buffer The buffer to prepare.
+		 */
+		public void prepareFrame(RenderCommandBuffer buffer);
+		
+		/**
+		 * Fills the buffer with the frame's commands (on a worker thread, concurrently with the
+		 * OpenGL thread).
+		 * 
+		 * <p>Must only read the snapshot stored in the buffer and the state that is safe to be
+		 * read concurrently (e.g. the game's models).</p>
+		 * 
+		 * @param buffer The buffer to fill.
+		 */
+		public void buildFrame(RenderCommandBuffer buffer);
+		
+	}
+	
+	
+	/**
+	 * The frame builder.
+	 */
+	protected final FrameBuilder builder;
+	
+	/**
+	 * The two command buffers.
+	 */
+	protected final RenderCommandBuffer[] buffers;
+	
+	/**
+	 * The index of the buffer being built (-1 if none).
+	 */
+	protected int building = -1;
+	
+	/**
+	 * Whether the worker finished building the buffer.
+	 * 
+	 * <p>Guarded by {@link #lock}.</p>
+	 */
+	protected boolean built = false;
+	
+	/**
+	 * The exception thrown by the last build (if any).
+	 * 
+	 * <p>Guarded by {@link #lock}.</p>
+	 */
+	protected RuntimeException failure = null;
+	
+	/**
+	 * The lock used for waiting the worker.
+	 */
+	protected final Object lock = new Object();
+	
+	/**
+	 * Whether a build was requested and not yet started by the worker.
+	 * 
+	 * <p>Guarded by {@link #lock}.</p>
+	 */
+	protected boolean requested = false;
+	
+	/**
+	 * The worker thread (started on demand).
+	 */
+	protected Thread worker = null;
+	
+	
+	/**
+	 * Creates the frame pipeline.
+	 * 
+	 * @param builder The frame builder.
+	 */
+	public FramePipeline(FrameBuilder builder) {
+		this.builder = builder;
+		this.buffers = new RenderCommandBuffer[] { new RenderCommandBuffer(), new RenderCommandBuffer() };
+	}
+	
+	/**
+	 * Returns the buffer of the frame to draw and starts building the next one.
+	 * 
+	 * <p>Waits for the frame built in background; if there is none (the first frame, or after
+	 * {@link #reset()}), it is built synchronously.</p>
+	 * 
+	 * @return The command buffer to execute (valid until the next call).
+	 */
+	public RenderCommandBuffer nextFrame() {
+		int ready;
+		if (building < 0) {
+			ready = 0;
+			builder.prepareFrame(buffers[ready]);
+			builder.buildFrame(buffers[ready]);
+			
+		} else {
+			ready = building;
+			waitBuild();
+		}
+		
+		// build the next frame while this one is drawn
+		building = 1 - ready;
+		builder.prepareFrame(buffers[building]);
+		if (worker == null)
+			startWorker();
+		synchronized (lock) {
+			built = false;
+			requested = true;
+			lock.notifyAll();
+		}
+		
+		return buffers[ready];
+	}
+	
+	/**
+	 * Waits for the frame being built (if any) and discards it.
+	 * 
+	 * <p>Must be called before the objects referenced by the snapshots are destroyed.</p>
+	 */
+	public void reset() {
+		if (building >= 0) {
+			try {
+				waitBuild();
+			} catch (RuntimeException e) {
+				// discarded anyway
+			}
+			building = -1;
+		}
+		buffers[0].clear();
+		buffers[1].clear();
+	}
+	
+	/**
+	 * Discards the pending frame and stops the worker thread (restarted if the pipeline is used
+	 * again).
+	 */
+	public void destroy() {
+		reset();
+		if (worker != null) {
+			worker.interrupt();
+			worker = null;
+		}
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Starts the worker thread, which builds the requested frames until interrupted.
+	 */
+	protected void startWorker() {
+		worker = new Thread("FramePipeline") {
+			@Override
+			public void run() {
+				while (!isInterrupted()) {
+					int target;
+					synchronized (lock) {
+						while (!requested) {
+							try {
+								lock.wait();
+							} catch (InterruptedException e) {
+								return;
+							}
+						}
+						requested = false;
+						target = building;
+					}
+					
+					RuntimeException exception = null;
+					try {
+						builder.buildFrame(buffers[target]);
+						
+					} catch (RuntimeException e) {
+						exception = e;
+					}
+					
+					synchronized (lock) {
+						failure = exception;
+						built = true;
+						lock.notifyAll();
+					}
+				}
+			}
+		};
+		worker.setDaemon(true);
+		worker.start();
+	}
+	
+	/**
+	 * Waits for the worker to finish building the current buffer.
+	 * 
+	 * @throws RuntimeException The exception thrown by the build (if any).
+	 */
+	protected void waitBuild() {
+		boolean interrupted = false;
+		synchronized (lock) {
+			while (!built) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		RuntimeException e;
+		synchronized (lock) {
+			e = failure;
+			failure = null;
+		}
+		if (e != null) {
+			building = -1;
+			throw e;
+		}
+	}
+	
+}
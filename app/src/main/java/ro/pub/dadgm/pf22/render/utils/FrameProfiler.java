@@ -0,0 +1,380 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import java.util.Arrays;
+
+/**
+ * Records where the CPU time of the recent frames goes.
+ * 
+ * <p>Each frame is split into phases (see the PHASE_* constants): the renderer starts a frame
+ * (see {@link #beginFrame()}), then the code marks the end of each phase (see
+ * {@link #mark(int)}) and the draw calls it issues (see {@link #countDraw(int)}). The last
+ * {@link #CAPACITY} frames are kept in a ring buffer, from which the percentiles of each phase's
+ * duration and the number of janky frames are computed on demand (see
+ * {@link #computeStats()}).</p>
+ * 
+ * <p>The swap phase of a frame is the time between the end of the previous frame and its start
+ * (the buffers' swap, including the wait for the display).</p>
+ * 
+ * <p>Nothing is allocated while recording (or computing the stats), so the profiler doesn't
+ * perturb the frames it measures. Not thread safe: it must only be used from the OpenGL
+ * thread.</p>
+ */
+public class FrameProfiler {
+	
+	/**
+	 * The phase spent swapping the buffers (between two frames).
+	 */
+	public static final int PHASE_SWAP = 0;
+	
+	/**
+	 * The phase spent uploading the assets loaded in background.
+	 */
+	public static final int PHASE_UPLOAD = 1;
+	
+	/**
+	 * The phase spent waiting for the frame's commands (built in background).
+	 */
+	public static final int PHASE_BUILD = 2;
+	
+	/**
+	 * The phase spent updating the camera (applying the frame's view).
+	 */
+	public static final int PHASE_CAMERA = 3;
+	
+	/**
+	 * The phase spent drawing the 3D objects.
+	 */
+	public static final int PHASE_SCENE = 4;
+	
+	/**
+	 * The phase spent updating and drawing the HUD.
+	 */
+	public static final int PHASE_HUD = 5;
+	
+	/**
+	 * The number of phases.
+	 */
+	public static final int PHASE_COUNT = 6;
+	
+	/**
+	 * The phases' names (for displaying them).
+	 */
+	public static final String[] PHASE_NAMES = { "swap", "upload", "build", "camera", "scene", "hud" };
+	
+	/**
+	 * The series of the frames' work time (the sum of all phases but the swap; see
+	 * {@link #getPercentile}).
+	 */
+	public static final int SERIES_WORK = PHASE_COUNT;
+	
+	/**
+	 * The series of the intervals between the frames' starts (see {@link #getPercentile}).
+	 */
+	public static final int SERIES_INTERVAL = PHASE_COUNT + 1;
+	
+	/**
+	 * The 50th percentile (the median; see {@link #getPercentile}).
+	 */
+	public static final int P50 = 0;
+	
+	/**
+	 * The 95th percentile (see {@link #getPercentile}).
+	 */
+	public static final int P95 = 1;
+	
+	/**
+	 * The 99th percentile (see {@link #getPercentile}).
+	 */
+	public static final int P99 = 2;
+	
+	/**
+	 * The number of recent frames kept.
+	 */
+	public static final int CAPACITY = 128;
+	
+	/**
+	 * A frame is janky if its interval is longer than this many times the median interval (i.e.
+	 * it missed at least one refresh of the display).
+	 */
+	public static final float JANK_FACTOR = 1.5f;
+	
+	/**
+	 * The computed percentiles.
+	 */
+	protected static final float[] PERCENTILES = { 0.5f, 0.95f, 0.99f };
+	
+	/**
+	 * The number of series (the phases, the work time and the interval).
+	 */
+	protected static final int SERIES_COUNT = PHASE_COUNT + 2;
+	
+	/**
+	 * The singleton instance.
+	 */
+	protected static final FrameProfiler instance = new FrameProfiler();
+	
+	
+	/**
+	 * The recorded times of each series, for each frame of the ring buffer (milliseconds).
+	 */
+	protected final float[][] times = new float[SERIES_COUNT][CAPACITY];
+	
+	/**
+	 * The number of draw calls of each frame of the ring buffer.
+	 */
+	protected final int[] drawCalls = new int[CAPACITY];
+	
+	/**
+	 * The number of triangles drawn by each frame of the ring buffer.
+	 */
+	protected final int[] triangles = new int[CAPACITY];
+	
+	/**
+	 * The ring buffer's index of the current frame.
+	 */
+	protected int current = 0;
+	
+	/**
+	 * The number of recorded frames (at most {@link #CAPACITY}).
+	 */
+	protected int frameCount = 0;
+	
+	/**
+	 * Whether a frame is being recorded.
+	 */
+	protected boolean recording = false;
+	
+	/**
+	 * The start time of the current frame, the end of the previous one and the last mark
+	 * (nanoseconds, 0 if none).
+	 */
+	protected long frameStart = 0, frameEnd = 0, lastMark = 0;
+	
+	/**
+	 * The computed percentiles of each series (see {@link #computeStats()}).
+	 */
+	protected final float[][] stats = new float[SERIES_COUNT][PERCENTILES.length];
+	
+	/**
+	 * The number of janky frames (see {@link #computeStats()}).
+	 */
+	protected int jankCount = 0;
+	
+	/**
+	 * Work array, used for sorting a series.
+	 */
+	protected final float[] sorted = new float[CAPACITY];
+	
+	
+	/**
+	 * Creates a profiler (use {@link #getInstance()} instead).
+	 */
+	protected FrameProfiler() {
+	}
+	
+	/**
+	 * Returns the application-wide profiler instance.
+	 * 
+	 * @return The frame profiler.
+	 */
+	public static FrameProfiler getInstance() {
+		return instance;
+	}
+	
+	/**
+	 * Starts recording a new frame (and records the previous frame's swap).
+	 * 
+	 * <p>The first frame (after a reset) isn't recorded, since it has no interval.</p>
+	 */
+	public void beginFrame() {
+		long now = getTime();
+		if (frameStart == 0) {
+			frameStart = now;
+			return;
+		}
+		
+		current = (current + 1) % CAPACITY;
+		for (int s = 0; s < SERIES_COUNT; s++) {
+			times[s][current] = 0;
+		}
+		drawCalls[current] = 0;
+		triangles[current] = 0;
+		
+		times[PHASE_SWAP][current] = (now - frameEnd) / 1e6f;
+		times[SERIES_INTERVAL][current] = (now - frameStart) / 1e6f;
+		
+		frameStart = now;
+		lastMark = now;
+		recording = true;
+	}
+	
+	/**
+	 * Marks the end of a phase: the time since the previous mark (or the frame's start) is added
+	 * to it.
+	 * 
+	 * @param phase The phase that ended.
+	 */
+	public void mark(int phase) {
+		if (!recording)
+			return;
+		
+		long now = getTime();
+		float time = (now - lastMark) / 1e6f;
+		times[phase][current] += time;
+		if (phase != PHASE_SWAP)
+			times[SERIES_WORK][current] += time;
+		lastMark = now;
+	}
+	
+	/**
+	 * Counts a draw call of the current frame.
+	 * 
+	 * @param triangles The number of triangles drawn (0 for the other primitives).
+	 */
+	public void countDraw(int triangles) {
+		if (!recording)
+			return;
+		
+		drawCalls[current]++;
+		this.triangles[current] += triangles;
+	}
+	
+	/**
+	 * Ends the current frame.
+	 */
+	public void endFrame() {
+		frameEnd = getTime();
+		if (!recording)
+			return;
+		
+		frameCount = Math.min(frameCount + 1, CAPACITY);
+		recording = false;
+	}
+	
+	/**
+	 * Forgets the recorded frames (e.g. when the frames are no longer drawn continuously, so their
+	 * intervals are meaningless).
+	 */
+	public void reset() {
+		frameCount = 0;
+		frameStart = 0;
+		frameEnd = 0;
+		recording = false;
+		jankCount = 0;
+		for (float[] percentiles: stats) {
+			Arrays.fill(percentiles, 0);
+		}
+	}
+	
+	/**
+	 * Computes the percentiles of each series and the number of janky frames, over the recorded
+	 * frames.
+	 */
+	public void computeStats() {
+		// (the frame being recorded is skipped)
+		int count = Math.min(frameCount, recording ? CAPACITY - 1 : CAPACITY);
+		if (count == 0)
+			return;
+		
+		for (int s = 0; s < SERIES_COUNT; s++) {
+			copyRecent(times[s], count);
+			Arrays.sort(sorted, 0, count);
+			for (int p = 0; p < PERCENTILES.length; p++) {
+				stats[s][p] = sorted[Math.min(count - 1, (int)(PERCENTILES[p] * count))];
+			}
+		}
+		
+		float jankThreshold = stats[SERIES_INTERVAL][P50] * JANK_FACTOR;
+		jankCount = 0;
+		copyRecent(times[SERIES_INTERVAL], count);
+		for (int i = 0; i < count; i++) {
+			if (sorted[i] > jankThreshold)
+				jankCount++;
+		}
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Returns the current time.
+	 * 
+	 * @return The time (nanoseconds, from an arbitrary origin).
+	 */
+	protected long getTime() {
+		return System.nanoTime();
+	}
+	
+	/**
+	 * Copies the values of the most recent frames into the work array.
+	 * 
+	 * @param series The series' ring buffer.
+	 * @param count The number of frames to copy.
+	 */
+	protected void copyRecent(float[] series, int count) {
+		int last = getLastFrame();
+		for (int i = 0; i < count; i++) {
+			sorted[i] = series[(last - i + CAPACITY) % CAPACITY];
+		}
+	}
+	
+	/**
+	 * Returns the ring buffer's index of the last recorded (ended) frame.
+	 * 
+	 * @return The frame's index.
+	 */
+	protected int getLastFrame() {
+		return (recording ? (current - 1 + CAPACITY) % CAPACITY : current);
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns a percentile of a series, as of the last {@link #computeStats()} call.
+	 * 
+	 * @param series The series (a phase, {@link #SERIES_WORK} or {@link #SERIES_INTERVAL}).
+	 * @param percentile The percentile ({@link #P50}, {@link #P95} or {@link #P99}).
+	 * @return The percentile's value (milliseconds).
+	 */
+	public float getPercentile(int series, int percentile) {
+		return stats[series][percentile];
+	}
+	
+	/**
+	 * Returns the number of janky frames, as of the last {@link #computeStats()} call.
+	 * 
+	 * @return The number of frames that took too long (see {@link #JANK_FACTOR}).
+	 */
+	public int getJankCount() {
+		return jankCount;
+	}
+	
+	/**
+	 * Returns the number of recorded frames.
+	 * 
+	 * @return The number of frames (at most {@link #CAPACITY}).
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+	
+	/**
+	 * Returns the number of draw calls of the last recorded frame.
+	 * 
+	 * @return The number of draw calls.
+	 */
+	public int getDrawCalls() {
+		return drawCalls[getLastFrame()];
+	}
+	
+	/**
+	 * Returns the number of triangles drawn by the last recorded frame.
+	 * 
+	 * @return The number of triangles.
+	 */
+	public int getTriangles() {
+		return triangles[getLastFrame()];
+	}
+	
+}
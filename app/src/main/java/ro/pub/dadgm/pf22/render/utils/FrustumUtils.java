@@ -0,0 +1,89 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+/**
+ * Utility class for view frustum culling.
+ * 
+ * <p>The frustum is stored as 6 planes (left, right, bottom, top, near, far), each as 4 floats
+ * (a, b, c, d) with the normal pointing inside the frustum (a point is inside if
+ * <code>a*x + b*y + c*z + d &gt;= 0</code> for all planes).</p>
+ */
+public class FrustumUtils {
+	
+	/**
+	 * The number of floats needed to store the frustum planes.
+	 */
+	public static final int PLANES_SIZE = 6 * 4;
+	
+	
+	/**
+	 * Extracts the frustum planes from a (column-major) view-projection matrix.
+	 * 
+	 * <p>Uses the Gribb / Hartmann method: the planes are sums / differences of the matrix rows.
+	 * If the matrix is only a projection matrix, the planes are in view space; if it is the
+	 * projection * view matrix, they are in world space.</p>
+	 * 
+	 * @param planes The array to store the planes into (of at least {@link #PLANES_SIZE}).
+	 * @param matrix The view-projection matrix.
+	 */
+	public static void extractPlanes(float[] planes, float[] matrix) {
+		for (int p = 0; p < 6; p++) {
+			int row = p / 2; // left/right: X, bottom/top: Y, near/far: Z
+			float sign = ((p & 1) == 0 ? 1 : -1);
+			
+			for (int k = 0; k < 4; k++) {
+				planes[4*p + k] = matrix[4*k + 3] + sign * matrix[4*k + row];
+			}
+			
+			// normalize the plane
+			float length = (float)Math.sqrt(planes[4*p] * planes[4*p] +
+					planes[4*p + 1] * planes[4*p + 1] + planes[4*p + 2] * planes[4*p + 2]);
+			if (length > 0) {
+				for (int k = 0; k < 4; k++) {
+					planes[4*p + k] /= length;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether an axis-aligned box intersects the frustum.
+	 * 
+	 * <p>The test is conservative: some boxes near the frustum's corners are reported as
+	 * visible even if they are not.</p>
+	 * 
+	 * @param planes The frustum planes.
+	 * @param bounds The box's bounds (minX, minY, minZ, maxX, maxY, maxZ).
+	 * @return True if the box is (potentially) visible.
+	 */
+	public static boolean intersectsBox(float[] planes, float[] bounds) {
+		for (int p = 0; p < 6; p++) {
+			float a = planes[4*p], b = planes[4*p + 1], c = planes[4*p + 2], d = planes[4*p + 3];
+			
+			// the box's corner that is the farthest along the plane's normal
+			float x = (a >= 0 ? bounds[3] : bounds[0]);
+			float y = (b >= 0 ? bounds[4] : bounds[1]);
+			float z = (c >= 0 ? bounds[5] : bounds[2]);
+			
+			if (a * x + b * y + c * z + d < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Computes the distance from a point to an axis-aligned box.
+	 * 
+	 * @param bounds The box's bounds (minX, minY, minZ, maxX, maxY, maxZ).
+	 * @param point The point (x, y, z).
+	 * @return The distance (0 if the point is inside the box).
+	 */
+	public static float distanceToBox(float[] bounds, float[] point) {
+		float sum = 0;
+		for (int k = 0; k < 3; k++) {
+			float delta = Math.max(Math.max(bounds[k] - point[k], point[k] - bounds[k + 3]), 0);
+			sum += delta * delta;
+		}
+		return (float)Math.sqrt(sum);
+	}
+	
+}
@@ -0,0 +1,385 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import java.util.Arrays;
+
+import ro.pub.dadgm.pf22.game.models.HeightQuadtree;
+
+/**
+ * A low resolution depth buffer, rasterized in software from the terrain, used for culling the
+ * objects that are hidden behind it.
+ * 
+ * <p>On each frame, the buffer is cleared (see {@link #begin}) and the terrain's height quadtrees
+ * are rasterized into it (see {@link #addOccluders}): each selected cell is drawn as the box below
+ * its minimum height (its top and the sides that face the camera). The box lies inside the solid
+ * ground (below the terrain's surface), so anything behind it is hidden. The cells are refined
+ * near the camera (where the minimum heights must follow the terrain closely) and kept coarse in
+ * the distance.</p>
+ * 
+ * <p>The occluders are rasterized using the pixel centers (so the adjacent faces leave no gaps
+ * between them) and each covered pixel stores the farthest depth of the occluder's plane over the
+ * pixel. The test is kept conservative by growing the objects' footprints by a pixel (an occluder
+ * overreaches its edges by at most half a pixel): an object is only reported as occluded if its
+ * nearest depth is behind the stored depth on every pixel of its grown footprint. The occluders
+ * that cross the near plane are skipped.</p>
+ * 
+ * <p>The depths are the normalized device Z coordinates, which are affine in screen space for
+ * planar polygons (so the occluders' depths are interpolated exactly).</p>
+ */
+public class OcclusionBuffer {
+	
+	/**
+	 * The buffer's width (in pixels).
+	 */
+	public static final int WIDTH = 64;
+	
+	/**
+	 * The buffer's height (in pixels).
+	 */
+	public static final int HEIGHT = 32;
+	
+	/**
+	 * The ratio between a cell's size and its distance to the camera above which the cell is
+	 * refined (into its children).
+	 */
+	public static final float OCCLUDER_DETAIL = 0.25f;
+	
+	/**
+	 * The maximum number of occluders rasterized on each frame.
+	 */
+	public static final int MAX_OCCLUDERS = 1024;
+	
+	/**
+	 * The buffer's depths (indexed by <code>y * WIDTH + x</code>).
+	 */
+	protected final float[] depth = new float[WIDTH * HEIGHT];
+	
+	/**
+	 * The view-projection matrix (column-major).
+	 */
+	protected final float[] matrix = new float[16];
+	
+	/**
+	 * The view frustum's planes.
+	 */
+	protected final float[] frustumPlanes = new float[FrustumUtils.PLANES_SIZE];
+	
+	/**
+	 * The camera's position.
+	 */
+	protected final float[] cameraPosition = new float[3];
+	
+	/**
+	 * Whether the occlusion test is enabled for the current frame.
+	 * 
+	 * <p>Disabled if the camera might be below the terrain's surface.</p>
+	 */
+	protected boolean enabled = false;
+	
+	/**
+	 * The number of occluders rasterized in the current frame.
+	 */
+	protected int occluderCount = 0;
+	
+	// work arrays
+	
+	/**
+	 * The bounds of a quadtree cell.
+	 */
+	protected final float[] cellBounds = new float[6];
+	
+	/**
+	 * The vertices (x, y, z) of an occluder's face.
+	 */
+	protected final float[] face = new float[4 * 3];
+	
+	/**
+	 * The projected vertices (screen X, screen Y, depth) of a polygon / box.
+	 */
+	protected final float[] projected = new float[8 * 3];
+	
+	
+	/**
+	 * Clears the buffer for a new frame.
+	 * 
+	 * @param viewProjection The camera's view-projection matrix (projection * view).
+	 * @param cameraPosition The camera's position (x, y, z).
+	 */
+	public void begin(float[] viewProjection, float[] cameraPosition) {
+		System.arraycopy(viewProjection, 0, matrix, 0, 16);
+		System.arraycopy(cameraPosition, 0, this.cameraPosition, 0, 3);
+		FrustumUtils.extractPlanes(frustumPlanes, matrix);
+		
+		Arrays.fill(depth, Float.MAX_VALUE);
+		occluderCount = 0;
+		enabled = true;
+	}
+	
+	/**
+	 * Rasterizes the occluders of a terrain region.
+	 * 
+	 * <p>If the camera is inside the region and possibly below its surface, the occlusion test
+	 * is disabled for the rest of the frame.</p>
+	 * 
+	 * @param tree The region's height quadtree.
+	 */
+	public void addOccluders(HeightQuadtree tree) {
+		if (!enabled)
+			return;
+		if (cameraPosition[2] <= tree.getMaxHeightAt(cameraPosition[0], cameraPosition[1])) {
+			enabled = false;
+			return;
+		}
+		
+		// the boxes extend down to the region's minimum height
+		int level = tree.getLevels() - 1;
+		float bottom = Float.MAX_VALUE;
+		for (int cx = 0; cx < tree.getCellsX(level); cx++) {
+			for (int cy = 0; cy < tree.getCellsY(level); cy++) {
+				bottom = Math.min(bottom, tree.getMinHeight(level, cx, cy));
+			}
+		}
+		
+		for (int cx = 0; cx < tree.getCellsX(level); cx++) {
+			for (int cy = 0; cy < tree.getCellsY(level); cy++) {
+				addCell(tree, level, cx, cy, bottom);
+			}
+		}
+	}
+	
+	/**
+	 * Rasterizes a quadtree cell, or its children if the cell is too large for its distance.
+	 * 
+	 * @param tree The quadtree.
+	 * @param level The cell's level.
+	 * @param cx The cell's X index.
+	 * @param cy The cell's Y index.
+	 * @param bottom The height of the boxes' bottom.
+	 */
+	protected void addCell(HeightQuadtree tree, int level, int cx, int cy, float bottom) {
+		if (occluderCount >= MAX_OCCLUDERS)
+			return;
+		
+		tree.getCellBounds(level, cx, cy, cellBounds);
+		if (!FrustumUtils.intersectsBox(frustumPlanes, cellBounds))
+			return;
+		
+		float size = Math.max(cellBounds[3] - cellBounds[0], cellBounds[4] - cellBounds[1]);
+		if (level > 0 && size > OCCLUDER_DETAIL * FrustumUtils.distanceToBox(cellBounds, cameraPosition)) {
+			for (int i = 2 * cx; i < Math.min(2 * cx + 2, tree.getCellsX(level - 1)); i++) {
+				for (int j = 2 * cy; j < Math.min(2 * cy + 2, tree.getCellsY(level - 1)); j++) {
+					addCell(tree, level - 1, i, j, bottom);
+				}
+			}
+			return;
+		}
+		
+		float x0 = cellBounds[0], y0 = cellBounds[1], x1 = cellBounds[3], y1 = cellBounds[4];
+		float top = cellBounds[2];
+		boolean drawn = false;
+		
+		// the top (if seen from above) and the sides that face the camera
+		if (cameraPosition[2] > top)
+			drawn = rasterizeFace(x0, y0, top, x1, y0, top, x1, y1, top, x0, y1, top);
+		if (top > bottom) {
+			if (cameraPosition[0] < x0)
+				drawn |= rasterizeFace(x0, y0, bottom, x0, y1, bottom, x0, y1, top, x0, y0, top);
+			else if (cameraPosition[0] > x1)
+				drawn |= rasterizeFace(x1, y0, bottom, x1, y1, bottom, x1, y1, top, x1, y0, top);
+			if (cameraPosition[1] < y0)
+				drawn |= rasterizeFace(x0, y0, bottom, x1, y0, bottom, x1, y0, top, x0, y0, top);
+			else if (cameraPosition[1] > y1)
+				drawn |= rasterizeFace(x0, y1, bottom, x1, y1, bottom, x1, y1, top, x0, y1, top);
+		}
+		
+		if (drawn)
+			occluderCount++;
+	}
+	
+	/**
+	 * Rasterizes a face (a planar, convex quadrilateral, given by its 4 vertices in order) as an
+	 * occluder.
+	 * 
+	 * @return False if the face was skipped.
+	 */
+	protected boolean rasterizeFace(float ax, float ay, float az, float bx, float by, float bz,
+									float cx, float cy, float cz, float dx, float dy, float dz) {
+		face[0] = ax; face[1] = ay; face[2] = az;
+		face[3] = bx; face[4] = by; face[5] = bz;
+		face[6] = cx; face[7] = cy; face[8] = cz;
+		face[9] = dx; face[10] = dy; face[11] = dz;
+		return rasterizeQuad(face);
+	}
+	
+	/**
+	 * Rasterizes a planar, convex quadrilateral as an occluder.
+	 * 
+	 * <p>The occluder must be entirely inside the solid geometry (only the objects behind it are
+	 * hidden, never the ones in front of it).</p>
+	 * 
+	 * @param vertices The quadrilateral's vertices (x, y, z), in order.
+	 * @return False if the quadrilateral was skipped (crossing the near plane or degenerate).
+	 */
+	public boolean rasterizeQuad(float[] vertices) {
+		for (int k = 0; k < 4; k++) {
+			if (!project(vertices[3*k], vertices[3*k + 1], vertices[3*k + 2], k))
+				return false;
+		}
+		float[] p = projected;
+		
+		// the winding (the projection of a convex polygon is convex, but can be mirrored)
+		float area = 0;
+		float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for (int k = 0; k < 4; k++) {
+			int n = (k + 1) % 4;
+			area += p[3*k] * p[3*n + 1] - p[3*n] * p[3*k + 1];
+			minX = Math.min(minX, p[3*k]);
+			maxX = Math.max(maxX, p[3*k]);
+			minY = Math.min(minY, p[3*k + 1]);
+			maxY = Math.max(maxY, p[3*k + 1]);
+		}
+		if (Math.abs(area) < 1e-6f)
+			return false;
+		float sign = Math.signum(area);
+		
+		// the depth's plane (d = a*x + b*y + c), from the first 3 vertices
+		float ex1 = p[3] - p[0], ey1 = p[4] - p[1], ed1 = p[5] - p[2];
+		float ex2 = p[6] - p[0], ey2 = p[7] - p[1], ed2 = p[8] - p[2];
+		float det = ex1 * ey2 - ex2 * ey1;
+		if (Math.abs(det) < 1e-6f)
+			return false;
+		float a = (ed1 * ey2 - ed2 * ey1) / det;
+		float b = (ex1 * ed2 - ex2 * ed1) / det;
+		float c = p[2] - a * p[0] - b * p[1];
+		
+		// the pixels whose centers are inside
+		int px0 = Math.max((int)Math.ceil(minX - 0.5f), 0), px1 = Math.min((int)Math.floor(maxX - 0.5f), WIDTH - 1);
+		int py0 = Math.max((int)Math.ceil(minY - 0.5f), 0), py1 = Math.min((int)Math.floor(maxY - 0.5f), HEIGHT - 1);
+		for (int py = py0; py <= py1; py++) {
+			for (int px = px0; px <= px1; px++) {
+				if (!isInside(px + 0.5f, py + 0.5f, sign))
+					continue;
+				
+				// the farthest depth over the pixel
+				float d = a * px + b * py + c + Math.max(a, 0) + Math.max(b, 0);
+				int index = py * WIDTH + px;
+				if (d < depth[index])
+					depth[index] = d;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether a box is hidden by the occluders.
+	 * 
+	 * @param bounds The box's bounds (minX, minY, minZ, maxX, maxY, maxZ).
+	 * @return True if the box is certainly occluded.
+	 */
+	public boolean isOccluded(float[] bounds) {
+		if (!enabled)
+			return false;
+		
+		float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		float minDepth = Float.MAX_VALUE;
+		for (int k = 0; k < 8; k++) {
+			if (!project(bounds[(k & 1) * 3], bounds[((k >> 1) & 1) * 3 + 1], bounds[(k >> 2) * 3 + 2], k))
+				return false;
+			minX = Math.min(minX, projected[3*k]);
+			maxX = Math.max(maxX, projected[3*k]);
+			minY = Math.min(minY, projected[3*k + 1]);
+			maxY = Math.max(maxY, projected[3*k + 1]);
+			minDepth = Math.min(minDepth, projected[3*k + 2]);
+		}
+		
+		// the footprint, grown by a pixel (the pixels outside the screen are not visible anyway)
+		int px0 = Math.max((int)Math.floor(minX) - 1, 0), px1 = Math.min((int)Math.floor(maxX) + 1, WIDTH - 1);
+		int py0 = Math.max((int)Math.floor(minY) - 1, 0), py1 = Math.min((int)Math.floor(maxY) + 1, HEIGHT - 1);
+		if (px0 > px1 || py0 > py1)
+			return false;
+		
+		for (int py = py0; py <= py1; py++) {
+			for (int px = px0; px <= px1; px++) {
+				if (!(depth[py * WIDTH + px] < minDepth))
+					return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether a box is visible: inside the view frustum and not occluded.
+	 * 
+	 * @param bounds The box's bounds (minX, minY, minZ, maxX, maxY, maxZ).
+	 * @return True if the box is (potentially) visible.
+	 */
+	public boolean isVisible(float[] bounds) {
+		return FrustumUtils.intersectsBox(frustumPlanes, bounds) && !isOccluded(bounds);
+	}
+	
+	/**
+	 * Projects a point into the buffer's coordinates.
+	 * 
+	 * @param x The point's X coordinate.
+	 * @param y The point's Y coordinate.
+	 * @param z The point's Z coordinate.
+	 * @param vertex The index of the vertex to store the result into (inside {@link #projected}).
+	 * @return False if the point is not in front of the near plane.
+	 */
+	protected boolean project(float x, float y, float z, int vertex) {
+		float[] m = matrix;
+		float cx = m[0] * x + m[4] * y + m[8] * z + m[12];
+		float cy = m[1] * x + m[5] * y + m[9] * z + m[13];
+		float cz = m[2] * x + m[6] * y + m[10] * z + m[14];
+		float cw = m[3] * x + m[7] * y + m[11] * z + m[15];
+		if (cw <= 0 || cz < -cw)
+			return false;
+		
+		projected[3 * vertex] = (cx / cw * 0.5f + 0.5f) * WIDTH;
+		projected[3 * vertex + 1] = (cy / cw * 0.5f + 0.5f) * HEIGHT;
+		projected[3 * vertex + 2] = cz / cw;
+		return true;
+	}
+	
+	/**
+	 * Checks whether a point is inside the projected quadrilateral (stored in {@link #projected}).
+	 * 
+	 * @param x The point's X coordinate.
+	 * @param y The point's Y coordinate.
+	 * @param sign The quadrilateral's winding (the sign of its area).
+	 * @return True if the point is inside (or on the border).
+	 */
+	protected boolean isInside(float x, float y, float sign) {
+		float[] p = projected;
+		for (int k = 0; k < 4; k++) {
+			int n = (k + 1) % 4;
+			float edge = (p[3*n] - p[3*k]) * (y - p[3*k + 1]) - (p[3*n + 1] - p[3*k + 1]) * (x - p[3*k]);
+			if (edge * sign < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns whether the occlusion test is enabled for the current frame.
+	 * 
+	 * @return False if the objects are never reported as occluded.
+	 */
+	@SuppressWarnings("unused")
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Returns the number of occluders rasterized in the current frame.
+	 * 
+	 * @return The occluder count.
+	 */
+	@SuppressWarnings("unused")
+	public int getOccluderCount() {
+		return occluderCount;
+	}
+	
+}
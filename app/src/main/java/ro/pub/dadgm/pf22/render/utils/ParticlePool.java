@@ -0,0 +1,265 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+/**
+ * A fixed capacity pool of particles, simulated without allocating any objects.
+ * 
+ * <p>The particles are stored as a structure of arrays (one primitive array for each property)
+ * and the live ones are always packed at the beginning: a dead particle is replaced by the last
+ * one. All the particles of a pool share their behavior (the acceleration, the drag, the growth
+ * and the color ramp), so a pool holds a single type of effect.</p>
+ * 
+ * <p>The colors are premultiplied by their alpha: a color having a zero alpha is blended
+ * additively (e.g. fire), while an opaque one covers the background (e.g. smoke).</p>
+ * 
+ * <p>Not thread safe: a pool must only be used by the thread that draws it.</p>
+ */
+public class ParticlePool {
+	
+	/**
+	 * The number of floats per vertex: the position, the size and the RGBA color (interleaved).
+	 */
+	public static final int VERTEX_SIZE = 8;
+	
+	
+	/**
+	 * The maximum number of particles.
+	 */
+	protected final int capacity;
+	
+	/**
+	 * The particles' positions.
+	 */
+	protected final float[] positionX, positionY, positionZ;
+	
+	/**
+	 * The particles' velocities.
+	 */
+	protected final float[] velocityX, velocityY, velocityZ;
+	
+	/**
+	 * The particles' ages and life spans (seconds).
+	 */
+	protected final float[] age, life;
+	
+	/**
+	 * The particles' initial sizes (world units).
+	 */
+	protected final float[] size;
+	
+	/**
+	 * The number of live particles.
+	 */
+	protected int count = 0;
+	
+	/**
+	 * The acceleration applied to all particles (e.g. gravity or buoyancy).
+	 */
+	protected final float[] acceleration = new float[3];
+	
+	/**
+	 * The fraction of the velocity lost each second.
+	 */
+	protected float drag = 0;
+	
+	/**
+	 * The size growth over a particle's lifetime (relative to its initial size).
+	 */
+	protected float growth = 0;
+	
+	/**
+	 * The (premultiplied) colors of the particles when emitted and when they die.
+	 */
+	protected final float[] startColor = { 1, 1, 1, 1 }, endColor = { 1, 1, 1, 1 };
+	
+	
+	/**
+	 * Allocates the particle pool.
+	 * 
+	 * @param capacity The maximum number of particles.
+	 */
+	public ParticlePool(int capacity) {
+		this.capacity = capacity;
+		
+		positionX = new float[capacity];
+		positionY = new float[capacity];
+		positionZ = new float[capacity];
+		velocityX = new float[capacity];
+		velocityY = new float[capacity];
+		velocityZ = new float[capacity];
+		age = new float[capacity];
+		life = new float[capacity];
+		size = new float[capacity];
+	}
+	
+	/**
+	 * Emits a new particle.
+	 * 
+	 * @param x The X coordinate.
+	 * @param y The Y coordinate.
+	 * @param z The Z coordinate.
+	 * @param vx The velocity's X component.
+	 * @param vy The velocity's Y component.
+	 * @param vz The velocity's Z component.
+	 * @param lifeSpan The particle's life span (seconds).
+	 * @param initialSize The particle's initial size.
+	 * @return False if the pool is full (the particle is dropped).
+	 */
+	public boolean emit(float x, float y, float z, float vx, float vy, float vz, float lifeSpan,
+			float initialSize) {
+		if (count == capacity)
+			return false;
+		
+		int i = count++;
+		positionX[i] = x;
+		positionY[i] = y;
+		positionZ[i] = z;
+		velocityX[i] = vx;
+		velocityY[i] = vy;
+		velocityZ[i] = vz;
+		age[i] = 0;
+		life[i] = lifeSpan;
+		size[i] = initialSize;
+		return true;
+	}
+	
+	/**
+	 * Advances the simulation: ages the particles (removing the dead ones) and integrates their
+	 * motion.
+	 * 
+	 * @param dt The elapsed time (seconds).
+	 */
+	public void update(float dt) {
+		final float damping = Math.max(0, 1 - drag * dt);
+		final float dvx = acceleration[0] * dt, dvy = acceleration[1] * dt,
+				dvz = acceleration[2] * dt;
+		
+		int i = 0;
+		while (i < count) {
+			float newAge = age[i] + dt;
+			if (newAge >= life[i]) {
+				// replace it by the last particle (updated next)
+				int last = --count;
+				positionX[i] = positionX[last];
+				positionY[i] = positionY[last];
+				positionZ[i] = positionZ[last];
+				velocityX[i] = velocityX[last];
+				velocityY[i] = velocityY[last];
+				velocityZ[i] = velocityZ[last];
+				age[i] = age[last];
+				life[i] = life[last];
+				size[i] = size[last];
+				continue;
+			}
+			age[i] = newAge;
+			
+			float vx = velocityX[i] * damping + dvx;
+			float vy = velocityY[i] * damping + dvy;
+			float vz = velocityZ[i] * damping + dvz;
+			velocityX[i] = vx;
+			velocityY[i] = vy;
+			velocityZ[i] = vz;
+			positionX[i] += vx * dt;
+			positionY[i] += vy * dt;
+			positionZ[i] += vz * dt;
+			i++;
+		}
+	}
+	
+	/**
+	 * Writes the live particles' vertices (see {@link #VERTEX_SIZE}), with their size and color
+	 * interpolated by age.
+	 * 
+	 * @param vertices The array to fill (must hold {@link #getCount()} vertices).
+	 * @return The number of vertices written.
+	 */
+	public int fillVertices(float[] vertices) {
+		final float r0 = startColor[0], g0 = startColor[1], b0 = startColor[2], a0 = startColor[3];
+		final float dr = endColor[0] - r0, dg = endColor[1] - g0, db = endColor[2] - b0,
+				da = endColor[3] - a0;
+		
+		for (int i = 0, k = 0; i < count; i++) {
+			float t = age[i] / life[i];
+			vertices[k++] = positionX[i];
+			vertices[k++] = positionY[i];
+			vertices[k++] = positionZ[i];
+			vertices[k++] = size[i] * (1 + growth * t);
+			vertices[k++] = r0 + dr * t;
+			vertices[k++] = g0 + dg * t;
+			vertices[k++] = b0 + db * t;
+			vertices[k++] = a0 + da * t;
+		}
+		return count;
+	}
+	
+	/**
+	 * Removes all particles.
+	 */
+	public void clear() {
+		count = 0;
+	}
+	
+	
+	// getters / setters
+	
+	/**
+	 * Returns the number of live particles.
+	 * 
+	 * @return The number of particles.
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns the maximum number of particles.
+	 * 
+	 * @return The pool's capacity.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Sets the acceleration applied to all particles.
+	 * 
+	 * @param x The X component.
+	 * @param y The Y component.
+	 * @param z The Z component.
+	 */
+	public void setAcceleration(float x, float y, float z) {
+		acceleration[0] = x;
+		acceleration[1] = y;
+		acceleration[2] = z;
+	}
+	
+	/**
+	 * Sets the fraction of the velocity the particles lose each second.
+	 * 
+	 * @param drag The drag coefficient (0 for none).
+	 */
+	public void setDrag(float drag) {
+		this.drag = drag;
+	}
+	
+	/**
+	 * Sets how much the particles grow over their lifetime.
+	 * 
+	 * @param growth The size increase when a particle dies, relative to its initial size
+	 *               (negative values shrink the particles).
+	 */
+	public void setGrowth(float growth) {
+		this.growth = growth;
+	}
+	
+	/**
+	 * Sets the color ramp of the particles.
+	 * 
+	 * @param start The (premultiplied) RGBA color of the new particles.
+	 * @param end The (premultiplied) RGBA color of the dying particles.
+	 */
+	public void setColors(float[] start, float[] end) {
+		System.arraycopy(start, 0, startColor, 0, 4);
+		System.arraycopy(end, 0, endColor, 0, 4);
+	}
+	
+}
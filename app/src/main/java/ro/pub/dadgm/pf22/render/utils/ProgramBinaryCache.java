@@ -0,0 +1,423 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Persists the binaries of the linked shader programs, so that they are only compiled once for a
+ * given driver.
+ * 
+ * <p>The binaries are identified by a key (see {@link #computeKey}): the hash of the programs'
+ * sources (after the defines were injected), their bound attributes and the driver's identity. A
+ * driver update changes its identity, so its stale binaries are never loaded (the driver might
+ * reject them anyway, in which case the caller recompiles the program and overwrites them).</p>
+ * 
+ * <p>The stale binaries are pruned: all of them are deleted when the driver's identity changes
+ * (see {@link #checkDriver}), and only the {@link #maxFiles} most recently used ones are kept
+ * (e.g. the binaries of the programs whose sources were edited are never loaded again).</p>
+ * 
+ * <p>This class only handles the storage (it makes no GL calls, see {@link ShaderLoader}).</p>
+ * 
+ * <p>File format (all values big endian): magic ("PFSB"), {@link #VERSION}, the binary's format
+ * (as returned by the driver), the binary's length and the binary itself.</p>
+ */
+public class ProgramBinaryCache {
+	
+	/**
+	 * The magic bytes that identify a program binary file.
+	 */
+	public static final int MAGIC = ('P' << 24) | ('F' << 16) | ('S' << 8) | 'B';
+	
+	/**
+	 * The current version of the file format.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * The size of a file's header.
+	 */
+	protected static final int HEADER_SIZE = 4 * 4;
+	
+	/**
+	 * The extension of the program binary files.
+	 */
+	public static final String FILE_SUFFIX = ".bin";
+	
+	/**
+	 * The name of the file that stores the identity of the driver that the binaries were built
+	 * by.
+	 */
+	public static final String DRIVER_FILE = "driver.id";
+	
+	/**
+	 * The default maximum number of binaries kept in the cache directory.
+	 */
+	public static final int DEFAULT_MAX_FILES = 64;
+	
+	/**
+	 * Stores a program's binary and its format.
+	 */
+	public static class ProgramBinary {
+		
+		/**
+		 * The binary's format (driver specific).
+		 */
+		protected final int format;
+		
+		/**
+		 * The binary data (a direct buffer).
+		 */
+		protected final ByteBuffer data;
+		
+		
+		/**
+		 * Initializes the program binary object.
+		 * 
+		 * @param format The binary's format.
+		 * @param data The binary data.
+		 */
+		public ProgramBinary(int format, ByteBuffer data) {
+			this.format = format;
+			this.data = data;
+		}
+		
+		/**
+		 * Returns the binary's format.
+		 * 
+		 * @return The driver specific format.
+		 */
+		public int getFormat() {
+			return format;
+		}
+		
+		/**
+		 * Returns the binary data.
+		 * 
+		 * @return The (direct) data buffer.
+		 */
+		public ByteBuffer getData() {
+			return data;
+		}
+		
+	}
+	
+	/**
+	 * The directory to store the binaries into.
+	 */
+	protected final File directory;
+	
+	/**
+	 * The driver's identity (vendor, renderer, version, system build).
+	 */
+	protected final String driverId;
+	
+	/**
+	 * The maximum number of binaries kept in the cache directory.
+	 */
+	protected int maxFiles = DEFAULT_MAX_FILES;
+	
+	
+	/**
+	 * Initializes the cache.
+	 * 
+	 * @param directory The directory to store the binaries into (created when needed).
+	 * @param driverId The driver's identity.
+	 */
+	public ProgramBinaryCache(File directory, String driverId) {
+		this.directory = directory;
+		this.driverId = driverId;
+	}
+	
+	/**
+	 * Computes the key of a program.
+	 * 
+	 * @param vertexCode The vertex shader's source code.
+	 * @param fragmentCode The fragment shader's source code.
+	 * @param bindAttributes The bound attributes (null if none).
+	 * @return The key (the hexadecimal SHA-1 hash).
+	 */
+	public String computeKey(String vertexCode, String fragmentCode, String[] bindAttributes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("Unable to compute the program's hash!", e);
+		}
+		
+		StringBuilder identity = new StringBuilder();
+		identity.append(driverId).append('\0');
+		identity.append(vertexCode).append('\0');
+		identity.append(fragmentCode).append('\0');
+		if (bindAttributes != null) {
+			for (String attribute: bindAttributes) {
+				identity.append(attribute).append(',');
+			}
+		}
+		
+		byte[] hash = digest.digest(identity.toString().getBytes(Charset.forName("UTF-8")));
+		StringBuilder key = new StringBuilder(hash.length * 2);
+		for (byte b: hash) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Returns the file of a program's binary.
+	 * 
+	 * @param key The program's key.
+	 * @return The file object.
+	 */
+	public File getFile(String key) {
+		return new File(directory, key + FILE_SUFFIX);
+	}
+	
+	/**
+	 * Loads a program's binary.
+	 * 
+	 * <p>The invalid files are deleted.</p>
+	 * 
+	 * @param key The program's key.
+	 * @return The program's binary, or null if it's not cached (or the file is invalid).
+	 */
+	public ProgramBinary load(String key) {
+		File file = getFile(key);
+		if (!file.isFile())
+			return null;
+		
+		try {
+			int format, length;
+			byte[] data;
+			
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				if (in.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION)
+					throw new IOException("Invalid header!");
+				
+				format = in.readInt();
+				length = in.readInt();
+				if (length <= 0 || length != in.length() - HEADER_SIZE)
+					throw new IOException("Invalid length!");
+				
+				data = new byte[length];
+				in.readFully(data);
+			} finally {
+				in.close();
+			}
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+			buffer.put(data).position(0);
+			
+			// mark the file as recently used (see prune)
+			//noinspection ResultOfMethodCallIgnored
+			file.setLastModified(System.currentTimeMillis());
+			return new ProgramBinary(format, buffer);
+			
+		} catch (IOException | RuntimeException e) {
+			Log.w(ProgramBinaryCache.class.getSimpleName(), "Discarding program binary '" + file + "'.", e);
+			delete(key);
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores a program's binary.
+	 * 
+	 * <p>The file is written to a temporary location first and renamed when complete, so that
+	 * an interrupted write never leaves a partial file behind. The cache is then pruned (see
+	 * {@link #prune}).</p>
+	 * 
+	 * @param key The program's key.
+	 * @param format The binary's format.
+	 * @param data The binary data (from its position to its limit; the position is not changed).
+	 * @return Whether the binary was stored.
+	 */
+	public boolean store(String key, int format, ByteBuffer data) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			Log.w(ProgramBinaryCache.class.getSimpleName(), "Unable to create the cache directory!");
+			return false;
+		}
+		
+		File file = getFile(key);
+		File tmpFile = new File(directory, key + FILE_SUFFIX + ".tmp");
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putInt(format).putInt(data.remaining());
+			header.flip();
+			
+			ByteBuffer body = data.duplicate();
+			FileOutputStream out = new FileOutputStream(tmpFile);
+			try {
+				FileChannel channel = out.getChannel();
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				while (body.hasRemaining()) {
+					channel.write(body);
+				}
+			} finally {
+				out.close();
+			}
+			
+			if (!tmpFile.renameTo(file))
+				throw new IOException("Unable to rename '" + tmpFile + "'!");
+			prune();
+			return true;
+			
+		} catch (IOException | RuntimeException e) {
+			Log.w(ProgramBinaryCache.class.getSimpleName(), "Unable to save program binary '" + file + "'.", e);
+			//noinspection ResultOfMethodCallIgnored
+			tmpFile.delete();
+			return false;
+		}
+	}
+	
+	/**
+	 * Deletes a program's binary.
+	 * 
+	 * @param key The program's key.
+	 * @return Whether the file was deleted (false if it didn't exist).
+	 */
+	public boolean delete(String key) {
+		return getFile(key).delete();
+	}
+	
+	/**
+	 * Deletes all the stored binaries.
+	 */
+	public void clear() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File file: files) {
+			if (file.getName().endsWith(FILE_SUFFIX)) {
+				if (!file.delete())
+					Log.w(ProgramBinaryCache.class.getSimpleName(), "Unable to delete '" + file + "'.");
+			}
+		}
+	}
+	
+	/**
+	 * Deletes all the stored binaries if they were built by another driver (e.g. before a system
+	 * update), then records the current driver's identity.
+	 * 
+	 * <p>To be called once, before using the cache.</p>
+	 */
+	public void checkDriver() {
+		File file = new File(directory, DRIVER_FILE);
+		byte[] identity = driverId.getBytes(Charset.forName("UTF-8"));
+		
+		try {
+			if (file.isFile() && file.length() == identity.length) {
+				byte[] stored = new byte[identity.length];
+				RandomAccessFile in = new RandomAccessFile(file, "r");
+				try {
+					in.readFully(stored);
+				} finally {
+					in.close();
+				}
+				if (Arrays.equals(stored, identity))
+					return;
+			}
+			
+			clear();
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new IOException("Unable to create the cache directory!");
+			
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				out.write(identity);
+			} finally {
+				out.close();
+			}
+			
+		} catch (IOException e) {
+			Log.w(ProgramBinaryCache.class.getSimpleName(), "Unable to check the driver's identity.", e);
+		}
+	}
+	
+	/**
+	 * Deletes the least recently used binaries, so that at most {@link #maxFiles} remain in the
+	 * cache directory.
+	 * 
+	 * <p>The files are ordered by their modification time, which is updated each time a binary
+	 * is loaded.</p>
+	 */
+	public void prune() {
+		File[] files = directory.listFiles();
+		if (files == null || files.length <= maxFiles)
+			return;
+		
+		List<File> binaryFiles = new ArrayList<>();
+		for (File file: files) {
+			if (file.isFile() && file.getName().endsWith(FILE_SUFFIX))
+				binaryFiles.add(file);
+		}
+		
+		// newest first
+		Collections.sort(binaryFiles, new Comparator<File>() {
+			@Override
+			public int compare(File lhs, File rhs) {
+				long lhsTime = lhs.lastModified(), rhsTime = rhs.lastModified();
+				return (lhsTime > rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1));
+			}
+		});
+		
+		for (int i = maxFiles; i < binaryFiles.size(); i++) {
+			File file = binaryFiles.get(i);
+			if (!file.delete())
+				Log.w(ProgramBinaryCache.class.getSimpleName(), "Unable to delete '" + file + "'.");
+		}
+	}
+	
+	
+	// getters / setters
+		
+	/**
+	 * Returns the driver's identity.
+	 * 
+	 * @return The driver's identity string.
+	 */
+	@SuppressWarnings("unused")
+	public String getDriverId() {
+		return driverId;
+	}
+	
+	/**
+	 * Returns the maximum number of binaries kept in the cache directory.
+	 * 
+	 * @return The maximum number of files.
+	 */
+	@SuppressWarnings("unused")
+	public int getMaxFiles() {
+		return maxFiles;
+	}
+	
+	/**
+	 * Sets the maximum number of binaries kept in the cache directory (applied when the next
+	 * binary is stored).
+	 * 
+	 * @param maxFiles The new maximum number of files.
+	 */
+	@SuppressWarnings("unused")
+	public void setMaxFiles(int maxFiles) {
+		this.maxFiles = maxFiles;
+	}
+	
+}
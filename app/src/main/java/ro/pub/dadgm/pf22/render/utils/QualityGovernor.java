@@ -0,0 +1,354 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import java.util.Arrays;
+
+/**
+ * Adjusts the rendering quality to hold a target frame rate.
+ * 
+ * <p>The governor receives the duration of each frame (the interval between two frames, the time
+ * spent drawing it and the last simulation tick's duration) and evaluates them once per window of
+ * {@link #WINDOW} frames, using their medians (so the occasional spikes are ignored):
+ * <ul>
+ *     <li>if the frames miss their budget (or the ticks theirs), the quality is lowered by a step:
+ *     the first registered knob that isn't already at its lowest level is turned down;</li>
+ *     <li>if the frames are drawn well within their budget for a few windows in a row, the last
+ *     lowered knob is turned back up.</li>
+ * </ul>
+ * Each time an upgrade has to be undone, the governor waits twice as long before the next one, so
+ * it settles instead of oscillating around the budget.</p>
+ * 
+ * <p>The knobs are registered in the order they should be turned down (the least noticeable
+ * first). Their level 0 is the best quality.</p>
+ * 
+ * <p>Doesn't depend on the Android framework: the knobs are only changed from the thread that
+ * records the frames.</p>
+ */
+public class QualityGovernor {
+	
+	/**
+	 * A quality setting controlled by the governor.
+	 */
+	public static interface Knob {
+		
+		/**
+		 * Returns the number of quality levels.
+		 * 
+		 * @return The number of levels (at least 1).
+		 */
+		public int getLevels();
+		
+		/**
+		 * Applies a quality level.
+		 * 
+		 * @param level The level to apply (0 is the best quality).
+		 */
+		public void setLevel(int level);
+		
+	}
+	
+	/**
+	 * A knob that applies a value for each level.
+	 */
+	public static abstract class ValueKnob implements Knob {
+		
+		/**
+		 * The levels' values.
+		 */
+		protected final float[] values;
+		
+		
+		/**
+		 * Creates the knob.
+		 * 
+		 * @param values The levels' values (the best quality's first).
+		 */
+		public ValueKnob(float... values) {
+			this.values = values;
+		}
+		
+		@Override
+		public int getLevels() {
+			return values.length;
+		}
+		
+		@Override
+		public void setLevel(int level) {
+			apply(values[level]);
+		}
+		
+		/**
+		 * Applies a level's value.
+		 * 
+		 * @param value The value to apply.
+		 */
+		protected abstract void apply(float value);
+		
+	}
+	
+	/**
+	 * The number of frames evaluated at once.
+	 */
+	public static final int WINDOW = 30;
+	
+	/**
+	 * The fraction of the budget above which the frames are too slow.
+	 */
+	public static final float DEGRADE_THRESHOLD = 1.15f;
+	
+	/**
+	 * The fraction of the budget below which the frames have enough headroom for an upgrade.
+	 */
+	public static final float UPGRADE_THRESHOLD = 0.6f;
+	
+	/**
+	 * The number of windows having headroom needed for an upgrade (initially).
+	 */
+	public static final int UPGRADE_WINDOWS = 4;
+	
+	/**
+	 * The maximum number of windows having headroom needed for an upgrade.
+	 */
+	public static final int MAX_UPGRADE_WINDOWS = 64;
+	
+	
+	/**
+	 * The frame's time budget (milliseconds).
+	 */
+	protected final float frameBudget;
+	
+	/**
+	 * The simulation tick's time budget (milliseconds).
+	 */
+	protected final float tickBudget;
+	
+	/**
+	 * The registered knobs (only the first {@link #knobCount} are used).
+	 */
+	protected Knob[] knobs = new Knob[8];
+	
+	/**
+	 * The knobs' current levels.
+	 */
+	protected int[] levels = new int[8];
+	
+	/**
+	 * The number of registered knobs.
+	 */
+	protected int knobCount = 0;
+	
+	/**
+	 * The knobs turned down, in order (undone from the last one).
+	 */
+	protected int[] changes = new int[16];
+	
+	/**
+	 * The number of knobs turned down.
+	 */
+	protected int changeCount = 0;
+	
+	/**
+	 * The current window's frame intervals, drawing times and tick times (milliseconds).
+	 */
+	protected final float[] frameTimes = new float[WINDOW], workTimes = new float[WINDOW],
+			tickTimes = new float[WINDOW];
+	
+	/**
+	 * The number of frames recorded in the current window.
+	 */
+	protected int samples = 0;
+	
+	/**
+	 * The number of consecutive windows having headroom.
+	 */
+	protected int headroomWindows = 0;
+	
+	/**
+	 * The number of windows having headroom needed for the next upgrade.
+	 */
+	protected int upgradeWindows = UPGRADE_WINDOWS;
+	
+	/**
+	 * Whether the last change was an upgrade.
+	 */
+	protected boolean upgraded = false;
+	
+	
+	/**
+	 * Creates the governor.
+	 * 
+	 * @param targetFrameRate The frame rate to hold (frames per second).
+	 * @param tickBudget The simulation tick's time budget (milliseconds).
+	 */
+	public QualityGovernor(float targetFrameRate, float tickBudget) {
+		this.frameBudget = 1000f / targetFrameRate;
+		this.tickBudget = tickBudget;
+	}
+	
+	/**
+	 * Registers a knob (at its best quality level).
+	 * 
+	 * <p>The knobs are turned down in the order they were registered.</p>
+	 * 
+	 * @param knob The knob to register.
+	 * @return The knob's index.
+	 */
+	public synchronized int addKnob(Knob knob) {
+		if (knobCount == knobs.length) {
+			knobs = Arrays.copyOf(knobs, knobCount * 2);
+			levels = Arrays.copyOf(levels, knobCount * 2);
+		}
+		knobs[knobCount] = knob;
+		levels[knobCount] = 0;
+		return knobCount++;
+	}
+	
+	/**
+	 * Records a frame's times; evaluates them (possibly changing a knob) once the window is full.
+	 * 
+	 * @param frameTime The interval since the previous frame (milliseconds).
+	 * @param workTime The time spent drawing the frame (milliseconds).
+	 * @param tickTime The last simulation tick's duration (milliseconds, 0 if none).
+	 */
+	public synchronized void recordFrame(float frameTime, float workTime, float tickTime) {
+		frameTimes[samples] = frameTime;
+		workTimes[samples] = workTime;
+		tickTimes[samples] = tickTime;
+		samples++;
+		
+		if (samples == WINDOW) {
+			evaluate();
+			samples = 0;
+		}
+	}
+	
+	/**
+	 * Applies the knobs' current levels again (e.g. to the objects of a new scene) and starts a new
+	 * window.
+	 */
+	public synchronized void applyLevels() {
+		for (int i = 0; i < knobCount; i++) {
+			knobs[i].setLevel(levels[i]);
+		}
+		samples = 0;
+		headroomWindows = 0;
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Evaluates the current window.
+	 */
+	protected void evaluate() {
+		float frameTime = median(frameTimes), workTime = median(workTimes),
+				tickTime = median(tickTimes);
+		
+		if (frameTime > frameBudget * DEGRADE_THRESHOLD || tickTime > tickBudget) {
+			headroomWindows = 0;
+			if (degrade()) {
+				// the last upgrade didn't hold: wait longer before the next one
+				if (upgraded)
+					upgradeWindows = Math.min(upgradeWindows * 2, MAX_UPGRADE_WINDOWS);
+				upgraded = false;
+			}
+			
+		} else if (workTime < frameBudget * UPGRADE_THRESHOLD &&
+				tickTime < tickBudget * UPGRADE_THRESHOLD) {
+			headroomWindows++;
+			if (headroomWindows >= upgradeWindows && upgrade()) {
+				headroomWindows = 0;
+				upgraded = true;
+			}
+			
+		} else {
+			headroomWindows = 0;
+		}
+	}
+	
+	/**
+	 * Turns down the first knob that isn't at its lowest level.
+	 * 
+	 * @return False if all knobs are at their lowest level.
+	 */
+	protected boolean degrade() {
+		for (int i = 0; i < knobCount; i++) {
+			if (levels[i] < knobs[i].getLevels() - 1) {
+				levels[i]++;
+				knobs[i].setLevel(levels[i]);
+				
+				if (changeCount == changes.length)
+					changes = Arrays.copyOf(changes, changeCount * 2);
+				changes[changeCount++] = i;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Turns the last lowered knob back up.
+	 * 
+	 * @return False if all knobs are at their best level.
+	 */
+	protected boolean upgrade() {
+		if (changeCount == 0)
+			return false;
+		
+		int i = changes[--changeCount];
+		levels[i]--;
+		knobs[i].setLevel(levels[i]);
+		return true;
+	}
+	
+	/**
+	 * Computes the median of a window (sorts it).
+	 * 
+	 * @param values The window's values.
+	 * @return The median value.
+	 */
+	protected static float median(float[] values) {
+		Arrays.sort(values);
+		return (values[(WINDOW - 1) / 2] + values[WINDOW / 2]) / 2;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns a knob's current level.
+	 * 
+	 * @param knob The knob's index.
+	 * @return The knob's level.
+	 */
+	public synchronized int getLevel(int knob) {
+		return levels[knob];
+	}
+	
+	/**
+	 * Returns the number of registered knobs.
+	 * 
+	 * @return The number of knobs.
+	 */
+	public synchronized int getKnobCount() {
+		return knobCount;
+	}
+	
+	/**
+	 * Returns the frame's time budget.
+	 * 
+	 * @return The frame budget (milliseconds).
+	 */
+	public float getFrameBudget() {
+		return frameBudget;
+	}
+	
+	/**
+	 * Returns the number of windows having headroom needed for the next upgrade.
+	 * 
+	 * @return The number of windows.
+	 */
+	public synchronized int getUpgradeWindows() {
+		return upgradeWindows;
+	}
+	
+}
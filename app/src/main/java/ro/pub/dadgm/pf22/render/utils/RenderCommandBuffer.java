@@ -0,0 +1,389 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import android.opengl.Matrix;
+
+import java.util.Arrays;
+
+import ro.pub.dadgm.pf22.render.objects.Object3D;
+import ro.pub.dadgm.pf22.render.objects.ObjectsManager;
+
+/**
+ * A frame's list of draw commands, built away from the OpenGL thread and replayed on it.
+ * 
+ * <p>The commands are kept in preallocated primitive arrays (the transforms, the material / mesh
+ * ids and the sort keys), which only grow when a frame needs more commands than ever before. A
+ * command is either executed by its {@link Renderer} (that only issues the GL calls, using the
+ * command's precomputed matrices) or is an object drawn as a whole (for the objects that don't
+ * support the command buffers, e.g. the terrain).</p>
+ * 
+ * <p>The buffer also stores the snapshot the commands were built from: the camera's matrices and
+ * the list of objects, so the build doesn't need to access the structures used by the OpenGL
+ * thread (see {@link FramePipeline}).</p>
+ * 
+ * <p>The commands are executed in the order of their sort keys: by the objects' priority, then
+ * by material and by mesh (to reduce the state changes), then in the order they were added.</p>
+ */
+public class RenderCommandBuffer {
+	
+	/**
+	 * Issues the GL calls of the commands.
+	 */
+	public static interface Renderer {
+		
+		/**
+		 * Draws a command (on the OpenGL thread).
+		 * 
+		 * @param buffer The buffer that contains the command.
+		 * @param command The command's index.
+		 */
+		public void executeCommand(RenderCommandBuffer buffer, int command);
+		
+	}
+	
+	/**
+	 * The number of floats stored for each command: the model matrix, followed by the normal
+	 * matrix.
+	 */
+	public static final int TRANSFORM_SIZE = 32;
+	
+	/**
+	 * The maximum number of commands (the command's index is stored in the 16 low bits of the
+	 * sort key).
+	 */
+	public static final int MAX_COMMANDS = 1 << 16;
+	
+	/**
+	 * The number of commands allocated initially.
+	 */
+	protected static final int INITIAL_COMMANDS = 64;
+	
+	
+	/**
+	 * The commands' renderers (null for the objects drawn as a whole).
+	 */
+	protected Renderer[] renderers;
+	
+	/**
+	 * The objects drawn as a whole (null for the commands having a renderer).
+	 */
+	protected Object3D[] objects;
+	
+	/**
+	 * The commands' material ids (defined by their renderers).
+	 */
+	protected int[] materials;
+	
+	/**
+	 * The commands' model and normal matrices (see {@link #TRANSFORM_SIZE}).
+	 */
+	protected float[] transforms;
+	
+	/**
+	 * The commands' sort keys (priority, material, mesh and the command's index).
+	 */
+	protected long[] sortKeys;
+	
+	/**
+	 * The number of commands.
+	 */
+	protected int count = 0;
+	
+	/**
+	 * The objects the frame is built from (only the first {@link #sourceCount} are used).
+	 */
+	protected Object3D[] sources;
+	
+	/**
+	 * The number of source objects.
+	 */
+	protected int sourceCount = 0;
+	
+	/**
+	 * The frame's view matrix.
+	 */
+	protected final float[] viewMatrix = new float[16];
+	
+	/**
+	 * The frame's projection matrix.
+	 */
+	protected final float[] projectionMatrix = new float[16];
+	
+	/**
+	 * The frame's view-projection matrix.
+	 */
+	protected final float[] viewProjectionMatrix = new float[16];
+	
+	/**
+	 * The camera's position in world space.
+	 */
+	protected final float[] cameraPosition = new float[3];
+	
+	/**
+	 * Temporary matrices (work arrays).
+	 */
+	protected final float[] tmpMatrices = new float[32];
+	
+	
+	/**
+	 * Creates an empty command buffer.
+	 */
+	public RenderCommandBuffer() {
+		renderers = new Renderer[INITIAL_COMMANDS];
+		objects = new Object3D[INITIAL_COMMANDS];
+		materials = new int[INITIAL_COMMANDS];
+		transforms = new float[INITIAL_COMMANDS * TRANSFORM_SIZE];
+		sortKeys = new long[INITIAL_COMMANDS];
+		sources = new Object3D[INITIAL_COMMANDS];
+	}
+	
+	/**
+	 * Prepares the buffer for a new frame: stores the camera's matrices and the objects to draw.
+	 * 
+	 * <p>Must be called from the thread that owns the objects (the buffer only stores their
+	 * references).</p>
+	 * 
+	 * @param viewMatrix The camera's view matrix.
+	 * @param projectionMatrix The camera's projection matrix.
+	 * @param frameObjects The objects to build the frame from.
+	 */
+	public void begin(float[] viewMatrix, float[] projectionMatrix,
+			ObjectsManager<? extends Object3D> frameObjects) {
+		clear();
+		
+		System.arraycopy(viewMatrix, 0, this.viewMatrix, 0, 16);
+		System.arraycopy(projectionMatrix, 0, this.projectionMatrix, 0, 16);
+		Matrix.multiplyMM(viewProjectionMatrix, 0, projectionMatrix, 0, viewMatrix, 0);
+		Matrix.invertM(tmpMatrices, 0, viewMatrix, 0);
+		System.arraycopy(tmpMatrices, 12, cameraPosition, 0, 3);
+		
+		if (sources.length < frameObjects.size())
+			sources = new Object3D[Math.max(frameObjects.size(), sources.length * 2)];
+		sourceCount = frameObjects.size();
+		for (int i = 0; i < sourceCount; i++) {
+			sources[i] = frameObjects.get(i);
+		}
+	}
+	
+	/**
+	 * Adds a command executed by a renderer.
+	 * 
+	 * <p>The command's transforms must be filled by the caller (see {@link #getTransforms()}).</p>
+	 * 
+	 * @param renderer The command's renderer.
+	 * @param priority The drawing priority (see {@link Object3D#getPriority()}).
+	 * @param material The material id (the commands are grouped by it).
+	 * @param mesh The mesh id (the commands having the same material are grouped by it).
+	 * @return The command's index.
+	 */
+	public int addCommand(Renderer renderer, int priority, int material, int mesh) {
+		int command = allocateCommand(priority, material, mesh);
+		renderers[command] = renderer;
+		materials[command] = material;
+		return command;
+	}
+	
+	/**
+	 * Adds an object that is drawn as a whole (by its {@link Object3D#draw()} method).
+	 * 
+	 * @param object The object to draw.
+	 */
+	public void addObject(Object3D object) {
+		int command = allocateCommand(object.getPriority(), 0, 0);
+		objects[command] = object;
+	}
+	
+	/**
+	 * Sorts the commands by their keys.
+	 */
+	public void sort() {
+		Arrays.sort(sortKeys, 0, count);
+	}
+	
+	/**
+	 * Executes the commands, in the sorted order.
+	 * 
+	 * <p>Must be called from the OpenGL thread!</p>
+	 */
+	public void execute() {
+		for (int i = 0; i < count; i++) {
+			int command = (int)(sortKeys[i] & (MAX_COMMANDS - 1));
+			if (renderers[command] != null) {
+				renderers[command].executeCommand(this, command);
+			} else {
+				objects[command].draw();
+			}
+		}
+	}
+	
+	/**
+	 * Removes the commands and the source objects (dropping their references).
+	 */
+	public void clear() {
+		Arrays.fill(renderers, 0, count, null);
+		Arrays.fill(objects, 0, count, null);
+		Arrays.fill(sources, 0, sourceCount, null);
+		count = 0;
+		sourceCount = 0;
+	}
+	
+	/**
+	 * Computes a command's normal matrix ((MV^-1)^t), from its model matrix.
+	 * 
+	 * @param command The command's index.
+	 */
+	public void computeNormalMatrix(int command) {
+		int offset = command * TRANSFORM_SIZE;
+		Matrix.multiplyMM(tmpMatrices, 0, viewMatrix, 0, transforms, offset);
+		Matrix.invertM(tmpMatrices, 16, tmpMatrices, 0);
+		Matrix.transposeM(transforms, offset + 16, tmpMatrices, 16);
+	}
+	
+	/**
+	 * Computes the distance from the camera to a point.
+	 * 
+	 * @param x The point's X coordinate.
+	 * @param y The point's Y coordinate.
+	 * @param z The point's Z coordinate.
+	 * @return The distance (world units).
+	 */
+	public float computeCameraDistance(float x, float y, float z) {
+		float dx = x - cameraPosition[0], dy = y - cameraPosition[1], dz = z - cameraPosition[2];
+		return (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Reserves the next command, growing the arrays if needed.
+	 * 
+	 * @param priority The drawing priority.
+	 * @param material The material id.
+	 * @param mesh The mesh id.
+	 * @return The command's index.
+	 */
+	protected int allocateCommand(int priority, int material, int mesh) {
+		if (count == sortKeys.length) {
+			if (count == MAX_COMMANDS)
+				throw new RuntimeException("Unable to add more than " + MAX_COMMANDS + " commands!");
+			
+			int capacity = count * 2;
+			renderers = Arrays.copyOf(renderers, capacity);
+			objects = Arrays.copyOf(objects, capacity);
+			materials = Arrays.copyOf(materials, capacity);
+			transforms = Arrays.copyOf(transforms, capacity * TRANSFORM_SIZE);
+			sortKeys = Arrays.copyOf(sortKeys, capacity);
+		}
+		
+		int command = count++;
+		// priority (16 signed bits, so the sign of the key follows it), material (8 bits),
+		// mesh (24 bits) and the command's index (keeps the sort stable)
+		priority = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, priority));
+		sortKeys[command] = ((long)priority << 48) |
+				((long)(material & 0xFF) << 40) | ((long)(mesh & 0xFFFFFF) << 16) | command;
+		renderers[command] = null;
+		objects[command] = null;
+		return command;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the number of commands.
+	 * 
+	 * @return The number of commands.
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns the number of objects the frame is built from.
+	 * 
+	 * @return The number of source objects.
+	 */
+	public int getSourceCount() {
+		return sourceCount;
+	}
+	
+	/**
+	 * Returns an object the frame is built from.
+	 * 
+	 * @param index The object's index (in the drawing order).
+	 * @return The source object.
+	 */
+	public Object3D getSource(int index) {
+		return sources[index];
+	}
+	
+	/**
+	 * Returns the commands' transforms.
+	 * 
+	 * <p>The model matrix of a command starts at {@link #getModelOffset(int)} and its normal matrix
+	 * at {@link #getNormalOffset(int)}.</p>
+	 * 
+	 * @return The transforms array.
+	 */
+	public float[] getTransforms() {
+		return transforms;
+	}
+	
+	/**
+	 * Returns the offset of a command's model matrix.
+	 * 
+	 * @param command The command's index.
+	 * @return The offset inside the transforms array.
+	 */
+	public static int getModelOffset(int command) {
+		return command * TRANSFORM_SIZE;
+	}
+	
+	/**
+	 * Returns the offset of a command's normal matrix.
+	 * 
+	 * @param command The command's index.
+	 * @return The offset inside the transforms array.
+	 */
+	public static int getNormalOffset(int command) {
+		return command * TRANSFORM_SIZE + 16;
+	}
+	
+	/**
+	 * Returns a command's material id.
+	 * 
+	 * @param command The command's index.
+	 * @return The material id.
+	 */
+	public int getMaterial(int command) {
+		return materials[command];
+	}
+	
+	/**
+	 * Returns the frame's view matrix.
+	 * 
+	 * @return The view matrix.
+	 */
+	public float[] getViewMatrix() {
+		return viewMatrix;
+	}
+	
+	/**
+	 * Returns the frame's view-projection matrix.
+	 * 
+	 * @return The view-projection matrix.
+	 */
+	public float[] getViewProjectionMatrix() {
+		return viewProjectionMatrix;
+	}
+	
+	/**
+	 * Returns the camera's position in world space.
+	 * 
+	 * @return The camera's position (x, y, z).
+	 */
+	public float[] getCameraPosition() {
+		return cameraPosition;
+	}
+	
+}
@@ -0,0 +1,191 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+
+/**
+ * An offscreen framebuffer (a color texture and a depth buffer) that a scene can be drawn into at
+ * a lower resolution, then stretched over the viewport.
+ * 
+ * <p>The buffers are (re)allocated when the requested size changes or when the OpenGL context
+ * was lost.</p>
+ * 
+ * <p>Note: The shader used to draw the target should abide by the following conventions:
+ * <ul>
+ *     <li>the vertex shader accepts the a_position (in clip space) and a_textureCoords
+ *     attributes;</li>
+ *     <li>the u_texture uniform receives the target's texture;</li>
+ * </ul>
+ * </p>
+ */
+public class RenderTarget {
+	
+	/**
+	 * The full screen quad: the clip space position and the texture coordinates of each vertex
+	 * (a triangle strip).
+	 */
+	protected static final float[] QUAD = {
+			-1, -1, 0, 0,
+			1, -1, 1, 0,
+			-1, 1, 0, 1,
+			1, 1, 1, 1
+	};
+	
+	
+	/**
+	 * The framebuffer object.
+	 */
+	protected int framebuffer = 0;
+	
+	/**
+	 * The color texture.
+	 */
+	protected int texture = 0;
+	
+	/**
+	 * The depth renderbuffer.
+	 */
+	protected int depthBuffer = 0;
+	
+	/**
+	 * The buffers' size (in pixels).
+	 */
+	protected int width = 0, height = 0;
+	
+	/**
+	 * The EGL context generation the buffers were allocated in.
+	 */
+	protected int generation = -1;
+	
+	/**
+	 * The quad's vertices.
+	 */
+	protected final FloatBuffer quadBuffer = BufferUtils.asBuffer(QUAD);
+	
+	
+	/**
+	 * Binds the target (allocating it if needed) and sets the viewport to its size.
+	 * 
+	 * @param width The target's width (in pixels).
+	 * @param height The target's height (in pixels).
+	 */
+	public void bind(int width, int height) {
+		width = Math.max(1, width);
+		height = Math.max(1, height);
+		if (framebuffer == 0 || generation != GLAssetManager.getInstance().getContextGeneration() ||
+				width != this.width || height != this.height) {
+			destroy();
+			allocate(width, height);
+		}
+		
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+		GLES20.glViewport(0, 0, width, height);
+	}
+	
+	/**
+	 * Binds the default framebuffer back.
+	 * 
+	 * @param viewportWidth The viewport's width.
+	 * @param viewportHeight The viewport's height.
+	 */
+	public void unbind(int viewportWidth, int viewportHeight) {
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+		GLES20.glViewport(0, 0, viewportWidth, viewportHeight);
+	}
+	
+	/**
+	 * Draws the target's texture over the whole viewport.
+	 * 
+	 * @param shader The blitting shader.
+	 */
+	public void draw(Shader shader) {
+		shader.use();
+		
+		int a_position = shader.getAttribLocation("a_position");
+		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
+		
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+		GLES20.glUniform1i(shader.getUniformLocation("u_texture"), 0);
+		
+		quadBuffer.position(0);
+		GLES20.glVertexAttribPointer(a_position, 2, GLES20.GL_FLOAT, false, 4 * 4, quadBuffer);
+		quadBuffer.position(2);
+		GLES20.glVertexAttribPointer(a_textureCoords, 2, GLES20.GL_FLOAT, false, 4 * 4, quadBuffer);
+		GLES20.glEnableVertexAttribArray(a_position);
+		GLES20.glEnableVertexAttribArray(a_textureCoords);
+		
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+		FrameProfiler.getInstance().countDraw(2);
+		
+		GLES20.glDisableVertexAttribArray(a_textureCoords);
+	}
+	
+	/**
+	 * Destroys the target's buffers (the ones of a lost context are only forgotten).
+	 */
+	public void destroy() {
+		if (framebuffer != 0 && generation == GLAssetManager.getInstance().getContextGeneration()) {
+			GLES20.glDeleteFramebuffers(1, new int[] { framebuffer }, 0);
+			GLES20.glDeleteRenderbuffers(1, new int[] { depthBuffer }, 0);
+			GLES20.glDeleteTextures(1, new int[] { texture }, 0);
+		}
+		framebuffer = 0;
+		depthBuffer = 0;
+		texture = 0;
+		width = 0;
+		height = 0;
+	}
+	
+	
+	// some internally used methods
+	
+	/**
+	 * Allocates the framebuffer and its attachments.
+	 * 
+	 * @param width The target's width.
+	 * @param height The target's height.
+	 */
+	protected void allocate(int width, int height) {
+		int[] names = new int[1];
+		
+		GLES20.glGenTextures(1, names, 0);
+		texture = names[0];
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+		GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGB, width, height, 0,
+				GLES20.GL_RGB, GLES20.GL_UNSIGNED_BYTE, null);
+		// no mipmaps and no wrapping (the size isn't necessarily a power of two)
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		
+		GLES20.glGenRenderbuffers(1, names, 0);
+		depthBuffer = names[0];
+		GLES20.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, depthBuffer);
+		GLES20.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES20.GL_DEPTH_COMPONENT16,
+				width, height);
+		
+		GLES20.glGenFramebuffers(1, names, 0);
+		framebuffer = names[0];
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+		GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+				GLES20.GL_TEXTURE_2D, texture, 0);
+		GLES20.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT,
+				GLES20.GL_RENDERBUFFER, depthBuffer);
+		
+		this.width = width;
+		this.height = height;
+		generation = GLAssetManager.getInstance().getContextGeneration();
+		
+		int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+		GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+		if (texture <= 0 || depthBuffer <= 0 || status != GLES20.GL_FRAMEBUFFER_COMPLETE)
+			throw new RuntimeException("Unable to allocate the render target!");
+	}
+	
+}
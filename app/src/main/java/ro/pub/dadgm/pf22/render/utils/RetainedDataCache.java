@@ -0,0 +1,259 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the CPU-side copies of the GPU resources (decoded images, parsed meshes, built vertex
+ * data), so that they can be uploaded again without being rebuilt.
+ * 
+ * <p>The GL objects are lost along with the EGL context (e.g. when the activity is paused), while
+ * the data they were uploaded from is usually discarded right after the upload. The loaders retain
+ * it here instead, indexed by the same keys that they use for their GL objects, and look it up
+ * before reading / decoding anything.</p>
+ * 
+ * <p>The memory used by the retained data is accounted (as estimated by the loaders) and kept under
+ * a configurable budget by dropping the least recently used entries. The dropped data is simply
+ * rebuilt on its next load.</p>
+ * 
+ * <p>The retained objects are shared, so they must not be modified (or recycled) by their users.
+ * All methods are thread-safe.</p>
+ */
+public class RetainedDataCache {
+	
+	/**
+	 * The default memory budget for the retained data, in bytes.
+	 * 
+	 * <p>The activity replaces it with a budget scaled to the device's memory class.</p>
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 24 * 1024 * 1024;
+	
+	/**
+	 * Stores a retained object and its size.
+	 */
+	protected static class Entry {
+		
+		/**
+		 * The retained object.
+		 */
+		protected final Object data;
+		
+		/**
+		 * The estimated memory used by the object, in bytes.
+		 */
+		protected final long size;
+		
+		
+		/**
+		 * Initializes the entry.
+		 * 
+		 * @param data The retained object.
+		 * @param size The object's size, in bytes.
+		 */
+		protected Entry(Object data, long size) {
+			this.data = data;
+			this.size = size;
+		}
+	}
+	
+	/**
+	 * The singleton instance.
+	 */
+	protected static RetainedDataCache instance = null;
+	
+	/**
+	 * The retained entries, indexed by their keys.
+	 * 
+	 * <p>The map is kept in access order, so its iteration starts with the least recently used
+	 * entry.</p>
+	 */
+	protected final LinkedHashMap<String, Entry> entries;
+	
+	/**
+	 * The memory budget, in bytes.
+	 */
+	protected long memoryBudget;
+	
+	/**
+	 * The estimated memory currently used by the retained data, in bytes.
+	 */
+	protected long memoryUsage = 0;
+	
+	/**
+	 * The number of lookups that found their data.
+	 */
+	protected int hitCount = 0;
+	
+	/**
+	 * The number of lookups that did not find their data.
+	 */
+	protected int missCount = 0;
+	
+	
+	/**
+	 * Returns the application-wide cache instance.
+	 * 
+	 * @return The retained data cache.
+	 */
+	public static synchronized RetainedDataCache getInstance() {
+		if (instance == null)
+			instance = new RetainedDataCache(DEFAULT_MEMORY_BUDGET);
+		return instance;
+	}
+	
+	/**
+	 * Constructs an empty cache.
+	 * 
+	 * @param memoryBudget The memory budget, in bytes.
+	 */
+	protected RetainedDataCache(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+	
+	
+	/**
+	 * Retains an object, replacing the previous one with the same key.
+	 * 
+	 * <p>The least recently used entries are dropped to make room for it. An object that is larger
+	 * than the whole budget is not retained.</p>
+	 * 
+	 * @param key The object's key.
+	 * @param data The object to retain.
+	 * @param size The object's estimated size, in bytes.
+	 * @return Whether the object was retained.
+	 */
+	public synchronized boolean put(String key, Object data, long size) {
+		remove(key);
+		if (size > memoryBudget)
+			return false;
+		
+		trim(memoryBudget - size);
+		entries.put(key, new Entry(data, size));
+		memoryUsage += size;
+		return true;
+	}
+	
+	/**
+	 * Returns (and marks as recently used) a retained object.
+	 * 
+	 * @param key The object's key.
+	 * @return The retained object, null if it is not retained.
+	 */
+	public synchronized Object get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.data;
+	}
+	
+	/**
+	 * Checks whether an object is retained (without marking it as used).
+	 * 
+	 * @param key The object's key.
+	 * @return True if the object is retained.
+	 */
+	public synchronized boolean contains(String key) {
+		return entries.containsKey(key);
+	}
+	
+	/**
+	 * Drops a retained object.
+	 * 
+	 * @param key The object's key.
+	 * @return The dropped object, null if it was not retained.
+	 */
+	public synchronized Object remove(String key) {
+		Entry entry = entries.remove(key);
+		if (entry == null)
+			return null;
+		memoryUsage -= entry.size;
+		return entry.data;
+	}
+	
+	/**
+	 * Changes the memory budget, dropping entries if needed.
+	 * 
+	 * @param budget The new budget, in bytes.
+	 */
+	public synchronized void setMemoryBudget(long budget) {
+		memoryBudget = budget;
+		trim(memoryBudget);
+	}
+	
+	/**
+	 * Drops all retained data (e.g. when the system is low on memory).
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		memoryUsage = 0;
+	}
+	
+	/**
+	 * Drops the least recently used entries until the memory usage drops to the specified limit.
+	 * 
+	 * @param limit The memory usage to reach, in bytes.
+	 */
+	protected void trim(long limit) {
+		Iterator<Entry> it = entries.values().iterator();
+		while (memoryUsage > limit && it.hasNext()) {
+			memoryUsage -= it.next().size;
+			it.remove();
+		}
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the memory budget.
+	 * 
+	 * @return The budget, in bytes.
+	 */
+	@SuppressWarnings("unused")
+	public synchronized long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * Returns the estimated memory used by the retained data.
+	 * 
+	 * @return The memory usage, in bytes.
+	 */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+	
+	/**
+	 * Returns the number of retained entries.
+	 * 
+	 * @return The entry count.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+	
+	/**
+	 * Returns the number of lookups that found their data.
+	 * 
+	 * @return The hit count.
+	 */
+	@SuppressWarnings("unused")
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+	
+	/**
+	 * Returns the number of lookups that did not find their data.
+	 * 
+	 * @return The miss count.
+	 */
+	@SuppressWarnings("unused")
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+	
+}
@@ -2,12 +2,18 @@ package ro.pub.dadgm.pf22.render.utils;
 
 import android.content.Context;
 import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
 import android.util.Log;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -19,6 +25,19 @@ import ro.pub.dadgm.pf22.activity.MainActivity;
  * <p>It reads the shader code from the application's raw resources directory and builds the shader 
  * program. It also caches the compiled shaders and future load requests will be fetched from cache.</p>
  * 
+ * <p>A shader can be specialized into variants by a set of preprocessor defines, which are injected
+ * at the beginning of its code (e.g. <code>#define NO_SPECULAR</code>), so the sources can use
+ * <code>#ifdef</code> blocks instead of uniform-driven branching. Each variant is compiled (and 
+ * cached) separately, keyed by its resource and its define set (the defines' order does not 
+ * matter).</p>
+ * 
+ * <p>The linked programs are kept until the OpenGL context is lost (see {@link #clear()}), even if
+ * no shader object uses them anymore, so switching between the views doesn't rebuild them. If the 
+ * driver supports retrieving program binaries (OpenGL ES 3.0), the binaries are also persisted 
+ * (see {@link #initBinaryCache}) and the programs are loaded from them after the context is 
+ * recreated (or the application is restarted), skipping the compilation. The time spent building
+ * the programs is recorded (see the getters).</p>
+ *  
  * <p>Use the methods only from the rendering thread!</p>
  */
 public class ShaderLoader {
@@ -28,13 +47,42 @@ public class ShaderLoader {
 	 * 
 	 * <p>It will also store linked programs. The keys used are: 
 	 * <ul>
-	 *     <li><i>shad_{TYPE}_{RESOURCEID}</i> - for shaders</li>
-	 *     <li><i>prog_{VERTEX_SHADER}_{FRAGMENT_SHADER}</i> - for shader programs</li>
+	 *     <li><i>shad_{TYPE}_{RESOURCEID}[_{DEFINES}]</i> - for shaders</li>
+	 *     <li><i>prog_{VERTEX_RESOURCEID}_{FRAGMENT_RESOURCEID}[_{DEFINES}]</i> - for shader programs</li>
 	 * </ul>
 	 * </p>
 	 */
 	protected static Map<String, Integer> shaderCache = new HashMap<>();
 	
+	/**
+	 * The name of the program binaries' directory (inside the application's cache directory).
+	 */
+	public static final String BINARY_CACHE_DIR = "shaders";
+	
+	/**
+	 * The persistent cache of the programs' binaries (null if not supported by the driver).
+	 */
+	protected static ProgramBinaryCache binaryCache = null;
+	
+	/**
+	 * The shaders' source codes, indexed by their resource IDs.
+	 * 
+	 * <p>Unlike the GL objects, the sources survive the context loss (they are tiny), so the 
+	 * programs can be rebuilt without reading the resources again.</p>
+	 */
+	protected static Map<Integer, String> sourceCache = new HashMap<>();
+	
+	/**
+	 * The total time spent compiling shaders, linking programs and loading program binaries 
+	 * (in nanoseconds).
+	 */
+	protected static long compileTime = 0, linkTime = 0, binaryLoadTime = 0;
+	
+	/**
+	 * The number of programs that were linked from sources / loaded from binaries.
+	 */
+	protected static int linkedPrograms = 0, binaryPrograms = 0;
+	
 	
 	/**
 	 * Loads a shader program from a resource.
@@ -44,17 +92,46 @@ public class ShaderLoader {
 	 * @return Shader's GL identifier, 0 if load failed.
 	 */
 	public static int loadShader(int type, int resourceId) {
+		return loadShader(type, resourceId, null);
+	}
+	
+	/**
+	 * Loads a variant of a shader program from a resource.
+	 * 
+	 * @param type GL shader's type (GL_VERTEX_SHADER / GL_FRAGMENT_SHADER).
+	 * @param resourceId The resource ID of the program.
+	 * @param defines The preprocessor symbols to define (null or empty for the base variant).
+	 * @return Shader's GL identifier, 0 if load failed.
+	 */
+	public static int loadShader(int type, int resourceId, String[] defines) {
 		// check the shader cache if the shader was already loaded
-		String cacheKey = "shad_" + type + "_" + resourceId;
+		String cacheKey = getShaderKey(type, resourceId, defines);
 		if (shaderCache.containsKey(cacheKey)) {
 			return shaderCache.get(cacheKey);
 		}
 		
-		String shaderCode = readRawTextResource(
-				MainActivity.getAppContext(), resourceId);
+		String shaderCode = readShaderCode(resourceId, defines);
 		if (shaderCode == null)
 			return 0; // shader not found
 		
+		int shader = compileShader(type, shaderCode);
+		if (shader != 0) {
+			// add it to the cache
+			shaderCache.put(cacheKey, shader);
+		}
+		
+		return shader;
+	}
+	
+	/**
+	 * Compiles a shader.
+	 * 
+	 * @param type GL shader's type (GL_VERTEX_SHADER / GL_FRAGMENT_SHADER).
+	 * @param shaderCode The shader's source code.
+	 * @return Shader's GL identifier, 0 if the compilation failed.
+	 */
+	protected static int compileShader(int type, String shaderCode) {
+		long startTime = System.nanoTime();
 		int shader = GLES20.glCreateShader(type);
 		if (shader == 0) {
 			Log.w("ShaderLoader", "Shader allocation failed! GL error: " + GLES20.glGetError());
@@ -75,12 +152,10 @@ public class ShaderLoader {
 			return 0;
 		}
 		
-		// add it to the cache
-		shaderCache.put(cacheKey, shader);
-		
+		compileTime += System.nanoTime() - startTime;
 		return shader;
 	}
-
+	
 	/**
 	 * Loads the shader resources specified and links them together into a program.
 	 * 
@@ -90,15 +165,47 @@ public class ShaderLoader {
 	 * @return A GL program identifier if successful, 0 otherwise.
 	 */
 	public static int createProgram(int vertexResource, int fragmentResource, String[] bindAttributes) {
-		int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexResource);
-		int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentResource);
-		
+		return createProgram(vertexResource, fragmentResource, null, bindAttributes);
+	}
+	
+	/**
+	 * Loads a variant of the shader resources specified and links them together into a program.
+	 * 
+	 * <p>The same defines are injected into both shaders.</p>
+	 * 
+	 * @param vertexResource The android resource ID for the vertex shader code.
+	 * @param fragmentResource The android resource ID for the fragment shader code.
+	 * @param defines The preprocessor symbols to define (null or empty for the base variant).
+	 * @param bindAttributes A list of attributes to bind. Null to disable binding.   
+	 * @return A GL program identifier if successful, 0 otherwise.
+	 */
+	public static int createProgram(int vertexResource, int fragmentResource, String[] defines, 
+									String[] bindAttributes) {
 		// check the shader cache if the program was already linked
-		String cacheKey = "prog_" + vertexShader + "_" + fragmentShader;
+		String cacheKey = getProgramKey(vertexResource, fragmentResource, defines);
 		if (shaderCache.containsKey(cacheKey)) {
 			return shaderCache.get(cacheKey);
 		}
 		
+		// try the persisted binary first
+		String binaryKey = null;
+		if (binaryCache != null) {
+			String vertexCode = readShaderCode(vertexResource, defines);
+			String fragmentCode = readShaderCode(fragmentResource, defines);
+			if (vertexCode != null && fragmentCode != null) {
+				binaryKey = binaryCache.computeKey(vertexCode, fragmentCode, bindAttributes);
+				
+				int program = loadProgramBinary(binaryKey);
+				if (program != 0) {
+					shaderCache.put(cacheKey, program);
+					return program;
+				}
+			}
+		}
+		
+		long startTime = System.nanoTime();
+		int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexResource, defines);
+		int fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentResource, defines);
 		if (vertexShader == 0 || fragmentShader == 0) {
 			return 0; // shader creation failed
 		}
@@ -120,6 +227,9 @@ public class ShaderLoader {
 			}
 		}
 		
+		if (binaryKey != null)
+			GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+		long linkStartTime = System.nanoTime();
 		GLES20.glLinkProgram(program);
 		
 		// check if link succeeded
@@ -132,12 +242,116 @@ public class ShaderLoader {
 			return 0;
 		}
 		
+		long endTime = System.nanoTime();
+		linkTime += endTime - linkStartTime;
+		linkedPrograms++;
+		Log.d("ShaderLoader", "Built program " + cacheKey + " in " + (endTime - startTime) / 1000 + " us.");
+		
+		if (binaryKey != null)
+			saveProgramBinary(program, binaryKey);
+		
 		// add it to the cache
 		shaderCache.put(cacheKey, program);
 		
 		return program;
 	}
-
+	
+	/**
+	 * Enables the persistent program binaries cache, if the driver supports it.
+	 * 
+	 * <p>To be called after the OpenGL context was (re)created, right after {@link #clear()}.</p>
+	 * 
+	 * @param directory The directory to store the binaries into.
+	 */
+	public static void initBinaryCache(File directory) {
+		binaryCache = null;
+		if (!isProgramBinarySupported())
+			return;
+		
+		String driverId = GLES20.glGetString(GLES20.GL_VENDOR) + "|" + GLES20.glGetString(GLES20.GL_RENDERER) + 
+				"|" + GLES20.glGetString(GLES20.GL_VERSION) + "|" + Build.FINGERPRINT;
+		binaryCache = new ProgramBinaryCache(directory, driverId);
+		binaryCache.checkDriver();
+	}
+	
+	/**
+	 * Checks whether the current context supports retrieving / loading program binaries.
+	 * 
+	 * <p>Requires an OpenGL ES 3.0 context (the GLES 2.0 extension has no Java bindings) and at
+	 * least one binary format.</p>
+	 * 
+	 * @return True if the program binaries are supported.
+	 */
+	public static boolean isProgramBinarySupported() {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2)
+			return false;
+		
+		String version = GLES20.glGetString(GLES20.GL_VERSION);
+		if (version == null || !version.startsWith("OpenGL ES ") || version.startsWith("OpenGL ES 2"))
+			return false;
+		
+		int[] formats = new int[1];
+		GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+		return formats[0] > 0;
+	}
+	
+	/**
+	 * Creates a program from its persisted binary.
+	 * 
+	 * <p>The binaries rejected by the driver are deleted.</p>
+	 * 
+	 * @param binaryKey The program's key (inside the binaries cache).
+	 * @return A GL program identifier if successful, 0 otherwise.
+	 */
+	protected static int loadProgramBinary(String binaryKey) {
+		long startTime = System.nanoTime();
+		ProgramBinaryCache.ProgramBinary binary = binaryCache.load(binaryKey);
+		if (binary == null)
+			return 0;
+		
+		int program = GLES20.glCreateProgram();
+		if (program == 0)
+			return 0;
+		
+		ByteBuffer data = binary.getData();
+		GLES30.glProgramBinary(program, binary.getFormat(), data, data.remaining());
+		
+		final int[] linkStatus = new int[1];
+		GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+		if (linkStatus[0] == 0) {
+			Log.w("ShaderLoader", "Program binary " + binaryKey + " rejected, rebuilding it.");
+			GLES20.glDeleteProgram(program);
+			binaryCache.delete(binaryKey);
+			return 0;
+		}
+		
+		binaryLoadTime += System.nanoTime() - startTime;
+		binaryPrograms++;
+		return program;
+	}
+	
+	/**
+	 * Persists a linked program's binary.
+	 * 
+	 * @param program The program's GL identifier.
+	 * @param binaryKey The program's key (inside the binaries cache).
+	 */
+	protected static void saveProgramBinary(int program, String binaryKey) {
+		final int[] length = new int[1];
+		GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+		if (length[0] <= 0)
+			return;
+		
+		final int[] format = new int[1];
+		ByteBuffer data = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+		GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, data);
+		if (GLES20.glGetError() != GLES20.GL_NO_ERROR || length[0] <= 0)
+			return;
+		
+		data.limit(length[0]);
+		binaryCache.store(binaryKey, format[0], data);
+	}
+	
 	/**
 	 * Deletes the specified vertex / fragment shaders from OpenGL.
 	 * Use 0 to ignore an argument.
@@ -149,11 +363,26 @@ public class ShaderLoader {
 	 * @return True if all of them were deleted, false otherwise.
 	 */
 	public static boolean deleteShaders(int vertexResource, int fragmentResource) {
+		return deleteShaders(vertexResource, fragmentResource, null);
+	}
+	
+	/**
+	 * Deletes a variant of the specified vertex / fragment shaders from OpenGL.
+	 * Use 0 to ignore a resource.
+	 * 
+	 * <p>If both are specified, the program that links them together is also deleted.</p>
+	 * 
+	 * @param vertexResource The android resource ID for the vertex shader code.
+	 * @param fragmentResource The android resource ID for the fragment shader code.
+	 * @param defines The variant's preprocessor symbols (null or empty for the base variant).
+	 * @return True if all of them were deleted, false otherwise.
+	 */
+	public static boolean deleteShaders(int vertexResource, int fragmentResource, String[] defines) {
 		boolean success = true;
 		
 		int vertexShader = 0;
 		int fragmentShader = 0;
-		String cacheKey = "shad_" + GLES20.GL_VERTEX_SHADER + "_" + vertexResource;
+		String cacheKey = getShaderKey(GLES20.GL_VERTEX_SHADER, vertexResource, defines);
 		if (vertexResource !=0  && shaderCache.containsKey(cacheKey)) {
 			vertexShader = shaderCache.get(cacheKey);
 			GLES20.glDeleteShader(vertexShader);
@@ -162,7 +391,7 @@ public class ShaderLoader {
 			success = false;
 		}
 		
-		cacheKey = "shad_" + GLES20.GL_FRAGMENT_SHADER + "_" + fragmentResource;
+		cacheKey = getShaderKey(GLES20.GL_FRAGMENT_SHADER, fragmentResource, defines);
 		if (fragmentResource !=0  && shaderCache.containsKey(cacheKey)) {
 			fragmentShader = shaderCache.get(cacheKey);
 			GLES20.glDeleteShader(fragmentShader);
@@ -171,18 +400,113 @@ public class ShaderLoader {
 			success = false;
 		}
 		
-		if (vertexShader !=0 && fragmentShader !=0) {
+		if (vertexResource != 0 && fragmentResource != 0) {
 			// delete the program, too
-			cacheKey = "prog_" + vertexShader + "_" + fragmentShader;
+			cacheKey = getProgramKey(vertexResource, fragmentResource, defines);
 			if (shaderCache.containsKey(cacheKey)) {
 				int program = shaderCache.get(cacheKey);
 				GLES20.glDeleteProgram(program);
+				shaderCache.remove(cacheKey);
 			} else success = false;
 		}
 		
 		return success;
 	}
-
+	
+	/**
+	 * Returns the canonical key of a define set (the sorted, distinct symbols, separated by 
+	 * commas).
+	 * 
+	 * @param defines The preprocessor symbols (may be null).
+	 * @return The define set's key (empty for the base variant).
+	 */
+	public static String getDefinesKey(String[] defines) {
+		if (defines == null || defines.length == 0)
+			return "";
+		
+		String[] sorted = Arrays.copyOf(defines, defines.length);
+		Arrays.sort(sorted);
+		
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < sorted.length; i++) {
+			if (i > 0 && sorted[i].equals(sorted[i - 1]))
+				continue;
+			if (key.length() > 0)
+				key.append(',');
+			key.append(sorted[i]);
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Returns the cache key of a shader variant.
+	 * 
+	 * @param type GL shader's type.
+	 * @param resourceId The resource ID of the program.
+	 * @param defines The variant's preprocessor symbols (may be null).
+	 * @return The cache key.
+	 */
+	protected static String getShaderKey(int type, int resourceId, String[] defines) {
+		String definesKey = getDefinesKey(defines);
+		return "shad_" + type + "_" + resourceId + (definesKey.isEmpty() ? "" : "_" + definesKey);
+	}
+	
+	/**
+	 * Returns the cache key of a program variant.
+	 * 
+	 * @param vertexResource The android resource ID for the vertex shader code.
+	 * @param fragmentResource The android resource ID for the fragment shader code.
+	 * @param defines The variant's preprocessor symbols (may be null).
+	 * @return The cache key.
+	 */
+	protected static String getProgramKey(int vertexResource, int fragmentResource, String[] defines) {
+		String definesKey = getDefinesKey(defines);
+		return "prog_" + vertexResource + "_" + fragmentResource + (definesKey.isEmpty() ? "" : "_" + definesKey);
+	}
+	
+	/**
+	 * Reads the code of a shader variant.
+	 * 
+	 * @param resourceId The resource ID of the shader.
+	 * @param defines The preprocessor symbols to define (may be null).
+	 * @return The variant's source code, null if reading failed.
+	 */
+	protected static String readShaderCode(int resourceId, String[] defines) {
+		String shaderCode = sourceCache.get(resourceId);
+		if (shaderCode == null) {
+			shaderCode = readRawTextResource(MainActivity.getAppContext(), resourceId);
+			if (shaderCode == null)
+				return null;
+			sourceCache.put(resourceId, shaderCode);
+		}
+		return injectDefines(shaderCode, defines);
+	}
+	
+	/**
+	 * Injects the <code>#define</code> directives of a variant into a shader's code.
+	 * 
+	 * <p>The directives are inserted at the beginning of the code, or after the 
+	 * <code>#version</code> directive, if present (it must be the first one).</p>
+	 * 
+	 * @param shaderCode The shader's source code.
+	 * @param defines The preprocessor symbols to define (may be null).
+	 * @return The variant's source code.
+	 */
+	public static String injectDefines(String shaderCode, String[] defines) {
+		if (defines == null || defines.length == 0)
+			return shaderCode;
+		
+		StringBuilder directives = new StringBuilder();
+		for (String define: defines) {
+			directives.append("#define ").append(define).append('\n');
+		}
+		
+		int offset = 0;
+		if (shaderCode.startsWith("#version"))
+			offset = shaderCode.indexOf('\n') + 1;
+		return shaderCode.substring(0, offset) + directives + shaderCode.substring(offset);
+	}
+	
 	/**
 	 * Reads a raw text resource file from the application's assets directory.
 	 * 
@@ -213,9 +537,65 @@ public class ShaderLoader {
 	/**
 	 * Cleans up the internal state of the object.
 	 * To be called when the EGL context has been reset.
+	 * 
+	 * <p>The shaders' sources are kept.</p>
 	 */
 	public static void clear() {
 		shaderCache.clear();
+		binaryCache = null;
 	}
-
+	
+	
+	// getters
+	
+	/**
+	 * Returns the total time spent compiling the shaders.
+	 * 
+	 * @return The time, in nanoseconds.
+	 */
+	@SuppressWarnings("unused")
+	public static long getCompileTime() {
+		return compileTime;
+	}
+	
+	/**
+	 * Returns the total time spent linking the programs.
+	 * 
+	 * @return The time, in nanoseconds.
+	 */
+	@SuppressWarnings("unused")
+	public static long getLinkTime() {
+		return linkTime;
+	}
+	
+	/**
+	 * Returns the total time spent loading the programs from their binaries.
+	 * 
+	 * @return The time, in nanoseconds.
+	 */
+	@SuppressWarnings("unused")
+	public static long getBinaryLoadTime() {
+		return binaryLoadTime;
+	}
+	
+	/**
+	 * Returns the number of programs that were linked from their sources.
+	 * 
+	 * @return The program count.
+	 */
+	@SuppressWarnings("unused")
+	public static int getLinkedPrograms() {
+		return linkedPrograms;
+	}
+	
+	/**
+	 * Returns the number of programs that were loaded from their binaries.
+	 * 
+	 * @return The program count.
+	 */
+	@SuppressWarnings("unused")
+	public static int getBinaryPrograms() {
+		return binaryPrograms;
+	}
+	
 }
@@ -0,0 +1,196 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.opengl.GLES20;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+
+/**
+ * Packs the bitmaps of the HUD widgets into a single texture, so they can be drawn together (see
+ * {@link SpriteBatch}).
+ * 
+ * <p>The sprites are added by name (usually once, by the first widget that needs them) and are
+ * packed in rows. The atlas bitmap is kept, so the texture is simply uploaded again when a
+ * sprite is added or when the OpenGL context is lost.</p>
+ * 
+ * <p>A small white sprite ({@link #SPRITE_WHITE}) is always present, for drawing solid
+ * colored quads.</p>
+ */
+public class SpriteAtlas {
+	
+	/**
+	 * The name of the built-in white sprite.
+	 */
+	public static final String SPRITE_WHITE = "white";
+	
+	/**
+	 * The transparent border left around each sprite (in pixels), so the linear filtering doesn't
+	 * bleed the neighbours in.
+	 */
+	protected static final int PADDING = 2;
+	
+	
+	/**
+	 * The atlas' bitmap (the packed sprites).
+	 */
+	protected Bitmap bitmap;
+	
+	/**
+	 * The texture coordinates of the sprites (s0, t0, s1, t1), indexed by their names.
+	 */
+	protected Map<String, float[]> regions;
+	
+	/**
+	 * The position of the next sprite inside the current row.
+	 */
+	protected int rowX = 0, rowY = 0;
+	
+	/**
+	 * The height of the current row.
+	 */
+	protected int rowHeight = 0;
+	
+	/**
+	 * The uploaded texture's handle (0 if not uploaded).
+	 */
+	protected int texture = 0;
+	
+	/**
+	 * The EGL context generation the texture was uploaded in.
+	 */
+	protected int generation = -1;
+	
+	/**
+	 * Whether sprites were added since the texture was uploaded.
+	 */
+	protected boolean dirty = true;
+	
+	
+	/**
+	 * Creates an empty atlas (containing only the white sprite).
+	 * 
+	 * @param width The atlas' width (in pixels).
+	 * @param height The atlas' height (in pixels).
+	 */
+	public SpriteAtlas(int width, int height) {
+		bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		bitmap.eraseColor(Color.TRANSPARENT);
+		regions = new HashMap<>();
+		
+		Bitmap white = Bitmap.createBitmap(4, 4, Bitmap.Config.ARGB_8888);
+		white.eraseColor(Color.WHITE);
+		addSprite(SPRITE_WHITE, white);
+		white.recycle();
+		
+		// sample the white sprite's center only
+		float[] region = regions.get(SPRITE_WHITE);
+		float s = (region[0] + region[2]) / 2, t = (region[1] + region[3]) / 2;
+		regions.put(SPRITE_WHITE, new float[] { s, t, s, t });
+	}
+	
+	/**
+	 * Packs a sprite into the atlas.
+	 * 
+	 * <p>The bitmap is copied, so it can be recycled afterwards. A sprite that was already added
+	 * is replaced (the old space is not reclaimed).</p>
+	 * 
+	 * @param name The sprite's name.
+	 * @param sprite The sprite's bitmap.
+	 */
+	public void addSprite(String name, Bitmap sprite) {
+		int width = sprite.getWidth() + 2 * PADDING, height = sprite.getHeight() + 2 * PADDING;
+		if (rowX + width > bitmap.getWidth()) {
+			// start a new row
+			rowX = 0;
+			rowY += rowHeight;
+			rowHeight = 0;
+		}
+		if (width > bitmap.getWidth() || rowY + height > bitmap.getHeight())
+			throw new RuntimeException("Unable to fit the sprite '" + name + "' inside the atlas!");
+		
+		int x = rowX + PADDING, y = rowY + PADDING;
+		Canvas canvas = new Canvas(bitmap);
+		canvas.drawBitmap(sprite, x, y, new Paint());
+		
+		float atlasWidth = bitmap.getWidth(), atlasHeight = bitmap.getHeight();
+		regions.put(name, new float[] {
+				x / atlasWidth, y / atlasHeight,
+				(x + sprite.getWidth()) / atlasWidth, (y + sprite.getHeight()) / atlasHeight
+		});
+		
+		rowX += width;
+		rowHeight = Math.max(rowHeight, height);
+		dirty = true;
+	}
+	
+	/**
+	 * Checks whether a sprite was added.
+	 * 
+	 * @param name The sprite's name.
+	 * @return True if the atlas contains the sprite.
+	 */
+	public boolean hasSprite(String name) {
+		return regions.containsKey(name);
+	}
+	
+	/**
+	 * Returns a sprite's texture coordinates.
+	 * 
+	 * @param name The sprite's name.
+	 * @return The sprite's region inside the atlas (s0, t0, s1, t1), or null if not found.
+	 */
+	public float[] getRegion(String name) {
+		return regions.get(name);
+	}
+	
+	/**
+	 * Returns the atlas' texture, uploading it if it's missing or stale.
+	 * 
+	 * <p>Must be called from the OpenGL thread!</p>
+	 * 
+	 * @return The texture's handle.
+	 */
+	public int getTexture() {
+		int currentGeneration = GLAssetManager.getInstance().getContextGeneration();
+		if (generation != currentGeneration) {
+			// the texture was lost along with its context
+			texture = 0;
+		}
+		if (texture != 0 && !dirty)
+			return texture;
+		
+		if (texture != 0)
+			TextureLoader.releaseTexture(texture);
+		texture = TextureLoader.loadTexture(bitmap);
+		if (texture == 0)
+			throw new RuntimeException("Unable to allocate the sprite atlas' texture!");
+		generation = currentGeneration;
+		dirty = false;
+		
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		
+		return texture;
+	}
+	
+	/**
+	 * Frees the atlas' texture (the texture of a lost context is only forgotten).
+	 * 
+	 * <p>The sprites are kept, so the atlas can still be used afterwards.</p>
+	 */
+	public void destroy() {
+		if (texture != 0 && generation == GLAssetManager.getInstance().getContextGeneration())
+			TextureLoader.releaseTexture(texture);
+		texture = 0;
+		dirty = true;
+	}
+	
+}
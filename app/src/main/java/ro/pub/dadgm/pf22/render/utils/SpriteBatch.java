@@ -0,0 +1,522 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.Shader;
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+
+/**
+ * Draws the HUD layer (widget sprites and text glyphs) with as few draw calls as possible.
+ * 
+ * <p>Between {@link #begin()} and {@link #end()}, the objects queue textured quads (already
+ * transformed into the scene's space) instead of drawing them. The quads are streamed into a
+ * ring of vertex buffers (each orphaned before being filled, so the driver never waits for the
+ * GPU to finish reading the previous frames) and drawn using a shared index buffer.</p>
+ * 
+ * <p>A batch whose contents didn't change can be drawn again from its buffers, without being 
+ * queued again (see {@link #redraw()}).</p>
+ * 
+ * <p>The widgets' bitmaps are packed into a single {@link SpriteAtlas} and the glyphs are read
+ * from the font's distance field (on a second texture unit), so a batch is only split when a
+ * quad uses another texture (e.g. a full screen background image) or another font.</p>
+ * 
+ * <p>Note: The shader used to draw the batches should abide by the following conventions:
+ * <ul>
+ *     <li>shader's identifier is 'sprite_batch'.</li>
+ *     <li>the vertex shader accepts the a_position, a_textureCoords, a_color and a_params
+ *     (distance field flag and smoothing) attributes;</li>
+ *     <li>the following uniforms are used: u_texture (the sprites' texture), u_fontTexture (the
+ *     font's distance field), u_viewMatrix and u_projectionMatrix;</li>
+ * </ul>
+ * </p>
+ */
+public class SpriteBatch {
+	
+	/**
+	 * The number of floats per vertex: the 3D position, the texture coordinates, the RGBA color
+	 * and the distance field parameters (interleaved).
+	 */
+	public static final int VERTEX_SIZE = 11;
+	
+	/**
+	 * The maximum number of quads per draw call (limited by the 16 bit indices).
+	 */
+	public static final int MAX_QUADS = 2048;
+	
+	/**
+	 * The initial capacity of the batch, in quads (it grows as needed, up to {@link #MAX_QUADS}).
+	 */
+	protected static final int INITIAL_QUADS = 128;
+	
+	/**
+	 * The number of vertex buffers the batches are streamed into (in turn).
+	 */
+	protected static final int RING_SIZE = 3;
+	
+	/**
+	 * The size of the sprite atlas (in pixels).
+	 */
+	protected static final int ATLAS_SIZE = 256;
+	
+	
+	/**
+	 * The parent scene.
+	 */
+	protected Scene3D scene;
+	
+	/**
+	 * The atlas containing the widgets' sprites.
+	 */
+	protected SpriteAtlas atlas;
+	
+	/**
+	 * The vertex buffer objects' ring.
+	 */
+	protected int[] vbos = new int[RING_SIZE];
+	
+	/**
+	 * The index of the next vertex buffer object to use.
+	 */
+	protected int nextVBO = 0;
+	
+	/**
+	 * The shared index buffer object (two triangles for each quad).
+	 */
+	protected int ibo = 0;
+	
+	/**
+	 * The EGL context generation the buffers were allocated in.
+	 */
+	protected int generation = -1;
+	
+	/**
+	 * The work array the queued quads are built into (see {@link #VERTEX_SIZE}).
+	 */
+	protected float[] workVertices;
+	
+	/**
+	 * The work buffer used to upload the vertices.
+	 */
+	protected FloatBuffer workVertexBuf;
+	
+	/**
+	 * The number of queued quads.
+	 */
+	protected int quadCount = 0;
+	
+	/**
+	 * The sprite texture used by the queued quads (0 if none was used yet).
+	 */
+	protected int texture = 0;
+	
+	/**
+	 * The font texture used by the queued glyphs (0 if none was used yet).
+	 */
+	protected int fontTexture = 0;
+	
+	/**
+	 * Whether the batch is between {@link #begin()} and {@link #end()}.
+	 */
+	protected boolean drawing = false;
+	
+	/**
+	 * The number of draw calls issued since the last {@link #begin()}.
+	 */
+	protected int drawCalls = 0;
+	
+	/**
+	 * The draw calls of the last batch: their buffers, quad counts and textures (see 
+	 * {@link #redraw()}).
+	 */
+	protected int[] segmentVBOs = new int[RING_SIZE], segmentQuads = new int[RING_SIZE],
+			segmentTextures = new int[RING_SIZE], segmentFontTextures = new int[RING_SIZE];
+	
+	/**
+	 * The number of draw calls of the last batch.
+	 */
+	protected int segmentCount = 0;
+	
+	/**
+	 * Whether the last batch can be drawn again (its buffers weren't reused by itself).
+	 */
+	protected boolean replayable = false;
+	
+	
+	/**
+	 * Initializes the sprite batch.
+	 * 
+	 * @param scene The parent scene that provides the shader and camera.
+	 */
+	public SpriteBatch(Scene3D scene) {
+		this.scene = scene;
+		this.atlas = new SpriteAtlas(ATLAS_SIZE, ATLAS_SIZE);
+		
+		workVertices = new float[INITIAL_QUADS * 4 * VERTEX_SIZE];
+		workVertexBuf = BufferUtils.allocateFloatBuffer(workVertices.length);
+	}
+	
+	/**
+	 * Destroys the batch's buffers and the atlas' texture (the ones of a lost context are only
+	 * forgotten).
+	 * 
+	 * <p>The sprites are kept and the buffers are allocated again when next used.</p>
+	 */
+	public void destroy() {
+		if (ibo != 0 && generation == GLAssetManager.getInstance().getContextGeneration()) {
+			GLES20.glDeleteBuffers(RING_SIZE, vbos, 0);
+			GLES20.glDeleteBuffers(1, new int[] { ibo }, 0);
+		}
+		vbos = new int[RING_SIZE];
+		ibo = 0;
+		atlas.destroy();
+		
+		quadCount = 0;
+		drawing = false;
+		replayable = false;
+	}
+	
+	/**
+	 * Starts a new batch (usually, once per frame).
+	 */
+	public void begin() {
+		quadCount = 0;
+		texture = 0;
+		fontTexture = 0;
+		drawCalls = 0;
+		segmentCount = 0;
+		replayable = true;
+		drawing = true;
+	}
+	
+	/**
+	 * Draws the queued quads and ends the batch.
+	 */
+	public void end() {
+		flush();
+		drawing = false;
+	}
+	
+	/**
+	 * Draws the last batch again, from the buffers it was streamed into.
+	 * 
+	 * <p>Used when the objects didn't change since the last batch, so they don't need to be 
+	 * queued (and uploaded) again. This fails if the buffers were lost along with the OpenGL 
+	 * context or if the last batch needed more draw calls than the ring's size.</p>
+	 * 
+	 * @return True if the batch was drawn, false if it needs to be rebuilt.
+	 */
+	public boolean redraw() {
+		if (drawing || !replayable || generation != GLAssetManager.getInstance().getContextGeneration())
+			return false;
+		
+		drawCalls = 0;
+		for (int i = 0; i < segmentCount; i++) {
+			drawSegment(segmentVBOs[i], segmentQuads[i], segmentTextures[i], segmentFontTextures[i]);
+		}
+		return true;
+	}
+	
+	/**
+	 * Queues a sprite from the atlas.
+	 * 
+	 * @param sprite The sprite's name (see {@link SpriteAtlas#addSprite}).
+	 * @param x The X coordinate of the bottom left corner.
+	 * @param y The Y coordinate of the bottom left corner.
+	 * @param z The Z coordinate.
+	 * @param width The sprite's width.
+	 * @param height The sprite's height.
+	 * @param color The color to blend the sprite with (RGBA).
+	 */
+	public void drawSprite(String sprite, float x, float y, float z, float width, float height,
+			float[] color) {
+		float[] region = atlas.getRegion(sprite);
+		if (region == null)
+			throw new IllegalArgumentException("No such sprite: " + sprite);
+		
+		drawSprite(atlas.getTexture(), region, x, y, z, width, height, color);
+	}
+	
+	/**
+	 * Queues a solid colored quad.
+	 * 
+	 * @param x The X coordinate of the bottom left corner.
+	 * @param y The Y coordinate of the bottom left corner.
+	 * @param z The Z coordinate.
+	 * @param width The quad's width.
+	 * @param height The quad's height.
+	 * @param color The quad's color (RGBA).
+	 */
+	public void drawRect(float x, float y, float z, float width, float height, float[] color) {
+		drawSprite(SpriteAtlas.SPRITE_WHITE, x, y, z, width, height, color);
+	}
+	
+	/**
+	 * Queues a quad textured with a region of any texture.
+	 * 
+	 * <p>Using a texture other than the atlas splits the batch, so this should be used sparingly
+	 * (e.g. for a background image).</p>
+	 * 
+	 * @param texture The texture's handle.
+	 * @param region The texture coordinates to use (s0, t0, s1, t1; t0 is the top edge).
+	 * @param x The X coordinate of the bottom left corner.
+	 * @param y The Y coordinate of the bottom left corner.
+	 * @param z The Z coordinate.
+	 * @param width The quad's width.
+	 * @param height The quad's height.
+	 * @param color The color to blend the texture with (RGBA).
+	 */
+	public void drawSprite(int texture, float[] region, float x, float y, float z,
+			float width, float height, float[] color) {
+		if (this.texture != texture) {
+			if (this.texture != 0)
+				flush();
+			this.texture = texture;
+		}
+		
+		putQuad(x, y, x + width, y + height, z, region[0], region[1], region[2], region[3],
+				color, 0, 0);
+	}
+	
+	/**
+	 * Queues a text glyph, read from a font's distance field.
+	 * 
+	 * @param fontTexture The font's distance field texture.
+	 * @param x0 The X coordinate of the left edge.
+	 * @param y0 The Y coordinate of the bottom edge.
+	 * @param x1 The X coordinate of the right edge.
+	 * @param y1 The Y coordinate of the top edge.
+	 * @param z The Z coordinate.
+	 * @param s0 The left texture coordinate.
+	 * @param t0 The top texture coordinate.
+	 * @param s1 The right texture coordinate.
+	 * @param t1 The bottom texture coordinate.
+	 * @param color The text's color (RGBA).
+	 * @param smoothing The outline's antialiasing width (in distance field units).
+	 */
+	public void drawGlyph(int fontTexture, float x0, float y0, float x1, float y1, float z,
+			float s0, float t0, float s1, float t1, float[] color, float smoothing) {
+		if (this.fontTexture != fontTexture) {
+			if (this.fontTexture != 0)
+				flush();
+			this.fontTexture = fontTexture;
+		}
+		
+		putQuad(x0, y0, x1, y1, z, s0, t0, s1, t1, color, 1, smoothing);
+	}
+	
+	/**
+	 * Returns the atlas used for the widgets' sprites.
+	 * 
+	 * @return The sprite atlas.
+	 */
+	public SpriteAtlas getAtlas() {
+		return atlas;
+	}
+	
+	/**
+	 * Returns the number of draw calls issued by the current (or the last) batch.
+	 * 
+	 * @return The draw call count.
+	 */
+	@SuppressWarnings("unused")
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+	
+	/**
+	 * Appends a quad to the batch (drawing the queued ones first if it is full).
+	 * 
+	 * @param x0 The X coordinate of the left edge.
+	 * @param y0 The Y coordinate of the bottom edge.
+	 * @param x1 The X coordinate of the right edge.
+	 * @param y1 The Y coordinate of the top edge.
+	 * @param z The Z coordinate.
+	 * @param s0 The left texture coordinate.
+	 * @param t0 The top texture coordinate.
+	 * @param s1 The right texture coordinate.
+	 * @param t1 The bottom texture coordinate.
+	 * @param color The quad's color (RGBA).
+	 * @param distanceField 1 if the quad is a distance field glyph, 0 for plain sprites.
+	 * @param smoothing The glyph's antialiasing width.
+	 */
+	protected void putQuad(float x0, float y0, float x1, float y1, float z,
+			float s0, float t0, float s1, float t1, float[] color, float distanceField, float smoothing) {
+		if (!drawing)
+			throw new IllegalStateException("The sprite batch was not started!");
+		
+		if (quadCount == MAX_QUADS)
+			flush();
+		ensureCapacity(quadCount + 1);
+		
+		final float[] v = workVertices;
+		int k = quadCount * 4 * VERTEX_SIZE;
+		final float r = color[0], g = color[1], b = color[2], a = color[3];
+		
+		// top left, bottom left, bottom right, top right
+		v[k++] = x0; v[k++] = y1; v[k++] = z; v[k++] = s0; v[k++] = t0;
+		v[k++] = r; v[k++] = g; v[k++] = b; v[k++] = a; v[k++] = distanceField; v[k++] = smoothing;
+		v[k++] = x0; v[k++] = y0; v[k++] = z; v[k++] = s0; v[k++] = t1;
+		v[k++] = r; v[k++] = g; v[k++] = b; v[k++] = a; v[k++] = distanceField; v[k++] = smoothing;
+		v[k++] = x1; v[k++] = y0; v[k++] = z; v[k++] = s1; v[k++] = t1;
+		v[k++] = r; v[k++] = g; v[k++] = b; v[k++] = a; v[k++] = distanceField; v[k++] = smoothing;
+		v[k++] = x1; v[k++] = y1; v[k++] = z; v[k++] = s1; v[k++] = t0;
+		v[k++] = r; v[k++] = g; v[k++] = b; v[k++] = a; v[k++] = distanceField; v[k] = smoothing;
+		
+		quadCount++;
+	}
+	
+	/**
+	 * Grows the work buffers (if needed) to fit the specified number of quads.
+	 * 
+	 * @param quads The number of quads.
+	 */
+	protected void ensureCapacity(int quads) {
+		int length = quads * 4 * VERTEX_SIZE;
+		if (workVertices.length >= length)
+			return;
+		
+		int newLength = workVertices.length;
+		while (newLength < length) {
+			newLength *= 2;
+		}
+		float[] vertices = new float[newLength];
+		System.arraycopy(workVertices, 0, vertices, 0, quadCount * 4 * VERTEX_SIZE);
+		workVertices = vertices;
+		workVertexBuf = BufferUtils.allocateFloatBuffer(newLength);
+	}
+	
+	/**
+	 * Draws the queued quads, with a single draw call.
+	 */
+	protected void flush() {
+		if (quadCount == 0)
+			return;
+		
+		allocateBuffers();
+		
+		// stream the vertices into the next buffer of the ring (orphaning its previous storage)
+		int length = quadCount * 4 * VERTEX_SIZE;
+		workVertexBuf.clear();
+		workVertexBuf.put(workVertices, 0, length);
+		workVertexBuf.flip();
+		
+		final int vbo = vbos[nextVBO];
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, workVertexBuf.capacity() * 4, null,
+				GLES20.GL_STREAM_DRAW);
+		GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, length * 4, workVertexBuf);
+		nextVBO = (nextVBO + 1) % RING_SIZE;
+		
+		final int spriteTexture = (texture != 0 ? texture : atlas.getTexture());
+		drawSegment(vbo, quadCount, spriteTexture, fontTexture);
+		
+		// remember the draw call, for redrawing the batch
+		if (segmentCount < RING_SIZE) {
+			segmentVBOs[segmentCount] = vbo;
+			segmentQuads[segmentCount] = quadCount;
+			segmentTextures[segmentCount] = spriteTexture;
+			segmentFontTextures[segmentCount] = fontTexture;
+			segmentCount++;
+		} else {
+			replayable = false;
+		}
+		
+		quadCount = 0;
+	}
+	
+	/**
+	 * Draws quads from one of the ring's buffers, with a single draw call.
+	 * 
+	 * @param vbo The vertex buffer object to draw from.
+	 * @param quads The number of quads to draw.
+	 * @param texture The sprites' texture.
+	 * @param fontTexture The font's texture (0 if no glyphs are drawn).
+	 */
+	protected void drawSegment(int vbo, int quads, int texture, int fontTexture) {
+		final Shader shader = scene.getShaderManager().getShader("sprite_batch");
+		shader.use();
+		
+		// get shader attributes' locations
+		int a_position = shader.getAttribLocation("a_position");
+		int a_textureCoords = shader.getAttribLocation("a_textureCoords");
+		int a_color = shader.getAttribLocation("a_color");
+		int a_params = shader.getAttribLocation("a_params");
+		
+		// get shader uniforms' locations
+		int u_texture = shader.getUniformLocation("u_texture");
+		int u_fontTexture = shader.getUniformLocation("u_fontTexture");
+		
+		// send the textures (the sprites on the first texture unit, the font on the second one)
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, fontTexture);
+		GLES20.glUniform1i(u_fontTexture, 1);
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+		GLES20.glUniform1i(u_texture, 0);
+		
+		// send the vertex data (interleaved)
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+		final int stride = VERTEX_SIZE * 4;
+		GLES20.glVertexAttribPointer(a_position, 3, GLES20.GL_FLOAT, false, stride, 0);
+		GLES20.glVertexAttribPointer(a_textureCoords, 2, GLES20.GL_FLOAT, false, stride, 3 * 4);
+		GLES20.glVertexAttribPointer(a_color, 4, GLES20.GL_FLOAT, false, stride, 5 * 4);
+		GLES20.glVertexAttribPointer(a_params, 2, GLES20.GL_FLOAT, false, stride, 9 * 4);
+		GLES20.glEnableVertexAttribArray(a_position);
+		GLES20.glEnableVertexAttribArray(a_textureCoords);
+		GLES20.glEnableVertexAttribArray(a_color);
+		GLES20.glEnableVertexAttribArray(a_params);
+		
+		// draw!
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+		GLES20.glDrawElements(GLES20.GL_TRIANGLES, quads * 6, GLES20.GL_UNSIGNED_SHORT, 0);
+		drawCalls++;
+		FrameProfiler.getInstance().countDraw(quads * 2);
+		
+		// the other objects draw from client side arrays
+		GLES20.glDisableVertexAttribArray(a_color);
+		GLES20.glDisableVertexAttribArray(a_params);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+	}
+	
+	/**
+	 * Allocates the vertex buffers' ring and fills the index buffer (if missing or lost along
+	 * with the OpenGL context).
+	 */
+	protected void allocateBuffers() {
+		int currentGeneration = GLAssetManager.getInstance().getContextGeneration();
+		if (ibo != 0 && generation == currentGeneration)
+			return;
+		
+		int[] buffers = new int[RING_SIZE + 1];
+		GLES20.glGenBuffers(RING_SIZE + 1, buffers, 0);
+		for (int buffer: buffers) {
+			if (buffer <= 0)
+				throw new RuntimeException("Unable to allocate the sprite batch's buffers!");
+		}
+		System.arraycopy(buffers, 0, vbos, 0, RING_SIZE);
+		ibo = buffers[RING_SIZE];
+		generation = currentGeneration;
+		nextVBO = 0;
+		
+		// two triangles per quad: top left, bottom left, bottom right, top right
+		short[] indices = new short[MAX_QUADS * 6];
+		for (int i = 0, k = 0; i < MAX_QUADS; i++) {
+			final short first = (short)(i * 4);
+			indices[k++] = first;
+			indices[k++] = (short)(first + 1);
+			indices[k++] = (short)(first + 2);
+			indices[k++] = first;
+			indices[k++] = (short)(first + 2);
+			indices[k++] = (short)(first + 3);
+		}
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.length * 2,
+				BufferUtils.asBuffer(indices), GLES20.GL_STATIC_DRAW);
+		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+	}
+	
+}
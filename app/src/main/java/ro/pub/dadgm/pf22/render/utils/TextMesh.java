@@ -0,0 +1,271 @@
+package ro.pub.dadgm.pf22.render.utils;
+
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
+
+/**
+ * A retained text string: its geometry is built once and kept (and, when drawn immediately, also 
+ * inside a vertex buffer object).
+ * 
+ * <p>The mesh is drawn using {@link DrawText#drawText(TextMesh)}, which rebuilds the geometry
+ * only when the text or the style that affects it (font, letter spacing, alignment) changes. The
+ * position, scale and color are applied when drawing, so changing them is free. When the scene 
+ * has a {@link SpriteBatch}, the kept vertices are copied into it and no buffer is used.</p>
+ * 
+ * <p>The buffer is owned by the mesh: call {@link #destroy()} when it's no longer needed. A buffer
+ * lost along with the OpenGL context is simply uploaded again on the next draw.</p>
+ */
+public class TextMesh {
+	
+	/**
+	 * The text to draw (a copy of the text received, so the callers can reuse their buffers).
+	 */
+	protected final StringBuilder text = new StringBuilder();
+	
+	/**
+	 * Whether the text was changed since the geometry was last built.
+	 */
+	protected boolean dirty = true;
+	
+	/**
+	 * The font the geometry was built with.
+	 */
+	protected DrawText.GLFont font;
+	
+	/**
+	 * The letter spacing the geometry was built with.
+	 */
+	protected float spaceX;
+	
+	/**
+	 * The alignment the geometry was built with.
+	 */
+	protected DrawText.FontAlign alignment;
+	
+	/**
+	 * The built vertices (interleaved, see {@link DrawText#VERTEX_SIZE}).
+	 */
+	protected float[] vertices = new float[0];
+	
+	/**
+	 * Whether the vertices were changed since they were uploaded into the buffer.
+	 */
+	protected boolean bufferDirty = true;
+	
+	/**
+	 * The vertex buffer object (only allocated when drawn immediately).
+	 */
+	protected int vbo = 0;
+	
+	/**
+	 * The allocated length of the buffer, in floats.
+	 */
+	protected int bufferLength = 0;
+	
+	/**
+	 * The EGL context generation the buffer was allocated in.
+	 */
+	protected int generation = -1;
+	
+	/**
+	 * The number of vertices to draw.
+	 */
+	protected int vertexCount = 0;
+	
+	
+	/**
+	 * Constructs a text mesh (the geometry is built when first drawn).
+	 * 
+	 * @param text The initial text.
+	 */
+	public TextMesh(CharSequence text) {
+		setText(text);
+	}
+	
+	/**
+	 * Changes the mesh's text.
+	 * 
+	 * <p>The text is copied and the geometry is only rebuilt if the text is different from the 
+	 * current one.</p>
+	 * 
+	 * @param text The new text.
+	 * @return True if the text was changed.
+	 */
+	public boolean setText(CharSequence text) {
+		if (text == null)
+			text = "";
+		if (contentEquals(text))
+			return false;
+		
+		this.text.setLength(0);
+		this.text.append(text);
+		dirty = true;
+		return true;
+	}
+	
+	/**
+	 * Compares the mesh's text with a character sequence.
+	 * 
+	 * @param other The text to compare with.
+	 * @return True if they contain the same characters.
+	 */
+	protected boolean contentEquals(CharSequence other) {
+		final int length = text.length();
+		if (other.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (text.charAt(i) != other.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether the geometry needs to be rebuilt for drawing with the specified style.
+	 * 
+	 * @param font The font to draw with.
+	 * @param spaceX The letter spacing to draw with.
+	 * @param alignment The alignment to draw with.
+	 * @return True if the geometry is stale.
+	 */
+	public boolean needsUpdate(DrawText.GLFont font, float spaceX, DrawText.FontAlign alignment) {
+		return dirty || this.font != font || this.spaceX != spaceX || this.alignment != alignment;
+	}
+	
+	/**
+	 * Keeps the built geometry.
+	 * 
+	 * @param font The font the geometry was built with.
+	 * @param spaceX The letter spacing the geometry was built with.
+	 * @param alignment The alignment the geometry was built with.
+	 * @param vertices The vertex data (copied).
+	 * @param vertexCount The number of vertices.
+	 */
+	public void update(DrawText.GLFont font, float spaceX, DrawText.FontAlign alignment,
+			float[] vertices, int vertexCount) {
+		int length = vertexCount * DrawText.VERTEX_SIZE;
+		if (this.vertices.length < length)
+			this.vertices = new float[length];
+		System.arraycopy(vertices, 0, this.vertices, 0, length);
+		
+		this.font = font;
+		this.spaceX = spaceX;
+		this.alignment = alignment;
+		this.vertexCount = vertexCount;
+		dirty = false;
+		bufferDirty = true;
+	}
+	
+	/**
+	 * Checks whether the kept geometry needs to be uploaded into the buffer (it changed or the 
+	 * buffer was lost along with the OpenGL context).
+	 * 
+	 * @return True if the buffer is stale.
+	 */
+	public boolean needsUpload() {
+		if (vertexCount == 0)
+			return false;
+		return bufferDirty || generation != GLAssetManager.getInstance().getContextGeneration();
+	}
+	
+	/**
+	 * Uploads the kept geometry into the mesh's buffer.
+	 * 
+	 * <p>The buffer is reused if it's large enough. Must be called from the OpenGL thread!</p>
+	 * 
+	 * @param scratch A work buffer large enough for the vertices (its contents are replaced).
+	 */
+	public void upload(FloatBuffer scratch) {
+		int currentGeneration = GLAssetManager.getInstance().getContextGeneration();
+		if (generation != currentGeneration) {
+			// the buffer was lost along with its context
+			vbo = 0;
+			bufferLength = 0;
+		}
+		
+		int length = vertexCount * DrawText.VERTEX_SIZE;
+		if (length > 0) {
+			scratch.clear();
+			scratch.put(vertices, 0, length);
+			scratch.flip();
+			
+			if (vbo == 0) {
+				int[] buffers = { 0 };
+				GLES20.glGenBuffers(1, buffers, 0);
+				if (buffers[0] <= 0)
+					throw new RuntimeException("Unable to allocate the text mesh's buffer!");
+				vbo = buffers[0];
+				generation = currentGeneration;
+			}
+			
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+			if (length > bufferLength) {
+				GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, length * 4, scratch, GLES20.GL_DYNAMIC_DRAW);
+				bufferLength = length;
+			} else {
+				GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, length * 4, scratch);
+			}
+			GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+		}
+		bufferDirty = false;
+	}
+	
+	/**
+	 * Releases the mesh's buffer (the buffer of a lost context is only forgotten).
+	 * 
+	 * <p>The mesh can still be drawn afterwards (its geometry will be rebuilt).</p>
+	 */
+	public void destroy() {
+		if (vbo > 0 && generation == GLAssetManager.getInstance().getContextGeneration()) {
+			GLES20.glDeleteBuffers(1, new int[] { vbo }, 0);
+		}
+		vbo = 0;
+		bufferLength = 0;
+		vertexCount = 0;
+		dirty = true;
+		bufferDirty = true;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the mesh's text.
+	 * 
+	 * @return The text (only valid until the next change).
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+	
+	/**
+	 * Returns the built vertices (see {@link DrawText#VERTEX_SIZE}).
+	 * 
+	 * @return The kept vertex data (only the first {@link #getVertexCount()} vertices are valid).
+	 */
+	public float[] getVertices() {
+		return vertices;
+	}
+	
+	/**
+	 * Returns the vertex buffer object.
+	 * 
+	 * @return The buffer's GL name (0 if not allocated).
+	 */
+	public int getVBO() {
+		return vbo;
+	}
+	
+	/**
+	 * Returns the number of vertices to draw.
+	 * 
+	 * @return The vertex count.
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+}
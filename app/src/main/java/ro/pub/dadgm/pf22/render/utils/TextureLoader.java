@@ -3,26 +3,130 @@ package ro.pub.dadgm.pf22.render.utils;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.opengl.ETC1;
+import android.opengl.ETC1Util;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
+import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.IntBuffer;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import ro.pub.dadgm.pf22.activity.MainActivity;
+import ro.pub.dadgm.pf22.texcompress.TextureContainer;
 
 /**
  * Utility static class used for loading textures into OpenGL.
+ * 
+ * <p>It also manages the residency of the loaded textures: the GPU memory used by each texture
+ * (including its mipmaps) is accounted and kept under a configurable budget by evicting the least
+ * recently used cached textures that are not pinned.</p>
+ * 
+ * <p>A texture is pinned while it is in use: each load call (including cache hits) pins the
+ * returned texture and {@link #releaseTexture(int)} unpins it. Unpinned cached textures stay
+ * resident (so a later load is free) until evicted. Uncached textures are freed as soon as they
+ * are released, since they cannot be reloaded by key.</p>
+ * 
+ * <p>When the budget cannot be satisfied by eviction, new textures are downscaled instead of
+ * failing the allocation.</p>
+ * 
+ * <p>Image assets are preferably loaded from their precompiled ETC1 version (see the
+ * <code>texcompress</code> module), which is several times smaller in GPU memory and comes with
+ * a prebuilt mipmap chain. Translucent compressed textures have their alpha stored into a
+ * separate companion texture (see {@link #getAlphaTexture(int)}). If the compiled version is
+ * missing or ETC1 is not supported, the original image is decoded instead.</p>
+ * 
+ * <p>The decoded images of the assets are retained after upload (see {@link RetainedDataCache},
+ * using the textures' cache keys), so reloading them after the EGL context was lost doesn't 
+ * read / decode them again.</p>
+ * 
+ * <p>The methods should be called from the rendering thread (only {@link #isCached(String)} is
+ * safe to call from other threads).</p>
  */
 public class TextureLoader {
 	
+	/**
+	 * The default GPU memory budget for textures, in bytes.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+	
+	/**
+	 * The minimum size (on either dimension) a texture will be downscaled to.
+	 */
+	public static final int MIN_DEGRADED_SIZE = 32;
+	
+	/**
+	 * The suffix of the precompiled (ETC1) version of an image asset.
+	 */
+	public static final String COMPRESSED_SUFFIX = ".etc1";
+	
+	/**
+	 * Stores the residency information of a loaded texture.
+	 */
+	protected static class TextureEntry {
+		
+		/**
+		 * The texture's GL handle.
+		 */
+		protected int texture;
+		
+		/**
+		 * The cache key, null for uncached textures.
+		 */
+		protected String cacheKey;
+		
+		/**
+		 * The estimated GPU memory used by the texture, in bytes.
+		 */
+		protected long size;
+		
+		/**
+		 * Whether the texture has mipmaps.
+		 */
+		protected boolean mipmapped = false;
+		
+		/**
+		 * Whether the texture was loaded from compressed data (its mipmaps cannot be generated).
+		 */
+		protected boolean compressed = false;
+		
+		/**
+		 * The companion texture storing the alpha plane of a compressed texture (0 if none).
+		 */
+		protected int alphaTexture = 0;
+		
+		/**
+		 * The number of active users of the texture.
+		 */
+		protected int pinCount = 0;
+		
+		
+		/**
+		 * Initializes the entry.
+		 * 
+		 * @param texture The texture's GL handle.
+		 * @param cacheKey The cache key, null for uncached textures.
+		 * @param size The texture's base level size, in bytes.
+		 */
+		protected TextureEntry(int texture, String cacheKey, long size) {
+			this.texture = texture;
+			this.cacheKey = cacheKey;
+			this.size = size;
+		}
+	}
+	
 	/**
 	 * Stores already loaded texture files.
 	 * 
-	 * <p>The keys used are: 
+	 * <p>The keys used are:
 	 * <ul>
 	 *     <li><i>res_{RESOURCEID}</i> - for Android resources</li>
 	 *     <li><i>asset_{ASSET_PATH}</i> - for Android assets</li>
@@ -31,32 +135,61 @@ public class TextureLoader {
 	 */
 	protected static Map<String, Integer> textureCache = new HashMap<>();
 	
+	/**
+	 * The residency information of all loaded textures, indexed by their GL handle.
+	 * 
+	 * <p>Together with {@link #textureCache} it forms a bidirectional key / handle index. The map
+	 * is kept in access order, so its iteration starts with the least recently used texture.</p>
+	 */
+	protected static LinkedHashMap<Integer, TextureEntry> residentTextures =
+			new LinkedHashMap<>(16, 0.75f, true);
+	
+	/**
+	 * The GPU memory budget for textures, in bytes.
+	 */
+	protected static long memoryBudget = DEFAULT_MEMORY_BUDGET;
+	
+	/**
+	 * The estimated GPU memory currently used by textures, in bytes.
+	 */
+	protected static long memoryUsage = 0;
+	
+	/**
+	 * The number of textures evicted so far.
+	 */
+	protected static int evictionCount = 0;
+	
+	/**
+	 * The total size of the textures evicted so far, in bytes.
+	 */
+	protected static long evictedBytes = 0;
+	
+	/**
+	 * The number of textures that had to be downscaled to fit the budget.
+	 */
+	protected static int degradedCount = 0;
+	
+	/**
+	 * Whether the GPU supports ETC1 textures (null if not checked yet).
+	 */
+	protected static Boolean compressionSupported = null;
+	
 	
 	/**
 	 * Loads the specified bitmap object as GL texture.
 	 * 
+	 * <p>The texture is not cached, so it is pinned until released using
+	 * {@link #releaseTexture(int)} or {@link #unloadTexture(int)}.</p>
+	 * 
 	 * @param bitmap The bitmap to load.
 	 * @return Texture's handle (0 if load failed).
 	 */
-	public static int loadTexture(Bitmap bitmap) {
-		int[] texture = new int[] { 0 };
-		
-		// allocate a texture object
-		GLES20.glGenTextures(1, texture, 0);
-		
-		if (texture[0] != 0) {
-			// bind to the texture
-			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
-			
-			// load the bitmap into the bound texture
-			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-		}
-		
-		return texture[0];
+	public static synchronized int loadTexture(Bitmap bitmap) {
+		return allocateTexture(bitmap, null);
 	}
 	
 	/**
-	 * Loads texture from a bitmap resource but stores it into the local cache using the specified 
+	 * Loads texture from a bitmap resource but stores it into the local cache using the specified
 	 * key.
 	 * 
 	 * @param bitmap The bitmap to load. Can be null to force retrieval from cache (if it exists).
@@ -64,21 +197,47 @@ public class TextureLoader {
 	 * @return Texture's handle (0 if load failed).
 	 */
 	@SuppressWarnings("unused")
-	public static int loadTextureCached(Bitmap bitmap, String cacheKey) {
-		if (textureCache.containsKey(cacheKey)) {
-			return textureCache.get(cacheKey);
-		}
+	public static synchronized int loadTextureCached(Bitmap bitmap, String cacheKey) {
+		int texture = getCachedTexture(cacheKey);
+		if (texture != 0)
+			return texture;
 		
 		// load the texture
-		if (bitmap == null) 
+		if (bitmap == null)
 			return 0;
 		
-		int texture = loadTexture(bitmap);
-		if (texture != 0) {
-			// add it to cache
-			textureCache.put(cacheKey, texture);
-		}
-		return texture;
+		return allocateTexture(bitmap, cacheKey);
+	}
+	
+	/**
+	 * Checks whether a texture with the specified key is resident.
+	 * 
+	 * <p>Can be called from any thread.</p>
+	 * 
+	 * @param cacheKey The cache key to check.
+	 * @return True if the texture is in the cache.
+	 */
+	public static synchronized boolean isCached(String cacheKey) {
+		return textureCache.containsKey(cacheKey);
+	}
+	
+	/**
+	 * Unpins the specified texture (the caller no longer uses it).
+	 * 
+	 * <p>Unpinned cached textures remain resident until evicted, uncached ones are freed
+	 * immediately.</p>
+	 * 
+	 * @param texture The texture's handle to release.
+	 */
+	public static synchronized void releaseTexture(int texture) {
+		TextureEntry entry = residentTextures.get(texture);
+		if (entry == null)
+			return;
+		
+		if (entry.pinCount > 0)
+			entry.pinCount--;
+		if (entry.pinCount == 0 && entry.cacheKey == null)
+			unloadTexture(texture);
 	}
 	
 	/**
@@ -86,18 +245,44 @@ public class TextureLoader {
 	 * 
 	 * @param texture The texture's handle to remove.
 	 */
-	public static void unloadTexture(int texture) {
+	public static synchronized void unloadTexture(int texture) {
 		// remove the texture from the cache, if it exists
-		String cacheKey = null;
-		for (Map.Entry<String, Integer> textureEntry: textureCache.entrySet()) {
-			if (textureEntry.getValue().equals(texture))
-				cacheKey = textureEntry.getKey();
+		TextureEntry entry = residentTextures.remove(texture);
+		int alphaTexture = 0;
+		if (entry != null) {
+			if (entry.cacheKey != null)
+				textureCache.remove(entry.cacheKey);
+			memoryUsage -= entry.size;
+			alphaTexture = entry.alphaTexture;
 		}
-		if (cacheKey != null)
-			textureCache.remove(cacheKey);
 		
-		IntBuffer texToDelete = BufferUtils.asBuffer(new int[]{ texture });
-		GLES20.glDeleteTextures(1, texToDelete);
+		IntBuffer texToDelete = BufferUtils.asBuffer(new int[]{ texture, alphaTexture });
+		GLES20.glDeleteTextures(alphaTexture != 0 ? 2 : 1, texToDelete);
+	}
+	
+	/**
+	 * Generates the mipmaps for the specified texture and accounts their memory.
+	 * 
+	 * <p>Compressed textures already have their mipmaps, so they are left unchanged. Leaves the
+	 * texture bound.</p>
+	 * 
+	 * @param texture The texture's handle.
+	 */
+	public static synchronized void generateMipmap(int texture) {
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+		
+		TextureEntry entry = residentTextures.get(texture);
+		if (entry != null && entry.compressed)
+			return;
+		
+		GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+		if (entry != null && !entry.mipmapped) {
+			// a full mip chain adds a third of the base level's size
+			long mipmapsSize = entry.size / 3;
+			entry.size += mipmapsSize;
+			entry.mipmapped = true;
+			memoryUsage += mipmapsSize;
+		}
 	}
 	
 	/**
@@ -107,12 +292,12 @@ public class TextureLoader {
 	 * @return Texture's handle (0 if load failed).
 	 */
 	@SuppressWarnings("unused")
-	public static int loadTextureFromResource(int resourceId) {
+	public static synchronized int loadTextureFromResource(int resourceId) {
 		// check the cache if the texture was already loaded
 		String cacheKey = "res_" + resourceId;
-		if (textureCache.containsKey(cacheKey)) {
-			return textureCache.get(cacheKey);
-		}
+		int texture = getCachedTexture(cacheKey);
+		if (texture != 0)
+			return texture;
 		
 		// disable pre-scaling
 		final BitmapFactory.Options options = new BitmapFactory.Options();
@@ -125,11 +310,8 @@ public class TextureLoader {
 			return 0;
 		
 		// load the texture
-		int texture = loadTexture(bitmap);
-		if (texture != 0) {
-			// add it to cache
-			textureCache.put(cacheKey, texture);
-		}
+		texture = allocateTexture(bitmap, cacheKey);
+		bitmap.recycle();
 		return texture;
 	}
 	
@@ -140,11 +322,33 @@ public class TextureLoader {
 	 * @return Texture's handle (0 if load failed).
 	 */
 	@SuppressWarnings("unused")
-	public static int loadTextureFromAsset(String path) {
+	public static synchronized int loadTextureFromAsset(String path) {
 		// check the cache if the texture was already loaded
 		String cacheKey = "asset_" + path;
-		if (textureCache.containsKey(cacheKey)) {
-			return textureCache.get(cacheKey);
+		int texture = getCachedTexture(cacheKey);
+		if (texture != 0)
+			return texture;
+		
+		// use the retained image, if any
+		Object image = getRetainedImage(cacheKey);
+		if (image instanceof TextureContainer) {
+			texture = loadCompressedTexture((TextureContainer)image, cacheKey);
+			if (texture != 0)
+				return texture;
+		} else if (image instanceof Bitmap) {
+			return allocateTexture((Bitmap)image, cacheKey);
+		}
+		
+		// prefer the precompiled version
+		if (isCompressionSupported()) {
+			TextureContainer container = readCompressedAsset(path);
+			if (container != null) {
+				texture = loadCompressedTexture(container, cacheKey);
+				if (texture != 0) {
+					retainImage(cacheKey, container);
+					return texture;
+				}
+			}
 		}
 		
 		AssetManager assetManager = MainActivity.getAppContext().getAssets();
@@ -152,27 +356,430 @@ public class TextureLoader {
 		Bitmap bitmap;
 		try {
 			InputStream assetStream = assetManager.open(path);
-			bitmap = BitmapFactory.decodeStream(assetStream);
+			try {
+				bitmap = BitmapFactory.decodeStream(assetStream);
+			} finally {
+				assetStream.close();
+			}
 			
 		} catch (IOException e) {
 			return 0;
 		}
 		
+		if (bitmap == null)
+			return 0;
+		
 		// load the texture
-		int texture = loadTexture(bitmap);
-		if (texture != 0) {
-			// add it to cache
-			textureCache.put(cacheKey, texture);
-		}
+		texture = allocateTexture(bitmap, cacheKey);
+		if (texture == 0 || !retainImage(cacheKey, bitmap))
+			bitmap.recycle();
 		return texture;
 	}
 	
+	/**
+	 * Retains the decoded image of a texture, to be reloaded from memory (e.g. after the EGL
+	 * context was lost).
+	 * 
+	 * <p>The retained image is shared, so it must not be modified or recycled afterwards (unless
+	 * this method fails).</p>
+	 * 
+	 * <p>Can be called from any thread.</p>
+	 * 
+	 * @param cacheKey The texture's cache key.
+	 * @param image The decoded image (a {@link Bitmap} or a {@link TextureContainer}).
+	 * @return Whether the image was retained (it's larger than the whole budget otherwise).
+	 */
+	public static boolean retainImage(String cacheKey, Object image) {
+		long size;
+		if (image instanceof TextureContainer) {
+			size = ((TextureContainer)image).getDataSize(0);
+		} else if (image instanceof Bitmap) {
+			size = computeBitmapSize((Bitmap)image);
+		} else {
+			throw new IllegalArgumentException("Unable to retain a " + image.getClass().getSimpleName() + "!");
+		}
+		return RetainedDataCache.getInstance().put(cacheKey, image, size);
+	}
+	
+	/**
+	 * Returns the retained decoded image of a texture.
+	 * 
+	 * <p>Can be called from any thread.</p>
+	 * 
+	 * @param cacheKey The texture's cache key.
+	 * @return The image (a {@link Bitmap} or a {@link TextureContainer}), null if not retained.
+	 */
+	public static Object getRetainedImage(String cacheKey) {
+		return RetainedDataCache.getInstance().get(cacheKey);
+	}
+	
+	/**
+	 * Reads the precompiled (ETC1) version of an image asset.
+	 * 
+	 * <p>Does not touch OpenGL, so it can be called from any thread.</p>
+	 * 
+	 * @param path The path of the original image asset.
+	 * @return The compressed texture, null if there is no (valid) precompiled version.
+	 */
+	public static TextureContainer readCompressedAsset(String path) {
+		AssetManager assetManager = MainActivity.getAppContext().getAssets();
+		
+		try {
+			InputStream assetStream = new BufferedInputStream(
+					assetManager.open(path + COMPRESSED_SUFFIX));
+			try {
+				return TextureContainer.read(assetStream);
+			} finally {
+				assetStream.close();
+			}
+			
+		} catch (FileNotFoundException e) {
+			return null;
+			
+		} catch (IOException e) {
+			Log.w("TextureLoader", "Invalid compressed texture for '" + path + "'", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Loads a compressed texture (with its mipmaps and its alpha plane, if any).
+	 * 
+	 * <p>If the budget cannot be satisfied by eviction, the largest mipmap levels are skipped.
+	 * The returned texture is left bound.</p>
+	 * 
+	 * @param container The compressed texture to load.
+	 * @param cacheKey The cache key, null for an uncached texture.
+	 * @return Texture's handle (0 if ETC1 is not supported or the load failed).
+	 */
+	public static synchronized int loadCompressedTexture(TextureContainer container, String cacheKey) {
+		if (cacheKey != null) {
+			int texture = getCachedTexture(cacheKey);
+			if (texture != 0)
+				return texture;
+		}
+		if (!isCompressionSupported())
+			return 0;
+		
+		List<TextureContainer.Level> levels = container.getLevels();
+		int firstLevel = 0;
+		long size = container.getDataSize(firstLevel);
+		evictTextures(memoryBudget - size);
+		
+		// skip the largest levels until the texture fits in the remaining budget
+		while (memoryUsage + size > memoryBudget && firstLevel + 1 < levels.size() &&
+				levels.get(firstLevel + 1).getWidth() >= MIN_DEGRADED_SIZE &&
+				levels.get(firstLevel + 1).getHeight() >= MIN_DEGRADED_SIZE) {
+			firstLevel++;
+			size = container.getDataSize(firstLevel);
+		}
+		if (firstLevel > 0) {
+			degradedCount++;
+			Log.w("TextureLoader", "Texture budget exceeded, downscaled '" + cacheKey +
+					"' to " + levels.get(firstLevel).getWidth() + "x" + levels.get(firstLevel).getHeight());
+		}
+		
+		int[] textures = new int[] { 0, 0 };
+		GLES20.glGenTextures(container.hasAlpha() ? 2 : 1, textures, 0);
+		if (textures[0] == 0)
+			return 0;
+		
+		boolean mipmapped = (levels.size() - firstLevel > 1);
+		if (container.hasAlpha()) {
+			uploadCompressedLevels(textures[1], levels, firstLevel, true);
+			
+			// the alpha plane is sampled along with the color texture, with the same filtering
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
+					(mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR));
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
+		}
+		uploadCompressedLevels(textures[0], levels, firstLevel, false);
+		
+		TextureEntry entry = registerTexture(textures[0], cacheKey, size);
+		entry.compressed = true;
+		entry.mipmapped = mipmapped;
+		entry.alphaTexture = textures[1];
+		
+		return textures[0];
+	}
+	
+	/**
+	 * Returns the companion texture storing the alpha plane of a compressed texture.
+	 * 
+	 * <p>The alpha value is stored in all its color channels.</p>
+	 * 
+	 * @param texture The (color) texture's handle.
+	 * @return The alpha texture's handle, 0 if the texture has no separate alpha.
+	 */
+	public static synchronized int getAlphaTexture(int texture) {
+		TextureEntry entry = residentTextures.get(texture);
+		return (entry != null ? entry.alphaTexture : 0);
+	}
+	
+	/**
+	 * Checks whether the texture has a mipmap chain.
+	 * 
+	 * @param texture The texture's handle.
+	 * @return True if the texture has mipmaps.
+	 */
+	public static synchronized boolean isMipmapped(int texture) {
+		TextureEntry entry = residentTextures.get(texture);
+		return (entry != null && entry.mipmapped);
+	}
+	
+	/**
+	 * Checks whether the GPU supports ETC1 compressed textures.
+	 * 
+	 * <p>Must be called from the rendering thread (the result is cached for the current
+	 * context).</p>
+	 * 
+	 * @return True if ETC1 textures can be loaded.
+	 */
+	public static synchronized boolean isCompressionSupported() {
+		if (compressionSupported == null)
+			compressionSupported = ETC1Util.isETC1Supported();
+		return compressionSupported;
+	}
+	
+	/**
+	 * Changes the GPU memory budget, evicting textures if needed.
+	 * 
+	 * @param budget The new budget, in bytes.
+	 */
+	public static synchronized void setMemoryBudget(long budget) {
+		memoryBudget = budget;
+		evictTextures(memoryBudget);
+	}
+	
+	/**
+	 * Evicts all unpinned textures (e.g. when the system is low on memory).
+	 */
+	@SuppressWarnings("unused")
+	public static synchronized void trimMemory() {
+		evictTextures(0);
+	}
+	
+	/**
+	 * Returns the GPU memory budget for textures.
+	 * 
+	 * @return The budget, in bytes.
+	 */
+	@SuppressWarnings("unused")
+	public static synchronized long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * Returns the estimated GPU memory currently used by textures.
+	 * 
+	 * @return The memory usage, in bytes.
+	 */
+	@SuppressWarnings("unused")
+	public static synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+	
+	/**
+	 * Returns the number of textures evicted so far.
+	 * 
+	 * @return The eviction count.
+	 */
+	@SuppressWarnings("unused")
+	public static synchronized int getEvictionCount() {
+		return evictionCount;
+	}
+	
+	/**
+	 * Returns the total size of the textures evicted so far.
+	 * 
+	 * @return The evicted size, in bytes.
+	 */
+	@SuppressWarnings("unused")
+	public static synchronized long getEvictedBytes() {
+		return evictedBytes;
+	}
+	
+	/**
+	 * Returns the number of textures that were downscaled to fit the budget.
+	 * 
+	 * @return The degraded textures count.
+	 */
+	@SuppressWarnings("unused")
+	public static synchronized int getDegradedCount() {
+		return degradedCount;
+	}
+	
 	/**
 	 * Cleans up the internal state of the object.
 	 * To be called when the EGL context has been reset.
 	 */
-	public static void clear() {
+	public static synchronized void clear() {
 		textureCache.clear();
+		residentTextures.clear();
+		memoryUsage = 0;
+		compressionSupported = null;
+	}
+	
+	
+	/**
+	 * Returns (and pins) a cached texture.
+	 * 
+	 * @param cacheKey The cache key of the texture.
+	 * @return The texture's handle, 0 if not cached.
+	 */
+	protected static int getCachedTexture(String cacheKey) {
+		Integer texture = textureCache.get(cacheKey);
+		if (texture == null)
+			return 0;
+		
+		// also marks it as recently used
+		TextureEntry entry = residentTextures.get(texture);
+		if (entry != null)
+			entry.pinCount++;
+		return texture;
+	}
+	
+	/**
+	 * Uploads the bitmap into a new texture and registers it (pinned) for residency tracking.
+	 * 
+	 * <p>Makes room for it by evicting textures, or downscales it if this is not enough.</p>
+	 * 
+	 * @param bitmap The bitmap to load (it is not recycled).
+	 * @param cacheKey The cache key, null for uncached textures.
+	 * @return Texture's handle (0 if load failed).
+	 */
+	protected static int allocateTexture(Bitmap bitmap, String cacheKey) {
+		Bitmap source = bitmap;
+		long size = computeBitmapSize(source);
+		evictTextures(memoryBudget - size);
+		
+		// degrade the texture's resolution until it fits in the remaining budget
+		while (memoryUsage + size > memoryBudget &&
+				source.getWidth() / 2 >= MIN_DEGRADED_SIZE &&
+				source.getHeight() / 2 >= MIN_DEGRADED_SIZE) {
+			Bitmap scaled = Bitmap.createScaledBitmap(source,
+					source.getWidth() / 2, source.getHeight() / 2, true);
+			if (source != bitmap)
+				source.recycle();
+			source = scaled;
+			size = computeBitmapSize(source);
+		}
+		if (source != bitmap) {
+			degradedCount++;
+			Log.w("TextureLoader", "Texture budget exceeded, downscaled '" + cacheKey +
+					"' to " + source.getWidth() + "x" + source.getHeight());
+		}
+		
+		int[] texture = new int[] { 0 };
+		
+		// allocate a texture object
+		GLES20.glGenTextures(1, texture, 0);
+		
+		if (texture[0] != 0) {
+			// bind to the texture
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+			
+			// load the bitmap into the bound texture
+			GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, source, 0);
+			
+			registerTexture(texture[0], cacheKey, size);
+		}
+		
+		if (source != bitmap)
+			source.recycle();
+		
+		return texture[0];
+	}
+	
+	/**
+	 * Uploads the mipmap levels of a compressed texture's plane.
+	 * 
+	 * <p>Leaves the texture bound.</p>
+	 * 
+	 * @param texture The texture's handle.
+	 * @param levels The texture's mipmap levels.
+	 * @param firstLevel The first level to upload (as the base level).
+	 * @param alpha Whether to upload the alpha plane instead of the color data.
+	 */
+	protected static void uploadCompressedLevels(int texture, List<TextureContainer.Level> levels,
+												 int firstLevel, boolean alpha) {
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+		
+		for (int i = firstLevel; i < levels.size(); i++) {
+			TextureContainer.Level level = levels.get(i);
+			byte[] data = (alpha ? level.getAlphaData() : level.getColorData());
+			GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, i - firstLevel, ETC1.ETC1_RGB8_OES,
+					level.getWidth(), level.getHeight(), 0, data.length, BufferUtils.asBuffer(data));
+		}
+	}
+	
+	/**
+	 * Registers a (pinned) texture for residency tracking.
+	 * 
+	 * @param texture The texture's handle.
+	 * @param cacheKey The cache key, null for uncached textures.
+	 * @param size The texture's size, in bytes.
+	 * @return The texture's residency entry.
+	 */
+	protected static TextureEntry registerTexture(int texture, String cacheKey, long size) {
+		TextureEntry entry = new TextureEntry(texture, cacheKey, size);
+		entry.pinCount = 1;
+		residentTextures.put(texture, entry);
+		if (cacheKey != null)
+			textureCache.put(cacheKey, texture);
+		memoryUsage += size;
+		return entry;
+	}
+	
+	/**
+	 * Evicts the least recently used unpinned textures until the memory usage drops to the
+	 * specified limit (or there is nothing left to evict).
+	 * 
+	 * @param limit The memory usage to reach, in bytes.
+	 */
+	protected static void evictTextures(long limit) {
+		if (memoryUsage <= limit)
+			return;
+		
+		int[] texToDelete = new int[1];
+		Iterator<TextureEntry> it = residentTextures.values().iterator();
+		while (memoryUsage > limit && it.hasNext()) {
+			TextureEntry entry = it.next();
+			if (entry.pinCount > 0)
+				continue;
+			
+			it.remove();
+			textureCache.remove(entry.cacheKey);
+			memoryUsage -= entry.size;
+			evictionCount++;
+			evictedBytes += entry.size;
+			
+			texToDelete[0] = entry.texture;
+			GLES20.glDeleteTextures(1, texToDelete, 0);
+			if (entry.alphaTexture != 0) {
+				texToDelete[0] = entry.alphaTexture;
+				GLES20.glDeleteTextures(1, texToDelete, 0);
+			}
+		}
+	}
+	
+	/**
+	 * Computes the GPU memory needed to store a bitmap (base level only).
+	 * 
+	 * @param bitmap The bitmap to compute the size for.
+	 * @return The size, in bytes.
+	 */
+	protected static long computeBitmapSize(Bitmap bitmap) {
+		int bytesPerPixel = 4;
+		Bitmap.Config config = bitmap.getConfig();
+		if (config == Bitmap.Config.ALPHA_8) {
+			bytesPerPixel = 1;
+		} else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+			bytesPerPixel = 2;
+		}
+		return (long)bitmap.getWidth() * bitmap.getHeight() * bytesPerPixel;
 	}
 	
 }
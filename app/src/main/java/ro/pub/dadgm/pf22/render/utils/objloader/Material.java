@@ -1,8 +1,7 @@
 package ro.pub.dadgm.pf22.render.utils.objloader;
 
 
-import android.opengl.GLES20;
-
+import ro.pub.dadgm.pf22.render.assets.AssetHandle;
 import ro.pub.dadgm.pf22.render.utils.TextureLoader;
 
 /**
@@ -53,9 +52,11 @@ public class Material {
 	protected String textureFile;
 
 	/**
-	 * Stores the loaded OpenGL texture handle, if any.
+	 * The texture asset's handle, if any.
+	 * 
+	 * <p>Set by the asset manager when the model is loaded.</p>
 	 */
-	protected int glTexture = 0;
+	protected AssetHandle<Integer> texture = null;
 	
 	
 	public Material(String name) {
@@ -73,25 +74,43 @@ public class Material {
 	
 	
 	/**
-	 * Loads/returns the cached texture for the current material.
+	 * Returns the loaded texture of the current material.
 	 * 
-	 * @param rootPath The root asset path of the model to search into.
-	 * @return The loaded texture's GL handle if successful. Returns -1 if there is no texture defined.
+	 * @return The texture's GL handle if loaded. Returns 0 if there is no (loaded) texture.
 	 */
-	public int loadTexture(String rootPath) {
-		if (textureFile == null || textureFile.isEmpty())
-			return -1;
-		
-		glTexture = TextureLoader.loadTextureFromAsset(rootPath + textureFile);
-		if (glTexture == 0)
-			throw new RuntimeException("Unable to load the texture file '" + textureFile + "'!");
+	public int getTexture() {
+		if (texture == null || !texture.isReady())
+			return 0;
 		
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_REPEAT);
-		GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_REPEAT);
-		
-		return glTexture;
+		return texture.get();
+	}
+	
+	/**
+	 * Returns the separate alpha plane of the material's (compressed) texture.
+	 * 
+	 * @return The alpha texture's GL handle. Returns 0 if the texture has no separate alpha.
+	 */
+	public int getAlphaTexture() {
+		int texture = getTexture();
+		return (texture != 0 ? TextureLoader.getAlphaTexture(texture) : 0);
+	}
+	
+	/**
+	 * Returns the texture asset's handle.
+	 * 
+	 * @return The texture handle, null if the texture was not acquired.
+	 */
+	public AssetHandle<Integer> getTextureHandle() {
+		return texture;
+	}
+	
+	/**
+	 * Sets the texture asset's handle.
+	 * 
+	 * @param texture The texture handle to set.
+	 */
+	public void setTextureHandle(AssetHandle<Integer> texture) {
+		this.texture = texture;
 	}
 	
 	@SuppressWarnings("unused")
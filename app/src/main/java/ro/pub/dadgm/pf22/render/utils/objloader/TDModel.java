@@ -6,6 +6,7 @@ import java.nio.FloatBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
 import ro.pub.dadgm.pf22.render.utils.BufferUtils;
 import ro.pub.dadgm.pf22.render.utils.NormalUtils;
 
@@ -46,6 +47,11 @@ public class TDModel {
 	 */
 	protected int vbo;
 	
+	/**
+	 * The EGL context generation the VBOs were allocated in.
+	 */
+	protected int generation = -1;
+	
 	
 	
 	/**
@@ -68,11 +74,14 @@ public class TDModel {
 	/**
 	 * Initializes the VBOs.
 	 * 
-	 * <p>If the VBOs are valid, returns immediately.</p>
+	 * <p>If the VBOs were allocated in the current context, returns immediately (the names of a 
+	 * lost context are never checked with <code>glIsBuffer</code>, since they could belong to
+	 * other objects).</p>
 	 */
 	public void initializeBuffers() {
 		// check if already initialized
-		if (GLES20.glIsBuffer(vbo))
+		int currentGeneration = GLAssetManager.getInstance().getContextGeneration();
+		if (vbo != 0 && generation == currentGeneration)
 			return;
 		
 		// compute the normals buffer from the parts
@@ -131,6 +140,7 @@ public class TDModel {
 		if (allocatedVBO[0] <= 0)
 			throw new RuntimeException("Unable to allocate VBO!");
 		vbo = allocatedVBO[0];
+		generation = currentGeneration;
 		GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
 		GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexNormalBuf.capacity() * 4,
 				vertexNormalBuf, GLES20.GL_STATIC_DRAW);
@@ -160,6 +170,47 @@ public class TDModel {
 		}
 	}
 	
+	/**
+	 * Frees the allocated VBOs (including the parts' IBOs).
+	 * 
+	 * <p>The buffers of a lost context are only forgotten.</p>
+	 */
+	public void destroyBuffers() {
+		boolean current = (generation == GLAssetManager.getInstance().getContextGeneration());
+		int[] buffers = { vbo };
+		if (vbo != 0 && current) {
+			GLES20.glDeleteBuffers(1, buffers, 0);
+		}
+		vbo = 0;
+		
+		if (textureCoordsVBO != null) {
+			if (current) {
+				for (Integer textureCoordsBuf: textureCoordsVBO.values()) {
+					buffers[0] = textureCoordsBuf;
+					GLES20.glDeleteBuffers(1, buffers, 0);
+				}
+			}
+			textureCoordsVBO = null;
+		}
+		
+		for (TDModelPart part: parts) {
+			part.destroyBuffers();
+		}
+	}
+	
+	/**
+	 * Estimates the memory used by the model's arrays (the data the buffers are built from).
+	 * 
+	 * @return The size, in bytes.
+	 */
+	public long getDataSize() {
+		long size = (v.length + vn.length + vt.length) * 4;
+		for (TDModelPart part: parts) {
+			size += part.getDataSize();
+		}
+		return size;
+	}
+	
 	/**
 	 * Returns the vertex count of the object.
 	 * 
@@ -4,6 +4,7 @@ import android.opengl.GLES20;
 
 import java.nio.ShortBuffer;
 
+import ro.pub.dadgm.pf22.render.assets.GLAssetManager;
 import ro.pub.dadgm.pf22.render.utils.BufferUtils;
 
 /**
@@ -38,6 +39,11 @@ public class TDModelPart {
 	 */
 	protected int ibo;
 	
+	/**
+	 * The EGL context generation the IBO was allocated in.
+	 */
+	protected int generation = -1;
+	
 	
 	/**
 	 * Model part constructor.
@@ -61,11 +67,12 @@ public class TDModelPart {
 	/**
 	 * Initializes the VBOs.
 	 *
-	 * <p>If the VBOs are valid, returns immediately.</p>
+	 * <p>If the IBO was allocated in the current context, returns immediately.</p>
 	 */
 	public void initializeBuffers() {
 		// check if already initialized
-		if (GLES20.glIsBuffer(ibo)) 
+		int currentGeneration = GLAssetManager.getInstance().getContextGeneration();
+		if (ibo != 0 && generation == currentGeneration)
 			return;
 		
 		// allocate buffers
@@ -79,12 +86,33 @@ public class TDModelPart {
 		if (allocatedIBO[0] <= 0)
 			throw new RuntimeException("Unable to allocate IBO!");
 		ibo = allocatedIBO[0];
+		generation = currentGeneration;
 		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, allocatedIBO[0]);
 		GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, facesBuf.capacity() * 2,
 				facesBuf, GLES20.GL_STATIC_DRAW);
 		GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
 	}
 	
+	/**
+	 * Frees the allocated IBO (unless it belongs to a lost context).
+	 */
+	public void destroyBuffers() {
+		if (ibo != 0 && generation == GLAssetManager.getInstance().getContextGeneration()) {
+			int[] buffers = { ibo };
+			GLES20.glDeleteBuffers(1, buffers, 0);
+		}
+		ibo = 0;
+	}
+	
+	/**
+	 * Estimates the memory used by the part's index arrays.
+	 * 
+	 * @return The size, in bytes.
+	 */
+	public long getDataSize() {
+		return (faces.length + vtPointer.length + vnPointer.length) * 2;
+	}
+	
 	@SuppressWarnings("unused")
 	public int getIBO() {
 		return ibo;
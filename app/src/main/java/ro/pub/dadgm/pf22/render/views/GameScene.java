@@ -5,26 +5,38 @@ import android.opengl.Matrix;
 import android.support.annotation.NonNull;
 import android.view.MotionEvent;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ro.pub.dadgm.pf22.R;
 import ro.pub.dadgm.pf22.activity.controllers.GameSceneController;
 import ro.pub.dadgm.pf22.game.Game;
+import ro.pub.dadgm.pf22.game.GameEventListener;
 import ro.pub.dadgm.pf22.game.models.BaseModel;
 import ro.pub.dadgm.pf22.game.models.EnemyPlane;
+import ro.pub.dadgm.pf22.game.models.HeightField;
+import ro.pub.dadgm.pf22.game.models.Plane;
 import ro.pub.dadgm.pf22.game.models.PrimaryPlane;
 import ro.pub.dadgm.pf22.game.models.Projectile;
+import ro.pub.dadgm.pf22.game.models.StreamedTerrain;
+import ro.pub.dadgm.pf22.game.models.Terrain;
+import ro.pub.dadgm.pf22.game.models.TerrainPage;
 import ro.pub.dadgm.pf22.game.models.World;
 import ro.pub.dadgm.pf22.render.Camera;
 import ro.pub.dadgm.pf22.render.Scene3D;
+import ro.pub.dadgm.pf22.render.Shader;
 import ro.pub.dadgm.pf22.render.ShaderManager;
 import ro.pub.dadgm.pf22.render.View;
+import ro.pub.dadgm.pf22.render.objects.CommandObject3D;
 import ro.pub.dadgm.pf22.render.objects.Object3D;
 import ro.pub.dadgm.pf22.render.objects.ObjectsManager;
 import ro.pub.dadgm.pf22.render.objects.game.FighterJet3D;
+import ro.pub.dadgm.pf22.render.objects.game.ParticleEffects3D;
 import ro.pub.dadgm.pf22.render.objects.game.RocketProjectile3D;
+import ro.pub.dadgm.pf22.render.objects.game.StreamedTerrain3D;
 import ro.pub.dadgm.pf22.render.objects.game.Terrain3D;
 import ro.pub.dadgm.pf22.render.objects.hud.HUDButton;
 import ro.pub.dadgm.pf22.render.objects.hud.HUDObject;
@@ -32,9 +44,15 @@ import ro.pub.dadgm.pf22.render.objects.hud.HUDText;
 import ro.pub.dadgm.pf22.render.objects.hud.MenuContainer;
 import ro.pub.dadgm.pf22.render.objects.hud.MenuItem;
 import ro.pub.dadgm.pf22.render.objects.hud.MenuOverlay;
+import ro.pub.dadgm.pf22.render.objects.hud.ProfilerOverlay;
 import ro.pub.dadgm.pf22.render.utils.DrawText;
-import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
-import ro.pub.dadgm.pf22.render.utils.TextureLoader;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.FramePipeline;
+import ro.pub.dadgm.pf22.render.utils.QualityGovernor;
+import ro.pub.dadgm.pf22.render.utils.RenderCommandBuffer;
+import ro.pub.dadgm.pf22.render.utils.RenderTarget;
+import ro.pub.dadgm.pf22.render.utils.SpriteBatch;
+import ro.pub.dadgm.pf22.render.utils.OcclusionBuffer;
 import ro.pub.dadgm.pf22.utils.events.CollectionListener;
 
 /**
@@ -63,6 +81,44 @@ public class GameScene implements View {
 		public DrawText getDrawText() {
 			return null;
 		}
+		
+		@Override
+		public SpriteBatch getSpriteBatch() {
+			return null;
+		}
+	}
+	
+	/**
+	 * Builds the 3D scene's command buffers (see {@link FramePipeline}).
+	 */
+	protected class SceneFrameBuilder implements FramePipeline.FrameBuilder {
+		@Override
+		public void prepareFrame(RenderCommandBuffer buffer) {
+			synchronized (lock) {
+				computeCameraView(cameraView);
+				buffer.begin(cameraView, camera.getProjectionMatrix(), objects);
+			}
+		}
+		
+		@Override
+		public void buildFrame(RenderCommandBuffer buffer) {
+			updateOcclusion(buffer);
+			
+			// skip the objects outside the view or hidden behind the terrain
+			for (int i = 0; i < buffer.getSourceCount(); i++) {
+				Object3D object = buffer.getSource(i);
+				if (object.computeBounds(objectBounds) && !occlusionBuffer.isVisible(objectBounds))
+					continue;
+				
+				if (object instanceof CommandObject3D) {
+					((CommandObject3D)object).buildCommands(buffer);
+				} else {
+					buffer.addObject(object);
+				}
+			}
+			
+			buffer.sort();
+		}
 	}
 	
 	/**
@@ -83,6 +139,11 @@ public class GameScene implements View {
 		public DrawText getDrawText() {
 			return GameScene.this.drawText;
 		}
+		
+		@Override
+		public SpriteBatch getSpriteBatch() {
+			return GameScene.this.spriteBatch;
+		}
 	}
 	
 	// several constants
@@ -92,13 +153,38 @@ public class GameScene implements View {
 	 */
 	public static final float[] LIGHT_POSITION = { World.WORLD_WIDTH_X / 2, World.WORLD_WIDTH_Y / 2, World.WORLD_MAX_HEIGHT * 2 };
 	
+	/**
+	 * The caption of the score's HUD text (followed by the score).
+	 */
+	protected static final String SCORE_PREFIX = "Score: ";
+	
+	/**
+	 * The frame rate held by the quality governor.
+	 */
+	protected static final float TARGET_FRAME_RATE = 60;
+	
+	/**
+	 * The physics step's time budget (milliseconds, half of the simulation period).
+	 */
+	protected static final float TICK_BUDGET = 25;
+	
+	/**
+	 * The draw distance at the best quality (the camera's far plane).
+	 */
+	protected static final float DRAW_DISTANCE = 500f;
+	
+	/**
+	 * Whether the frame profiler's stats are shown over the running game.
+	 */
+	protected static final boolean PROFILER_OVERLAY = false;
+	
 	/**
 	 * The list of HUD shaders to register.
 	 */
 	protected static final Object[][] REGISTER_SHADERS_HUD = {
-			{ "simple_color", R.raw.simple_color_v, R.raw.simple_color_f },
-			{ "simple_tex", R.raw.simple_tex_v, R.raw.simple_tex_f },
-			{ "draw_text", R.raw.draw_text_v, R.raw.draw_text_f }
+			{ "sprite_batch", R.raw.sprite_batch_v, R.raw.sprite_batch_f },
+			{ "draw_text", R.raw.draw_text_v, R.raw.draw_text_f },
+			{ "blit", R.raw.blit_v, R.raw.blit_f }
 	};
 	
 	/**
@@ -106,8 +192,11 @@ public class GameScene implements View {
 	 */
 	protected static final Object[][] REGISTER_SHADERS_3D = {
 			{ "s3d_tex_phong", R.raw.s3d_tex_phong_v, R.raw.s3d_tex_phong_f },
+			{ "s3d_splat", R.raw.s3d_splat_v, R.raw.s3d_splat_f },
+			{ "s3d_lightmap", R.raw.s3d_lightmap_v, R.raw.s3d_lightmap_f },
 			{ "s3d_simple_ilum", R.raw.s3d_simple_ilum_v, R.raw.s3d_simple_ilum_f },
-			{ "s3d_simple_color", R.raw.s3d_simple_color_v, R.raw.s3d_simple_color_f }
+			{ "s3d_simple_color", R.raw.s3d_simple_color_v, R.raw.s3d_simple_color_f },
+			{ "particle", R.raw.particle_v, R.raw.particle_f }
 	};
 	
 	/**
@@ -160,6 +249,74 @@ public class GameScene implements View {
 	 */
 	protected DrawText drawText;
 	
+	/**
+	 * The sprite batch the HUD objects are drawn with.
+	 */
+	protected SpriteBatch spriteBatch;
+	
+	/**
+	 * Builds the 3D scene's frames in background.
+	 */
+	protected FramePipeline framePipeline;
+	
+	/**
+	 * The 3D objects removed from the scene, destroyed after the frame that may still reference 
+	 * them is drawn.
+	 * 
+	 * <p>Should only be accessed from the OpenGL thread!</p>
+	 */
+	protected final List<Object3D> retiredObjects = new ArrayList<>();
+	
+	/**
+	 * The particle effects (explosions, exhaust trails, sparks).
+	 */
+	protected ParticleEffects3D particleEffects;
+	
+	/**
+	 * Animates the game's events (registered while the scene is active).
+	 */
+	protected GameEventListener gameEventListener;
+	
+	/**
+	 * The scene's terrain object.
+	 */
+	protected Terrain3D terrain3D;
+	
+	/**
+	 * Adjusts the quality settings below to hold the target frame rate.
+	 */
+	protected final QualityGovernor qualityGovernor;
+	
+	/**
+	 * The offscreen target the 3D scene is drawn into when its resolution is lowered.
+	 */
+	protected final RenderTarget renderTarget = new RenderTarget();
+	
+	/**
+	 * The resolution of the 3D scene, relative to the viewport's (a quality setting).
+	 */
+	protected float renderScale = 1;
+	
+	/**
+	 * The camera's far plane distance (a quality setting).
+	 */
+	protected float drawDistance = DRAW_DISTANCE;
+	
+	/**
+	 * Records the frames' timing.
+	 */
+	protected final FrameProfiler profiler = FrameProfiler.getInstance();
+	
+	/**
+	 * Shows the frame profiler's stats (null if disabled).
+	 */
+	protected ProfilerOverlay profilerOverlay;
+	
+	/**
+	 * The start time of the last measured frame (nanoseconds, 0 if none).
+	 */
+	protected long lastFrameStart = 0;
+	
 	/**
 	 * Stores the initially-clicked and currently-hovered HUD object.
 	 * 
@@ -179,6 +336,31 @@ public class GameScene implements View {
 	 */
 	protected MenuContainer menuContainer, gameOverContainer;
 	
+	/**
+	 * Reference to the score text object.
+	 */
+	protected HUDText scoreText;
+	
+	/**
+	 * The buffer the score's caption is formatted into (reused).
+	 */
+	protected final StringBuilder scoreCaption = new StringBuilder(32);
+	
+	/**
+	 * The score shown by the HUD (-1 if not shown yet).
+	 */
+	protected int shownScore = -1;
+	
+	/**
+	 * The game status the HUD's visibility groups were set for (null if not set yet).
+	 */
+	protected Game.GameStatus shownStatus = null;
+	
+	/**
+	 * Whether the whole HUD needs to be drawn again (e.g. its camera changed).
+	 */
+	protected volatile boolean hudInvalidated = true;
+	
 	/**
 	 * Lock used for Activity/Renderer threads synchronization.
 	 * 
@@ -212,6 +394,31 @@ public class GameScene implements View {
 	 */
 	final protected IdentityHashMap<BaseModel, Object3D> modelObjects;
 	
+	/**
+	 * The terrain's model object.
+	 */
+	protected HeightField terrainModel;
+	
+	/**
+	 * The terrain's occlusion buffer, used for culling the objects hidden behind it.
+	 */
+	protected final OcclusionBuffer occlusionBuffer = new OcclusionBuffer();
+	
+	/**
+	 * The camera's view matrix computed for the next frame (work array).
+	 */
+	protected final float[] cameraView = new float[16];
+	
+	/**
+	 * Work arrays used for computing the camera's position.
+	 */
+	protected final float[] cameraMatrix = new float[16], cameraPoint = new float[8];
+	
+	/**
+	 * An object's bounds (work array of the frame builder's thread).
+	 */
+	protected final float[] objectBounds = new float[6];
+	
 	/**
 	 * Whether the view is initialized.
 	 */
@@ -244,6 +451,11 @@ public class GameScene implements View {
 		
 		// draw text library
 		drawText = new DrawText(gameHUD);
+		spriteBatch = new SpriteBatch(gameHUD);
+		framePipeline = new FramePipeline(new SceneFrameBuilder());
+		
+		qualityGovernor = new QualityGovernor(TARGET_FRAME_RATE, TICK_BUDGET);
+		registerQualityKnobs();
 	}
 	
 	/**
@@ -254,13 +466,13 @@ public class GameScene implements View {
 		initialized.set(false);
 		
 		// clean up structures first
-		ShaderLoader.clear();
-		TextureLoader.clear();
+		framePipeline.reset();
 		objects = new ObjectsManager<>();
 		hudObjects = new ObjectsManager<>();
 		shaderManager3D.clear();
 		shaderManagerHUD.clear();
 		drawText.destroy();
+		spriteBatch.destroy();
 		
 		// initialize the shaders
 		for (Object[] shaderProps: REGISTER_SHADERS_3D) {
@@ -283,12 +495,23 @@ public class GameScene implements View {
 		player = world.getPlayer();
 		
 		// initialize the scene objects
-		Terrain3D terrain = new Terrain3D(gameScene3D, world.getTerrain(), "terrain", 0);
+		terrainModel = world.getTerrain();
+		Terrain3D terrain;
+		if (world.isEndless()) {
+			terrain = new StreamedTerrain3D(gameScene3D, (StreamedTerrain)terrainModel, "terrain", 0);
+		} else {
+			terrain = new Terrain3D(gameScene3D, (Terrain)terrainModel, "terrain", 0);
+		}
 		objects.add(terrain);
+		terrain3D = terrain;
 		
 		FighterJet3D primaryJet = new FighterJet3D(gameScene3D, player, "fighter", 0);
 		objects.add(primaryJet);
 		
+		// the particles are translucent, so they are drawn last
+		particleEffects = new ParticleEffects3D(gameScene3D, "particles", 10);
+		objects.add(particleEffects);
+		
 		world.addEnemyCollectionListener(new CollectionListener<EnemyPlane>() {
 			@Override
 			public void onObjectAdded(final EnemyPlane object) {
@@ -306,10 +529,11 @@ public class GameScene implements View {
 				controller.queueEvent(new Runnable() {
 					@Override
 					public void run() {
-						if (!modelObjects.containsKey(object))
+						Object3D object3D = modelObjects.remove(object);
+						if (object3D == null)
 							return;
-						objects.remove(modelObjects.get(object));
-						modelObjects.remove(object);
+						objects.remove(object3D);
+						retiredObjects.add(object3D);
 					}
 				});
 			}
@@ -329,6 +553,7 @@ public class GameScene implements View {
 						RocketProjectile3D planeObject = new RocketProjectile3D(gameScene3D, object, "projectile", 0);
 						objects.add(planeObject);
 						modelObjects.put(object, planeObject);
+						particleEffects.addEmitter(object);
 					}
 				});
 			}
@@ -337,10 +562,12 @@ public class GameScene implements View {
 				controller.queueEvent(new Runnable() {
 					@Override
 					public void run() {
-						if (!modelObjects.containsKey(object))
+						particleEffects.removeEmitter(object);
+						Object3D object3D = modelObjects.remove(object);
+						if (object3D == null)
 							return;
-						objects.remove(modelObjects.get(object));
-						modelObjects.remove(object);
+						objects.remove(object3D);
+						retiredObjects.add(object3D);
 					}
 				});
 			}
@@ -349,12 +576,42 @@ public class GameScene implements View {
 			RocketProjectile3D projectileObject = new RocketProjectile3D(gameScene3D, projectile, "projectile", 0);
 			objects.add(projectileObject);
 			modelObjects.put(projectile, projectileObject);
+			particleEffects.addEmitter(projectile);
 		}
 		
+		// the events' positions are read right away (the particles are emitted on the GL thread)
+		gameEventListener = new GameEventListener() {
+			@Override
+			public void onPlaneDestroyed(Plane plane) {
+				final float[] position = plane.getPosition().toArray();
+				controller.queueEvent(new Runnable() {
+					@Override
+					public void run() {
+						particleEffects.explode(position[0], position[1], position[2]);
+					}
+				});
+			}
+			@Override
+			public void onProjectileHit(Projectile projectile) {
+				final float[] position = projectile.getPosition().toArray();
+				controller.queueEvent(new Runnable() {
+					@Override
+					public void run() {
+						particleEffects.spark(position[0], position[1], position[2]);
+					}
+				});
+			}
+		};
+		game.addEventListener(gameEventListener);
+		
+		// apply the current quality settings to the new objects
+		qualityGovernor.applyLevels();
+		lastFrameStart = 0;
+		
 		
 		hudObjectsTemplate = new Object[][]{
 				// { object, position, [size] }
-				{ new HUDText(gameHUD, "ingame_hud", 0, "Score: 0" ), new float[]{ 3.1f, 9.18f, 0f } },
+				{ new HUDText(gameHUD, "ingame_hud", 0, SCORE_PREFIX + "0" ), new float[]{ 3.1f, 9.18f, 0f } },
 				
 				{ new HUDButton(gameHUD, "ingame_hud", 0, "R", controller.getAction("hud_shoot_missile") ), new float[]{ 0.4f, 0.4f, 0f } },
 				{ new HUDButton(gameHUD, "ingame_hud", 0, "G", controller.getAction("hud_shoot_gun") ), new float[]{ -1.1f, 0.4f, 0f } },
@@ -408,6 +665,18 @@ public class GameScene implements View {
 		hudObjects.add(gameOverContainer);
 		Collections.addAll(gameOverContainer.getObjects(), gameOverObjects);
 		
+		if (PROFILER_OVERLAY) {
+			profilerOverlay = new ProfilerOverlay(gameHUD, "ingame_hud", 0);
+			profilerOverlay.position().setCoordinates(0.4f, 8.2f, 0);
+			hudObjects.add(profilerOverlay);
+		}
+		
+		// the HUD is updated on the first frame
+		scoreText = (HUDText)hudObjectsTemplate[0][0];
+		shownScore = -1;
+		shownStatus = null;
+		hudInvalidated = true;
+		
 		// initialize the camera
 		cameraAngle[0] = cameraAngle[1] = 0;
 		
@@ -418,51 +687,212 @@ public class GameScene implements View {
 	public void onClose() {
 		initialized.set(false);
 		
+		if (gameEventListener != null) {
+			game.removeEventListener(gameEventListener);
+			gameEventListener = null;
+		}
+		
 		synchronized (modelObjects) {
 			modelObjects.clear();
 		}
 		
+		// stop building frames before destroying the objects they reference
+		framePipeline.destroy();
+		
 		// destroy the objects
 		for (Object3D obj: objects) {
 			obj.destroy();
 		}
 		objects.clear();
+		destroyRetiredObjects();
 		
 		for (HUDObject obj: hudObjects) {
 			obj.destroy();
 		}
 		hudObjects.clear();
 		
-		// destroy the DrawText instance.
+		terrain3D = null;
+		profilerOverlay = null;
+		
+		// destroy the DrawText and SpriteBatch instances.
 		drawText.destroy();
+		spriteBatch.destroy();
+		renderTarget.destroy();
 		shaderManager3D.destroy();
 		shaderManagerHUD.destroy();
 	}
 	
 	@Override
 	public void draw() {
+		long frameStart = System.nanoTime();
+		
+		// the frame's commands were built in background (the next frame's build starts now)
+		RenderCommandBuffer frame = framePipeline.nextFrame();
+		profiler.mark(FrameProfiler.PHASE_BUILD);
+		System.arraycopy(frame.getViewMatrix(), 0, camera.getViewMatrix(), 0, 16);
+		shaderManager3D.notifyCameraChanged(camera);
+		profiler.mark(FrameProfiler.PHASE_CAMERA);
+		
+		// the 3D scene is drawn offscreen when its resolution is lowered
+		int width = (int)camera.getViewportWidth(), height = (int)camera.getViewportHeight();
+		boolean scaled = (renderScale < 1);
+		if (scaled)
+			renderTarget.bind(Math.round(width * renderScale), Math.round(height * renderScale));
+		
 		GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
+		
+		particleEffects.setPaused(game.getStatus() != Game.GameStatus.RUNNING);
 		GLES20.glEnable(GLES20.GL_DEPTH_TEST);
+		frame.execute();
+		GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+		
+		if (scaled) {
+			renderTarget.unbind(width, height);
+			// the clear is almost free and spares the tiled GPUs from loading the old contents
+			GLES20.glClear(GLES20.GL_DEPTH_BUFFER_BIT | GLES20.GL_COLOR_BUFFER_BIT);
+			renderTarget.draw(shaderManagerHUD.getShader("blit"));
+		}
 		
-		updateCamera();
+		// the next frame no longer references the removed objects
+		destroyRetiredObjects();
+		profiler.mark(FrameProfiler.PHASE_SCENE);
 		
-		// draw the objects
-		objects.drawAll();
+		updateHUD();
+		if (profilerOverlay != null)
+			profilerOverlay.update();
 		
-		GLES20.glDisable(GLES20.GL_DEPTH_TEST);
+		// the whole HUD layer is drawn by the sprite batch (again from its buffers if unchanged)
+		boolean hudDirty = hudInvalidated;
+		for (int i = 0; i < hudObjects.size(); i++) {
+			hudDirty |= hudObjects.get(i).isDirty();
+		}
+		if (hudDirty || !spriteBatch.redraw()) {
+			hudInvalidated = false;
+			for (int i = 0; i < hudObjects.size(); i++) {
+				hudObjects.get(i).clearDirty();
+			}
+			
+			spriteBatch.begin();
+			hudObjects.drawAll();
+			spriteBatch.end();
+		}
+		profiler.mark(FrameProfiler.PHASE_HUD);
+		
+		// only the running game's frames are measured (the menus would skew the quality)
+		if (game.getStatus() == Game.GameStatus.RUNNING) {
+			if (lastFrameStart != 0) {
+				qualityGovernor.recordFrame((frameStart - lastFrameStart) / 1e6f, 
+						(System.nanoTime() - frameStart) / 1e6f, game.getPhysicsStepTime());
+			}
+			lastFrameStart = frameStart;
+		} else {
+			lastFrameStart = 0;
+		}
+	}
+	
+	@Override
+	public boolean isAnimating() {
+		// the paused game is still, unless its terrain is being loaded
+		return (game != null && game.getStatus() == Game.GameStatus.RUNNING) || 
+				(terrain3D != null && terrain3D.isLoading());
+	}
+	
+	/**
+	 * Registers the quality settings with the governor, in the order they are lowered (the least 
+	 * noticeable first).
+	 * 
+	 * <p>The knobs are changed on the OpenGL thread (when the frames are recorded).</p>
+	 */
+	protected void registerQualityKnobs() {
+		// fewer particles
+		qualityGovernor.addKnob(new QualityGovernor.ValueKnob(1, 0.5f, 0) {
+			@Override
+			protected void apply(float value) {
+				if (particleEffects != null)
+					particleEffects.setDetail(value);
+			}
+		});
+		// the cheaper shading tiers closer to the camera
+		qualityGovernor.addKnob(new QualityGovernor.ValueKnob(1, 0.5f, 0.25f) {
+			@Override
+			protected void apply(float value) {
+				Shader.Quality.setDistanceScale(value);
+			}
+		});
+		// the terrain's detail drops closer to the camera
+		qualityGovernor.addKnob(new QualityGovernor.ValueKnob(1, 0.5f, 0.25f) {
+			@Override
+			protected void apply(float value) {
+				if (terrain3D != null)
+					terrain3D.setLodDistance(Terrain3D.LOD_DISTANCE * value);
+			}
+		});
+		// a lower resolution, stretched over the viewport
+		qualityGovernor.addKnob(new QualityGovernor.ValueKnob(1, 0.75f, 0.5f) {
+			@Override
+			protected void apply(float value) {
+				renderScale = value;
+				if (particleEffects != null)
+					particleEffects.setResolutionScale(value);
+			}
+		});
+		// a shorter draw distance
+		qualityGovernor.addKnob(new QualityGovernor.ValueKnob(DRAW_DISTANCE, 
+				DRAW_DISTANCE * 0.7f, DRAW_DISTANCE * 0.5f) {
+			@Override
+			protected void apply(float value) {
+				synchronized (lock) {
+					drawDistance = value;
+					updateProjection();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Computes the 3D camera's projection matrix (for the current viewport and draw distance).
+	 * 
+	 * <p>Must be called while holding the {@link #lock}.</p>
+	 */
+	protected void updateProjection() {
+		if (camera.getViewportHeight() <= 0)
+			return;
 		
-		// update some HUD objects
-		((HUDText)hudObjectsTemplate[0][0]).setCaption("Score: " + game.getScore());
+		//Matrix.frustumM(camera.getProjectionMatrix(), 0,
+		//		-ratio, ratio, -1f, 1f, 1f, 400f );
+		Matrix.perspectiveM(camera.getProjectionMatrix(), 0, 60, camera.getViewportRatio(), 
+				0.001f, drawDistance);
+	}
+	
+	/**
+	 * Updates the HUD objects that reflect the game's state.
+	 * 
+	 * <p>The visibility groups are only switched when the game's status changes and the score's 
+	 * caption is only formatted when the score changes.</p>
+	 */
+	protected void updateHUD() {
+		int score = (int)game.getScore();
+		if (score != shownScore) {
+			shownScore = score;
+			scoreCaption.setLength(0);
+			scoreCaption.append(SCORE_PREFIX).append(score);
+			scoreText.setCaption(scoreCaption);
+		}
+		
+		Game.GameStatus status = game.getStatus();
+		if (status == shownStatus)
+			return;
+		shownStatus = status;
 		
 		for (HUDObject hudObject: hudObjects) 
 			hudObject.setVisibility(false);
 		
-		if (game.getStatus() == Game.GameStatus.RUNNING) {
+		if (status == Game.GameStatus.RUNNING) {
 			for (HUDObject hudObject: hudObjects.getObjectsByTag("ingame_hud")) {
 				hudObject.setVisibility(true);
 			}
 			
-		} else if (game.getStatus() == Game.GameStatus.PAUSED) {
+		} else if (status == Game.GameStatus.PAUSED) {
 			for (HUDObject hudObject: hudObjects.getObjectsByTag("paused_menu")) {
 				hudObject.setVisibility(true);
 			}
@@ -472,8 +902,6 @@ public class GameScene implements View {
 				hudObject.setVisibility(true);
 			}
 		}
-		
-		hudObjects.drawAll();
 	}
 	
 	@Override
@@ -493,11 +921,10 @@ public class GameScene implements View {
 				/*near: */ 0, /*far: */ -10);
 			hudCamera.computeReverseMatrix();
 			shaderManagerHUD.notifyCameraChanged(hudCamera);
+			hudInvalidated = true;
 			
 			// update the 3D camera
-			//Matrix.frustumM(camera.getProjectionMatrix(), 0,
-			//		-ratio, ratio, -1f, 1f, 1f, 400f );
-			Matrix.perspectiveM(camera.getProjectionMatrix(), 0, 60, ratio, 0.001f, 500f);
+			updateProjection();
 			
 			// realign hud objects
 			for (Object[] objProps: hudObjectsTemplate) {
@@ -515,8 +942,6 @@ public class GameScene implements View {
 			menuContainer.repositionObjects();
 			gameOverContainer.setDimensions(vWidth, gameOverContainer.getDimensions()[1]);
 			gameOverContainer.repositionObjects();
-			
-			updateCamera();
 		}
 	}
 	
@@ -591,14 +1016,7 @@ public class GameScene implements View {
 					initialTouchPoint[0] = e.getX();
 					initialTouchPoint[1] = e.getY();
 					
-					controller.queueEvent(new Runnable() {
-						@Override
-						public void run() {
-							synchronized (lock) {
-								updateCamera();
-							}
-						}
-					});
+					// the camera is recomputed when the next frame is prepared
 				}
 				
 			} else if ( e.getAction() == MotionEvent.ACTION_DOWN ||
@@ -655,19 +1073,24 @@ public class GameScene implements View {
 	}
 	
 	/**
-	 * Recalculates camera's position based on the player plane's position and viewing direction.
+	 * Computes the camera's view matrix based on the player plane's position and viewing direction.
 	 * 
 	 * <p>Must be executed from the OpenGL thread!</p>
+	 * 
+	 * @param viewMatrix The array to store the view matrix into.
 	 */
-	protected void updateCamera() {
+	protected void computeCameraView(float[] viewMatrix) {
 		float[] position = player.getPosition().toArray();
 		
 		// compute camera's facing direction
-		float[] initialPoint = new float[] { -2f, 0, 1f, 1 };
-		float[] resPoint = new float[4];
+		float[] initialPoint = cameraPoint, resPoint = cameraPoint;
+		initialPoint[0] = -2f;
+		initialPoint[1] = 0;
+		initialPoint[2] = 1f;
+		initialPoint[3] = 1;
 		
 		// set the camera to a position around the player's plane
-		float[] matr = new float[16];
+		float[] matr = cameraMatrix;
 		Matrix.setIdentityM(matr, 0);
 		Matrix.translateM(matr, 0, position[0], position[1], position[2]);
 		
@@ -675,14 +1098,50 @@ public class GameScene implements View {
 		Matrix.rotateM(matr, 0, player.getYaw(), 0, 0, 1);
 		Matrix.rotateM(matr, 0, cameraAngle[1], 0, 1, 0);
 		
-		Matrix.multiplyMV(resPoint, 0, matr, 0, initialPoint, 0);
+		Matrix.multiplyMV(resPoint, 4, matr, 0, initialPoint, 0);
 		
-		Matrix.setLookAtM(camera.getViewMatrix(), 0, 
-				resPoint[0], resPoint[1], resPoint[2],
+		Matrix.setLookAtM(viewMatrix, 0, 
+				resPoint[4], resPoint[5], resPoint[6],
 				position[0], position[1], position[2] + 0.5f, 
 				0f, 0.0f, 1.0f );
+	}
+	
+	/**
+	 * Rasterizes the terrain (around the camera, for the endless mode) into the occlusion buffer.
+	 * 
+	 * <p>Called from the frame builder's thread (the occlusion buffer is only used by it).</p>
+	 * 
+	 * @param frame The frame's command buffer (for the camera's snapshot).
+	 */
+	protected void updateOcclusion(RenderCommandBuffer frame) {
+		float[] cameraPosition = frame.getCameraPosition();
+		occlusionBuffer.begin(frame.getViewProjectionMatrix(), cameraPosition);
 		
-		shaderManager3D.notifyCameraChanged(camera);
+		if (terrainModel instanceof StreamedTerrain) {
+			StreamedTerrain streamedTerrain = (StreamedTerrain)terrainModel;
+			int centerX = StreamedTerrain.getPageCoordinate(cameraPosition[0]);
+			int centerY = StreamedTerrain.getPageCoordinate(cameraPosition[1]);
+			for (int dx = -StreamedTerrain.LOAD_RADIUS; dx <= StreamedTerrain.LOAD_RADIUS; dx++) {
+				for (int dy = -StreamedTerrain.LOAD_RADIUS; dy <= StreamedTerrain.LOAD_RADIUS; dy++) {
+					TerrainPage page = streamedTerrain.getPage(centerX + dx, centerY + dy);
+					if (page != null)
+						occlusionBuffer.addOccluders(page.getHeightTree());
+				}
+			}
+			
+		} else if (terrainModel instanceof Terrain) {
+			occlusionBuffer.addOccluders(((Terrain)terrainModel).getHeightTree());
+		}
+	}
+	
+	/**
+	 * Destroys the objects removed from the scene (once no frame references them).
+	 */
+	protected void destroyRetiredObjects() {
+		for (int i = 0; i < retiredObjects.size(); i++) {
+			retiredObjects.get(i).destroy();
+		}
+		retiredObjects.clear();
 	}
 	
 }
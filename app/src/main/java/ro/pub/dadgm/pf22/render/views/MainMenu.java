@@ -22,8 +22,8 @@ import ro.pub.dadgm.pf22.render.objects.hud.MenuContainer;
 import ro.pub.dadgm.pf22.render.objects.hud.MenuItem;
 import ro.pub.dadgm.pf22.render.objects.hud.MenuTitle;
 import ro.pub.dadgm.pf22.render.utils.DrawText;
-import ro.pub.dadgm.pf22.render.utils.ShaderLoader;
-import ro.pub.dadgm.pf22.render.utils.TextureLoader;
+import ro.pub.dadgm.pf22.render.utils.FrameProfiler;
+import ro.pub.dadgm.pf22.render.utils.SpriteBatch;
 
 /**
  * The view for the game's main menu.
@@ -39,7 +39,7 @@ public class MainMenu implements View, Scene3D {
 	 * The list of shaders to register (used by this view).
 	 */
 	protected static final Object[][] REGISTER_SHADERS = {
-			{ "simple_tex", R.raw.simple_tex_v, R.raw.simple_tex_f }, 
+			{ "sprite_batch", R.raw.sprite_batch_v, R.raw.sprite_batch_f }, 
 			{ "draw_text", R.raw.draw_text_v, R.raw.draw_text_f }
 	};
 	
@@ -73,6 +73,11 @@ public class MainMenu implements View, Scene3D {
 	 */
 	protected DrawText drawText;
 	
+	/**
+	 * The sprite batch the menu's objects are drawn with.
+	 */
+	protected SpriteBatch spriteBatch;
+	
 	/**
 	 * Stores the initially-clicked and currently-hovered object.
 	 * 
@@ -115,6 +120,7 @@ public class MainMenu implements View, Scene3D {
 		
 		// draw text library
 		drawText = new DrawText(this);
+		spriteBatch = new SpriteBatch(this);
 	}
 	
 	/**
@@ -122,12 +128,16 @@ public class MainMenu implements View, Scene3D {
 	 */
 	@Override
 	public void onActivate() {
-		// clean up structures first
-		ShaderLoader.clear();
-		TextureLoader.clear();
+		// clean up structures first (the previous objects might hold pinned textures)
+		if (objects != null) {
+			for (HUDObject obj: objects) {
+				obj.destroy();
+			}
+		}
 		objects = new ObjectsManager<>();
 		shaderManager.clear();
 		drawText.destroy();
+		spriteBatch.destroy();
 		
 		// initialize the shaders
 		for (Object[] shaderProps: REGISTER_SHADERS) {
@@ -165,6 +175,7 @@ public class MainMenu implements View, Scene3D {
 				new MenuItem(this, "menu_item", 0, "Start Game", controller.getAction("start_game")),
 				new MenuItem(this, "menu_item", 1, "Sound", controller.getAction("toggle_sound")),
 				new MenuItem(this, "menu_item", 2, "Difficulty", controller.getAction("toggle_difficulty")),
+				new MenuItem(this, "menu_item", 3, "Mode", controller.getAction("toggle_mode")),
 		};
 		
 		for (Object[] objProps: centeredObjects) {
@@ -194,8 +205,9 @@ public class MainMenu implements View, Scene3D {
 		}
 		objects.clear();
 		
-		// destroy the DrawText instance.
+		// destroy the DrawText and SpriteBatch instances.
 		drawText.destroy();
+		spriteBatch.destroy();
 		shaderManager.destroy();
 	}
 	
@@ -209,10 +221,20 @@ public class MainMenu implements View, Scene3D {
 		// update menu captions
 		menuObjects[1].setCaption("Sound: " + ( game.getSound() ? "on" : "off"));
 		menuObjects[2].setCaption("Difficulty: " + game.getDifficulty().toString().toLowerCase());
+		menuObjects[3].setCaption("Mode: " + ( game.getEndless() ? "endless" : "classic"));
 		menuContainer.repositionObjects();
 		
-		// draw the objects
+		// draw the objects (the background, then the rest of the menu in a single batch)
+		spriteBatch.begin();
 		objects.drawAll();
+		spriteBatch.end();
+		FrameProfiler.getInstance().mark(FrameProfiler.PHASE_HUD);
+	}
+	
+	@Override
+	public boolean isAnimating() {
+		// the menu only changes when touched
+		return false;
 	}
 	
 	@Override
@@ -342,4 +364,9 @@ public class MainMenu implements View, Scene3D {
 		return drawText;
 	}
 	
+	@Override
+	public SpriteBatch getSpriteBatch() {
+		return spriteBatch;
+	}
+	
 }
@@ -0,0 +1,184 @@
+package ro.pub.dadgm.pf22.utils;
+
+/**
+ * A fast, splittable pseudo-random number generator (the SplitMix64 algorithm).
+ * 
+ * <p>Equivalent to Java 8's <code>SplittableRandom</code> (which is not available on our target
+ * Android versions): a generator can be {@link #split()} into a new, statistically independent
+ * one, so that each parallel task gets its own stream while the whole computation stays
+ * reproducible from a single seed.</p>
+ * 
+ * <p>Instances are not thread-safe: each thread / task must use its own generator.</p>
+ */
+public class SplitMixRandom {
+	
+	/**
+	 * The default gamma (the odd integer closest to 2^64 / phi).
+	 */
+	protected static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	
+	/**
+	 * The current state of the generator.
+	 */
+	protected long seed;
+	
+	/**
+	 * The (odd) increment of the state.
+	 */
+	protected final long gamma;
+	
+	
+	/**
+	 * Creates a new generator using the specified seed.
+	 * 
+	 * @param seed The initial seed.
+	 */
+	public SplitMixRandom(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+	
+	/**
+	 * Creates a new generator with the specified state.
+	 * 
+	 * @param seed The initial seed.
+	 * @param gamma The state increment (must be odd).
+	 */
+	protected SplitMixRandom(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+	
+	/**
+	 * Splits off a new generator, independent of the current one.
+	 * 
+	 * <p>Advances the state of the current generator.</p>
+	 * 
+	 * @return The new generator.
+	 */
+	public SplitMixRandom split() {
+		return new SplitMixRandom(nextLong(), mixGamma(nextSeed()));
+	}
+	
+	/**
+	 * Returns a pseudo-random long value.
+	 * 
+	 * @return The next random value.
+	 */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+	
+	/**
+	 * Returns a pseudo-random int value.
+	 * 
+	 * @return The next random value.
+	 */
+	public int nextInt() {
+		return mix32(nextSeed());
+	}
+	
+	/**
+	 * Returns a pseudo-random, uniformly distributed int value in the [0, bound) range.
+	 * 
+	 * @param bound The (exclusive) upper bound, must be positive.
+	 * @return The next random value.
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("The bound must be positive!");
+		
+		int r = nextInt() >>> 1;
+		int m = bound - 1;
+		if ((bound & m) == 0) // power of 2
+			return r & m;
+		
+		// reject the values from the last, incomplete interval to avoid bias
+		for (int u = r; u - (r = u % bound) + m < 0; u = nextInt() >>> 1);
+		return r;
+	}
+	
+	/**
+	 * Returns a pseudo-random float value in the [0, 1) range.
+	 * 
+	 * @return The next random value.
+	 */
+	public float nextFloat() {
+		return (nextInt() >>> 8) * 0x1.0p-24f;
+	}
+	
+	/**
+	 * Returns a pseudo-random double value in the [0, 1) range.
+	 * 
+	 * @return The next random value.
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+	
+	
+	/**
+	 * Hashes a seed and a pair of integer coordinates into a pseudo-random value.
+	 * 
+	 * <p>Used to generate values that only depend on a position (e.g. the lattice values of a
+	 * noise function), without keeping any generator state.</p>
+	 * 
+	 * @param seed The seed.
+	 * @param x The X coordinate.
+	 * @param y The Y coordinate.
+	 * @return The hashed value.
+	 */
+	public static long hash(long seed, int x, int y) {
+		return mix64(mix64(seed + GOLDEN_GAMMA * x) + GOLDEN_GAMMA * y);
+	}
+	
+	
+	/**
+	 * Advances the generator's state.
+	 * 
+	 * @return The new state.
+	 */
+	protected long nextSeed() {
+		return (seed += gamma);
+	}
+	
+	/**
+	 * The 64-bit finalizer (David Stafford's "Mix13" variant of MurmurHash3's).
+	 * 
+	 * @param z The value to mix.
+	 * @return The mixed value.
+	 */
+	protected static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * The 32-bit finalizer (returns the upper 32 bits of David Stafford's "Mix4" variant).
+	 * 
+	 * @param z The value to mix.
+	 * @return The mixed value.
+	 */
+	protected static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+	
+	/**
+	 * Computes a gamma value for a split generator.
+	 * 
+	 * <p>The result is odd and avoids the values with too few bit transitions (which produce
+	 * poor sequences).</p>
+	 * 
+	 * @param z The value to derive the gamma from.
+	 * @return The gamma value.
+	 */
+	protected static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+	
+}
@@ -0,0 +1,147 @@
+package ro.pub.dadgm.pf22.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A shared pool of worker threads used for the CPU-heavy, data parallel computations (e.g. terrain
+ * generation).
+ * 
+ * <p>The pool is sized after the number of available cores and is created lazily. Its threads
+ * are daemons, so they never prevent the process from exiting.</p>
+ */
+public class WorkerPool {
+	
+	/**
+	 * A task that is executed once for each index of a range.
+	 */
+	public static interface IndexedTask {
+		
+		/**
+		 * Processes an index of the range.
+		 * 
+		 * <p>Can be called concurrently from multiple threads (for distinct indices).</p>
+		 * 
+		 * @param index The index to process.
+		 */
+		public void run(int index);
+		
+	}
+	
+	/**
+	 * The number of threads that process a parallel loop (including the caller).
+	 */
+	public static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+	
+	/**
+	 * The worker threads' executor (lazily created).
+	 */
+	protected static ExecutorService executor = null;
+	
+	
+	/**
+	 * Returns the shared executor, creating it if needed.
+	 * 
+	 * @return The executor service.
+	 */
+	public static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			// the caller of a parallel loop also does work, so one less thread is needed
+			executor = Executors.newFixedThreadPool(Math.max(1, PARALLELISM - 1), new ThreadFactory() {
+				protected int counter = 0;
+				
+				@Override
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Worker-" + (counter++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+	
+	/**
+	 * Runs the task for all indices in the [0, count) range, in parallel, and waits for it to
+	 * finish.
+	 * 
+	 * <p>The calling thread also processes indices, so the loop always makes progress (even if
+	 * the workers are busy or the call is nested inside another parallel loop). The order in which
+	 * the indices are processed is undefined, so the results must not depend on it.</p>
+	 * 
+	 * <p>If the task throws an exception, the remaining indices are skipped and the exception is
+	 * rethrown to the caller.</p>
+	 * 
+	 * @param count The number of indices to process.
+	 * @param task The task to run.
+	 */
+	public static void parallelFor(final int count, final IndexedTask task) {
+		if (count <= 0)
+			return;
+		
+		final AtomicInteger nextIndex = new AtomicInteger(0);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				int index;
+				while (failure.get() == null && (index = nextIndex.getAndIncrement()) < count) {
+					try {
+						task.run(index);
+						
+					} catch (RuntimeException | Error e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}
+		};
+		
+		int helpers = Math.min(count, PARALLELISM) - 1;
+		List<FutureTask<Void>> futures = new ArrayList<>(helpers);
+		for (int i = 0; i < helpers; i++) {
+			FutureTask<Void> future = new FutureTask<>(worker, null);
+			futures.add(future);
+			getExecutor().execute(future);
+		}
+		
+		worker.run();
+		
+		// helpers that did not start yet are no longer needed, wait for the running ones
+		boolean interrupted = false;
+		for (FutureTask<Void> future: futures) {
+			if (future.cancel(false))
+				continue;
+			
+			while (true) {
+				try {
+					future.get();
+					break;
+					
+				} catch (InterruptedException e) {
+					interrupted = true;
+					
+				} catch (ExecutionException | CancellationException e) {
+					break; // the worker catches all task failures
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		Throwable e = failure.get();
+		if (e instanceof RuntimeException)
+			throw (RuntimeException)e;
+		if (e instanceof Error)
+			throw (Error)e;
+	}
+	
+}
@@ -0,0 +1,89 @@
+package ro.pub.dadgm.pf22.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free counter, striped so the threads that increment it concurrently don't contend on the 
+ * same memory location.
+ * 
+ * <p>Each thread adds to one of the {@link #STRIPES} cells (chosen by its id), which are spaced 
+ * a cache line apart. The counter's value is the sum of the cells.</p>
+ */
+public class Counter extends Metric {
+	
+	/**
+	 * The number of cells (a power of two).
+	 */
+	public static final int STRIPES = Math.max(4, 
+			Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+	
+	/**
+	 * The distance between two cells (a 64 bytes cache line holds 8 longs).
+	 */
+	protected static final int PADDING = 8;
+	
+	
+	/**
+	 * The cells (only every {@link #PADDING}-th element is used).
+	 */
+	protected final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+	
+	
+	/**
+	 * Creates the counter (use {@link Metrics#counter(String)} instead).
+	 * 
+	 * @param name The counter's name.
+	 */
+	protected Counter(String name) {
+		super(name);
+	}
+	
+	/**
+	 * Increments the counter (if the metrics are enabled).
+	 */
+	public void increment() {
+		add(1);
+	}
+	
+	/**
+	 * Adds a value to the counter (if the metrics are enabled).
+	 * 
+	 * @param delta The value to add.
+	 */
+	public void add(long delta) {
+		if (!Metrics.enabled)
+			return;
+		
+		long id = Thread.currentThread().getId();
+		int stripe = (int)(id ^ (id >>> 16)) & (STRIPES - 1);
+		cells.getAndAdd(stripe * PADDING, delta);
+	}
+	
+	/**
+	 * Returns the counter's value.
+	 * 
+	 * <p>The increments done concurrently may be missing (the cells are summed one by one).</p>
+	 * 
+	 * @return The sum of the cells.
+	 */
+	public long get() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+	
+	@Override
+	public void reset() {
+		for (int i = 0; i < STRIPES; i++) {
+			cells.set(i * PADDING, 0);
+		}
+	}
+	
+	@Override
+	public void appendTo(StringBuilder builder) {
+		builder.append(name).append(": ").append(get());
+	}
+	
+}
@@ -0,0 +1,222 @@
+package ro.pub.dadgm.pf22.utils.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative values, having a fixed set of buckets.
+ * 
+ * <p>The buckets are log-linear (like the HDR histograms'): the values below 
+ * {@link #SUB_BUCKETS} have their own bucket, then each power of two is split into 
+ * {@link #SUB_BUCKETS} equal buckets. So the values of any magnitude are kept with a relative
+ * error of at most 1 / {@link #SUB_BUCKETS}, without allocating anything while recording.</p>
+ * 
+ * <p>The percentiles are estimated as the highest value of the bucket they fall into.</p>
+ */
+public class Histogram extends Metric {
+	
+	/**
+	 * The number of bits of a value kept by its bucket.
+	 */
+	public static final int SUB_BUCKET_BITS = 4;
+	
+	/**
+	 * The number of buckets each power of two is split into.
+	 */
+	public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * The number of buckets (covering all the positive longs).
+	 */
+	public static final int BUCKET_COUNT = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+	
+	/**
+	 * The percentiles shown by the text snapshot.
+	 */
+	protected static final double[] SNAPSHOT_PERCENTILES = { 0.5, 0.95, 0.99 };
+	
+	
+	/**
+	 * The values' unit (only used for displaying them).
+	 */
+	protected final String unit;
+	
+	/**
+	 * The number of values recorded into each bucket.
+	 */
+	protected final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	
+	/**
+	 * The sum of the recorded values.
+	 */
+	protected final AtomicLong sum = new AtomicLong();
+	
+	/**
+	 * The largest recorded value.
+	 */
+	protected final AtomicLong max = new AtomicLong();
+	
+	
+	/**
+	 * Creates the histogram (use {@link Metrics#histogram(String, String)} instead).
+	 * 
+	 * @param name The histogram's name.
+	 * @param unit The values' unit (e.g. "us", empty if none).
+	 */
+	protected Histogram(String name, String unit) {
+		super(name);
+		this.unit = unit;
+	}
+	
+	/**
+	 * Records a value (if the metrics are enabled).
+	 * 
+	 * @param value The value (the negative ones are recorded as 0).
+	 */
+	public void record(long value) {
+		if (!Metrics.enabled)
+			return;
+		
+		value = Math.max(0, value);
+		buckets.incrementAndGet(getBucket(value));
+		sum.addAndGet(value);
+		
+		long currentMax;
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value))
+				break;
+		}
+	}
+	
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return The number of values.
+	 */
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the mean of the recorded values.
+	 * 
+	 * @return The mean (0 if there are no values).
+	 */
+	public double getMean() {
+		long count = getCount();
+		return (count > 0 ? (double)sum.get() / count : 0);
+	}
+	
+	/**
+	 * Returns the largest recorded value.
+	 * 
+	 * @return The maximum (0 if there are no values).
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Estimates a percentile of the recorded values.
+	 * 
+	 * @param percentile The percentile (between 0 and 1).
+	 * @return The highest value of the percentile's bucket (0 if there are no values).
+	 */
+	public long getPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0)
+			return 0;
+		
+		long rank = Math.max(1, (long)Math.ceil(percentile * count));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank)
+				return Math.min(getBucketEnd(i), getMax());
+		}
+		return getMax();
+	}
+	
+	@Override
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets.set(i, 0);
+		}
+		sum.set(0);
+		max.set(0);
+	}
+	
+	@Override
+	public void appendTo(StringBuilder builder) {
+		long count = getCount();
+		builder.append(name).append(": count ").append(count);
+		if (count == 0)
+			return;
+		
+		builder.append(", mean ").append(Math.round(getMean()));
+		for (double percentile: SNAPSHOT_PERCENTILES) {
+			builder.append(", p").append(Math.round(percentile * 100)).append(' ')
+					.append(getPercentile(percentile));
+		}
+		builder.append(", max ").append(getMax());
+		if (!unit.isEmpty())
+			builder.append(' ').append(unit);
+	}
+	
+	/**
+	 * Returns the bucket of a value.
+	 * 
+	 * @param value The value (non-negative).
+	 * @return The bucket's index.
+	 */
+	public static int getBucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int)value;
+		
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS * (shift + 1) + (int)(value >>> shift) - SUB_BUCKETS;
+	}
+	
+	/**
+	 * Returns the lowest value of a bucket.
+	 * 
+	 * @param bucket The bucket's index.
+	 * @return The bucket's lowest value.
+	 */
+	public static long getBucketStart(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		
+		int shift = bucket / SUB_BUCKETS - 1;
+		return (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+	}
+	
+	/**
+	 * Returns the highest value of a bucket.
+	 * 
+	 * @param bucket The bucket's index.
+	 * @return The bucket's highest value.
+	 */
+	public static long getBucketEnd(int bucket) {
+		if (bucket == BUCKET_COUNT - 1)
+			return Long.MAX_VALUE;
+		return getBucketStart(bucket + 1) - 1;
+	}
+	
+	
+	// getters
+	
+	/**
+	 * Returns the values' unit.
+	 * 
+	 * @return The unit.
+	 */
+	public String getUnit() {
+		return unit;
+	}
+	
+}
@@ -0,0 +1,47 @@
+package ro.pub.dadgm.pf22.utils.metrics;
+
+/**
+ * A named measurement, registered with {@link Metrics}.
+ */
+public abstract class Metric {
+	
+	/**
+	 * The metric's name (e.g. "physics.ticks").
+	 */
+	protected final String name;
+	
+	
+	/**
+	 * Creates the metric.
+	 * 
+	 * @param name The metric's name.
+	 */
+	protected Metric(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Clears the recorded values.
+	 */
+	public abstract void reset();
+	
+	/**
+	 * Appends the metric's current values, as a single line of text (without the line break).
+	 * 
+	 * @param builder The builder to append to.
+	 */
+	public abstract void appendTo(StringBuilder builder);
+	
+	
+	// getters
+	
+	/**
+	 * Returns the metric's name.
+	 * 
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+	
+}
@@ -0,0 +1,155 @@
+package ro.pub.dadgm.pf22.utils.metrics;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The application-wide registry of the metrics (counters and histograms) reported by the 
+ * simulation's subsystems.
+ * 
+ * <p>The metrics are registered once (usually into static fields of the classes that report 
+ * them) and updated without locking. While the metrics are disabled (the default), updating one 
+ * only costs a volatile read; the callers should also skip the work done only for the metrics 
+ * (e.g. reading the clock) by checking {@link #isEnabled()}.</p>
+ * 
+ * <p>A snapshot of all metrics can be exported as text (one line per metric, sorted by name) to 
+ * logcat or to a file, on demand.</p>
+ */
+public class Metrics {
+	
+	/**
+	 * The logcat tag of the snapshots.
+	 */
+	public static final String LOG_TAG = "Metrics";
+	
+	/**
+	 * Whether the metrics are recorded.
+	 */
+	protected static volatile boolean enabled = false;
+	
+	/**
+	 * The registered metrics, by name.
+	 */
+	protected static final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+	
+	
+	/**
+	 * Returns a counter, registering it if needed.
+	 * 
+	 * @param name The counter's name.
+	 * @return The counter.
+	 */
+	public static Counter counter(String name) {
+		Metric metric = metrics.get(name);
+		if (metric == null) {
+			Metric previous = metrics.putIfAbsent(name, metric = new Counter(name));
+			if (previous != null)
+				metric = previous;
+		}
+		if (!(metric instanceof Counter))
+			throw new IllegalArgumentException("The metric '" + name + "' is not a counter!");
+		return (Counter)metric;
+	}
+	
+	/**
+	 * Returns a histogram, registering it if needed.
+	 * 
+	 * @param name The histogram's name.
+	 * @param unit The values' unit (e.g. "us", empty if none).
+	 * @return The histogram.
+	 */
+	public static Histogram histogram(String name, String unit) {
+		Metric metric = metrics.get(name);
+		if (metric == null) {
+			Metric previous = metrics.putIfAbsent(name, metric = new Histogram(name, unit));
+			if (previous != null)
+				metric = previous;
+		}
+		if (!(metric instanceof Histogram))
+			throw new IllegalArgumentException("The metric '" + name + "' is not a histogram!");
+		return (Histogram)metric;
+	}
+	
+	/**
+	 * Clears the values of all metrics.
+	 */
+	public static void reset() {
+		for (Metric metric: metrics.values()) {
+			metric.reset();
+		}
+	}
+	
+	/**
+	 * Formats a snapshot of all metrics.
+	 * 
+	 * @return The metrics' values, one per line (sorted by name).
+	 */
+	public static String snapshot() {
+		List<String> names = new ArrayList<>(metrics.keySet());
+		Collections.sort(names);
+		
+		StringBuilder builder = new StringBuilder();
+		for (String name: names) {
+			metrics.get(name).appendTo(builder);
+			builder.append('\n');
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Writes a snapshot of all metrics to logcat.
+	 */
+	public static void log() {
+		for (String line: snapshot().split("\n")) {
+			if (!line.isEmpty())
+				Log.i(LOG_TAG, line);
+		}
+	}
+	
+	/**
+	 * Writes a snapshot of all metrics to a file (replacing its contents).
+	 * 
+	 * @param file The file to write.
+	 * @throws IOException If the file couldn't be written.
+	 */
+	public static void writeTo(File file) throws IOException {
+		Writer writer = new FileWriter(file);
+		try {
+			writer.write(snapshot());
+			
+		} finally {
+			writer.close();
+		}
+	}
+	
+	
+	// getters / setters
+	
+	/**
+	 * Returns whether the metrics are recorded.
+	 * 
+	 * @return True if enabled.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Enables or disables recording the metrics (their values are kept).
+	 * 
+	 * @param enabled Whether to record the metrics.
+	 */
+	public static void setEnabled(boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+	
+}
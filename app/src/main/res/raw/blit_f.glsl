@@ -0,0 +1,19 @@
+/**
+ * The render target blitting shader (fragment part).
+ * 
+ * Copies the (linearly filtered) render target's texture to the screen.
+ */
+
+precision mediump float; // use medium precision
+
+// receive the render target's texture
+uniform sampler2D u_texture;
+
+// receive the texture coordinates from the vertex shader
+varying vec2 v_textureCoords;
+
+// Shader entry point
+void main()
+{
+	gl_FragColor = texture2D(u_texture, v_textureCoords);
+}
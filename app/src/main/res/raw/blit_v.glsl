@@ -0,0 +1,19 @@
+/**
+ * The render target blitting shader (vertex part).
+ * 
+ * Draws a full screen quad: the vertices are already in clip space.
+ */
+
+// vertex attributes
+attribute vec2 a_position;
+attribute vec2 a_textureCoords;
+
+// texture coordinates to the fragment shader
+varying vec2 v_textureCoords;
+
+// Shader entry point
+void main()
+{
+	v_textureCoords = a_textureCoords;
+	gl_Position = vec4(a_position, 0.0, 1.0);
+}
@@ -1,15 +1,17 @@
 /**
  * The draw text shader (fragment part).
  * 
- * Applies the received texture to the fragments.
- * Also receives a color uniform that specifies whether to blend the texture.
+ * Renders the font's signed distance field: the texture's alpha is 0.5 on the glyphs' outlines
+ * (higher inside). The outline is antialiased over the received smoothing width (which depends
+ * on the text's on-screen size). Also receives the color to draw the text with.
  */
 
 precision mediump float; // use medium precision
 
-// receive a texture image and a static color
+// receive the distance field texture and a static color
 uniform vec4 u_color;
 uniform sampler2D u_texture;
+uniform float u_smoothing;
 
 // receive the varying texture coordinates from the vertex shader
 varying vec2 v_textureCoords;
@@ -17,6 +19,9 @@ varying vec2 v_textureCoords;
 // Shader entry point
 void main()
 {
-	// calculate the output color
-	gl_FragColor = u_color * texture2D(u_texture, v_textureCoords);
+	float distance = texture2D(u_texture, v_textureCoords).a;
+	float alpha = smoothstep(0.5 - u_smoothing, 0.5 + u_smoothing, distance);
+	
+	// calculate the output color (premultiplied)
+	gl_FragColor = u_color * alpha;
 }
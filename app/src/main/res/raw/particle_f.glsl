@@ -0,0 +1,21 @@
+/**
+ * The particles shader (fragment part).
+ * 
+ * Draws a soft round sprite. The color is premultiplied: the particles having a zero alpha are 
+ * blended additively (fire, sparks), the others cover the background (smoke).
+ */
+
+precision mediump float; // use medium precision
+
+// receive the varying data from the vertex shader
+varying vec4 v_color;
+
+// Shader entry point
+void main()
+{
+	// fade out towards the sprite's border
+	vec2 offset = gl_PointCoord * 2.0 - 1.0;
+	float falloff = clamp(1.0 - dot(offset, offset), 0.0, 1.0);
+	
+	gl_FragColor = v_color * falloff;
+}
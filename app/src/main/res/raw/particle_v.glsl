@@ -0,0 +1,31 @@
+/**
+ * The particles shader (vertex part).
+ * 
+ * Each particle is drawn as a point sprite, whose size (given in world units) is projected on the 
+ * screen. The positions are already in world space, so only V*P is applied.
+ */
+
+// receives the VP matrices as uniforms
+uniform mat4 u_viewMatrix;
+uniform mat4 u_projectionMatrix;
+
+// the point size (in pixels) of a particle of size 1 at distance 1
+uniform float u_pointScale;
+
+// vertex attributes
+attribute vec3 a_position;
+attribute float a_size;
+attribute vec4 a_color;
+
+// varying data to the fragment shader
+varying vec4 v_color;
+
+// Shader entry point
+void main()
+{
+	v_color = a_color;
+	
+	// calculate the final position of the vertex and the sprite's size (in perspective)
+	gl_Position = u_projectionMatrix * u_viewMatrix * vec4(a_position, 1.0);
+	gl_PointSize = a_size * u_pointScale / gl_Position.w;
+}
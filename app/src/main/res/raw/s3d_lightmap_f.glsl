@@ -0,0 +1,35 @@
+/**
+ * A texture splatting shader with baked lighting (fragment part).
+ * 
+ * Blends the three layer textures using the interpolated weights and modulates the result with 
+ * the light intensity sampled from the lightmap (no lighting is computed per fragment).
+ */
+
+precision mediump float; // use medium precision
+
+// layer textures
+uniform sampler2D u_texture0;
+uniform sampler2D u_texture1;
+uniform sampler2D u_texture2;
+
+// the baked light intensity (luminance, scaled down by the light range)
+uniform sampler2D u_lightmap;
+uniform float u_lightRange;
+
+// receive the interpolated values from the vertex shader
+varying vec2 v_textureCoords;
+varying vec2 v_lightmapCoords;
+varying vec3 v_weights;
+
+// Shader entry point
+void main()
+{
+	vec3 texColor = 
+		v_weights.x * texture2D(u_texture0, v_textureCoords).rgb + 
+		v_weights.y * texture2D(u_texture1, v_textureCoords).rgb + 
+		v_weights.z * texture2D(u_texture2, v_textureCoords).rgb;
+	
+	float light = texture2D(u_lightmap, v_lightmapCoords).r * u_lightRange;
+	
+	gl_FragColor = vec4(texColor * light, 1.0);
+}
@@ -0,0 +1,36 @@
+/**
+ * A texture splatting shader with baked lighting (vertex part).
+ * 
+ * Applies M*V*P to the vertices and passes on the texture coordinates, the blend weights and the 
+ * lightmap coordinates (derived from the vertex position) to the fragment.
+ */
+
+// receives MVP matrices as uniforms
+uniform mat4 u_modelMatrix;
+uniform mat4 u_viewMatrix;
+uniform mat4 u_projectionMatrix;
+
+// maps the vertex position (Y, X) to the lightmap coordinates
+uniform vec2 u_lightmapScale;
+uniform vec2 u_lightmapOffset;
+
+// vertex attributes
+attribute vec3 a_position;
+attribute vec2 a_textureCoords;
+attribute vec3 a_weights;
+
+// pass the vertex information to the fragment shader
+varying vec2 v_textureCoords;
+varying vec2 v_lightmapCoords;
+varying vec3 v_weights;
+
+// Shader entry point
+void main()
+{
+	// calculate the final position of the vertex
+	gl_Position = u_projectionMatrix * u_viewMatrix * u_modelMatrix * vec4(a_position, 1.0);
+	
+	v_textureCoords = a_textureCoords;
+	v_lightmapCoords = a_position.yx * u_lightmapScale + u_lightmapOffset;
+	v_weights = a_weights;
+}
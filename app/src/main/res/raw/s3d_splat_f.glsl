@@ -0,0 +1,47 @@
+/**
+ * A texture splatting Phong illuminated shader (fragment part).
+ * 
+ * Samples the three layer textures and blends them using the interpolated weights, then computes 
+ * the final color of the fragment using the Phong model.
+ */
+
+precision mediump float; // use medium precision
+
+// layer textures
+uniform sampler2D u_texture0;
+uniform sampler2D u_texture1;
+uniform sampler2D u_texture2;
+
+// material properties
+uniform vec3 u_ambientColor;
+uniform vec3 u_diffuseColor;
+uniform vec3 u_specularColor;
+uniform float u_shininess;
+
+// receive the interpolated values from the vertex shader
+varying vec3 v_normal;
+varying vec2 v_textureCoords;
+varying vec3 v_weights;
+
+varying vec3 lightDir;
+varying vec3 viewDir;
+
+// Shader entry point
+void main()
+{
+	float lambertian = max(dot(lightDir, v_normal), 0.0);
+	float specular = 0.0;
+	
+	if (lambertian > 0.0) {
+		vec3 reflectDir = reflect(lightDir, v_normal);
+		float specAngle = max(dot(reflectDir, viewDir), 0.0);
+		specular = pow(specAngle, u_shininess);
+	}
+	
+	vec3 texColor = 
+		v_weights.x * texture2D(u_texture0, v_textureCoords).rgb + 
+		v_weights.y * texture2D(u_texture1, v_textureCoords).rgb + 
+		v_weights.z * texture2D(u_texture2, v_textureCoords).rgb;
+	
+	gl_FragColor = vec4(u_ambientColor * texColor + lambertian * u_diffuseColor * texColor + specular * u_specularColor, 1.0);
+}
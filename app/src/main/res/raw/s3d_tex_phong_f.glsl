@@ -3,32 +3,61 @@
  * 
  * Receives the interpolated vertices, normals and texture coordinates and computes the final color 
  * of the fragment using the Phong model.
+ * 
+ * Variants (preprocessor defines):
+ *  - TEXTURE: modulates the material's colors with the texture;
+ *  - ALPHA_TEXTURE: reads the alpha from a separate plane (for compressed textures);
+ *  - VERTEX_LIGHTING: uses the lighting terms computed per vertex;
+ *  - NO_SPECULAR: skips the specular term.
  */
 
 precision mediump float; // use medium precision
 
+#ifdef TEXTURE
 // texture
 uniform sampler2D u_texture;
-uniform int u_textureEnable;
+varying vec2 v_textureCoords;
+
+#ifdef ALPHA_TEXTURE
+// separate alpha plane (for compressed textures)
+uniform sampler2D u_alphaTexture;
+#endif
+#endif
 
 // material properties
 uniform vec3 u_ambientColor;
 uniform vec3 u_diffuseColor;
-uniform vec3 u_specularColor;
 uniform float u_alpha;
-uniform float u_shininess;
+#ifndef NO_SPECULAR
+uniform vec3 u_specularColor;
+#endif
 
 // receive the interpolated values from the vertex shader
+#ifdef VERTEX_LIGHTING
+varying float v_lambertian;
+#ifndef NO_SPECULAR
+varying float v_specular;
+#endif
+#else
+#ifndef NO_SPECULAR
+uniform float u_shininess;
+#endif
 varying vec3 v_normal;
-varying vec2 v_textureCoords;
-
 varying vec3 lightDir;
 varying vec3 viewDir;
+#endif
 
 // Shader entry point
 void main()
 {
+#ifdef VERTEX_LIGHTING
+	float lambertian = v_lambertian;
+#ifndef NO_SPECULAR
+	float specular = v_specular;
+#endif
+#else
 	float lambertian = max(dot(lightDir, v_normal), 0.0);
+#ifndef NO_SPECULAR
 	float specular = 0.0;
 	
 	if (lambertian > 0.0) {
@@ -36,15 +65,24 @@ void main()
 		float specAngle = max(dot(reflectDir, viewDir), 0.0);
 		specular = pow(specAngle, u_shininess);
 	}
+#endif
+#endif
 	
 	vec3 texColor = vec3(1.0, 1.0, 1.0);
 	float alpha = u_alpha;
-	if (u_textureEnable == 1) {
-		vec4 texColor4 = texture2D(u_texture, v_textureCoords);
-		texColor = vec3(texColor4);
-		if (texColor4.a < 1.0)
-			alpha = texColor4.a;
-	}
+#ifdef TEXTURE
+	vec4 texColor4 = texture2D(u_texture, v_textureCoords);
+#ifdef ALPHA_TEXTURE
+	texColor4.a = texture2D(u_alphaTexture, v_textureCoords).r;
+#endif
+	texColor = vec3(texColor4);
+	if (texColor4.a < 1.0)
+		alpha = texColor4.a;
+#endif
 	
-	gl_FragColor = vec4(u_ambientColor * texColor + lambertian * u_diffuseColor * texColor + specular * u_specularColor, alpha);
+	vec3 color = u_ambientColor * texColor + lambertian * u_diffuseColor * texColor;
+#ifndef NO_SPECULAR
+	color += specular * u_specularColor;
+#endif
+	gl_FragColor = vec4(color, alpha);
 }
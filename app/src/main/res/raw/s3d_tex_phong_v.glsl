@@ -2,6 +2,11 @@
  * A texture-based Phong illuminated shader (vertex part).
  * 
  * Applies M*V*P to the vertices and passes on the normal and light sources to the fragment.
+ * 
+ * Variants (preprocessor defines):
+ *  - TEXTURE: passes on the texture coordinates;
+ *  - VERTEX_LIGHTING: computes the lighting here and passes on its terms (Gouraud shading);
+ *  - NO_SPECULAR: skips the specular term (of the per vertex lighting).
  */
 
 // receives MVP matrices as uniforms
@@ -16,13 +21,24 @@ uniform vec3 u_lightPos;
 // vertex attributes
 attribute vec3 a_position;
 attribute vec3 a_normal;
+
+#ifdef TEXTURE
 attribute vec2 a_textureCoords;
+varying vec2 v_textureCoords;
+#endif
 
 // pass the vertex and color information to the fragment shader
+#ifdef VERTEX_LIGHTING
+varying float v_lambertian;
+#ifndef NO_SPECULAR
+uniform float u_shininess;
+varying float v_specular;
+#endif
+#else
 varying vec3 v_normal;
-varying vec2 v_textureCoords;
 varying vec3 lightDir;
 varying vec3 viewDir;
+#endif
 
 // Shader entry point
 void main()
@@ -35,10 +51,29 @@ void main()
 	
 	// compute vertex and normal coordinates in ModelView space
 	vec3 v_position = vec3(mvMatrix * vec4(a_position, 1.0));
-	v_normal = vec3(mvMatrix * vec4(a_normal, 0.0));
+	vec3 normal = vec3(mvMatrix * vec4(a_normal, 0.0));
+	
+#ifdef TEXTURE
 	v_textureCoords = a_textureCoords;
+#endif
 	
 	vec3 mvLightPos = vec3(u_viewMatrix * vec4(u_lightPos, 0.0));
-	lightDir = normalize(mvLightPos.xyz - v_position.xyz);
-	viewDir = normalize(-v_position);
+	vec3 light = normalize(mvLightPos.xyz - v_position.xyz);
+	vec3 view = normalize(-v_position);
+	
+#ifdef VERTEX_LIGHTING
+	v_lambertian = max(dot(light, normal), 0.0);
+#ifndef NO_SPECULAR
+	v_specular = 0.0;
+	if (v_lambertian > 0.0) {
+		vec3 reflectDir = reflect(light, normal);
+		float specAngle = max(dot(reflectDir, view), 0.0);
+		v_specular = pow(specAngle, u_shininess);
+	}
+#endif
+#else
+	v_normal = normal;
+	lightDir = light;
+	viewDir = view;
+#endif
 }
@@ -0,0 +1,29 @@
+/**
+ * The sprite batch shader (fragment part).
+ * 
+ * Draws both the sprites (the texture blended with the quad's color) and the text glyphs (the 
+ * font's signed distance field, antialiased like in the draw_text shader), so the whole HUD layer 
+ * can be drawn at once.
+ */
+
+precision mediump float; // use medium precision
+
+// receive the sprites' texture and the font's distance field
+uniform sampler2D u_texture;
+uniform sampler2D u_fontTexture;
+
+// receive the varying data from the vertex shader
+varying vec2 v_textureCoords;
+varying vec4 v_color;
+varying vec2 v_params;
+
+// Shader entry point
+void main()
+{
+	vec4 texel = texture2D(u_texture, v_textureCoords);
+	float distance = texture2D(u_fontTexture, v_textureCoords).a;
+	float alpha = smoothstep(0.5 - v_params.y, 0.5 + v_params.y, distance);
+	
+	// calculate the output color (premultiplied), without branching
+	gl_FragColor = v_color * mix(texel, vec4(alpha), v_params.x);
+}
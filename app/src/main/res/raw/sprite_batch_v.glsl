@@ -0,0 +1,33 @@
+/**
+ * The sprite batch shader (vertex part).
+ * 
+ * The vertices are already in world space (the quads are transformed when batched), so only V*P 
+ * is applied. Passes on the texture coordinates, the color and the distance field parameters.
+ */
+
+// receives the VP matrices as uniforms
+uniform mat4 u_viewMatrix;
+uniform mat4 u_projectionMatrix;
+
+// vertex attributes
+attribute vec3 a_position;
+attribute vec2 a_textureCoords;
+attribute vec4 a_color;
+attribute vec2 a_params; // x: 1 for distance field glyphs, y: the glyph's smoothing
+
+// varying data to the fragment shader
+varying vec2 v_textureCoords;
+varying vec4 v_color;
+varying vec2 v_params;
+
+// Shader entry point
+void main()
+{
+	// pass through the quad's data
+	v_textureCoords = a_textureCoords;
+	v_color = a_color;
+	v_params = a_params;
+	
+	// calculate the final position of the vertex
+	gl_Position = u_projectionMatrix * u_viewMatrix * vec4(a_position, 1.0);
+}
@@ -0,0 +1,105 @@
+package ro.pub.dadgm.pf22.benchmarks;
+
+import java.util.Locale;
+
+/**
+ * The timing loop shared by the JVM microbenchmarks.
+ * 
+ * <p>Each measured case is run for a number of rounds: its state is prepared (not timed), then the
+ * operation is repeated and the average time of a repetition is computed. The best round is kept,
+ * since the first ones also warm up the JIT (and the others may be disturbed by the GC).</p>
+ */
+public class Benchmark {
+	
+	/**
+	 * A measured operation.
+	 */
+	public static abstract class Case {
+		
+		/**
+		 * Prepares the state of a round (not timed).
+		 */
+		public void setUp() {
+		}
+		
+		/**
+		 * Runs the operation once.
+		 * 
+		 * @return A checksum of the results (so the work can't be optimized out).
+		 */
+		public abstract double run();
+		
+	}
+	
+	/**
+	 * Keeps the results' checksums, so the loops can't be optimized out.
+	 */
+	protected static double sink = 0;
+	
+	/**
+	 * The number of measured rounds of each case.
+	 */
+	protected final int rounds;
+	
+	
+	/**
+	 * Initializes the benchmark.
+	 * 
+	 * @param rounds The number of measured rounds of each case.
+	 */
+	public Benchmark(int rounds) {
+		this.rounds = rounds;
+	}
+	
+	/**
+	 * Measures a case.
+	 * 
+	 * @param benchmarkCase The case to measure.
+	 * @param repetitions The number of times the operation is run in each round.
+	 * @return The best round's average time of an operation (nanoseconds).
+	 */
+	public long measure(Case benchmarkCase, int repetitions) {
+		long best = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			benchmarkCase.setUp();
+			
+			long start = System.nanoTime();
+			for (int i = 0; i < repetitions; i++) {
+				sink += benchmarkCase.run();
+			}
+			best = Math.min(best, (System.nanoTime() - start) / repetitions);
+		}
+		return best;
+	}
+	
+	/**
+	 * Prints the measured times as a table (in microseconds), followed by the checksum.
+	 * 
+	 * @param caption The table's caption.
+	 * @param columns The columns' names (the measured operations).
+	 * @param rows The rows' names (the compared implementations).
+	 * @param times The times of each row and column (nanoseconds).
+	 */
+	public void printTable(String caption, String[] columns, String[] rows, long[][] times) {
+		System.out.println(String.format(Locale.US, "%s, best of %d rounds (microseconds):",
+				caption, rounds));
+		
+		StringBuilder line = new StringBuilder(String.format(Locale.US, "%-16s", ""));
+		for (String column: columns) {
+			line.append(String.format(Locale.US, " %10s", column));
+		}
+		System.out.println(line);
+		
+		for (int r = 0; r < rows.length; r++) {
+			line.setLength(0);
+			line.append(String.format(Locale.US, "%-16s", rows[r]));
+			for (long time: times[r]) {
+				line.append(String.format(Locale.US, " %10.1f", time / 1000f));
+			}
+			System.out.println(line);
+		}
+		
+		System.out.println("(checksum " + sink + ")");
+	}
+	
+}
@@ -0,0 +1,248 @@
+package ro.pub.dadgm.pf22.benchmarks;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ro.pub.dadgm.pf22.render.objects.ObjectsManager;
+import ro.pub.dadgm.pf22.render.objects.mock.MockObject3D;
+
+/**
+ * Compares the {@link ObjectsManager} with the layout it replaced (a HashMap of tags and a TreeMap
+ * of priorities, both holding HashSets): adding all objects, removing them and iterating them in
+ * priority order.
+ * 
+ * <p>Usage: <code>ObjectsManagerBenchmark [objects count]</code></p>
+ */
+public class ObjectsManagerBenchmark {
+	
+	/**
+	 * The number of objects used by default.
+	 */
+	protected static final int DEFAULT_COUNT = 1000;
+	
+	/**
+	 * The number of measured rounds.
+	 */
+	protected static final int ROUNDS = 200;
+	
+	/**
+	 * The number of times the collection is iterated in each round.
+	 */
+	protected static final int ITERATIONS = 100;
+	
+	/**
+	 * The compared implementations.
+	 */
+	protected static final String[] LAYOUTS = { "nested maps", "ObjectsManager" };
+	
+	
+	/**
+	 * The operations being measured, common to the compared implementations.
+	 */
+	protected static abstract class Layout {
+		
+		/**
+		 * Adds an object.
+		 * 
+		 * @param obj The object to add.
+		 */
+		protected abstract void add(MockObject3D obj);
+		
+		/**
+		 * Removes an object.
+		 * 
+		 * @param obj The object to remove.
+		 */
+		protected abstract void remove(MockObject3D obj);
+		
+		/**
+		 * Iterates the objects in priority order.
+		 * 
+		 * @return A checksum of the iterated objects.
+		 */
+		protected abstract int iterate();
+		
+	}
+	
+	/**
+	 * The former ObjectsManager storage layout (only the operations being measured).
+	 */
+	protected static class NestedMapsLayout extends Layout {
+		
+		/**
+		 * The objects grouped by tag.
+		 */
+		protected Map<String, HashSet<MockObject3D>> objectsMap = new HashMap<>();
+		
+		/**
+		 * The objects grouped by priority.
+		 */
+		protected Map<Integer, Collection<MockObject3D>> priorityMap = new TreeMap<>();
+		
+		
+		@Override
+		protected void add(MockObject3D obj) {
+			if (!objectsMap.containsKey(obj.getTag()))
+				objectsMap.put(obj.getTag(), new HashSet<MockObject3D>());
+			if (!objectsMap.get(obj.getTag()).add(obj))
+				return;
+			
+			if (!priorityMap.containsKey(obj.getPriority()))
+				priorityMap.put(obj.getPriority(), new HashSet<MockObject3D>());
+			priorityMap.get(obj.getPriority()).add(obj);
+		}
+		
+		@Override
+		protected void remove(MockObject3D obj) {
+			if (objectsMap.containsKey(obj.getTag()) && objectsMap.get(obj.getTag()).remove(obj))
+				priorityMap.get(obj.getPriority()).remove(obj);
+		}
+		
+		@Override
+		protected int iterate() {
+			int sum = 0;
+			for (Collection<MockObject3D> objects: priorityMap.values()) {
+				for (MockObject3D obj: objects) {
+					sum += obj.getId();
+				}
+			}
+			return sum;
+		}
+		
+	}
+	
+	/**
+	 * The objects manager (iterated by index, as used for drawing).
+	 */
+	protected static class ManagerLayout extends Layout {
+		
+		/**
+		 * The measured manager.
+		 */
+		protected ObjectsManager<MockObject3D> manager = new ObjectsManager<>();
+		
+		
+		@Override
+		protected void add(MockObject3D obj) {
+			manager.add(obj);
+		}
+		
+		@Override
+		protected void remove(MockObject3D obj) {
+			manager.remove(obj);
+		}
+		
+		@Override
+		protected int iterate() {
+			int sum = 0;
+			for (int j = 0; j < manager.size(); j++) {
+				sum += manager.get(j).getId();
+			}
+			return sum;
+		}
+		
+	}
+	
+	
+	/**
+	 * The benchmark's entry point.
+	 * 
+	 * @param args The optional number of objects.
+	 */
+	public static void main(String[] args) {
+		int count = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT);
+		
+		// a few tags and priorities, like the game's scenes use
+		final MockObject3D[] objs = new MockObject3D[count];
+		for (int i = 0; i < count; i++) {
+			objs[i] = new MockObject3D(i, "tag" + (i % 4), i % 8);
+		}
+		
+		Benchmark benchmark = new Benchmark(ROUNDS);
+		long[][] times = new long[LAYOUTS.length][];
+		for (int k = 0; k < LAYOUTS.length; k++) {
+			final int kind = k;
+			long add = benchmark.measure(new Benchmark.Case() {
+				Layout layout;
+				
+				@Override
+				public void setUp() {
+					layout = createLayout(kind);
+				}
+				
+				@Override
+				public double run() {
+					for (MockObject3D obj: objs) {
+						layout.add(obj);
+					}
+					return 0;
+				}
+			}, 1);
+			
+			long remove = benchmark.measure(new Benchmark.Case() {
+				Layout layout;
+				
+				@Override
+				public void setUp() {
+					layout = createLayout(kind, objs);
+				}
+				
+				@Override
+				public double run() {
+					for (MockObject3D obj: objs) {
+						layout.remove(obj);
+					}
+					return 0;
+				}
+			}, 1);
+			
+			long iterate = benchmark.measure(new Benchmark.Case() {
+				Layout layout;
+				
+				@Override
+				public void setUp() {
+					layout = createLayout(kind, objs);
+				}
+				
+				@Override
+				public double run() {
+					return layout.iterate();
+				}
+			}, ITERATIONS);
+			
+			times[k] = new long[] { add, remove, iterate };
+		}
+		
+		benchmark.printTable(count + " objects", new String[] { "add all", "remove all", "iterate" },
+				LAYOUTS, times);
+	}
+	
+	/**
+	 * Creates an empty layout.
+	 * 
+	 * @param kind The layout's index in {@link #LAYOUTS}.
+	 * @return The new layout.
+	 */
+	protected static Layout createLayout(int kind) {
+		return (kind == 0 ? new NestedMapsLayout() : new ManagerLayout());
+	}
+	
+	/**
+	 * Creates a layout holding the specified objects.
+	 * 
+	 * @param kind The layout's index in {@link #LAYOUTS}.
+	 * @param objs The objects to add.
+	 * @return The new layout.
+	 */
+	protected static Layout createLayout(int kind, MockObject3D[] objs) {
+		Layout layout = createLayout(kind);
+		for (MockObject3D obj: objs) {
+			layout.add(obj);
+		}
+		return layout;
+	}
+	
+}
@@ -0,0 +1,149 @@
+package ro.pub.dadgm.pf22.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import ro.pub.dadgm.pf22.render.utils.ParticlePool;
+import ro.pub.dadgm.pf22.utils.SplitMixRandom;
+
+/**
+ * Compares the {@link ParticlePool}'s update loop with a particle object per live particle (kept in
+ * a list).
+ * 
+ * <p>Each frame, the particles are updated, their vertices written and the dead ones are replaced
+ * (so the pools stay full).</p>
+ * 
+ * <p>Usage: <code>ParticlePoolBenchmark [particles count]</code></p>
+ */
+public class ParticlePoolBenchmark {
+	
+	/**
+	 * The number of particles used by default.
+	 */
+	protected static final int DEFAULT_COUNT = 16384;
+	
+	/**
+	 * The number of measured rounds.
+	 */
+	protected static final int ROUNDS = 50;
+	
+	/**
+	 * The number of frames simulated in each round.
+	 */
+	protected static final int FRAMES = 100;
+	
+	/**
+	 * The simulated time step (seconds).
+	 */
+	protected static final float TIME_STEP = 1 / 60f;
+	
+	
+	/**
+	 * A particle object (the layout the pool avoids).
+	 */
+	protected static class Particle {
+		
+		/**
+		 * The particle's position and velocity.
+		 */
+		protected float x, y, z, vx, vy, vz;
+		
+		/**
+		 * The particle's age, life span and initial size.
+		 */
+		protected float age, life, size;
+		
+	}
+	
+	
+	/**
+	 * The benchmark's entry point.
+	 * 
+	 * @param args The optional number of particles.
+	 */
+	public static void main(String[] args) {
+		final int count = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT);
+		final SplitMixRandom random = new SplitMixRandom(42);
+		final float[] vertices = new float[count * ParticlePool.VERTEX_SIZE];
+		
+		Benchmark benchmark = new Benchmark(ROUNDS);
+		long objects = benchmark.measure(new Benchmark.Case() {
+			List<Particle> particles;
+			
+			@Override
+			public void setUp() {
+				particles = new ArrayList<>();
+			}
+			
+			@Override
+			public double run() {
+				for (Iterator<Particle> it = particles.iterator(); it.hasNext(); ) {
+					Particle p = it.next();
+					p.age += TIME_STEP;
+					if (p.age >= p.life) {
+						it.remove();
+						continue;
+					}
+					p.vx *= 0.98f;
+					p.vy *= 0.98f;
+					p.vz = p.vz * 0.98f - 0.1f * TIME_STEP;
+					p.x += p.vx * TIME_STEP;
+					p.y += p.vy * TIME_STEP;
+					p.z += p.vz * TIME_STEP;
+				}
+				int k = 0;
+				for (Particle p: particles) {
+					float t = p.age / p.life;
+					vertices[k++] = p.x;
+					vertices[k++] = p.y;
+					vertices[k++] = p.z;
+					vertices[k++] = p.size * (1 + t);
+					vertices[k++] = 1 - t;
+					vertices[k++] = 1 - t;
+					vertices[k++] = 1 - t;
+					vertices[k++] = t;
+				}
+				while (particles.size() < count) {
+					Particle p = new Particle();
+					p.vx = random.nextFloat() - 0.5f;
+					p.vy = random.nextFloat() - 0.5f;
+					p.vz = random.nextFloat() - 0.5f;
+					p.life = 0.5f + random.nextFloat();
+					p.size = 0.1f;
+					particles.add(p);
+				}
+				return vertices[0];
+			}
+		}, FRAMES);
+		
+		long pooled = benchmark.measure(new Benchmark.Case() {
+			ParticlePool pool;
+			
+			@Override
+			public void setUp() {
+				pool = new ParticlePool(count);
+				pool.setAcceleration(0, 0, -0.1f);
+				pool.setDrag(1.2f);
+				pool.setGrowth(1);
+				pool.setColors(new float[] { 1, 1, 1, 0 }, new float[] { 0, 0, 0, 1 });
+			}
+			
+			@Override
+			public double run() {
+				pool.update(TIME_STEP);
+				pool.fillVertices(vertices);
+				while (pool.emit(0, 0, 0, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f,
+						random.nextFloat() - 0.5f, 0.5f + random.nextFloat(), 0.1f)) {
+					// until full
+				}
+				return vertices[0];
+			}
+		}, FRAMES);
+		
+		benchmark.printTable(count + " particles, per frame", new String[] { "update" },
+				new String[] { "particle objects", "ParticlePool" },
+				new long[][] { { objects }, { pooled } });
+	}
+	
+}
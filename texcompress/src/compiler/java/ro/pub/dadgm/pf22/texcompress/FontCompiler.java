@@ -0,0 +1,273 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Build-time tool that generates the signed distance field atlases of the font assets.
+ * 
+ * <p>Each font found in the input directory tree is rasterized once (supersampled, see
+ * {@link #SUPERSAMPLING}) and its atlas is written at the same relative path in the output
+ * directory, suffixed with {@link #OUTPUT_SUFFIX}. Fonts that are older than their atlas are
+ * skipped.</p>
+ * 
+ * <p>Usage: <code>FontCompiler &lt;assets dir&gt; &lt;output dir&gt;</code></p>
+ */
+public class FontCompiler {
+	
+	/**
+	 * The suffix appended to the atlases' file names.
+	 */
+	public static final String OUTPUT_SUFFIX = ".sdf";
+	
+	/**
+	 * The extensions of the font files to compile.
+	 */
+	protected static final String[] FONT_EXTENSIONS = { ".ttf", ".otf" };
+	
+	/**
+	 * The first character to store into the atlases (' ').
+	 */
+	public static final char CHAR_START = 32;
+	
+	/**
+	 * The last character to store into the atlases ('~').
+	 */
+	public static final char CHAR_END = 126;
+	
+	/**
+	 * The font size (in atlas pixels) to generate the atlases for.
+	 */
+	public static final int FONT_SIZE = 48;
+	
+	/**
+	 * The distance (in atlas pixels) covered by the distance field.
+	 */
+	public static final int SPREAD = 6;
+	
+	/**
+	 * The factor the glyphs are supersampled by before computing their distance field.
+	 */
+	public static final int SUPERSAMPLING = 4;
+	
+	/**
+	 * The candidate atlas widths (the height is fitted to the packed cells).
+	 */
+	protected static final int[] ATLAS_SIZES = { 128, 256, 512, 1024, 2048 };
+	
+	
+	/**
+	 * The tool's entry point.
+	 * 
+	 * @param args The input and output directories.
+	 * @throws IOException If a font could not be read or its atlas written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: FontCompiler <assets dir> <output dir>");
+			System.exit(1);
+		}
+		
+		File inputDir = new File(args[0]);
+		File outputDir = new File(args[1]);
+		if (!inputDir.isDirectory())
+			throw new IOException("Input directory not found: " + inputDir);
+		
+		compileDirectory(inputDir, outputDir);
+	}
+	
+	/**
+	 * Recursively compiles all fonts found inside a directory.
+	 * 
+	 * @param inputDir The directory to compile.
+	 * @param outputDir The corresponding output directory.
+	 * @throws IOException If a font could not be read or its atlas written.
+	 */
+	protected static void compileDirectory(File inputDir, File outputDir) throws IOException {
+		File[] files = inputDir.listFiles();
+		if (files == null)
+			return;
+		
+		for (File file: files) {
+			if (file.isDirectory()) {
+				compileDirectory(file, new File(outputDir, file.getName()));
+				
+			} else if (isFont(file)) {
+				compileFont(file, new File(outputDir, file.getName() + OUTPUT_SUFFIX));
+			}
+		}
+	}
+	
+	/**
+	 * Generates the atlas of a font (unless it is up to date).
+	 * 
+	 * @param source The font file.
+	 * @param target The output file.
+	 * @throws IOException If the font could not be read or its atlas written.
+	 */
+	protected static void compileFont(File source, File target) throws IOException {
+		if (target.exists() && target.lastModified() >= source.lastModified())
+			return;
+		
+		Font font;
+		try {
+			font = Font.createFont(Font.TRUETYPE_FONT, source);
+		} catch (FontFormatException e) {
+			System.err.println("Unsupported font format, skipped: " + source);
+			return;
+		}
+		FontAtlas atlas = generateAtlas(font.deriveFont((float)(FONT_SIZE * SUPERSAMPLING)));
+		
+		File parent = target.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Unable to create directory: " + parent);
+		
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+		try {
+			atlas.write(out);
+		} finally {
+			out.close();
+		}
+		
+		System.out.println(String.format(Locale.US, "%s: %dx%d, line height %d, %d KB", source.getPath(),
+				atlas.getWidth(), atlas.getHeight(), atlas.getLineHeight(), atlas.getPixels().length / 1024));
+	}
+	
+	/**
+	 * Rasterizes the characters of a font and packs their distance fields into an atlas.
+	 * 
+	 * @param font The font, at the supersampled size.
+	 * @return The generated atlas.
+	 */
+	protected static FontAtlas generateAtlas(Font font) {
+		final int count = CHAR_END - CHAR_START + 1;
+		
+		BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D scratchGraphics = scratch.createGraphics();
+		scratchGraphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+				RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		FontMetrics metrics = scratchGraphics.getFontMetrics(font);
+		
+		int ascent = (int)Math.ceil((double)metrics.getMaxAscent() / SUPERSAMPLING);
+		int descent = (int)Math.ceil((double)metrics.getMaxDescent() / SUPERSAMPLING);
+		int lineHeight = ascent + descent;
+		int cellHeight = lineHeight + 2 * SPREAD;
+		
+		// measure the characters
+		float[] advances = new float[count];
+		int[] cellWidths = new int[count];
+		for (int i = 0; i < count; i++) {
+			char c = (char)(CHAR_START + i);
+			advances[i] = (float)font.getStringBounds(String.valueOf(c),
+					scratchGraphics.getFontRenderContext()).getWidth() / SUPERSAMPLING;
+			cellWidths[i] = (int)Math.ceil(advances[i]) + 2 * SPREAD;
+		}
+		scratchGraphics.dispose();
+		
+		// find the smallest atlas that fits all the cells, in rows (the texture is sampled without
+		// mipmaps or wrapping, so its height doesn't need to be a power of two)
+		int width = 0, height = 0;
+		for (int size: ATLAS_SIZES) {
+			int rows = 1, x = 0;
+			for (int cellWidth: cellWidths) {
+				if (x + cellWidth > size) {
+					rows++;
+					x = 0;
+				}
+				x += cellWidth;
+			}
+			int needed = rows * cellHeight;
+			if (needed <= size && (width == 0 || size * needed < width * height)) {
+				width = size;
+				height = needed;
+			}
+		}
+		if (width == 0)
+			throw new RuntimeException("The font atlas doesn't fit inside a texture!");
+		
+		// rasterize and pack the characters
+		byte[] pixels = new byte[width * height];
+		int[] cells = new int[count * 3];
+		int x = 0, y = 0;
+		for (int i = 0; i < count; i++) {
+			if (x + cellWidths[i] > width) {
+				x = 0;
+				y += cellHeight;
+			}
+			cells[i * 3] = x;
+			cells[i * 3 + 1] = y;
+			cells[i * 3 + 2] = cellWidths[i];
+			
+			byte[] field = rasterize(font, (char)(CHAR_START + i), cellWidths[i], cellHeight,
+					SPREAD, SPREAD + ascent);
+			for (int row = 0; row < cellHeight; row++) {
+				System.arraycopy(field, row * cellWidths[i], pixels, (y + row) * width + x, cellWidths[i]);
+			}
+			x += cellWidths[i];
+		}
+		
+		return new FontAtlas(SPREAD, FONT_SIZE, lineHeight, descent, CHAR_START, advances, cells,
+				cellHeight, width, height, pixels);
+	}
+	
+	/**
+	 * Rasterizes a character (supersampled) and computes its distance field.
+	 * 
+	 * @param font The font, at the supersampled size.
+	 * @param c The character.
+	 * @param cellWidth The cell's width (in atlas pixels).
+	 * @param cellHeight The cell's height (in atlas pixels).
+	 * @param originX The X coordinate of the character's origin inside the cell.
+	 * @param baseline The Y coordinate of the baseline inside the cell.
+	 * @return The cell's distance field.
+	 */
+	protected static byte[] rasterize(Font font, char c, int cellWidth, int cellHeight,
+			int originX, int baseline) {
+		int width = cellWidth * SUPERSAMPLING, height = cellHeight * SUPERSAMPLING;
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+		graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+		graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+				RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+		graphics.setFont(font);
+		graphics.drawString(String.valueOf(c), originX * SUPERSAMPLING, baseline * SUPERSAMPLING);
+		graphics.dispose();
+		
+		byte[] gray = new byte[width * height];
+		image.getRaster().getDataElements(0, 0, width, height, gray);
+		boolean[] mask = new boolean[width * height];
+		for (int i = 0; i < mask.length; i++) {
+			mask[i] = (gray[i] & 0xFF) >= 128;
+		}
+		
+		return FontAtlas.computeDistanceField(mask, width, height, SUPERSAMPLING, SPREAD);
+	}
+	
+	/**
+	 * Checks whether the file is a font to compile (by its extension).
+	 * 
+	 * @param file The file to check.
+	 * @return True if the file is a supported font.
+	 */
+	protected static boolean isFont(File file) {
+		String name = file.getName().toLowerCase(Locale.US);
+		for (String extension: FONT_EXTENSIONS) {
+			if (name.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,130 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Build-time tool that precompiles the image assets into ETC1 texture containers.
+ * 
+ * <p>Each image found in the input directory tree is compressed (with its full mipmap chain) and
+ * written at the same relative path in the output directory, suffixed with
+ * {@link #OUTPUT_SUFFIX}. Images that are older than their compiled version are skipped.</p>
+ * 
+ * <p>Usage: <code>TextureCompiler &lt;assets dir&gt; &lt;output dir&gt;</code></p>
+ */
+public class TextureCompiler {
+	
+	/**
+	 * The suffix appended to the compiled textures' file names.
+	 */
+	public static final String OUTPUT_SUFFIX = ".etc1";
+	
+	/**
+	 * The extensions of the image files to compile.
+	 */
+	protected static final String[] IMAGE_EXTENSIONS = { ".png", ".jpg", ".jpeg" };
+	
+	
+	/**
+	 * The tool's entry point.
+	 * 
+	 * @param args The input and output directories.
+	 * @throws IOException If an image could not be read or written.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: TextureCompiler <assets dir> <output dir>");
+			System.exit(1);
+		}
+		
+		File inputDir = new File(args[0]);
+		File outputDir = new File(args[1]);
+		if (!inputDir.isDirectory())
+			throw new IOException("Input directory not found: " + inputDir);
+		
+		compileDirectory(inputDir, outputDir);
+	}
+	
+	/**
+	 * Recursively compiles all images found inside a directory.
+	 * 
+	 * @param inputDir The directory to compile.
+	 * @param outputDir The corresponding output directory.
+	 * @throws IOException If an image could not be read or written.
+	 */
+	protected static void compileDirectory(File inputDir, File outputDir) throws IOException {
+		File[] files = inputDir.listFiles();
+		if (files == null)
+			return;
+		
+		for (File file: files) {
+			if (file.isDirectory()) {
+				compileDirectory(file, new File(outputDir, file.getName()));
+				
+			} else if (isImage(file)) {
+				compileImage(file, new File(outputDir, file.getName() + OUTPUT_SUFFIX));
+			}
+		}
+	}
+	
+	/**
+	 * Compiles an image into a texture container (unless it is up to date).
+	 * 
+	 * @param source The image file.
+	 * @param target The output file.
+	 * @throws IOException If the image could not be read or written.
+	 */
+	protected static void compileImage(File source, File target) throws IOException {
+		if (target.exists() && target.lastModified() >= source.lastModified())
+			return;
+		
+		BufferedImage image = ImageIO.read(source);
+		if (image == null) {
+			System.err.println("Unsupported image format, skipped: " + source);
+			return;
+		}
+		
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+		TextureContainer container = TextureContainer.encode(pixels, width, height, true);
+		
+		File parent = target.getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+			throw new IOException("Unable to create directory: " + parent);
+		
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+		try {
+			container.write(out);
+		} finally {
+			out.close();
+		}
+		
+		System.out.println(String.format(Locale.US, "%s: %dx%d, %d levels%s, %d KB", source.getPath(),
+				width, height, container.getLevels().size(), (container.hasAlpha() ? " + alpha" : ""),
+				container.getDataSize(0) / 1024));
+	}
+	
+	/**
+	 * Checks whether the file is an image to compile (by its extension).
+	 * 
+	 * @param file The file to check.
+	 * @return True if the file is a supported image.
+	 */
+	protected static boolean isImage(File file) {
+		String name = file.getName().toLowerCase(Locale.US);
+		for (String extension: IMAGE_EXTENSIONS) {
+			if (name.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+	
+}
@@ -0,0 +1,355 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+/**
+ * Pure Java ETC1 (Ericsson Texture Compression) block encoder / decoder.
+ * 
+ * <p>The encoded data is bit-compatible with the <code>GL_ETC1_RGB8_OES</code> format: the image
+ * is split into 4x4 pixel blocks (in row-major order), each one being stored as a 64-bit big endian
+ * word. Images whose dimensions are not multiples of 4 are padded by replicating their edges.</p>
+ * 
+ * <p>The encoder does an exhaustive search over the block's split directions, base color modes and
+ * modifier tables, so it is meant to be used offline (at build time), not at runtime.</p>
+ * 
+ * <p>Pixels are passed as packed <code>0xAARRGGBB</code> integers (the alpha channel is ignored
+ * by the encoder and set to opaque by the decoder).</p>
+ */
+public class ETC1Codec {
+	
+	/**
+	 * The size of an encoded 4x4 block, in bytes.
+	 */
+	public static final int ENCODED_BLOCK_SIZE = 8;
+	
+	/**
+	 * The intensity modifier tables, as {small, large} pairs.
+	 * 
+	 * <p>A pixel's 2-bit index selects one of: +small, +large, -small, -large.</p>
+	 */
+	protected static final int[][] MODIFIER_TABLES = {
+			{ 2, 8 }, { 5, 17 }, { 9, 29 }, { 13, 42 },
+			{ 18, 60 }, { 24, 80 }, { 33, 106 }, { 47, 183 }
+	};
+	
+	
+	/**
+	 * Computes the size of the encoded data for an image of the specified dimensions.
+	 * 
+	 * @param width The image's width.
+	 * @param height The image's height.
+	 * @return The encoded data size, in bytes.
+	 */
+	public static int getEncodedDataSize(int width, int height) {
+		return ((width + 3) / 4) * ((height + 3) / 4) * ENCODED_BLOCK_SIZE;
+	}
+	
+	/**
+	 * Encodes an image.
+	 * 
+	 * @param pixels The image's pixels (<code>0xAARRGGBB</code>, row-major).
+	 * @param width The image's width.
+	 * @param height The image's height.
+	 * @return The encoded ETC1 data.
+	 */
+	public static byte[] encodeImage(int[] pixels, int width, int height) {
+		if (width <= 0 || height <= 0 || pixels.length < width * height)
+			throw new IllegalArgumentException("Invalid image dimensions!");
+		
+		byte[] out = new byte[getEncodedDataSize(width, height)];
+		int[] block = new int[16 * 3];
+		int offset = 0;
+		
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				// gather the block's pixels (in column-major order), replicating the edges
+				for (int x = 0; x < 4; x++) {
+					int px = Math.min(bx + x, width - 1);
+					for (int y = 0; y < 4; y++) {
+						int py = Math.min(by + y, height - 1);
+						int color = pixels[py * width + px];
+						int i = (x * 4 + y) * 3;
+						block[i] = (color >> 16) & 0xFF;
+						block[i + 1] = (color >> 8) & 0xFF;
+						block[i + 2] = color & 0xFF;
+					}
+				}
+				
+				encodeBlock(block, out, offset);
+				offset += ENCODED_BLOCK_SIZE;
+			}
+		}
+		
+		return out;
+	}
+	
+	/**
+	 * Decodes an image.
+	 * 
+	 * @param data The encoded ETC1 data.
+	 * @param width The image's width.
+	 * @param height The image's height.
+	 * @return The image's pixels (<code>0xFFRRGGBB</code>, row-major).
+	 */
+	public static int[] decodeImage(byte[] data, int width, int height) {
+		if (width <= 0 || height <= 0 || data.length < getEncodedDataSize(width, height))
+			throw new IllegalArgumentException("Invalid image dimensions!");
+		
+		int[] pixels = new int[width * height];
+		int[] block = new int[16 * 3];
+		int offset = 0;
+		
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				decodeBlock(data, offset, block);
+				offset += ENCODED_BLOCK_SIZE;
+				
+				for (int x = 0; x < 4 && bx + x < width; x++) {
+					for (int y = 0; y < 4 && by + y < height; y++) {
+						int i = (x * 4 + y) * 3;
+						pixels[(by + y) * width + bx + x] = 0xFF000000 |
+								(block[i] << 16) | (block[i + 1] << 8) | block[i + 2];
+					}
+				}
+			}
+		}
+		
+		return pixels;
+	}
+	
+	/**
+	 * Encodes a single 4x4 block.
+	 * 
+	 * @param block The block's pixels, as 16 (R, G, B) triplets in column-major order.
+	 * @param out The output buffer.
+	 * @param offset The output offset.
+	 */
+	public static void encodeBlock(int[] block, byte[] out, int offset) {
+		long bestError = Long.MAX_VALUE;
+		int bestHigh = 0, bestLow = 0;
+		
+		int[] result = new int[3]; // {high word, low word, error}
+		float[][] avg = new float[2][3];
+		int[][] base = new int[2][3];
+		int[][] quant = new int[2][3];
+		
+		for (int flip = 0; flip < 2; flip++) {
+			// average the colors of the two sub-blocks
+			avg[0][0] = avg[0][1] = avg[0][2] = 0;
+			avg[1][0] = avg[1][1] = avg[1][2] = 0;
+			for (int i = 0; i < 16; i++) {
+				int sub = getSubBlock(i, flip);
+				for (int c = 0; c < 3; c++) {
+					avg[sub][c] += block[i * 3 + c] / 8f;
+				}
+			}
+			
+			// differential mode: 5-bit base colors, the second one stored as a 3-bit delta
+			for (int c = 0; c < 3; c++) {
+				quant[0][c] = clamp(Math.round(avg[0][c] * 31 / 255f), 0, 31);
+				quant[1][c] = clamp(Math.round(avg[1][c] * 31 / 255f), 0, 31);
+				// clamp the delta to its range, trading some accuracy for the better precision
+				quant[1][c] = clamp(quant[0][c] + clamp(quant[1][c] - quant[0][c], -4, 3), 0, 31);
+				base[0][c] = (quant[0][c] << 3) | (quant[0][c] >> 2);
+				base[1][c] = (quant[1][c] << 3) | (quant[1][c] >> 2);
+			}
+			int high = (quant[0][0] << 27) | (((quant[1][0] - quant[0][0]) & 7) << 24) |
+					(quant[0][1] << 19) | (((quant[1][1] - quant[0][1]) & 7) << 16) |
+					(quant[0][2] << 11) | (((quant[1][2] - quant[0][2]) & 7) << 8) |
+					(1 << 1) | flip;
+			encodeSubBlocks(block, flip, base, high, result);
+			if (result[2] < bestError) {
+				bestError = result[2];
+				bestHigh = result[0];
+				bestLow = result[1];
+			}
+			
+			// individual mode: two independent 4-bit base colors
+			for (int c = 0; c < 3; c++) {
+				quant[0][c] = clamp(Math.round(avg[0][c] * 15 / 255f), 0, 15);
+				quant[1][c] = clamp(Math.round(avg[1][c] * 15 / 255f), 0, 15);
+				base[0][c] = (quant[0][c] << 4) | quant[0][c];
+				base[1][c] = (quant[1][c] << 4) | quant[1][c];
+			}
+			high = (quant[0][0] << 28) | (quant[1][0] << 24) |
+					(quant[0][1] << 20) | (quant[1][1] << 16) |
+					(quant[0][2] << 12) | (quant[1][2] << 8) | flip;
+			encodeSubBlocks(block, flip, base, high, result);
+			if (result[2] < bestError) {
+				bestError = result[2];
+				bestHigh = result[0];
+				bestLow = result[1];
+			}
+		}
+		
+		writeInt(out, offset, bestHigh);
+		writeInt(out, offset + 4, bestLow);
+	}
+	
+	/**
+	 * Decodes a single 4x4 block.
+	 * 
+	 * @param data The encoded data.
+	 * @param offset The block's offset.
+	 * @param block The output buffer for the 16 (R, G, B) triplets, in column-major order.
+	 */
+	public static void decodeBlock(byte[] data, int offset, int[] block) {
+		int high = readInt(data, offset);
+		int low = readInt(data, offset + 4);
+		
+		int flip = high & 1;
+		boolean differential = ((high >> 1) & 1) != 0;
+		int[][] base = new int[2][3];
+		
+		for (int c = 0; c < 3; c++) {
+			if (differential) {
+				int shift = 27 - c * 8;
+				int color = (high >>> shift) & 31;
+				// sign-extend the 3-bit delta
+				int delta = ((high >>> (shift - 3)) & 7) << 29 >> 29;
+				int color2 = (color + delta) & 31;
+				base[0][c] = (color << 3) | (color >> 2);
+				base[1][c] = (color2 << 3) | (color2 >> 2);
+				
+			} else {
+				int shift = 28 - c * 8;
+				int color = (high >>> shift) & 15;
+				int color2 = (high >>> (shift - 4)) & 15;
+				base[0][c] = (color << 4) | color;
+				base[1][c] = (color2 << 4) | color2;
+			}
+		}
+		
+		int[] tables = { (high >>> 5) & 7, (high >>> 2) & 7 };
+		
+		for (int i = 0; i < 16; i++) {
+			int sub = getSubBlock(i, flip);
+			int index = (((low >>> (16 + i)) & 1) << 1) | ((low >>> i) & 1);
+			int modifier = getModifier(tables[sub], index);
+			for (int c = 0; c < 3; c++) {
+				block[i * 3 + c] = clamp(base[sub][c] + modifier, 0, 255);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Picks the best modifier table (and pixel indices) for both sub-blocks, for the given base
+	 * colors.
+	 * 
+	 * @param block The block's pixels.
+	 * @param flip The split direction.
+	 * @param base The two (already quantized and expanded) base colors.
+	 * @param high The block's high word, without the table bits.
+	 * @param result Output: {high word, low word, squared error}.
+	 */
+	protected static void encodeSubBlocks(int[] block, int flip, int[][] base, int high, int[] result) {
+		int low = 0;
+		int totalError = 0;
+		
+		for (int sub = 0; sub < 2; sub++) {
+			int bestError = Integer.MAX_VALUE;
+			int bestTable = 0, bestIndices = 0;
+			
+			for (int table = 0; table < MODIFIER_TABLES.length; table++) {
+				int error = 0, indices = 0;
+				
+				for (int i = 0; i < 16 && error < bestError; i++) {
+					if (getSubBlock(i, flip) != sub)
+						continue;
+					
+					int bestPixelError = Integer.MAX_VALUE, bestIndex = 0;
+					for (int index = 0; index < 4; index++) {
+						int modifier = getModifier(table, index);
+						int pixelError = 0;
+						for (int c = 0; c < 3; c++) {
+							int diff = clamp(base[sub][c] + modifier, 0, 255) - block[i * 3 + c];
+							pixelError += diff * diff;
+						}
+						if (pixelError < bestPixelError) {
+							bestPixelError = pixelError;
+							bestIndex = index;
+						}
+					}
+					
+					error += bestPixelError;
+					indices |= ((bestIndex >> 1) << (16 + i)) | ((bestIndex & 1) << i);
+				}
+				
+				if (error < bestError) {
+					bestError = error;
+					bestTable = table;
+					bestIndices = indices;
+				}
+			}
+			
+			high |= bestTable << (sub == 0 ? 5 : 2);
+			low |= bestIndices;
+			totalError += bestError;
+		}
+		
+		result[0] = high;
+		result[1] = low;
+		result[2] = totalError;
+	}
+	
+	/**
+	 * Returns the sub-block of a pixel.
+	 * 
+	 * @param i The pixel's index inside the block (column-major).
+	 * @param flip The split direction (0: left / right, 1: top / bottom).
+	 * @return The sub-block's index (0 or 1).
+	 */
+	protected static int getSubBlock(int i, int flip) {
+		return (flip == 0 ? (i >> 2) : (i & 3)) >> 1;
+	}
+	
+	/**
+	 * Returns the intensity modifier selected by a pixel index.
+	 * 
+	 * @param table The modifier table.
+	 * @param index The 2-bit pixel index.
+	 * @return The modifier value.
+	 */
+	protected static int getModifier(int table, int index) {
+		int modifier = MODIFIER_TABLES[table][index & 1];
+		return ((index & 2) != 0 ? -modifier : modifier);
+	}
+	
+	/**
+	 * Clamps the value to the specified range.
+	 * 
+	 * @param value The value to clamp.
+	 * @param min Minimum value.
+	 * @param max Maximum value.
+	 * @return The clamped value.
+	 */
+	protected static int clamp(int value, int min, int max) {
+		return (value < min ? min : (value > max ? max : value));
+	}
+	
+	/**
+	 * Reads a big endian 32-bit integer.
+	 * 
+	 * @param data The source buffer.
+	 * @param offset The offset to read from.
+	 * @return The integer read.
+	 */
+	protected static int readInt(byte[] data, int offset) {
+		return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) |
+				((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+	}
+	
+	/**
+	 * Writes a big endian 32-bit integer.
+	 * 
+	 * @param data The destination buffer.
+	 * @param offset The offset to write to.
+	 * @param value The integer to write.
+	 */
+	protected static void writeInt(byte[] data, int offset, int value) {
+		data[offset] = (byte)(value >>> 24);
+		data[offset + 1] = (byte)(value >>> 16);
+		data[offset + 2] = (byte)(value >>> 8);
+		data[offset + 3] = (byte)value;
+	}
+	
+}
@@ -0,0 +1,473 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A precompiled signed distance field (SDF) font atlas, with the font's metrics.
+ * 
+ * <p>Each character is stored into a cell of the atlas: the cell is as wide as the character's
+ * advance and as high as the font's line, plus {@link #getSpread()} pixels on each side. The
+ * character's origin (pen position on the baseline) is at (spread, spread + lineHeight - descent)
+ * inside its cell. The atlas' pixels store the distance to the glyph's outline: 128 is on the
+ * outline, higher values are inside (255 is <code>spread</code> pixels inside), lower values are
+ * outside.</p>
+ * 
+ * <p>Since the distance varies linearly, the atlas can be sampled (and thresholded) at any scale,
+ * so a single atlas serves all the sizes of a font.</p>
+ * 
+ * <p>The binary format (all integers are big endian):
+ * <ul>
+ *     <li>header: magic (<code>"PFFA"</code>), version (u16), spread (u16), font size (u32), line
+ *     height (u32), descent (u32), first character (u16), characters count (u16), cell height
+ *     (u32), atlas width (u32), atlas height (u32);</li>
+ *     <li>for each character: advance (float), cell X (u16), cell Y (u16), cell width (u16);</li>
+ *     <li>the atlas' pixels (one byte each, row-major).</li>
+ * </ul>
+ * </p>
+ */
+public class FontAtlas {
+	
+	/**
+	 * The atlas' magic number ("PFFA").
+	 */
+	public static final int MAGIC = 0x50464641;
+	
+	/**
+	 * The current version of the format.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * The maximum size (on either dimension) of an atlas accepted when reading.
+	 */
+	protected static final int MAX_SIZE = 4096;
+	
+	/**
+	 * The distance from the outline (in pixels) covered by the distance field.
+	 */
+	protected final int spread;
+	
+	/**
+	 * The font size (in pixels) the atlas was generated for.
+	 */
+	protected final int fontSize;
+	
+	/**
+	 * The height of a line (ascent + descent), in pixels.
+	 */
+	protected final int lineHeight;
+	
+	/**
+	 * The font's descent (distance from the baseline to the bottom of the line), in pixels.
+	 */
+	protected final int descent;
+	
+	/**
+	 * The code of the first character stored.
+	 */
+	protected final char firstChar;
+	
+	/**
+	 * The characters' advances (horizontal distance to the next character), in pixels.
+	 */
+	protected final float[] advances;
+	
+	/**
+	 * The characters' cells: X, Y and width for each character.
+	 */
+	protected final int[] cells;
+	
+	/**
+	 * The height of all cells.
+	 */
+	protected final int cellHeight;
+	
+	/**
+	 * The atlas' width.
+	 */
+	protected final int width;
+	
+	/**
+	 * The atlas' height.
+	 */
+	protected final int height;
+	
+	/**
+	 * The distance field's pixels (row-major).
+	 */
+	protected final byte[] pixels;
+	
+	
+	/**
+	 * Initializes the atlas.
+	 * 
+	 * @param spread The distance (in pixels) covered by the distance field.
+	 * @param fontSize The font size the atlas was generated for.
+	 * @param lineHeight The height of a line.
+	 * @param descent The font's descent.
+	 * @param firstChar The code of the first character stored.
+	 * @param advances The characters' advances.
+	 * @param cells The characters' cells (X, Y and width for each character).
+	 * @param cellHeight The height of all cells.
+	 * @param width The atlas' width.
+	 * @param height The atlas' height.
+	 * @param pixels The distance field's pixels.
+	 */
+	public FontAtlas(int spread, int fontSize, int lineHeight, int descent, char firstChar,
+			float[] advances, int[] cells, int cellHeight, int width, int height, byte[] pixels) {
+		this.spread = spread;
+		this.fontSize = fontSize;
+		this.lineHeight = lineHeight;
+		this.descent = descent;
+		this.firstChar = firstChar;
+		this.advances = advances;
+		this.cells = cells;
+		this.cellHeight = cellHeight;
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+	}
+	
+	/**
+	 * Computes the signed distance field of a (supersampled) binary image.
+	 * 
+	 * <p>The exact euclidean distances are computed on the supersampled image (using separable
+	 * squared distance transforms), then averaged over each block of <code>downscale</code> x
+	 * <code>downscale</code> pixels.</p>
+	 * 
+	 * @param mask The image's pixels (true inside the glyph, row-major).
+	 * @param width The image's width (a multiple of <code>downscale</code>).
+	 * @param height The image's height (a multiple of <code>downscale</code>).
+	 * @param downscale The supersampling factor.
+	 * @param spread The distance covered by the field, in output pixels.
+	 * @return The field's pixels (see the class' description for their encoding).
+	 */
+	public static byte[] computeDistanceField(boolean[] mask, int width, int height, int downscale,
+			int spread) {
+		float[] inside = new float[width * height];
+		float[] outside = new float[width * height];
+		for (int i = 0; i < mask.length; i++) {
+			// the distance of each pixel to the nearest outside / inside pixel
+			inside[i] = (mask[i] ? Float.POSITIVE_INFINITY : 0);
+			outside[i] = (mask[i] ? 0 : Float.POSITIVE_INFINITY);
+		}
+		transform(inside, width, height);
+		transform(outside, width, height);
+		
+		int fieldWidth = width / downscale, fieldHeight = height / downscale;
+		byte[] field = new byte[fieldWidth * fieldHeight];
+		float scale = 127f / (spread * downscale);
+		
+		for (int y = 0; y < fieldHeight; y++) {
+			for (int x = 0; x < fieldWidth; x++) {
+				float sum = 0;
+				for (int j = 0; j < downscale; j++) {
+					for (int i = 0; i < downscale; i++) {
+						int idx = (y * downscale + j) * width + x * downscale + i;
+						// the pixels' centers are half a pixel away from the outline
+						sum += (mask[idx] ? (float)Math.sqrt(inside[idx]) - 0.5f :
+								0.5f - (float)Math.sqrt(outside[idx]));
+					}
+				}
+				float distance = sum / (downscale * downscale);
+				int value = Math.round(128 + distance * scale);
+				field[y * fieldWidth + x] = (byte)Math.max(0, Math.min(255, value));
+			}
+		}
+		
+		return field;
+	}
+	
+	/**
+	 * Reads an atlas from the specified stream.
+	 * 
+	 * <p>The stream is not closed.</p>
+	 * 
+	 * @param in The stream to read from.
+	 * @return The atlas read.
+	 * @throws IOException If the stream could not be read or its contents are invalid.
+	 */
+	public static FontAtlas read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a font atlas!");
+		int version = data.readUnsignedShort();
+		if (version != VERSION)
+			throw new IOException("Unsupported font atlas version: " + version + "!");
+		
+		int spread = data.readUnsignedShort();
+		int fontSize = data.readInt();
+		int lineHeight = data.readInt();
+		int descent = data.readInt();
+		char firstChar = (char)data.readUnsignedShort();
+		int count = data.readUnsignedShort();
+		int cellHeight = data.readInt();
+		int width = data.readInt();
+		int height = data.readInt();
+		if (count == 0 || lineHeight <= 0 || width <= 0 || height <= 0 || width > MAX_SIZE ||
+				height > MAX_SIZE || cellHeight > height)
+			throw new IOException("Invalid font atlas header!");
+		
+		float[] advances = new float[count];
+		int[] cells = new int[count * 3];
+		for (int i = 0; i < count; i++) {
+			advances[i] = data.readFloat();
+			cells[i * 3] = data.readUnsignedShort();
+			cells[i * 3 + 1] = data.readUnsignedShort();
+			cells[i * 3 + 2] = data.readUnsignedShort();
+			if (cells[i * 3] + cells[i * 3 + 2] > width || cells[i * 3 + 1] + cellHeight > height)
+				throw new IOException("Invalid font atlas cell!");
+		}
+		
+		byte[] pixels = new byte[width * height];
+		data.readFully(pixels);
+		
+		return new FontAtlas(spread, fontSize, lineHeight, descent, firstChar, advances, cells,
+				cellHeight, width, height, pixels);
+	}
+	
+	/**
+	 * Writes the atlas to the specified stream.
+	 * 
+	 * <p>The stream is flushed, but not closed.</p>
+	 * 
+	 * @param out The stream to write to.
+	 * @throws IOException If the stream could not be written.
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeShort(spread);
+		data.writeInt(fontSize);
+		data.writeInt(lineHeight);
+		data.writeInt(descent);
+		data.writeShort(firstChar);
+		data.writeShort(advances.length);
+		data.writeInt(cellHeight);
+		data.writeInt(width);
+		data.writeInt(height);
+		
+		for (int i = 0; i < advances.length; i++) {
+			data.writeFloat(advances[i]);
+			data.writeShort(cells[i * 3]);
+			data.writeShort(cells[i * 3 + 1]);
+			data.writeShort(cells[i * 3 + 2]);
+		}
+		data.write(pixels);
+		
+		data.flush();
+	}
+	
+	/**
+	 * Returns the index of a character's metrics.
+	 * 
+	 * <p>The characters that are not stored are replaced with the first one.</p>
+	 * 
+	 * @param c The character.
+	 * @return The character's index.
+	 */
+	public int getCharIndex(char c) {
+		int idx = c - firstChar;
+		if (idx < 0 || idx >= advances.length)
+			idx = 0;
+		return idx;
+	}
+	
+	/**
+	 * Returns the advance of a character.
+	 * 
+	 * @param c The character.
+	 * @return The advance, in pixels.
+	 */
+	public float getAdvance(char c) {
+		return advances[getCharIndex(c)];
+	}
+	
+	/**
+	 * Returns a character's cell X coordinate.
+	 * 
+	 * @param c The character.
+	 * @return The cell's left coordinate inside the atlas.
+	 */
+	public int getCellX(char c) {
+		return cells[getCharIndex(c) * 3];
+	}
+	
+	/**
+	 * Returns a character's cell Y coordinate.
+	 * 
+	 * @param c The character.
+	 * @return The cell's top coordinate inside the atlas.
+	 */
+	public int getCellY(char c) {
+		return cells[getCharIndex(c) * 3 + 1];
+	}
+	
+	/**
+	 * Returns a character's cell width.
+	 * 
+	 * @param c The character.
+	 * @return The cell's width.
+	 */
+	public int getCellWidth(char c) {
+		return cells[getCharIndex(c) * 3 + 2];
+	}
+	
+	/**
+	 * Returns the height of the cells.
+	 * 
+	 * @return The cell height.
+	 */
+	public int getCellHeight() {
+		return cellHeight;
+	}
+	
+	/**
+	 * Returns the distance covered by the field.
+	 * 
+	 * @return The spread, in pixels.
+	 */
+	public int getSpread() {
+		return spread;
+	}
+	
+	/**
+	 * Returns the font size the atlas was generated for.
+	 * 
+	 * @return The font size, in pixels.
+	 */
+	public int getFontSize() {
+		return fontSize;
+	}
+	
+	/**
+	 * Returns the height of a line.
+	 * 
+	 * @return The line height, in pixels.
+	 */
+	public int getLineHeight() {
+		return lineHeight;
+	}
+	
+	/**
+	 * Returns the font's descent.
+	 * 
+	 * @return The descent, in pixels.
+	 */
+	public int getDescent() {
+		return descent;
+	}
+	
+	/**
+	 * Returns the atlas' width.
+	 * 
+	 * @return Atlas' width.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the atlas' height.
+	 * 
+	 * @return Atlas' height.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns the distance field's pixels.
+	 * 
+	 * @return The pixels (one byte each, row-major).
+	 */
+	public byte[] getPixels() {
+		return pixels;
+	}
+	
+	
+	/**
+	 * Computes the squared euclidean distance transform of an image, in place.
+	 * 
+	 * <p>Uses the separable algorithm of Felzenszwalb and Huttenlocher (on the columns, then on
+	 * the rows).</p>
+	 * 
+	 * @param grid The image: 0 for the feature pixels, infinity for the others.
+	 * @param width The image's width.
+	 * @param height The image's height.
+	 */
+	protected static void transform(float[] grid, int width, int height) {
+		int n = Math.max(width, height);
+		float[] f = new float[n], d = new float[n], z = new float[n + 1];
+		int[] v = new int[n];
+		
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				f[y] = grid[y * width + x];
+			}
+			transform1D(f, height, d, v, z);
+			for (int y = 0; y < height; y++) {
+				grid[y * width + x] = d[y];
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(grid, y * width, f, 0, width);
+			transform1D(f, width, d, v, z);
+			System.arraycopy(d, 0, grid, y * width, width);
+		}
+	}
+	
+	/**
+	 * Computes the 1D squared distance transform (the lower envelope of the parabolas rooted at
+	 * each sample).
+	 * 
+	 * @param f The input samples.
+	 * @param n The number of samples.
+	 * @param d The output distances.
+	 * @param v Work array: the envelope's parabolas.
+	 * @param z Work array: the boundaries between the envelope's parabolas.
+	 */
+	protected static void transform1D(float[] f, int n, float[] d, int[] v, float[] z) {
+		int k = -1;
+		for (int q = 0; q < n; q++) {
+			if (f[q] == Float.POSITIVE_INFINITY)
+				continue;
+			float s = Float.NEGATIVE_INFINITY;
+			while (k >= 0) {
+				s = ((f[q] + q * q) - (f[v[k]] + v[k] * v[k])) / (2 * q - 2 * v[k]);
+				if (s > z[k])
+					break;
+				k--;
+			}
+			k++;
+			v[k] = q;
+			z[k] = (k == 0 ? Float.NEGATIVE_INFINITY : s);
+			z[k + 1] = Float.POSITIVE_INFINITY;
+		}
+		
+		if (k < 0) {
+			// no feature pixels at all
+			for (int q = 0; q < n; q++) {
+				d[q] = Float.POSITIVE_INFINITY;
+			}
+			return;
+		}
+		
+		int j = 0;
+		for (int q = 0; q < n; q++) {
+			while (z[j + 1] < q) {
+				j++;
+			}
+			float dq = q - v[j];
+			d[q] = dq * dq + f[v[j]];
+		}
+	}
+	
+}
@@ -0,0 +1,417 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A precompiled (ETC1 compressed) texture, with its full mipmap chain.
+ * 
+ * <p>Since ETC1 has no alpha channel, the alpha of translucent images is stored as a separate
+ * plane: a second ETC1 image (of the same size) having the alpha value in all its color channels.
+ * The colors of such images are premultiplied by their alpha.</p>
+ * 
+ * <p>The binary format (all integers are big endian):
+ * <ul>
+ *     <li>header: magic (<code>"PFTX"</code>), version (u16), flags (u16), width (u32),
+ *     height (u32), levels count (u32);</li>
+ *     <li>for each mipmap level (largest first): width (u32), height (u32), color data size (u32),
+ *     color data and, if the texture has alpha, the alpha data size (u32) and the alpha data.</li>
+ * </ul>
+ * </p>
+ */
+public class TextureContainer {
+	
+	/**
+	 * The container's magic number ("PFTX").
+	 */
+	public static final int MAGIC = 0x50465458;
+	
+	/**
+	 * The current version of the format.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * Header flag: the texture has a separate alpha plane.
+	 */
+	public static final int FLAG_ALPHA = 1;
+	
+	/**
+	 * The maximum number of mipmap levels accepted when reading (enough for 64K textures).
+	 */
+	protected static final int MAX_LEVELS = 17;
+	
+	/**
+	 * A mipmap level of the texture.
+	 */
+	public static class Level {
+		
+		/**
+		 * The level's width.
+		 */
+		protected final int width;
+		
+		/**
+		 * The level's height.
+		 */
+		protected final int height;
+		
+		/**
+		 * The ETC1 encoded color data.
+		 */
+		protected final byte[] colorData;
+		
+		/**
+		 * The ETC1 encoded alpha plane (null if the texture is opaque).
+		 */
+		protected final byte[] alphaData;
+		
+		
+		/**
+		 * Initializes the mipmap level.
+		 * 
+		 * @param width The level's width.
+		 * @param height The level's height.
+		 * @param colorData The ETC1 encoded color data.
+		 * @param alphaData The ETC1 encoded alpha plane (null if the texture is opaque).
+		 */
+		public Level(int width, int height, byte[] colorData, byte[] alphaData) {
+			this.width = width;
+			this.height = height;
+			this.colorData = colorData;
+			this.alphaData = alphaData;
+		}
+		
+		/**
+		 * Returns the level's width.
+		 * 
+		 * @return Level's width.
+		 */
+		public int getWidth() {
+			return width;
+		}
+		
+		/**
+		 * Returns the level's height.
+		 * 
+		 * @return Level's height.
+		 */
+		public int getHeight() {
+			return height;
+		}
+		
+		/**
+		 * Returns the ETC1 encoded color data.
+		 * 
+		 * @return The color data.
+		 */
+		public byte[] getColorData() {
+			return colorData;
+		}
+		
+		/**
+		 * Returns the ETC1 encoded alpha plane.
+		 * 
+		 * @return The alpha data, null if the texture is opaque.
+		 */
+		public byte[] getAlphaData() {
+			return alphaData;
+		}
+	}
+	
+	/**
+	 * The texture's width.
+	 */
+	protected final int width;
+	
+	/**
+	 * The texture's height.
+	 */
+	protected final int height;
+	
+	/**
+	 * Whether the texture has a separate alpha plane.
+	 */
+	protected final boolean alpha;
+	
+	/**
+	 * The mipmap levels, largest first.
+	 */
+	protected final List<Level> levels;
+	
+	
+	/**
+	 * Initializes the container.
+	 * 
+	 * @param width The texture's width.
+	 * @param height The texture's height.
+	 * @param alpha Whether the texture has a separate alpha plane.
+	 * @param levels The mipmap levels, largest first.
+	 */
+	public TextureContainer(int width, int height, boolean alpha, List<Level> levels) {
+		this.width = width;
+		this.height = height;
+		this.alpha = alpha;
+		this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+	}
+	
+	/**
+	 * Compresses an image into a new container.
+	 * 
+	 * <p>If the image has any translucent pixel, its colors are premultiplied by alpha and an
+	 * alpha plane is also generated. The mipmaps are generated using a box filter (on the
+	 * premultiplied values).</p>
+	 * 
+	 * @param pixels The image's pixels (<code>0xAARRGGBB</code>, not premultiplied, row-major).
+	 * @param width The image's width.
+	 * @param height The image's height.
+	 * @param mipmaps Whether to generate the full mipmap chain.
+	 * @return The compressed texture.
+	 */
+	public static TextureContainer encode(int[] pixels, int width, int height, boolean mipmaps) {
+		boolean hasAlpha = false;
+		for (int i = 0; i < width * height; i++) {
+			if ((pixels[i] >>> 24) != 0xFF) {
+				hasAlpha = true;
+				break;
+			}
+		}
+		
+		int[] current = pixels;
+		if (hasAlpha) {
+			current = new int[width * height];
+			for (int i = 0; i < current.length; i++) {
+				current[i] = premultiply(pixels[i]);
+			}
+		}
+		
+		List<Level> levels = new ArrayList<>();
+		int levelWidth = width, levelHeight = height;
+		while (true) {
+			byte[] colorData = ETC1Codec.encodeImage(current, levelWidth, levelHeight);
+			byte[] alphaData = null;
+			if (hasAlpha) {
+				int[] alphaPixels = new int[levelWidth * levelHeight];
+				for (int i = 0; i < alphaPixels.length; i++) {
+					int a = current[i] >>> 24;
+					alphaPixels[i] = (a << 16) | (a << 8) | a;
+				}
+				alphaData = ETC1Codec.encodeImage(alphaPixels, levelWidth, levelHeight);
+			}
+			levels.add(new Level(levelWidth, levelHeight, colorData, alphaData));
+			
+			if (!mipmaps || (levelWidth == 1 && levelHeight == 1))
+				break;
+			
+			current = downsample(current, levelWidth, levelHeight);
+			levelWidth = Math.max(1, levelWidth / 2);
+			levelHeight = Math.max(1, levelHeight / 2);
+		}
+		
+		return new TextureContainer(width, height, hasAlpha, levels);
+	}
+	
+	/**
+	 * Reads a container from the specified stream.
+	 * 
+	 * <p>The stream is not closed.</p>
+	 * 
+	 * @param in The stream to read from.
+	 * @return The texture read.
+	 * @throws IOException If the stream could not be read or its contents are invalid.
+	 */
+	public static TextureContainer read(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a compressed texture container!");
+		int version = data.readUnsignedShort();
+		if (version != VERSION)
+			throw new IOException("Unsupported texture container version: " + version + "!");
+		
+		int flags = data.readUnsignedShort();
+		boolean hasAlpha = (flags & FLAG_ALPHA) != 0;
+		int width = data.readInt();
+		int height = data.readInt();
+		int levelsCount = data.readInt();
+		if (width <= 0 || height <= 0 || levelsCount <= 0 || levelsCount > MAX_LEVELS)
+			throw new IOException("Invalid texture container header!");
+		
+		List<Level> levels = new ArrayList<>(levelsCount);
+		for (int i = 0; i < levelsCount; i++) {
+			int levelWidth = data.readInt();
+			int levelHeight = data.readInt();
+			if (levelWidth != Math.max(1, width >> i) || levelHeight != Math.max(1, height >> i))
+				throw new IOException("Invalid mipmap level dimensions!");
+			
+			byte[] colorData = readLevelData(data, levelWidth, levelHeight);
+			byte[] alphaData = (hasAlpha ? readLevelData(data, levelWidth, levelHeight) : null);
+			levels.add(new Level(levelWidth, levelHeight, colorData, alphaData));
+		}
+		
+		return new TextureContainer(width, height, hasAlpha, levels);
+	}
+	
+	/**
+	 * Writes the container to the specified stream.
+	 * 
+	 * <p>The stream is flushed, but not closed.</p>
+	 * 
+	 * @param out The stream to write to.
+	 * @throws IOException If the stream could not be written.
+	 */
+	public void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		
+		data.writeInt(MAGIC);
+		data.writeShort(VERSION);
+		data.writeShort(alpha ? FLAG_ALPHA : 0);
+		data.writeInt(width);
+		data.writeInt(height);
+		data.writeInt(levels.size());
+		
+		for (Level level: levels) {
+			data.writeInt(level.width);
+			data.writeInt(level.height);
+			data.writeInt(level.colorData.length);
+			data.write(level.colorData);
+			if (alpha) {
+				data.writeInt(level.alphaData.length);
+				data.write(level.alphaData);
+			}
+		}
+		
+		data.flush();
+	}
+	
+	/**
+	 * Returns the texture's width.
+	 * 
+	 * @return Texture's width.
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the texture's height.
+	 * 
+	 * @return Texture's height.
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns whether the texture has a separate alpha plane.
+	 * 
+	 * @return True if the texture is translucent.
+	 */
+	public boolean hasAlpha() {
+		return alpha;
+	}
+	
+	/**
+	 * Returns the mipmap levels, largest first.
+	 * 
+	 * @return The (read-only) list of levels.
+	 */
+	public List<Level> getLevels() {
+		return levels;
+	}
+	
+	/**
+	 * Computes the total size of the compressed data (all levels and planes).
+	 * 
+	 * @param firstLevel The first level to include.
+	 * @return The data size, in bytes.
+	 */
+	public long getDataSize(int firstLevel) {
+		long size = 0;
+		for (int i = firstLevel; i < levels.size(); i++) {
+			Level level = levels.get(i);
+			size += level.colorData.length;
+			if (level.alphaData != null)
+				size += level.alphaData.length;
+		}
+		return size;
+	}
+	
+	
+	/**
+	 * Reads and validates the data of a mipmap level's plane.
+	 * 
+	 * @param data The stream to read from.
+	 * @param width The level's width.
+	 * @param height The level's height.
+	 * @return The plane's data.
+	 * @throws IOException If the stream could not be read or its size is invalid.
+	 */
+	protected static byte[] readLevelData(DataInputStream data, int width, int height) throws IOException {
+		int size = data.readInt();
+		if (size != ETC1Codec.getEncodedDataSize(width, height))
+			throw new IOException("Invalid mipmap level size!");
+		
+		byte[] buffer = new byte[size];
+		data.readFully(buffer);
+		return buffer;
+	}
+	
+	/**
+	 * Premultiplies a color by its alpha.
+	 * 
+	 * @param color The color (<code>0xAARRGGBB</code>).
+	 * @return The premultiplied color.
+	 */
+	protected static int premultiply(int color) {
+		int a = color >>> 24;
+		int r = ((color >> 16) & 0xFF) * a / 255;
+		int g = ((color >> 8) & 0xFF) * a / 255;
+		int b = (color & 0xFF) * a / 255;
+		return (a << 24) | (r << 16) | (g << 8) | b;
+	}
+	
+	/**
+	 * Halves the image's size by averaging each 2x2 pixel square (all 4 channels).
+	 * 
+	 * @param pixels The image's pixels.
+	 * @param width The image's width.
+	 * @param height The image's height.
+	 * @return The pixels of the downsampled image.
+	 */
+	protected static int[] downsample(int[] pixels, int width, int height) {
+		int newWidth = Math.max(1, width / 2);
+		int newHeight = Math.max(1, height / 2);
+		int[] result = new int[newWidth * newHeight];
+		
+		for (int y = 0; y < newHeight; y++) {
+			int y0 = Math.min(y * 2, height - 1), y1 = Math.min(y * 2 + 1, height - 1);
+			for (int x = 0; x < newWidth; x++) {
+				int x0 = Math.min(x * 2, width - 1), x1 = Math.min(x * 2 + 1, width - 1);
+				int[] samples = {
+						pixels[y0 * width + x0], pixels[y0 * width + x1],
+						pixels[y1 * width + x0], pixels[y1 * width + x1]
+				};
+				
+				int color = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = 0;
+					for (int sample: samples) {
+						sum += (sample >>> shift) & 0xFF;
+					}
+					color |= ((sum + 2) / 4) << shift;
+				}
+				result[y * newWidth + x] = color;
+			}
+		}
+		
+		return result;
+	}
+	
+}
@@ -0,0 +1,148 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit test for the {@link ETC1Codec} class.
+ */
+public class ETC1CodecTest extends TestCase {
+	
+	/**
+	 * Tests the encoded size computation (including partial blocks).
+	 */
+	public void testEncodedDataSize() {
+		assertEquals(8, ETC1Codec.getEncodedDataSize(1, 1));
+		assertEquals(8, ETC1Codec.getEncodedDataSize(4, 4));
+		assertEquals(16, ETC1Codec.getEncodedDataSize(5, 4));
+		assertEquals(32 * 16 * 8, ETC1Codec.getEncodedDataSize(128, 64));
+	}
+	
+	/**
+	 * Tests decoding hand-made blocks, to check the bit layout against the format specification.
+	 */
+	public void testDecodeKnownBlocks() {
+		int[] block = new int[16 * 3];
+		
+		// individual mode, black base colors, table 0, all indices 0 (+2)
+		ETC1Codec.decodeBlock(new byte[8], 0, block);
+		for (int value: block) {
+			assertEquals(2, value);
+		}
+		
+		// differential mode, white base colors (zero deltas), table 0, all indices 3 (-8)
+		int high = (31 << 27) | (31 << 19) | (31 << 11) | (1 << 1);
+		byte[] data = { (byte)(high >>> 24), (byte)(high >>> 16), (byte)(high >>> 8), (byte)high,
+				(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF };
+		ETC1Codec.decodeBlock(data, 0, block);
+		for (int value: block) {
+			assertEquals(247, value);
+		}
+		
+		// individual mode, red left half / blue right half, table 0, all indices 0 (+2)
+		data = new byte[] { (byte)0xF0, 0x00, 0x0F, 0, 0, 0, 0, 0 };
+		ETC1Codec.decodeBlock(data, 0, block);
+		for (int i = 0; i < 16; i++) {
+			boolean left = (i / 4) < 2;
+			assertEquals(left ? 255 : 2, block[i * 3]);
+			assertEquals(2, block[i * 3 + 1]);
+			assertEquals(left ? 2 : 255, block[i * 3 + 2]);
+		}
+	}
+	
+	/**
+	 * Tests that solid colors survive a round trip almost unchanged.
+	 */
+	public void testSolidColorRoundTrip() {
+		int[] colors = { 0xFF000000, 0xFFFFFFFF, 0xFF808080, 0xFF123456, 0xFFC0FFEE, 0xFF00FF00 };
+		for (int color: colors) {
+			int[] pixels = new int[8 * 8];
+			Arrays.fill(pixels, color);
+			
+			int[] decoded = ETC1Codec.decodeImage(ETC1Codec.encodeImage(pixels, 8, 8), 8, 8);
+			for (int pixel: decoded) {
+				assertTrue("Solid color " + Integer.toHexString(color),
+						maxChannelError(color, pixel) <= 6);
+			}
+		}
+	}
+	
+	/**
+	 * Tests the encoding quality of a smooth, noisy image (PSNR bound).
+	 */
+	public void testGradientErrorBound() {
+		int width = 64, height = 32;
+		int[] pixels = new int[width * height];
+		Random random = new Random(1234);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = x * 3 + random.nextInt(5);
+				int g = y * 7 + random.nextInt(5);
+				int b = (x + y) * 2;
+				pixels[y * width + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+			}
+		}
+		
+		int[] decoded = ETC1Codec.decodeImage(ETC1Codec.encodeImage(pixels, width, height), width, height);
+		assertTrue("PSNR too low", computePSNR(pixels, decoded) > 34);
+	}
+	
+	/**
+	 * Tests images whose dimensions are not multiples of the block size.
+	 */
+	public void testPartialBlocks() {
+		int width = 7, height = 5;
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (i % 2 == 0 ? 0xFFFF8000 : 0xFFFF9010);
+		}
+		
+		byte[] encoded = ETC1Codec.encodeImage(pixels, width, height);
+		assertEquals(ETC1Codec.getEncodedDataSize(width, height), encoded.length);
+		
+		int[] decoded = ETC1Codec.decodeImage(encoded, width, height);
+		assertEquals(pixels.length, decoded.length);
+		for (int i = 0; i < pixels.length; i++) {
+			assertTrue(maxChannelError(pixels[i], decoded[i]) <= 16);
+			assertEquals(0xFF, decoded[i] >>> 24);
+		}
+	}
+	
+	
+	/**
+	 * Computes the maximum per-channel difference between two colors.
+	 * 
+	 * @param a The first color.
+	 * @param b The second color.
+	 * @return The maximum RGB channel difference.
+	 */
+	protected static int maxChannelError(int a, int b) {
+		int error = 0;
+		for (int shift = 0; shift < 24; shift += 8) {
+			error = Math.max(error, Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF)));
+		}
+		return error;
+	}
+	
+	/**
+	 * Computes the peak signal to noise ratio of a decoded image.
+	 * 
+	 * @param original The original pixels.
+	 * @param decoded The decoded pixels.
+	 * @return The PSNR, in dB.
+	 */
+	protected static double computePSNR(int[] original, int[] decoded) {
+		double squaredError = 0;
+		for (int i = 0; i < original.length; i++) {
+			for (int shift = 0; shift < 24; shift += 8) {
+				int diff = ((original[i] >> shift) & 0xFF) - ((decoded[i] >> shift) & 0xFF);
+				squaredError += diff * diff;
+			}
+		}
+		double mse = squaredError / (original.length * 3);
+		return 10 * Math.log10(255 * 255 / mse);
+	}
+	
+}
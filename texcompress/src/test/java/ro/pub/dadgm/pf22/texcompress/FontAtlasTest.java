@@ -0,0 +1,116 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit test for the {@link FontAtlas} class.
+ */
+public class FontAtlasTest extends TestCase {
+	
+	/**
+	 * Tests the distance field of a square.
+	 */
+	public void testDistanceField() {
+		// a 16x16 square in the middle of a 32x32 image, supersampled 2x
+		boolean[] mask = new boolean[32 * 32];
+		for (int y = 8; y < 24; y++) {
+			for (int x = 8; x < 24; x++) {
+				mask[y * 32 + x] = true;
+			}
+		}
+		
+		byte[] field = FontAtlas.computeDistanceField(mask, 32, 32, 2, 4);
+		assertEquals(16 * 16, field.length);
+		
+		// the outline is between the pixels 3 and 4 (and 11 and 12)
+		int inside = field[8 * 16 + 4] & 0xFF, outside = field[8 * 16 + 3] & 0xFF;
+		assertTrue(inside > 128);
+		assertTrue(outside < 128);
+		assertEquals(256, inside + outside, 2);
+		
+		// the distance grows linearly (3.5 pixels inside), then is clamped
+		int center = field[8 * 16 + 7] & 0xFF;
+		assertEquals(128 + 3.5f * 127 / 4, center, 6);
+		assertEquals(0, field[0] & 0xFF);
+		assertTrue((field[8 * 16 + 2] & 0xFF) < outside);
+		
+		// the field is symmetrical
+		assertEquals(field[8 * 16 + 4], field[8 * 16 + 11]);
+		assertEquals(field[4 * 16 + 8], field[11 * 16 + 8]);
+	}
+	
+	/**
+	 * Tests writing and reading an atlas.
+	 * 
+	 * @throws IOException If the atlas could not be written / read.
+	 */
+	public void testWriteRead() throws IOException {
+		byte[] pixels = new byte[16 * 8];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = (byte)(i * 3);
+		}
+		FontAtlas atlas = new FontAtlas(2, 48, 6, 1, 'a', new float[] { 3.5f, 5f },
+				new int[] { 0, 0, 7, 7, 0, 9 }, 8, 16, 8, pixels);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		atlas.write(out);
+		FontAtlas read = FontAtlas.read(new ByteArrayInputStream(out.toByteArray()));
+		
+		assertEquals(2, read.getSpread());
+		assertEquals(48, read.getFontSize());
+		assertEquals(6, read.getLineHeight());
+		assertEquals(1, read.getDescent());
+		assertEquals(8, read.getCellHeight());
+		assertEquals(16, read.getWidth());
+		assertEquals(8, read.getHeight());
+		assertTrue(Arrays.equals(pixels, read.getPixels()));
+		
+		assertEquals(5f, read.getAdvance('b'), 0f);
+		assertEquals(7, read.getCellX('b'));
+		assertEquals(9, read.getCellWidth('b'));
+		
+		// the missing characters are replaced with the first one
+		assertEquals(3.5f, read.getAdvance('z'), 0f);
+		assertEquals(7, read.getCellWidth(' '));
+	}
+	
+	/**
+	 * Tests that the invalid atlases are rejected.
+	 * 
+	 * @throws IOException If the test atlas could not be written.
+	 */
+	public void testInvalid() throws IOException {
+		// a cell outside the atlas
+		FontAtlas atlas = new FontAtlas(2, 48, 6, 1, 'a', new float[] { 3.5f },
+				new int[] { 10, 0, 7 }, 8, 16, 8, new byte[16 * 8]);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		atlas.write(out);
+		assertReadFails(out.toByteArray());
+		
+		// invalid magic, truncated
+		assertReadFails(new byte[] { 'P', 'F', 'T', 'X', 0, 1 });
+		assertReadFails(Arrays.copyOf(out.toByteArray(), 20));
+	}
+	
+	
+	/**
+	 * Asserts that reading the specified data fails.
+	 * 
+	 * @param data The invalid atlas data.
+	 */
+	protected static void assertReadFails(byte[] data) {
+		try {
+			FontAtlas.read(new ByteArrayInputStream(data));
+			fail("Invalid atlas accepted!");
+			
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+}
@@ -0,0 +1,167 @@
+package ro.pub.dadgm.pf22.texcompress;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Unit test for the {@link TextureContainer} class.
+ */
+public class TextureContainerTest extends TestCase {
+	
+	/**
+	 * Tests the generated mipmap chain of an opaque image.
+	 */
+	public void testEncodeMipmapChain() {
+		TextureContainer container = TextureContainer.encode(createImage(16, 8, false), 16, 8, true);
+		
+		assertFalse(container.hasAlpha());
+		assertEquals(5, container.getLevels().size());
+		
+		int[][] expectedSizes = { {16, 8}, {8, 4}, {4, 2}, {2, 1}, {1, 1} };
+		for (int i = 0; i < expectedSizes.length; i++) {
+			TextureContainer.Level level = container.getLevels().get(i);
+			assertEquals(expectedSizes[i][0], level.getWidth());
+			assertEquals(expectedSizes[i][1], level.getHeight());
+			assertEquals(ETC1Codec.getEncodedDataSize(level.getWidth(), level.getHeight()),
+					level.getColorData().length);
+			assertNull(level.getAlphaData());
+		}
+		
+		TextureContainer single = TextureContainer.encode(createImage(16, 8, false), 16, 8, false);
+		assertEquals(1, single.getLevels().size());
+	}
+	
+	/**
+	 * Tests the alpha plane and the premultiplication of translucent images.
+	 */
+	public void testAlphaPlane() {
+		int[] pixels = new int[8 * 8];
+		for (int i = 0; i < pixels.length; i++) {
+			// left half: transparent white, right half: opaque red
+			pixels[i] = ((i % 8) < 4 ? 0x00FFFFFF : 0xFFFF0000);
+		}
+		
+		TextureContainer container = TextureContainer.encode(pixels, 8, 8, true);
+		assertTrue(container.hasAlpha());
+		
+		TextureContainer.Level level = container.getLevels().get(0);
+		assertNotNull(level.getAlphaData());
+		int[] colors = ETC1Codec.decodeImage(level.getColorData(), 8, 8);
+		int[] alpha = ETC1Codec.decodeImage(level.getAlphaData(), 8, 8);
+		
+		for (int i = 0; i < pixels.length; i++) {
+			boolean transparent = (i % 8) < 4;
+			int a = alpha[i] & 0xFF;
+			int r = (colors[i] >> 16) & 0xFF;
+			assertTrue(transparent ? a <= 8 : a >= 247);
+			// the color of the transparent pixels is premultiplied to black
+			assertTrue(transparent ? r <= 8 : r >= 247);
+		}
+	}
+	
+	/**
+	 * Tests that a container survives a write / read round trip.
+	 */
+	public void testWriteRead() throws IOException {
+		TextureContainer container = TextureContainer.encode(createImage(32, 16, true), 32, 16, true);
+		TextureContainer read = TextureContainer.read(new ByteArrayInputStream(toBytes(container)));
+		
+		assertEquals(container.getWidth(), read.getWidth());
+		assertEquals(container.getHeight(), read.getHeight());
+		assertEquals(container.hasAlpha(), read.hasAlpha());
+		assertEquals(container.getLevels().size(), read.getLevels().size());
+		assertEquals(container.getDataSize(0), read.getDataSize(0));
+		
+		for (int i = 0; i < container.getLevels().size(); i++) {
+			TextureContainer.Level expected = container.getLevels().get(i);
+			TextureContainer.Level actual = read.getLevels().get(i);
+			assertEquals(expected.getWidth(), actual.getWidth());
+			assertEquals(expected.getHeight(), actual.getHeight());
+			assertTrue(Arrays.equals(expected.getColorData(), actual.getColorData()));
+			assertTrue(Arrays.equals(expected.getAlphaData(), actual.getAlphaData()));
+		}
+	}
+	
+	/**
+	 * Tests that invalid / corrupted containers are rejected.
+	 */
+	public void testReadInvalid() {
+		byte[] valid = toBytes(TextureContainer.encode(createImage(8, 8, false), 8, 8, true));
+		
+		// bad magic
+		byte[] data = valid.clone();
+		data[0] = 'X';
+		assertReadFails(data);
+		
+		// unsupported version
+		data = valid.clone();
+		data[5] = (byte)(TextureContainer.VERSION + 1);
+		assertReadFails(data);
+		
+		// truncated
+		assertReadFails(Arrays.copyOf(valid, valid.length - 1));
+		
+		// wrong level size (first level's size field, right after its dimensions)
+		data = valid.clone();
+		data[4 + 2 + 2 + 4 + 4 + 4 + 4 + 4 + 3]++;
+		assertReadFails(data);
+	}
+	
+	
+	/**
+	 * Creates a test image (a colored gradient).
+	 * 
+	 * @param width Image's width.
+	 * @param height Image's height.
+	 * @param translucent Whether to also generate an alpha gradient.
+	 * @return The image's pixels.
+	 */
+	protected static int[] createImage(int width, int height, boolean translucent) {
+		int[] pixels = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int a = (translucent ? x * 255 / width : 0xFF);
+				int r = x * 255 / width;
+				int g = y * 255 / height;
+				pixels[y * width + x] = (a << 24) | (r << 16) | (g << 8) | 0x40;
+			}
+		}
+		return pixels;
+	}
+	
+	/**
+	 * Serializes a container.
+	 * 
+	 * @param container The container to write.
+	 * @return The written bytes.
+	 */
+	protected static byte[] toBytes(TextureContainer container) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			container.write(out);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		return out.toByteArray();
+	}
+	
+	/**
+	 * Checks that reading the specified data fails.
+	 * 
+	 * @param data The container's data.
+	 */
+	protected static void assertReadFails(byte[] data) {
+		try {
+			TextureContainer.read(new ByteArrayInputStream(data));
+			fail("Invalid container accepted!");
+			
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+}